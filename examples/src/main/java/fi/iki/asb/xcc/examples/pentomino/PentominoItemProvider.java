@@ -44,4 +44,24 @@ implements ItemProvider<PentominoPlacement> {
 
 		return options;
 	}
+
+	/**
+	 * Reflect a cell item of a board of the given size upside down. Other
+	 * items are returned as they are.
+	 */
+	static Object flipRows(Object item, int height) {
+		return (item instanceof CellUsed cell)
+				? new CellUsed(height - 1 - cell.row(), cell.column())
+				: item;
+	}
+
+	/**
+	 * Reflect a cell item of a board of the given size left to right.
+	 * Other items are returned as they are.
+	 */
+	static Object flipColumns(Object item, int width) {
+		return (item instanceof CellUsed cell)
+				? new CellUsed(cell.row(), width - 1 - cell.column())
+				: item;
+	}
 }
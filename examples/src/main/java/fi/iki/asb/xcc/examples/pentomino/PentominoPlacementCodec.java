@@ -0,0 +1,40 @@
+package fi.iki.asb.xcc.examples.pentomino;
+
+import fi.iki.asb.xcc.OptionCodec;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Writes pentomino placements to a problem snapshot. The shape of the
+ * pentomino is written in the same format that {@link Pentomino#parse}
+ * reads.
+ */
+public class PentominoPlacementCodec implements OptionCodec<PentominoPlacement> {
+
+	@Override
+	public void write(final PentominoPlacement option, final DataOutput out) throws IOException {
+		final Pentomino p = option.pentomino();
+		out.writeByte(p.height());
+		for (int r = 0; r < p.height(); r++) {
+			final StringBuilder row = new StringBuilder(p.width());
+			for (int c = 0; c < p.width(); c++) {
+				row.append(p.hasSquare(r, c) ? p.identifier() : ' ');
+			}
+			out.writeUTF(row.toString());
+		}
+		out.writeByte(option.row());
+		out.writeByte(option.column());
+	}
+
+	@Override
+	public PentominoPlacement read(final DataInput in) throws IOException {
+		final String[] rows = new String[in.readByte()];
+		for (int r = 0; r < rows.length; r++) {
+			rows[r] = in.readUTF();
+		}
+		return new PentominoPlacement(Pentomino.parse(rows),
+				in.readByte(), in.readByte());
+	}
+}
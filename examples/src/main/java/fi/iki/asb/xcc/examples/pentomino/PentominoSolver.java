@@ -1,5 +1,8 @@
 package fi.iki.asb.xcc.examples.pentomino;
 
+import fi.iki.asb.xcc.CompiledProblem;
+import fi.iki.asb.xcc.SymmetricXCC;
+import fi.iki.asb.xcc.Symmetry;
 import fi.iki.asb.xcc.XCC;
 import fi.iki.asb.xcc.LinkedXCC;
 import fi.iki.asb.xcc.examples.queen.QueenItemProvider;
@@ -32,6 +35,32 @@ public class PentominoSolver {
 		initializeConstraints();
 	}
 
+	/**
+	 * Create a solver for a compiled problem. If the problem is empty, the
+	 * options are added to it, so that it can be saved to a {@link
+	 * fi.iki.asb.xcc.ProblemSnapshot}. Otherwise it must be a problem that
+	 * was created by a solver of the same width, for example one that has
+	 * been loaded from a snapshot with {@link PentominoPlacementCodec}.
+	 */
+	public PentominoSolver(
+			final int width,
+			final Consumer<PentominoGrid> solutionConsumer,
+			final CompiledProblem<PentominoPlacement> problem,
+			final Function<CompiledProblem<PentominoPlacement>, XCC<PentominoPlacement>> xccInitializer) {
+		height = 60 / width;
+		if (height * width != 60) {
+			throw new IllegalArgumentException("Illegal width [" + width + "]");
+		}
+
+		this.width = width;
+		this.xcc = xccInitializer.apply(problem);
+		this.solutionConsumer = solutionConsumer;
+
+		if (problem.optionCount() == 0) {
+			initializeConstraints();
+		}
+	}
+
 	public PentominoSolver(
 			final int width,
 			final Consumer<PentominoGrid> solutionConsumer) {
@@ -42,6 +71,26 @@ public class PentominoSolver {
 		xcc.search(this::acceptSolution);
 	}
 
+	/**
+	 * Count the solutions without converting them into boards. The
+	 * solution consumer is not called.
+	 */
+	public long countSolutions() {
+		return xcc.countSolutions();
+	}
+
+	/**
+	 * Get the symmetries of a board of the given width for {@link
+	 * SymmetricXCC}. The board can be reflected horizontally and
+	 * vertically, which means that each solution has four images.
+	 */
+	public static List<Symmetry<PentominoPlacement>> symmetries(final int width) {
+		final int height = 60 / width;
+		return List.of(
+				Symmetry.ofItems(item -> PentominoItemProvider.flipRows(item, height)),
+				Symmetry.ofItems(item -> PentominoItemProvider.flipColumns(item, width)));
+	}
+
 	private void initializeConstraints() {
 		rotate3AndFlip(Pentominoes.F);
 		rotate1(Pentominoes.I);
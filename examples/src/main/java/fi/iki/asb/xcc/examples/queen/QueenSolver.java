@@ -1,6 +1,8 @@
 package fi.iki.asb.xcc.examples.queen;
 
 import fi.iki.asb.xcc.LinkedXCC;
+import fi.iki.asb.xcc.SymmetricXCC;
+import fi.iki.asb.xcc.Symmetry;
 import fi.iki.asb.xcc.XCC;
 import fi.iki.asb.xcc.examples.queen.option.QueenPlacement;
 
@@ -37,6 +39,17 @@ public final class QueenSolver {
 		this(size, solutionConsumer, LinkedXCC::new);
 	}
 
+	/**
+	 * Get the symmetries of a board of the given size for {@link
+	 * SymmetricXCC}. The rotation and the reflection generate all the
+	 * eight symmetries of a square.
+	 */
+	public static List<Symmetry<QueenPlacement>> symmetries(final int size) {
+		return List.of(
+				Symmetry.ofOptions(q -> new QueenPlacement(q.column(), size - 1 - q.row())),
+				Symmetry.ofOptions(q -> new QueenPlacement(q.row(), size - 1 - q.column())));
+	}
+
 	/**
 	 * Initialize the options. This adds options for placing a queen to
 	 * each square on the chess board.
@@ -53,6 +66,14 @@ public final class QueenSolver {
 		xcc.search(this::acceptSolution);
 	}
 
+	/**
+	 * Count the solutions without converting them into boards. The
+	 * solution consumer is not called.
+	 */
+	public long countSolutions() {
+		return xcc.countSolutions();
+	}
+
 	/**
 	 * Accept the solution and convert the queen placements into a
 	 * two-dimensional chess board representation.
@@ -0,0 +1,26 @@
+package fi.iki.asb.xcc.examples.sudoku;
+
+import fi.iki.asb.xcc.OptionCodec;
+import fi.iki.asb.xcc.examples.sudoku.option.PlaceNumber;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Writes sudoku options to a problem snapshot.
+ */
+public class PlaceNumberCodec implements OptionCodec<PlaceNumber> {
+
+    @Override
+    public void write(final PlaceNumber option, final DataOutput out) throws IOException {
+        out.writeShort(option.number());
+        out.writeShort(option.row());
+        out.writeShort(option.column());
+    }
+
+    @Override
+    public PlaceNumber read(final DataInput in) throws IOException {
+        return new PlaceNumber(in.readShort(), in.readShort(), in.readShort());
+    }
+}
@@ -0,0 +1,270 @@
+package fi.iki.asb.xcc.examples.sudoku;
+
+import fi.iki.asb.xcc.FrozenMatrix;
+import fi.iki.asb.xcc.IterativeXCC;
+import fi.iki.asb.xcc.examples.sudoku.option.PlaceNumber;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Solves large batches of sudoku puzzles with a pool of worker threads.
+ *
+ * <p>The puzzles are given one per line in the usual format, where each
+ * character is a number or an empty cell (any other character, usually
+ * <code>.</code> or <code>0</code>). The first solution of each puzzle is
+ * written in the same format, in the same order as the puzzles. Puzzles
+ * that have no solution produce an empty line. So do malformed puzzles,
+ * which have the wrong number of cells or a number larger than the size,
+ * but they are also counted separately in the report.</p>
+ *
+ * <p>The matrix is built once and frozen. The worker threads are started
+ * once too and they are shared by all the batches, until the solver is
+ * closed. Each worker thread searches its own session of the matrix, which
+ * is reused for all the puzzles the thread solves. The given numbers are
+ * passed to the session as option ids, so solving a puzzle does not create
+ * or hash any items.</p>
+ *
+ * <p>This class is thread safe, but the batches are solved one at a time.</p>
+ */
+public class SudokuBatchSolver implements AutoCloseable {
+
+    /**
+     * Number of puzzles in one task.
+     */
+    private static final int CHUNK_SIZE = 256;
+
+    /**
+     * Number of tasks per thread that are queued before the results are
+     * written.
+     */
+    private static final int TASKS_PER_THREAD = 4;
+
+    /**
+     * Statistics of a solved batch.
+     *
+     * @param puzzles Number of puzzles, including the malformed ones.
+     * @param solved Number of puzzles that have a solution.
+     * @param malformed Number of puzzles that could not be read.
+     * @param nanos Time spent on the batch in nanoseconds.
+     */
+    public record Report(long puzzles, long solved, long malformed, long nanos) {
+
+        public double puzzlesPerSecond() {
+            return (nanos > 0) ? puzzles * 1e9 / nanos : 0.0;
+        }
+    }
+
+    /**
+     * The state of a worker thread.
+     */
+    private final class Worker {
+
+        private final IterativeXCC<PlaceNumber> session = matrix.newSession();
+
+        /**
+         * The option ids of the given numbers, by cell.
+         */
+        private final int[] givenNumbers = new int[size * size];
+
+        private final char[] solution = new char[size * size];
+
+        private boolean found;
+
+        /**
+         * Solve a puzzle.
+         *
+         * @return The solution, an empty string if there is no solution or
+         *      null if the puzzle is malformed.
+         */
+        String solve(final String puzzle) {
+            if (puzzle.length() != size * size) {
+                return null;
+            }
+
+            int count = 0;
+            for (int cell = 0; cell < puzzle.length(); cell++) {
+                final int number = Character.digit(puzzle.charAt(cell), 10);
+                if (number > size) {
+                    return null;
+                }
+                if (number >= 1) {
+                    givenNumbers[count++] = cell * size + number - 1;
+                }
+            }
+
+            found = false;
+            session.search(this::accept, Arrays.copyOf(givenNumbers, count),
+                    () -> found);
+            return found ? new String(solution) : "";
+        }
+
+        private void accept(final List<PlaceNumber> options) {
+            for (PlaceNumber option : options) {
+                solution[option.row() * size + option.column()] =
+                        Character.forDigit(option.number(), 10);
+            }
+            found = true;
+        }
+    }
+
+    // =================================================================== //
+
+    private final int size;
+
+    private final int threads;
+
+    private final FrozenMatrix<PlaceNumber> matrix;
+
+    private final ThreadLocal<Worker> workers = ThreadLocal.withInitial(Worker::new);
+
+    private final ExecutorService executor;
+
+    /**
+     * The worker threads are started when the first batch is solved and
+     * they run until the solver is closed.
+     *
+     * @param size Size of the puzzles. At most 9.
+     * @param threads Number of worker threads.
+     */
+    public SudokuBatchSolver(final int size, final int threads) {
+        if (size > 9) {
+            throw new IllegalArgumentException("Illegal size [" + size + "]");
+        }
+        if (threads < 1) {
+            throw new IllegalArgumentException("Illegal thread count ["
+                    + threads + "]");
+        }
+
+        this.size = size;
+        this.threads = threads;
+        this.matrix = new FrozenMatrix<>(SudokuSolver.buildProblem(size));
+        this.executor = Executors.newFixedThreadPool(threads);
+    }
+
+    /**
+     * Stop the worker threads. The puzzles of a batch that is being solved
+     * are not waited for.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Solve the puzzles in a file and write the solutions to another file.
+     */
+    public Report solve(final Path puzzles, final Path solutions) throws IOException {
+        try (Stream<String> lines = Files.lines(puzzles, StandardCharsets.UTF_8);
+             BufferedWriter out = Files.newBufferedWriter(solutions, StandardCharsets.UTF_8)) {
+            return solve(lines, solution -> {
+                try {
+                    out.write(solution);
+                    out.newLine();
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            });
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+    }
+
+    /**
+     * Solve a stream of puzzles. The solutions are passed to the consumer
+     * in the order of the puzzles, from the calling thread.
+     *
+     * @throws IllegalStateException
+     *      If the solver has been closed.
+     */
+    public synchronized Report solve(
+            final Stream<String> puzzles,
+            final Consumer<String> solutions) {
+        final long start = System.nanoTime();
+        long puzzleCount = 0;
+        long solvedCount = 0;
+        long malformedCount = 0;
+
+        if (executor.isShutdown()) {
+            throw new IllegalStateException("solver is closed");
+        }
+
+        final Deque<Future<String[]>> tasks = new ArrayDeque<>();
+        try {
+            final Iterator<String> iterator = puzzles
+                    .filter(line -> !line.isBlank())
+                    .iterator();
+            while (iterator.hasNext() || !tasks.isEmpty()) {
+                if (iterator.hasNext() && tasks.size() < threads * TASKS_PER_THREAD) {
+                    final List<String> chunk = new ArrayList<>(CHUNK_SIZE);
+                    while (iterator.hasNext() && chunk.size() < CHUNK_SIZE) {
+                        chunk.add(iterator.next().strip());
+                    }
+                    tasks.add(executor.submit(() -> solveChunk(chunk)));
+                } else {
+                    for (String solution : await(tasks.removeFirst())) {
+                        puzzleCount++;
+                        if (solution == null) {
+                            malformedCount++;
+                            solution = "";
+                        } else if (!solution.isEmpty()) {
+                            solvedCount++;
+                        }
+                        solutions.accept(solution);
+                    }
+                }
+            }
+        } finally {
+            // Drop the rest of the batch if the consumer failed.
+            tasks.forEach(task -> task.cancel(false));
+        }
+
+        return new Report(puzzleCount, solvedCount, malformedCount,
+                System.nanoTime() - start);
+    }
+
+    private String[] solveChunk(final List<String> chunk) {
+        final Worker worker = workers.get();
+        final String[] solutions = new String[chunk.size()];
+        try {
+            for (int k = 0; k < solutions.length; k++) {
+                solutions[k] = worker.solve(chunk.get(k));
+            }
+        } catch (RuntimeException ex) {
+            // The session of the worker was left dirty.
+            workers.remove();
+            throw ex;
+        }
+        return solutions;
+    }
+
+    private static String[] await(final Future<String[]> task) {
+        try {
+            return task.get();
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException r) {
+                throw r;
+            }
+            throw new IllegalStateException(ex.getCause());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted", ex);
+        }
+    }
+}
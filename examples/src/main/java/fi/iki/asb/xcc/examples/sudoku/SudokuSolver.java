@@ -1,5 +1,6 @@
 package fi.iki.asb.xcc.examples.sudoku;
 
+import fi.iki.asb.xcc.CompiledProblem;
 import fi.iki.asb.xcc.XCC;
 import fi.iki.asb.xcc.LinkedXCC;
 import fi.iki.asb.xcc.examples.sudoku.option.PlaceNumber;
@@ -71,12 +72,48 @@ public class SudokuSolver {
         initializeConstraints();
     }
 
+    /**
+     * Create a solver for a compiled problem. If the problem is empty, the
+     * options are added to it, so that it can be saved to a {@link
+     * fi.iki.asb.xcc.ProblemSnapshot}. Otherwise it must be a problem that
+     * was created by a solver of the same size, for example one that has
+     * been loaded from a snapshot with {@link PlaceNumberCodec}.
+     */
+    public SudokuSolver(
+            final int size,
+            final CompiledProblem<PlaceNumber> problem,
+            final Function<CompiledProblem<PlaceNumber>, XCC<PlaceNumber>> xccInitializer) {
+        this.solution = new SudokuGrid(size);
+        this.xcc = xccInitializer.apply(problem);
+        if (problem.optionCount() == 0) {
+            initializeConstraints();
+        }
+    }
+
+    /**
+     * Build the problem of a sudoku of the given size without creating a
+     * solver for it. The option that places <code>number</code> at
+     * <code>(row, column)</code> has the id
+     * <code>(row * size + column) * size + number - 1</code>.
+     */
+    public static CompiledProblem<PlaceNumber> buildProblem(final int size) {
+        final CompiledProblem<PlaceNumber> problem =
+                new CompiledProblem<>(new SudokuItemProvider(size));
+        addOptions(size, problem::addOption);
+        return problem;
+    }
+
     private void initializeConstraints() {
-        final int size = solution.getSize();
+        addOptions(solution.getSize(), xcc::addOption);
+    }
+
+    private static void addOptions(
+            final int size,
+            final Consumer<PlaceNumber> options) {
         for (int row = 0; row < size; row++) {
             for (int col = 0; col < size; col++) {
                 for (int number = 1; number <= size; number++) {
-                    xcc.addOption(new PlaceNumber(number, row, col));
+                    options.accept(new PlaceNumber(number, row, col));
                 }
             }
         }
@@ -0,0 +1,29 @@
+package fi.iki.asb.xcc.examples.words;
+
+import fi.iki.asb.xcc.OptionCodec;
+import fi.iki.asb.xcc.examples.words.option.Direction;
+import fi.iki.asb.xcc.examples.words.option.WordPlacement;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Writes word placements to a problem snapshot.
+ */
+public class WordPlacementCodec implements OptionCodec<WordPlacement> {
+
+    @Override
+    public void write(final WordPlacement option, final DataOutput out) throws IOException {
+        out.writeShort(option.row());
+        out.writeShort(option.col());
+        out.writeByte(option.dir().ordinal());
+        out.writeUTF(option.word());
+    }
+
+    @Override
+    public WordPlacement read(final DataInput in) throws IOException {
+        return new WordPlacement(in.readShort(), in.readShort(),
+                Direction.values()[in.readByte()], in.readUTF());
+    }
+}
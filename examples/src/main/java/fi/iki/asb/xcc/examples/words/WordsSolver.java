@@ -1,5 +1,6 @@
 package fi.iki.asb.xcc.examples.words;
 
+import fi.iki.asb.xcc.CompiledProblem;
 import fi.iki.asb.xcc.XCC;
 import fi.iki.asb.xcc.LinkedXCC;
 import fi.iki.asb.xcc.examples.queen.QueenGrid;
@@ -33,6 +34,24 @@ public final class WordsSolver {
         this.solutionConsumer = new WordsSolutionConsumer(width, height);
     }
 
+    /**
+     * Create a solver for a compiled problem. The words that are added to
+     * the solver are added to the problem, so that it can be saved to a
+     * {@link fi.iki.asb.xcc.ProblemSnapshot}. A problem that has been
+     * loaded from a snapshot with {@link WordPlacementCodec} already
+     * contains its words.
+     */
+    public WordsSolver(
+            final int width,
+            final int height,
+            final CompiledProblem<WordPlacement> problem,
+            final Function<CompiledProblem<WordPlacement>, XCC<WordPlacement>> xccInitializer) {
+        this.width = width;
+        this.height = height;
+        this.xcc = xccInitializer.apply(problem);
+        this.solutionConsumer = new WordsSolutionConsumer(width, height);
+    }
+
     public WordsSolver(int width, int height) {
         this(width, height, LinkedXCC::new);
     }
@@ -2,15 +2,34 @@ package fi.iki.asb.xcc.examples.pentomino;
 
 import static org.junit.Assert.assertEquals;
 
+import fi.iki.asb.xcc.BitsetXCC;
+import fi.iki.asb.xcc.CompiledProblem;
+import fi.iki.asb.xcc.DancingCellsXCC;
+import fi.iki.asb.xcc.IterativeXCC;
 import fi.iki.asb.xcc.LinkedXCC;
+import fi.iki.asb.xcc.OffHeapXCC;
+import fi.iki.asb.xcc.ParallelXCC;
+import fi.iki.asb.xcc.ProblemSnapshot;
 import fi.iki.asb.xcc.ReferenceXCC;
+import fi.iki.asb.xcc.SymmetricXCC;
 import fi.iki.asb.xcc.XCC;
+import fi.iki.asb.xcc.Zdd;
+import fi.iki.asb.xcc.ZddBuilder;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Path;
+import java.util.Random;
 import java.util.function.Function;
 
 public class PentominoSolverTest {
 
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
 	private int solutionCount = 0;
 
 	private PentominoSolver solver;
@@ -54,6 +73,43 @@ public class PentominoSolverTest {
 		solve(4 * 2);
 	}
 
+	@Test
+	public void givenParallelXcc_shouldFindSolutionsTo3x20Puzzle() {
+		init3x20Test(ParallelXCC::new);
+		// 2 unique solutions excluding rotations and reflections.
+		solve(4 * 2);
+	}
+
+	@Test
+	public void givenIterativeXcc_shouldFindSolutionsTo3x20Puzzle() {
+		init3x20Test(IterativeXCC::new);
+		// 2 unique solutions excluding rotations and reflections.
+		solve(4 * 2);
+	}
+
+	@Test
+	public void givenDancingCellsXcc_shouldFindSolutionsTo3x20Puzzle() {
+		init3x20Test(DancingCellsXCC::new);
+		// 2 unique solutions excluding rotations and reflections.
+		solve(4 * 2);
+	}
+
+	@Test
+	public void givenOffHeapXcc_shouldFindSolutionsTo3x20Puzzle() {
+		try (OffHeapXCC<PentominoPlacement> xcc = new OffHeapXCC<>(new PentominoItemProvider())) {
+			init3x20Test(p -> xcc);
+			// 2 unique solutions excluding rotations and reflections.
+			solve(4 * 2);
+		}
+	}
+
+	@Test
+	public void givenBitsetXcc_shouldFindSolutionsTo3x20Puzzle() {
+		init3x20Test(BitsetXCC::new);
+		// 2 unique solutions excluding rotations and reflections.
+		solve(4 * 2);
+	}
+
 	// =================================================================== //
 	// Find solutions to size 4x15 board.
 
@@ -75,6 +131,43 @@ public class PentominoSolverTest {
 		solve(4 * 368);
 	}
 
+	@Test
+	public void givenParallelXcc_shouldFindSolutionsTo4x15Puzzle() {
+		init4x15Test(ParallelXCC::new);
+		// 368 unique solutions excluding rotations and reflections.
+		solve(4 * 368);
+	}
+
+	@Test
+	public void givenIterativeXcc_shouldFindSolutionsTo4x15Puzzle() {
+		init4x15Test(IterativeXCC::new);
+		// 368 unique solutions excluding rotations and reflections.
+		solve(4 * 368);
+	}
+
+	@Test
+	public void givenDancingCellsXcc_shouldFindSolutionsTo4x15Puzzle() {
+		init4x15Test(DancingCellsXCC::new);
+		// 368 unique solutions excluding rotations and reflections.
+		solve(4 * 368);
+	}
+
+	@Test
+	public void givenOffHeapXcc_shouldFindSolutionsTo4x15Puzzle() {
+		try (OffHeapXCC<PentominoPlacement> xcc = new OffHeapXCC<>(new PentominoItemProvider())) {
+			init4x15Test(p -> xcc);
+			// 368 unique solutions excluding rotations and reflections.
+			solve(4 * 368);
+		}
+	}
+
+	@Test
+	public void givenBitsetXcc_shouldFindSolutionsTo4x15Puzzle() {
+		init4x15Test(BitsetXCC::new);
+		// 368 unique solutions excluding rotations and reflections.
+		solve(4 * 368);
+	}
+
 	// =================================================================== //
 	// Find solutions to size 4x15 board.
 
@@ -95,4 +188,113 @@ public class PentominoSolverTest {
 		// 2339 unique solutions excluding rotations and reflections.
 		solve(4 * 2339);
 	}
+
+	@Test
+	public void givenParallelXcc_shouldFindSolutionsTo6x10Puzzle() {
+		init6x10Test(ParallelXCC::new);
+		// 2339 unique solutions excluding rotations and reflections.
+		solve(4 * 2339);
+	}
+
+	@Test
+	public void givenIterativeXcc_shouldFindSolutionsTo6x10Puzzle() {
+		init6x10Test(IterativeXCC::new);
+		// 2339 unique solutions excluding rotations and reflections.
+		solve(4 * 2339);
+	}
+
+	@Test
+	public void givenDancingCellsXcc_shouldFindSolutionsTo6x10Puzzle() {
+		init6x10Test(DancingCellsXCC::new);
+		// 2339 unique solutions excluding rotations and reflections.
+		solve(4 * 2339);
+	}
+
+	@Test
+	public void givenOffHeapXcc_shouldFindSolutionsTo6x10Puzzle() {
+		try (OffHeapXCC<PentominoPlacement> xcc = new OffHeapXCC<>(new PentominoItemProvider())) {
+			init6x10Test(p -> xcc);
+			// 2339 unique solutions excluding rotations and reflections.
+			solve(4 * 2339);
+		}
+	}
+
+	@Test
+	public void givenBitsetXcc_shouldFindSolutionsTo6x10Puzzle() {
+		init6x10Test(BitsetXCC::new);
+		// 2339 unique solutions excluding rotations and reflections.
+		solve(4 * 2339);
+	}
+
+	// =================================================================== //
+	// Count solutions to size 6x10 board without creating boards.
+
+	@Test
+	public void givenLinkedXcc_shouldCountSolutionsTo6x10Puzzle() {
+		init6x10Test(LinkedXCC::new);
+		assertEquals(4 * 2339, solver.countSolutions());
+	}
+
+	@Test
+	public void givenReferenceXcc_shouldCountSolutionsTo6x10Puzzle() {
+		init6x10Test(ReferenceXCC::new);
+		assertEquals(4 * 2339, solver.countSolutions());
+	}
+
+	// =================================================================== //
+	// Find only the unique solutions with symmetry breaking.
+
+	private Function<PentominoItemProvider, XCC<PentominoPlacement>> symmetric(final int width) {
+		return p -> new SymmetricXCC<>(new LinkedXCC<>(p), p, PentominoSolver.symmetries(width));
+	}
+
+	@Test
+	public void givenSymmetricXcc_shouldFindUniqueSolutionsTo4x15Puzzle() {
+		init4x15Test(symmetric(15));
+		solve(368);
+	}
+
+	@Test
+	public void givenSymmetricXcc_shouldFindUniqueSolutionsTo6x10Puzzle() {
+		init6x10Test(symmetric(10));
+		solve(2339);
+	}
+
+	@Test
+	public void givenSymmetricXcc_shouldCountAllSolutionsTo6x10Puzzle() {
+		init6x10Test(symmetric(10));
+		assertEquals(4 * 2339, solver.countSolutions());
+	}
+
+	// =================================================================== //
+	// Find solutions with a problem loaded from a snapshot.
+
+	@Test
+	public void givenSnapshot_shouldFindSolutionsTo3x20Puzzle() throws IOException {
+		final CompiledProblem<PentominoPlacement> problem =
+				new CompiledProblem<>(new PentominoItemProvider());
+		new PentominoSolver(20, this::solutionCounter, problem, ReferenceXCC::new);
+		final Path file = folder.getRoot().toPath().resolve("pentomino3x20");
+		ProblemSnapshot.save(problem, file, new PentominoPlacementCodec());
+
+		solver = new PentominoSolver(20, this::solutionCounter,
+				ProblemSnapshot.load(file, new PentominoItemProvider(), new PentominoPlacementCodec()),
+				ReferenceXCC::new);
+		// 2 unique solutions excluding rotations and reflections.
+		solve(4 * 2);
+	}
+
+	// =================================================================== //
+	// Build a decision diagram of all the solutions.
+
+	@Test
+	public void givenZdd_shouldCountSolutionsTo4x15Puzzle() {
+		final CompiledProblem<PentominoPlacement> problem =
+				new CompiledProblem<>(new PentominoItemProvider());
+		new PentominoSolver(15, this::solutionCounter, problem, ReferenceXCC::new);
+
+		final Zdd<PentominoPlacement> zdd = new ZddBuilder<>(problem).build();
+		assertEquals(BigInteger.valueOf(4 * 368), zdd.count());
+		assertEquals(12, zdd.sample(new Random(1)).size());
+	}
 }
@@ -1,15 +1,25 @@
 package fi.iki.asb.xcc.examples.queen;
 
+import fi.iki.asb.xcc.BitsetXCC;
+import fi.iki.asb.xcc.DancingCellsXCC;
+import fi.iki.asb.xcc.ItemChooser;
+import fi.iki.asb.xcc.IterativeXCC;
 import fi.iki.asb.xcc.LinkedXCC;
+import fi.iki.asb.xcc.OffHeapXCC;
+import fi.iki.asb.xcc.ParallelXCC;
 import fi.iki.asb.xcc.ReferenceXCC;
 import fi.iki.asb.xcc.XCC;
+import fi.iki.asb.xcc.examples.queen.item.ColumnOccupation;
+import fi.iki.asb.xcc.examples.queen.item.RowOccupation;
 import fi.iki.asb.xcc.examples.queen.option.QueenPlacement;
 import org.openjdk.jmh.Main;
 import org.openjdk.jmh.annotations.Benchmark;
 import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
 import org.openjdk.jmh.annotations.Scope;
 import org.openjdk.jmh.annotations.Setup;
 import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
 import org.openjdk.jmh.annotations.Warmup;
 import org.openjdk.jmh.infra.Blackhole;
 
@@ -43,6 +53,34 @@ public class QueenSolverPerf {
         public void solve(Blackhole sink) {
             xcc.search(sink::consume);
         }
+
+        public void count(Blackhole sink) {
+            sink.consume(xcc.countSolutions());
+        }
+    }
+
+    /**
+     * Create an item chooser by name. The "sharp" chooser prefers rows
+     * and the "scored" chooser breaks ties in the "organ pipe" order, from
+     * the middle rows and columns outwards, as in Knuth's N queens
+     * examples.
+     */
+    private static ItemChooser createItemChooser(final String name) {
+        return switch (name) {
+            case "mrv" -> ItemChooser.mrv();
+            case "mrvLast" -> ItemChooser.mrvLast();
+            case "random" -> ItemChooser.random(42);
+            case "sharp" -> ItemChooser.sharp(item -> item instanceof RowOccupation);
+            case "scored" -> ItemChooser.scored((item, length) -> {
+                final int index = switch (item) {
+                    case RowOccupation r -> r.row();
+                    case ColumnOccupation c -> c.column();
+                    default -> 0;
+                };
+                return (long) length * SIZE + Math.abs(2 * index + 1 - SIZE);
+            });
+            default -> throw new IllegalArgumentException(name);
+        };
     }
 
     @State(Scope.Benchmark)
@@ -59,6 +97,88 @@ public class QueenSolverPerf {
         }
     }
 
+    @State(Scope.Benchmark)
+    public static class ParallelSolverState extends QueenSolverState {
+        public XCC<QueenPlacement> getXccInitializer() {
+            return new ParallelXCC<>(new QueenItemProvider(SIZE));
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class BitsetSolverState extends QueenSolverState {
+        public XCC<QueenPlacement> getXccInitializer() {
+            return new BitsetXCC<>(new QueenItemProvider(SIZE));
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class DancingCellsSolverState extends QueenSolverState {
+        public XCC<QueenPlacement> getXccInitializer() {
+            return new DancingCellsXCC<>(new QueenItemProvider(SIZE));
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class IterativeSolverState extends QueenSolverState {
+        public XCC<QueenPlacement> getXccInitializer() {
+            return new IterativeXCC<>(new QueenItemProvider(SIZE));
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class OffHeapSolverState extends QueenSolverState {
+        public XCC<QueenPlacement> getXccInitializer() {
+            return new OffHeapXCC<>(new QueenItemProvider(SIZE));
+        }
+
+        @TearDown
+        public void tearDown() {
+            ((OffHeapXCC<?>) xcc).close();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class LinkedChooserState extends QueenSolverState {
+        @Param({ "mrv", "mrvLast", "random", "sharp", "scored" })
+        public String chooser;
+
+        public XCC<QueenPlacement> getXccInitializer() {
+            final LinkedXCC<QueenPlacement> xcc = new LinkedXCC<>(new QueenItemProvider(SIZE));
+            xcc.setItemChooser(createItemChooser(chooser));
+            return xcc;
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class ReferenceChooserState extends QueenSolverState {
+        @Param({ "mrv", "mrvLast", "random", "sharp", "scored" })
+        public String chooser;
+
+        public XCC<QueenPlacement> getXccInitializer() {
+            final ReferenceXCC<QueenPlacement> xcc = new ReferenceXCC<>(new QueenItemProvider(SIZE));
+            xcc.setItemChooser(createItemChooser(chooser));
+            return xcc;
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class LinkedBucketsState extends QueenSolverState {
+        public XCC<QueenPlacement> getXccInitializer() {
+            final LinkedXCC<QueenPlacement> xcc = new LinkedXCC<>(new QueenItemProvider(SIZE));
+            xcc.setItemBuckets(true);
+            return xcc;
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class ReferenceBucketsState extends QueenSolverState {
+        public XCC<QueenPlacement> getXccInitializer() {
+            final ReferenceXCC<QueenPlacement> xcc = new ReferenceXCC<>(new QueenItemProvider(SIZE));
+            xcc.setItemBuckets(true);
+            return xcc;
+        }
+    }
+
     // =================================================================== //
 
     @Benchmark
@@ -71,6 +191,61 @@ public class QueenSolverPerf {
         state.solve(sink);
     }
 
+    @Benchmark
+    public void testParallelSolver(ParallelSolverState state, Blackhole sink) {
+        state.solve(sink);
+    }
+
+    @Benchmark
+    public void testIterativeSolver(IterativeSolverState state, Blackhole sink) {
+        state.solve(sink);
+    }
+
+    @Benchmark
+    public void testDancingCellsSolver(DancingCellsSolverState state, Blackhole sink) {
+        state.solve(sink);
+    }
+
+    @Benchmark
+    public void testBitsetSolver(BitsetSolverState state, Blackhole sink) {
+        state.solve(sink);
+    }
+
+    @Benchmark
+    public void testOffHeapSolver(OffHeapSolverState state, Blackhole sink) {
+        state.solve(sink);
+    }
+
+    @Benchmark
+    public void testLinkedChooser(LinkedChooserState state, Blackhole sink) {
+        state.solve(sink);
+    }
+
+    @Benchmark
+    public void testReferenceChooser(ReferenceChooserState state, Blackhole sink) {
+        state.solve(sink);
+    }
+
+    @Benchmark
+    public void testLinkedBuckets(LinkedBucketsState state, Blackhole sink) {
+        state.solve(sink);
+    }
+
+    @Benchmark
+    public void testReferenceBuckets(ReferenceBucketsState state, Blackhole sink) {
+        state.solve(sink);
+    }
+
+    @Benchmark
+    public void testLinkedCounter(LinkedSolverState state, Blackhole sink) {
+        state.count(sink);
+    }
+
+    @Benchmark
+    public void testReferenceCounter(ReferenceSolverState state, Blackhole sink) {
+        state.count(sink);
+    }
+
     public static void main(String[] args) throws IOException {
         Main.main(args);
     }
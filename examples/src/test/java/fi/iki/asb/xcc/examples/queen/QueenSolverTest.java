@@ -1,7 +1,13 @@
 package fi.iki.asb.xcc.examples.queen;
 
+import fi.iki.asb.xcc.BitsetXCC;
+import fi.iki.asb.xcc.DancingCellsXCC;
+import fi.iki.asb.xcc.IterativeXCC;
 import fi.iki.asb.xcc.LinkedXCC;
+import fi.iki.asb.xcc.OffHeapXCC;
+import fi.iki.asb.xcc.ParallelXCC;
 import fi.iki.asb.xcc.ReferenceXCC;
+import fi.iki.asb.xcc.SymmetricXCC;
 import fi.iki.asb.xcc.XCC;
 import fi.iki.asb.xcc.examples.queen.option.QueenPlacement;
 import org.junit.Test;
@@ -48,6 +54,38 @@ public class QueenSolverTest {
 		solve(1);
 	}
 
+	@Test
+	public void givenParallelXcc_shouldFindSolutionToSize0Board() {
+		initSize0Test(ParallelXCC::new);
+		solve(1);
+	}
+
+	@Test
+	public void givenIterativeXcc_shouldFindSolutionToSize0Board() {
+		initSize0Test(IterativeXCC::new);
+		solve(1);
+	}
+
+	@Test
+	public void givenDancingCellsXcc_shouldFindSolutionToSize0Board() {
+		initSize0Test(DancingCellsXCC::new);
+		solve(1);
+	}
+
+	@Test
+	public void givenOffHeapXcc_shouldFindSolutionToSize0Board() {
+		try (OffHeapXCC<QueenPlacement> xcc = new OffHeapXCC<>(new QueenItemProvider(0))) {
+			initSize0Test(p -> xcc);
+			solve(1);
+		}
+	}
+
+	@Test
+	public void givenBitsetXcc_shouldFindSolutionToSize0Board() {
+		initSize0Test(BitsetXCC::new);
+		solve(1);
+	}
+
 	// =================================================================== //
 	// Find solution to size 1 board.
 
@@ -68,6 +106,38 @@ public class QueenSolverTest {
 		solve(1);
 	}
 
+	@Test
+	public void givenParallelXcc_shouldFindSolutionToSize1Board() {
+		initSize1Test(ParallelXCC::new);
+		solve(1);
+	}
+
+	@Test
+	public void givenIterativeXcc_shouldFindSolutionToSize1Board() {
+		initSize1Test(IterativeXCC::new);
+		solve(1);
+	}
+
+	@Test
+	public void givenDancingCellsXcc_shouldFindSolutionToSize1Board() {
+		initSize1Test(DancingCellsXCC::new);
+		solve(1);
+	}
+
+	@Test
+	public void givenOffHeapXcc_shouldFindSolutionToSize1Board() {
+		try (OffHeapXCC<QueenPlacement> xcc = new OffHeapXCC<>(new QueenItemProvider(1))) {
+			initSize1Test(p -> xcc);
+			solve(1);
+		}
+	}
+
+	@Test
+	public void givenBitsetXcc_shouldFindSolutionToSize1Board() {
+		initSize1Test(BitsetXCC::new);
+		solve(1);
+	}
+
 	// =================================================================== //
 	// Find both solutions to size 4 board.
 
@@ -88,6 +158,38 @@ public class QueenSolverTest {
 		solve(2);
 	}
 
+	@Test
+	public void givenParallelXcc_shouldFindAllSolutionsToSize4Board() {
+		initSize4Test(ParallelXCC::new);
+		solve(2);
+	}
+
+	@Test
+	public void givenIterativeXcc_shouldFindAllSolutionsToSize4Board() {
+		initSize4Test(IterativeXCC::new);
+		solve(2);
+	}
+
+	@Test
+	public void givenDancingCellsXcc_shouldFindAllSolutionsToSize4Board() {
+		initSize4Test(DancingCellsXCC::new);
+		solve(2);
+	}
+
+	@Test
+	public void givenOffHeapXcc_shouldFindAllSolutionsToSize4Board() {
+		try (OffHeapXCC<QueenPlacement> xcc = new OffHeapXCC<>(new QueenItemProvider(4))) {
+			initSize4Test(p -> xcc);
+			solve(2);
+		}
+	}
+
+	@Test
+	public void givenBitsetXcc_shouldFindAllSolutionsToSize4Board() {
+		initSize4Test(BitsetXCC::new);
+		solve(2);
+	}
+
 	// =================================================================== //
 	// Find all solutions to size 8 board.
 
@@ -107,4 +209,94 @@ public class QueenSolverTest {
 		initSize8Test(ReferenceXCC::new);
 		solve(92);
 	}
+
+	@Test
+	public void givenParallelXcc_shouldFindAllSolutionsToSize8Board() {
+		initSize8Test(ParallelXCC::new);
+		solve(92);
+	}
+
+	@Test
+	public void givenIterativeXcc_shouldFindAllSolutionsToSize8Board() {
+		initSize8Test(IterativeXCC::new);
+		solve(92);
+	}
+
+	@Test
+	public void givenDancingCellsXcc_shouldFindAllSolutionsToSize8Board() {
+		initSize8Test(DancingCellsXCC::new);
+		solve(92);
+	}
+
+	@Test
+	public void givenOffHeapXcc_shouldFindAllSolutionsToSize8Board() {
+		try (OffHeapXCC<QueenPlacement> xcc = new OffHeapXCC<>(new QueenItemProvider(8))) {
+			initSize8Test(p -> xcc);
+			solve(92);
+		}
+	}
+
+	@Test
+	public void givenBitsetXcc_shouldFindAllSolutionsToSize8Board() {
+		initSize8Test(BitsetXCC::new);
+		solve(92);
+	}
+
+	// =================================================================== //
+	// Count solutions to size 8 board without creating boards.
+
+	@Test
+	public void givenLinkedXcc_shouldCountSolutionsToSize8Board() {
+		initSize8Test(LinkedXCC::new);
+		assertEquals(92, solver.countSolutions());
+		assertEquals(0, solutionCount);
+	}
+
+	@Test
+	public void givenReferenceXcc_shouldCountSolutionsToSize8Board() {
+		initSize8Test(ReferenceXCC::new);
+		assertEquals(92, solver.countSolutions());
+		assertEquals(0, solutionCount);
+	}
+
+	@Test
+	public void givenIterativeXcc_shouldCountSolutionsToSize8Board() {
+		initSize8Test(IterativeXCC::new);
+		assertEquals(92, solver.countSolutions());
+		assertEquals(0, solutionCount);
+	}
+
+	@Test
+	public void givenDancingCellsXcc_shouldCountSolutionsToSize8Board() {
+		initSize8Test(DancingCellsXCC::new);
+		assertEquals(92, solver.countSolutions());
+		assertEquals(0, solutionCount);
+	}
+
+	@Test
+	public void givenOffHeapXcc_shouldCountSolutionsToSize8Board() {
+		try (OffHeapXCC<QueenPlacement> xcc = new OffHeapXCC<>(new QueenItemProvider(8))) {
+			initSize8Test(p -> xcc);
+			assertEquals(92, solver.countSolutions());
+			assertEquals(0, solutionCount);
+		}
+	}
+
+	@Test
+	public void givenBitsetXcc_shouldCountSolutionsToSize8Board() {
+		initSize8Test(BitsetXCC::new);
+		assertEquals(92, solver.countSolutions());
+		assertEquals(0, solutionCount);
+	}
+
+	// =================================================================== //
+	// Find only the unique solutions with symmetry breaking.
+
+	@Test
+	public void givenSymmetricXcc_shouldFindUniqueSolutionsToSize8Board() {
+		initSize8Test(p -> new SymmetricXCC<>(new LinkedXCC<>(p), p, QueenSolver.symmetries(8)));
+		// 12 unique solutions excluding rotations and reflections.
+		solve(12);
+		assertEquals(92, solver.countSolutions());
+	}
 }
@@ -0,0 +1,130 @@
+package fi.iki.asb.xcc.examples.sudoku;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+public class SudokuBatchSolverTest {
+
+    /**
+     * Puzzle from the <a href="https://en.wikipedia.org/wiki/Sudoku">Sudoku
+     * article at Wikipedia</a>.
+     */
+    private static final String WIKIPEDIA_PUZZLE =
+            "53..7....6..195....98....6.8...6...34..8.3..17...2...6.6....28....419..5....8..79";
+
+    private static final String WIKIPEDIA_SOLUTION =
+            "534678912672195348198342567859761423426853791713924856961537284287419635345286179";
+
+    /**
+     * Two ones on the first row.
+     */
+    private static final String UNSOLVABLE_PUZZLE = "11" + ".".repeat(79);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void givenManyPuzzles_shouldWriteSolutionsInInputOrder() {
+        final List<String> puzzles = new ArrayList<>();
+        for (int k = 0; k < 1000; k++) {
+            puzzles.add((k % 7 == 3) ? UNSOLVABLE_PUZZLE : WIKIPEDIA_PUZZLE);
+        }
+
+        final List<String> solutions = new ArrayList<>();
+        final SudokuBatchSolver.Report report;
+        try (SudokuBatchSolver solver = new SudokuBatchSolver(9, 4)) {
+            report = solver.solve(puzzles.stream(), solutions::add);
+        }
+
+        assertEquals(1000, solutions.size());
+        for (int k = 0; k < solutions.size(); k++) {
+            assertEquals((k % 7 == 3) ? "" : WIKIPEDIA_SOLUTION, solutions.get(k));
+        }
+        assertEquals(1000, report.puzzles());
+        assertEquals(1000 - 143, report.solved());
+        assertEquals(0, report.malformed());
+    }
+
+    @Test
+    public void givenMalformedPuzzles_shouldReportThemAndSolveTheRest() {
+        final List<String> solutions = new ArrayList<>();
+        final SudokuBatchSolver.Report report;
+        try (SudokuBatchSolver solver = new SudokuBatchSolver(4, 2)) {
+            report = solver.solve(
+                    Stream.of(
+                            "1.4." + "...." + "...." + ".1.2",
+                            "1.4." + "...." + "...." + ".1.",
+                            "1.4." + "...." + "...." + ".5.2",
+                            "1.4." + "...." + "...." + ".1.2"),
+                    solutions::add);
+        }
+
+        final String solution = "1243" + "3421" + "2314" + "4132";
+        assertEquals(List.of(solution, "", "", solution), solutions);
+        assertEquals(4, report.puzzles());
+        assertEquals(2, report.solved());
+        assertEquals(2, report.malformed());
+    }
+
+    @Test
+    public void givenFile_shouldWriteSolutionsToFile() throws IOException {
+        final Path puzzles = folder.getRoot().toPath().resolve("puzzles.txt");
+        final Path solutions = folder.getRoot().toPath().resolve("solutions.txt");
+        Files.write(puzzles, List.of(WIKIPEDIA_PUZZLE, "", UNSOLVABLE_PUZZLE));
+
+        try (SudokuBatchSolver solver = new SudokuBatchSolver(9, 2)) {
+            solver.solve(puzzles, solutions);
+        }
+
+        assertEquals(List.of(WIKIPEDIA_SOLUTION, ""), Files.readAllLines(solutions));
+    }
+
+    @Test
+    public void givenSize4Puzzle_shouldSolveIt() {
+        final List<String> solutions = new ArrayList<>();
+        try (SudokuBatchSolver solver = new SudokuBatchSolver(4, 1)) {
+            solver.solve(
+                    Stream.of("1.4." + "...." + "...." + ".1.2"),
+                    solutions::add);
+        }
+
+        // +-----+-----+
+        // | 1 2 | 4 3 |
+        // | 3 4 | 2 1 |
+        // +-----+-----+
+        // | 2 3 | 1 4 |
+        // | 4 1 | 3 2 |
+        // +-----+-----+
+        assertEquals(List.of("1243" + "3421" + "2314" + "4132"), solutions);
+    }
+
+    @Test
+    public void givenSeveralBatches_shouldReuseWorkersUntilClosed() {
+        final SudokuBatchSolver solver = new SudokuBatchSolver(9, 2);
+        for (int batch = 0; batch < 3; batch++) {
+            final List<String> solutions = new ArrayList<>();
+            solver.solve(Stream.of(WIKIPEDIA_PUZZLE, UNSOLVABLE_PUZZLE),
+                    solutions::add);
+            assertEquals(List.of(WIKIPEDIA_SOLUTION, ""), solutions);
+        }
+        solver.close();
+
+        try {
+            solver.solve(Stream.of(WIKIPEDIA_PUZZLE), s -> { });
+            fail();
+        } catch (IllegalStateException ex) {
+            // Ok.
+        }
+    }
+}
@@ -2,10 +2,23 @@ package fi.iki.asb.xcc.examples.sudoku;
 
 import static org.junit.Assert.assertEquals;
 
+import fi.iki.asb.xcc.BitsetXCC;
+import fi.iki.asb.xcc.CompiledProblem;
+import fi.iki.asb.xcc.ProblemSnapshot;
+import fi.iki.asb.xcc.ReferenceXCC;
+import fi.iki.asb.xcc.examples.sudoku.option.PlaceNumber;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Path;
 
 public class SudokuSolverTest {
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     private int solutionCount = 0;
 
     private SudokuGrid lastSolution = null;
@@ -98,6 +111,67 @@ public class SudokuSolverTest {
         assertEquals(6, lastSolution.getNumber(4, 2));
     }
 
+    @Test
+    public void givenBitsetXcc_findsAllSolutionsToSize4Sudoku() {
+        SudokuSolver solver = new SudokuSolver(4, BitsetXCC::new);
+        SudokuGrid grid = new SudokuGrid(4);
+        solver.solve(grid, this::solutionCounter);
+
+        assertEquals(288, solutionCount);
+    }
+
+    @Test
+    public void givenBitsetXcc_findsTheSolutionToSize9Sudoku() {
+        SudokuSolver solver = new SudokuSolver(9, BitsetXCC::new);
+        SudokuGrid grid = SudokuGrid.parse(
+                    "53  7    " +
+                        "6  195   " +
+                        " 98    6 " +
+                        "8   6   3" +
+                        "4  8 3  1" +
+                        "7   2   6" +
+                        " 6    28 " +
+                        "   419  5" +
+                        "    8  79");
+
+        solver.solve(grid, this::solutionCounter);
+
+        assertEquals(1, solutionCount);
+        assertEquals(4, lastSolution.getNumber(0, 2));
+        assertEquals(2, lastSolution.getNumber(1, 2));
+        assertEquals(9, lastSolution.getNumber(3, 2));
+        assertEquals(6, lastSolution.getNumber(4, 2));
+    }
+
+    @Test
+    public void givenSnapshot_findsTheSolutionToSize9Sudoku() throws IOException {
+        final CompiledProblem<PlaceNumber> problem = SudokuSolver.buildProblem(9);
+        final Path file = folder.getRoot().toPath().resolve("sudoku9");
+        ProblemSnapshot.save(problem, file, new PlaceNumberCodec());
+
+        SudokuSolver solver = new SudokuSolver(9,
+                ProblemSnapshot.load(file, new SudokuItemProvider(9), new PlaceNumberCodec()),
+                ReferenceXCC::new);
+        SudokuGrid grid = SudokuGrid.parse(
+                    "53  7    " +
+                        "6  195   " +
+                        " 98    6 " +
+                        "8   6   3" +
+                        "4  8 3  1" +
+                        "7   2   6" +
+                        " 6    28 " +
+                        "   419  5" +
+                        "    8  79");
+
+        solver.solve(grid, this::solutionCounter);
+
+        assertEquals(1, solutionCount);
+        assertEquals(4, lastSolution.getNumber(0, 2));
+        assertEquals(2, lastSolution.getNumber(1, 2));
+        assertEquals(9, lastSolution.getNumber(3, 2));
+        assertEquals(6, lastSolution.getNumber(4, 2));
+    }
+
     private void solutionCounter(SudokuGrid solution) {
         solutionCount++;
         lastSolution = solution;
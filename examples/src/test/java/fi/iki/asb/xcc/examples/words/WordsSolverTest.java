@@ -3,11 +3,15 @@ package fi.iki.asb.xcc.examples.words;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
+import fi.iki.asb.xcc.CompiledProblem;
 import fi.iki.asb.xcc.LinkedXCC;
+import fi.iki.asb.xcc.ProblemSnapshot;
 import fi.iki.asb.xcc.ReferenceXCC;
 import fi.iki.asb.xcc.XCC;
 import fi.iki.asb.xcc.examples.words.option.WordPlacement;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
@@ -19,6 +23,9 @@ import java.util.function.Function;
 
 public class WordsSolverTest {
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     // =================================================================== //
     // Trivial test with one result.
 
@@ -77,4 +84,29 @@ public class WordsSolverTest {
             throws IOException {
         runFinnish4x4Test(ReferenceXCC::new);
     }
+
+    @Test
+    public void givenSnapshot_shouldFindSolutionToTrivialExample()
+            throws IOException {
+        final CompiledProblem<WordPlacement> problem =
+                new CompiledProblem<>(new WordsItemProvider());
+        final WordsSolver original = new WordsSolver(3, 2, problem, ReferenceXCC::new);
+        original.addWord("abc");
+        original.addWord("def");
+        original.addWord("xxx");
+
+        original.addWord("ad");
+        original.addWord("be");
+        original.addWord("cf");
+        original.addWord("yy");
+
+        final Path file = folder.getRoot().toPath().resolve("words3x2");
+        ProblemSnapshot.save(problem, file, new WordPlacementCodec());
+
+        final WordsSolver solver = new WordsSolver(3, 2,
+                ProblemSnapshot.load(file, new WordsItemProvider(), new WordPlacementCodec()),
+                ReferenceXCC::new);
+        solver.solve();
+        assertEquals("abcdef", new String(solver.getSolution()));
+    }
 }
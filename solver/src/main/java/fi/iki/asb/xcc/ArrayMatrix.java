@@ -0,0 +1,487 @@
+package fi.iki.asb.xcc;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.stream.IntStream;
+
+/**
+ * Knuth's array based dancing links matrix with the operations that are
+ * needed to manipulate it during the search. The layout is the same as in
+ * {@link ReferenceXCC}, except that the item lengths are kept apart from
+ * the <code>TOP</code> array so that the arrays that never change during
+ * the search can be shared between copies of the matrix. Items, options
+ * and colors are referred to by their ids in the {@link CompiledProblem}
+ * the matrix was built from.
+ *
+ * <p>This class is <i>not thread safe</i>. Threads that search the same
+ * problem concurrently must each work on their own {@link #copy()}.</p>
+ */
+final class ArrayMatrix {
+
+    /**
+     * A secret color that is used as a marker for items that have been
+     * purified. Actual colors are positive and uncolored nodes have
+     * {@link CompiledProblem#NO_COLOR}.
+     */
+    private static final int PURIFIED = -1;
+
+    /**
+     * Item header index by item id. Primary items are placed before the
+     * secondary items. Shared between copies.
+     */
+    final int[] COLUMN;
+
+    /**
+     * Index is the index of node <code>x</code>, value is the index of the
+     * item header of the column the node is in. Spacers have a non-positive
+     * value. Shared between copies.
+     */
+    final int[] TOP;
+
+    /**
+     * The option id associated to each node in the matrix. Shared between
+     * copies.
+     */
+    final int[] OPTION;
+
+    /**
+     * Item header: value is the index of the item to the left. The index
+     * after the last item is the head of the secondary item list.
+     */
+    final int[] LLINK;
+
+    /**
+     * Item header: value is the index of the item to the right.
+     */
+    final int[] RLINK;
+
+    /**
+     * The number of options the item in index <code>i</code> is part of.
+     */
+    final int[] LEN;
+
+    /**
+     * Value is the index of the node above <code>x</code>. For spacers the
+     * value is the index of the first node of the previous option.
+     */
+    final int[] ULINK;
+
+    /**
+     * Value is the index of the node below <code>x</code>. For spacers the
+     * value is the index of the last node of the next option.
+     */
+    final int[] DLINK;
+
+    /**
+     * The color id associated to each node. PURIFIED marks nodes whose
+     * item has already been purified with the same color. Item headers
+     * hold the color of a purified item. Shared between copies if the
+     * problem has no colors, because then nothing is ever purified.
+     */
+    final int[] COLOR;
+
+    private final boolean colored;
+
+    /**
+     * Build the matrix of the problem in its current state.
+     */
+    ArrayMatrix(final CompiledProblem<?> problem) {
+        final int itemCount = problem.itemCount();
+        final int optionCount = problem.optionCount();
+        final int size = itemCount + 1 + problem.nodeCount() + optionCount + 1;
+
+        COLUMN = new int[itemCount];
+        LLINK = new int[itemCount + 2];
+        RLINK = new int[itemCount + 2];
+        LEN = new int[itemCount + 1];
+        TOP = new int[size];
+        ULINK = new int[size];
+        DLINK = new int[size];
+        COLOR = new int[size];
+        OPTION = new int[size];
+        colored = problem.colorCount() > 1;
+        fill(problem, COLUMN, LLINK, RLINK, LEN, TOP, ULINK, DLINK, COLOR,
+                OPTION);
+    }
+
+    /**
+     * Build the matrix of the problem in its current state and record the
+     * build as a flight recorder event.
+     *
+     * @param solver
+     *      Name of the solver the matrix is built for.
+     */
+    static ArrayMatrix build(
+            final String solver,
+            final CompiledProblem<?> problem) {
+        final long start = System.nanoTime();
+        final SearchRecorder.MatrixEvent event = SearchRecorder.matrixStarted();
+        final ArrayMatrix matrix = new ArrayMatrix(problem);
+        SearchRecorder.matrixBuilt(event, solver, problem, start);
+        return matrix;
+    }
+
+    /**
+     * Build the matrix of the problem into the given arrays, which must be
+     * zeroed and large enough for it. This is shared with {@link
+     * ReferenceXCC}, which keeps the item lengths in the <code>TOP</code>
+     * array and can pass the same array as both.
+     */
+    static void fill(
+            final CompiledProblem<?> problem,
+            final int[] COLUMN,
+            final int[] LLINK,
+            final int[] RLINK,
+            final int[] LEN,
+            final int[] TOP,
+            final int[] ULINK,
+            final int[] DLINK,
+            final int[] COLOR,
+            final int[] OPTION) {
+        final int itemCount = problem.itemCount();
+        final int primaryCount = problem.primaryItemCount();
+        final int optionCount = problem.optionCount();
+
+        // Item headers. Primary items are linked to the header in index 0
+        // and secondary items to the header after the last item.
+        int primary = 1;
+        int secondary = primaryCount + 1;
+        for (int item = 0; item < itemCount; item++) {
+            COLUMN[item] = problem.isPrimary(item) ? primary++ : secondary++;
+        }
+        linkItems(LLINK, RLINK, 0, 1, primaryCount);
+        linkItems(LLINK, RLINK, itemCount + 1, primaryCount + 1, itemCount);
+
+        for (int i = 1; i <= itemCount; i++) {
+            ULINK[i] = i;
+            DLINK[i] = i;
+        }
+
+        // First spacer.
+        int spacer = itemCount + 1;
+        TOP[spacer] = 0;
+        ULINK[spacer] = -1;
+
+        int x = spacer;
+        for (int option = 0; option < optionCount; option++) {
+            final int end = problem.optionEnd(option);
+            for (int node = problem.optionStart(option); node < end; node++) {
+                final int column = COLUMN[problem.nodeItem(node)];
+                x++;
+                TOP[x] = column;
+                OPTION[x] = option;
+                COLOR[x] = problem.nodeColor(node);
+
+                // Append the node to the bottom of the column.
+                ULINK[x] = ULINK[column];
+                DLINK[x] = column;
+                DLINK[ULINK[column]] = x;
+                ULINK[column] = x;
+                LEN[column]++;
+            }
+
+            // Link the previous spacer to the end of this option and the
+            // next spacer to the beginning of it.
+            DLINK[spacer] = x;
+            x++;
+            TOP[x] = -(option + 1);
+            ULINK[x] = spacer + 1;
+            spacer = x;
+        }
+        DLINK[spacer] = -1;
+    }
+
+    /**
+     * Copy constructor. The arrays that are modified during the search are
+     * cloned and the rest are shared.
+     */
+    private ArrayMatrix(final ArrayMatrix original) {
+        COLUMN = original.COLUMN;
+        TOP = original.TOP;
+        OPTION = original.OPTION;
+        LLINK = original.LLINK.clone();
+        RLINK = original.RLINK.clone();
+        LEN = original.LEN.clone();
+        ULINK = original.ULINK.clone();
+        DLINK = original.DLINK.clone();
+        colored = original.colored;
+        COLOR = colored ? original.COLOR.clone() : original.COLOR;
+    }
+
+    /**
+     * Create a copy of the matrix in its current state. The copy can be
+     * searched independently of this matrix.
+     */
+    ArrayMatrix copy() {
+        return new ArrayMatrix(this);
+    }
+
+    /**
+     * Link items <code>first..last</code> into a circular list with the
+     * given head.
+     */
+    private static void linkItems(
+            final int[] LLINK,
+            final int[] RLINK,
+            final int head,
+            final int first,
+            final int last) {
+        int previous = head;
+        for (int i = first; i <= last; i++) {
+            LLINK[i] = previous;
+            RLINK[previous] = i;
+            previous = i;
+        }
+        LLINK[head] = previous;
+        RLINK[previous] = head;
+    }
+
+    // =================================================================== //
+    // Queries.
+
+    /**
+     * Encode the state of the current subproblem: the active primary
+     * items, a separator and the active secondary items with their colors.
+     * Subproblems of the same matrix with equal states have the same
+     * solutions.
+     */
+    int[] state() {
+        final int head = COLUMN.length + 1;
+        int size = 1;
+        for (int i = RLINK[0]; i != 0; i = RLINK[i]) {
+            size++;
+        }
+        for (int i = RLINK[head]; i != head; i = RLINK[i]) {
+            size += 2;
+        }
+
+        final int[] state = new int[size];
+        int k = 0;
+        for (int i = RLINK[0]; i != 0; i = RLINK[i]) {
+            state[k++] = i;
+        }
+        state[k++] = 0;
+        for (int i = RLINK[head]; i != head; i = RLINK[i]) {
+            state[k++] = i;
+            state[k++] = COLOR[i];
+        }
+        return state;
+    }
+
+    /**
+     * Are all primary items covered?
+     */
+    boolean isSolved() {
+        return RLINK[0] == 0;
+    }
+
+    /**
+     * Get the distinct item header indexes of the items covered by the
+     * given options, for example the pre-selected options of a search.
+     */
+    <O> int[] columnsOf(
+            final CompiledProblem<O> problem,
+            final Collection<O> options) {
+        final BitSet seen = new BitSet(COLUMN.length);
+        return options.stream()
+                .map(problem::itemsOf)
+                .flatMapToInt(IntStream::of)
+                .filter(item -> !seen.get(item))
+                .peek(seen::set)
+                .map(item -> COLUMN[item])
+                .toArray();
+    }
+
+    /**
+     * Get the distinct item header indexes of the items covered by the
+     * options with the given ids. The items are read from the node tables
+     * of the problem, so no item is looked up by hash.
+     *
+     * @throws IndexOutOfBoundsException
+     *      If some id is not an option of the problem.
+     */
+    int[] columnsOf(final CompiledProblem<?> problem, final int[] options) {
+        int nodes = 0;
+        for (int o : options) {
+            nodes += problem.optionEnd(o) - problem.optionStart(o);
+        }
+
+        final BitSet seen = new BitSet(COLUMN.length);
+        final int[] columns = new int[nodes];
+        int count = 0;
+        for (int o : options) {
+            for (int n = problem.optionStart(o); n < problem.optionEnd(o); n++) {
+                final int item = problem.nodeItem(n);
+                if (!seen.get(item)) {
+                    seen.set(item);
+                    columns[count++] = COLUMN[item];
+                }
+            }
+        }
+        return Arrays.copyOf(columns, count);
+    }
+
+    /**
+     * Find column using Minimum-Remaining-Value (MRV) heuristic. The first
+     * of the columns with the fewest remaining options is chosen. This
+     * method must not be called when the matrix is solved.
+     */
+    int findColumn() {
+        int smallest = RLINK[0];
+        for (int i = RLINK[smallest]; i != 0; i = RLINK[i]) {
+            if (LEN[i] < LEN[smallest]) {
+                smallest = i;
+            }
+        }
+        return smallest;
+    }
+
+    // =================================================================== //
+    // Operations for manipulating the matrix during search.
+
+    /**
+     * Commit to the other items of the option node <code>x</code> is in
+     * (step C5). The item of <code>x</code> itself must have been covered
+     * already.
+     */
+    void commitOption(final int x) {
+        int p = x + 1;
+        while (p != x) {
+            final int j = TOP[p];
+            if (j <= 0) {
+                p = ULINK[p];
+            } else {
+                commit(p, j);
+                p++;
+            }
+        }
+    }
+
+    /**
+     * Reverse of {@link #commitOption(int)} (step C6).
+     */
+    void uncommitOption(final int x) {
+        int p = x - 1;
+        while (p != x) {
+            final int j = TOP[p];
+            if (j <= 0) {
+                p = DLINK[p];
+            } else {
+                uncommit(p, j);
+                p--;
+            }
+        }
+    }
+
+    void commit(final int p, final int j) {
+        final int c = COLOR[p];
+        if (c == 0) {
+            cover(j);
+        } else if (c > 0) {
+            purify(p);
+        }
+    }
+
+    void uncommit(final int p, final int j) {
+        final int c = COLOR[p];
+        if (c == 0) {
+            uncover(j);
+        } else if (c > 0) {
+            unpurify(p);
+        }
+    }
+
+    void cover(final int i) {
+        for (int p = DLINK[i]; p != i; p = DLINK[p]) {
+            hide(p);
+        }
+
+        final int l = LLINK[i];
+        final int r = RLINK[i];
+        RLINK[l] = r;
+        LLINK[r] = l;
+    }
+
+    void uncover(final int i) {
+        final int l = LLINK[i];
+        final int r = RLINK[i];
+        RLINK[l] = i;
+        LLINK[r] = i;
+
+        for (int p = ULINK[i]; p != i; p = ULINK[p]) {
+            unhide(p);
+        }
+    }
+
+    private void purify(final int p) {
+        final int c = COLOR[p];
+        final int i = TOP[p];
+
+        // Save color.
+        COLOR[i] = c;
+
+        for (int q = DLINK[i]; q != i; q = DLINK[q]) {
+            if (COLOR[q] == c) {
+                COLOR[q] = PURIFIED;
+            } else {
+                hide(q);
+            }
+        }
+    }
+
+    private void unpurify(final int p) {
+        final int i = TOP[p];
+        final int c = COLOR[i];
+
+        for (int q = ULINK[i]; q != i; q = ULINK[q]) {
+            if (COLOR[q] == PURIFIED) {
+                COLOR[q] = c;
+            } else {
+                unhide(q);
+            }
+        }
+
+        COLOR[i] = 0;
+    }
+
+    private void hide(final int p) {
+        int q = p + 1;
+        while (q != p) {
+            final int x = TOP[q];
+            final int u = ULINK[q];
+
+            if (x <= 0) {
+                q = u;
+            } else {
+                if (COLOR[q] != PURIFIED) {
+                    final int d = DLINK[q];
+                    DLINK[u] = d;
+                    ULINK[d] = u;
+                    LEN[x]--;
+                }
+                q++;
+            }
+        }
+    }
+
+    private void unhide(final int p) {
+        int q = p - 1;
+        while (q != p) {
+            final int x = TOP[q];
+            final int d = DLINK[q];
+
+            if (x <= 0) {
+                q = d;
+            } else {
+                if (COLOR[q] != PURIFIED) {
+                    final int u = ULINK[q];
+                    DLINK[u] = q;
+                    ULINK[d] = q;
+                    LEN[x]++;
+                }
+                q--;
+            }
+        }
+    }
+}
@@ -0,0 +1,416 @@
+package fi.iki.asb.xcc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * A generic exact cover with color solver for small, dense problems, such
+ * as sudoku, N queens and pentomino puzzles. The state of the search is a
+ * bitset of the options that are still available, and choosing an option
+ * removes the options that conflict with it with one word-level AND-NOT
+ * over a precomputed conflict mask. Backtracking does not undo anything:
+ * each level of the search has its own copy of the bitset.
+ *
+ * <p>The conflict masks take <code>options * options / 8</code> bytes, so
+ * this solver is only suitable for problems with up to a few thousand
+ * options. Within that limit the loops over the words are short and
+ * branch free, which the JIT compiler can unroll and vectorize.</p>
+ *
+ * <p>The items are chosen with the same heuristic and the options are
+ * tried in the same order as in {@link ReferenceXCC}, so the solutions are
+ * found in the same order.</p>
+ *
+ * <p>This class is <i>not thread safe</i>.</p>
+ *
+ * @param <O>
+ *     The type associated to options. For example, in a sudoku solver this
+ *     might be a class that represents "placing a number in a given row,
+ *     column location".
+ */
+public final class BitsetXCC<O> implements XCC<O> {
+
+    /**
+     * The problem this solver has been initialized with.
+     */
+    private final CompiledProblem<O> problem;
+
+    /**
+     * Number of words in a bitset of options.
+     */
+    private int optionWords;
+
+    /**
+     * Number of words in a bitset of items.
+     */
+    private int itemWords;
+
+    /**
+     * The options of each item. The bitset of item <code>i</code> starts
+     * from word <code>i * optionWords</code>.
+     */
+    private long[] itemOptions;
+
+    /**
+     * The options that conflict with each option, including the option
+     * itself. The bitset of option <code>o</code> starts from word
+     * <code>o * optionWords</code>.
+     */
+    private long[] conflicts;
+
+    /**
+     * The primary items of each option. The bitset of option
+     * <code>o</code> starts from word <code>o * itemWords</code>.
+     */
+    private long[] optionItems;
+
+    /**
+     * The options that are still available on each level of the search.
+     */
+    private long[] alive;
+
+    /**
+     * The primary items that are not covered yet on each level of the
+     * search.
+     */
+    private long[] uncovered;
+
+    // =================================================================== //
+
+    /**
+     * Has the data structure been initialized.
+     */
+    private boolean initialized = false;
+
+    /**
+     * Is the matrix dirty? This is set to <code>true</code> when the
+     * algorithm starts and restored back to <code>false</code> when it
+     * finishes successfully. If the execution is interrupted by an
+     * exception, the flag is left "dirty" and subsequent executions
+     * are prevented.
+     */
+    private boolean dirty = false;
+
+    /**
+     * Current solution. Cleared when algorithm finishes.
+     */
+    private List<O> solution;
+
+    /**
+     * Current solution consumer. Cleared when algorithm finishes.
+     */
+    private Consumer<List<O>> solutionConsumer;
+
+    /**
+     * Current emergency brake. Cleared when algorithm finishes.
+     */
+    private BooleanSupplier emergencyBrake;
+
+    private XCCTrace trace = null;
+
+    // =================================================================== //
+
+    /**
+     * @param itemProvider
+     *      Mapper that creates the items that are covered by each option
+     *      that is added to the matrix.
+     */
+    public BitsetXCC(final ItemProvider<O> itemProvider) {
+        this(new CompiledProblem<>(itemProvider));
+    }
+
+    /**
+     * @param problem
+     *      The problem to solve. Options added to this instance are added
+     *      to the problem.
+     */
+    public BitsetXCC(final CompiledProblem<O> problem) {
+        this.problem = Objects.requireNonNull(problem);
+    }
+
+    @Override
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    @Override
+    public void setTrace(XCCTrace trace) {
+        this.trace = trace;
+    }
+
+    // =================================================================== //
+    // Matrix initialization operations.
+
+    @Override
+    public void addOption(final O option) {
+        ensureOpen();
+        problem.addOption(option);
+    }
+
+    private void initBitsets() {
+        initialized = true;
+        final long start = System.nanoTime();
+        final SearchRecorder.MatrixEvent event = SearchRecorder.matrixStarted();
+
+        final int itemCount = problem.itemCount();
+        final int optionCount = problem.optionCount();
+        optionWords = (optionCount + 63) >>> 6;
+        itemWords = (itemCount + 63) >>> 6;
+
+        itemOptions = new long[itemCount * optionWords];
+        optionItems = new long[optionCount * itemWords];
+        for (int o = 0; o < optionCount; o++) {
+            for (int n = problem.optionStart(o); n < problem.optionEnd(o); n++) {
+                final int i = problem.nodeItem(n);
+                setBit(itemOptions, i * optionWords, o);
+                if (problem.isPrimary(i)) {
+                    setBit(optionItems, o * itemWords, i);
+                }
+            }
+        }
+
+        // The options that have each colored secondary item with each
+        // color. Those options can share the item with each other.
+        final Map<Long, Integer> colorSlots = new HashMap<>();
+        final int[] nodeSlots = new int[problem.nodeCount()];
+        for (int n = 0; n < problem.nodeCount(); n++) {
+            if (problem.nodeColor(n) != CompiledProblem.NO_COLOR) {
+                final long key = ((long) problem.nodeItem(n) << 32)
+                        | problem.nodeColor(n);
+                nodeSlots[n] = colorSlots.computeIfAbsent(
+                        key, k -> colorSlots.size());
+            }
+        }
+        final long[] colorOptions = new long[colorSlots.size() * optionWords];
+        for (int o = 0; o < optionCount; o++) {
+            for (int n = problem.optionStart(o); n < problem.optionEnd(o); n++) {
+                if (problem.nodeColor(n) != CompiledProblem.NO_COLOR) {
+                    setBit(colorOptions, nodeSlots[n] * optionWords, o);
+                }
+            }
+        }
+
+        conflicts = new long[optionCount * optionWords];
+        for (int o = 0; o < optionCount; o++) {
+            final int base = o * optionWords;
+            for (int n = problem.optionStart(o); n < problem.optionEnd(o); n++) {
+                final int items = problem.nodeItem(n) * optionWords;
+                if (problem.nodeColor(n) == CompiledProblem.NO_COLOR) {
+                    for (int w = 0; w < optionWords; w++) {
+                        conflicts[base + w] |= itemOptions[items + w];
+                    }
+                } else {
+                    final int colors = nodeSlots[n] * optionWords;
+                    for (int w = 0; w < optionWords; w++) {
+                        conflicts[base + w] |= itemOptions[items + w]
+                                & ~colorOptions[colors + w];
+                    }
+                }
+            }
+            setBit(conflicts, base, o);
+        }
+
+        // Every level covers at least one primary item.
+        final int levels = problem.primaryItemCount() + 1;
+        alive = new long[levels * optionWords];
+        uncovered = new long[levels * itemWords];
+
+        SearchRecorder.matrixBuilt(event, "BitsetXCC", problem, start);
+    }
+
+    // =================================================================== //
+    // The XCC solution.
+
+    @Override
+    public void search(
+            final Consumer<List<O>> solutionConsumer,
+            final List<O> preSelectedOptions,
+            final BooleanSupplier emergencyBrake) {
+        Objects.requireNonNull(preSelectedOptions);
+        Objects.requireNonNull(solutionConsumer);
+        Objects.requireNonNull(emergencyBrake);
+
+        ensureClean();
+        dirty = true;
+
+        if (!initialized) {
+            initBitsets();
+        }
+
+        // Every option is available and every primary item is uncovered,
+        // except for those covered by the pre-selected options.
+        Arrays.fill(alive, 0, optionWords, 0L);
+        for (int o = 0; o < problem.optionCount(); o++) {
+            setBit(alive, 0, o);
+        }
+        Arrays.fill(uncovered, 0, itemWords, 0L);
+        for (int i = 0; i < problem.itemCount(); i++) {
+            if (problem.isPrimary(i)) {
+                setBit(uncovered, 0, i);
+            }
+        }
+        for (O option : preSelectedOptions) {
+            for (int i : problem.itemsOf(option)) {
+                clearBit(uncovered, 0, i);
+                for (int w = 0; w < optionWords; w++) {
+                    alive[w] &= ~itemOptions[i * optionWords + w];
+                }
+            }
+        }
+
+        try {
+            this.solution = new ArrayList<>(preSelectedOptions);
+            this.solutionConsumer = solutionConsumer;
+            this.emergencyBrake = emergencyBrake;
+
+            if (trace != null) {
+                trace.onSearchStarted();
+            }
+
+            recursiveSearch(0);
+        } finally {
+            this.solution = null;
+            this.solutionConsumer = null;
+            this.emergencyBrake = null;
+        }
+
+        dirty = false;
+    }
+
+    private void recursiveSearch(final int level) {
+        if (emergencyBrake.getAsBoolean()) {
+            return;
+        }
+
+        final int aliveBase = level * optionWords;
+        final int uncoveredBase = level * itemWords;
+
+        // Find the uncovered primary item with the fewest available
+        // options.
+        int best = -1;
+        int bestCount = Integer.MAX_VALUE;
+        for (int w = 0; w < itemWords; w++) {
+            long word = uncovered[uncoveredBase + w];
+            while (word != 0) {
+                final int i = (w << 6) + Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+
+                final int count = countOptions(aliveBase, i, bestCount);
+                if (count < bestCount) {
+                    best = i;
+                    bestCount = count;
+                }
+            }
+        }
+
+        // If there are no uncovered items, the solution is complete.
+        if (best < 0) {
+            solutionConsumer.accept(Collections.unmodifiableList(
+                    solution));
+            return;
+        }
+
+        if (trace != null) {
+            trace.onRecursionEntered(bestCount);
+        }
+
+        final int nextAlive = aliveBase + optionWords;
+        final int nextUncovered = uncoveredBase + itemWords;
+        final int items = best * optionWords;
+        for (int w = 0; w < optionWords; w++) {
+            // The options of the item that are still available. The word
+            // is read before each option, because the deeper levels do not
+            // touch this level.
+            long word = alive[aliveBase + w] & itemOptions[items + w];
+            while (word != 0) {
+                final int o = (w << 6) + Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+
+                if (trace != null) {
+                    trace.onItemSelected();
+                }
+
+                final int conflictBase = o * optionWords;
+                for (int v = 0; v < optionWords; v++) {
+                    alive[nextAlive + v] = alive[aliveBase + v]
+                            & ~conflicts[conflictBase + v];
+                }
+                final int optionBase = o * itemWords;
+                for (int v = 0; v < itemWords; v++) {
+                    uncovered[nextUncovered + v] = uncovered[uncoveredBase + v]
+                            & ~optionItems[optionBase + v];
+                }
+
+                solution.add(problem.option(o));
+                recursiveSearch(level + 1);
+                solution.removeLast();
+            }
+        }
+
+        if (trace != null) {
+            trace.onRecursionEnded();
+        }
+    }
+
+    /**
+     * Count the available options of an item, giving up when the count
+     * reaches the given limit.
+     */
+    private int countOptions(final int aliveBase, final int i, final int limit) {
+        final int items = i * optionWords;
+        int count = 0;
+        for (int w = 0; w < optionWords && count < limit; w++) {
+            count += Long.bitCount(alive[aliveBase + w] & itemOptions[items + w]);
+        }
+        return count;
+    }
+
+    // =================================================================== //
+    // Streaming solutions.
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>The stream searches its own matrix built from the problem, so it
+     * does not make this instance dirty and several streams can be used at
+     * the same time. The solutions are not ordered in parallel streams.</p>
+     */
+    @Override
+    public Stream<List<O>> solutions(final List<O> preSelectedOptions) {
+        Objects.requireNonNull(preSelectedOptions);
+        ensureClean();
+        return IterativeSearch.stream(
+                problem, ArrayMatrix.build("BitsetXCC", problem),
+                preSelectedOptions);
+    }
+
+    // =================================================================== //
+    // Auxiliary methods.
+
+    private static void setBit(final long[] bits, final int base, final int bit) {
+        bits[base + (bit >>> 6)] |= 1L << bit;
+    }
+
+    private static void clearBit(final long[] bits, final int base, final int bit) {
+        bits[base + (bit >>> 6)] &= ~(1L << bit);
+    }
+
+    private void ensureClean() {
+        if (dirty) {
+            throw new IllegalStateException("matrix is dirty");
+        }
+    }
+
+    private void ensureOpen() {
+        if (initialized) {
+            throw new IllegalStateException("matrix is locked");
+        }
+    }
+}
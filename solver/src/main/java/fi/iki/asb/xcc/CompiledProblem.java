@@ -0,0 +1,728 @@
+package fi.iki.asb.xcc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * An exact cover with color problem compiled into dense integer ids. Items,
+ * options and colors are interned when they are added, so their
+ * <code>equals</code> and <code>hashCode</code> methods are not needed
+ * after that. The items of each option are stored in packed int arrays
+ * from which the matrix of any array based solver can be built in linear
+ * time.
+ *
+ * <p>Item ids and option ids are assigned from zero in the order the items
+ * and options are added. Color id zero represents an uncolored item and
+ * the actual colors are numbered from one.</p>
+ *
+ * <p>This class is <i>not thread safe</i>.</p>
+ *
+ * @param <O>
+ *     The type associated to options.
+ */
+public final class CompiledProblem<O> {
+
+    /**
+     * The color id of uncolored items.
+     */
+    public static final int NO_COLOR = 0;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * Mapper that creates items for options. Null if the problem is only
+     * built with the low-level methods.
+     */
+    private final ItemProvider<O> itemProvider;
+
+    /**
+     * Items by item id.
+     */
+    private final List<Object> items = new ArrayList<>();
+
+    /**
+     * Item ids by item.
+     */
+    private final Map<Object, Integer> itemIds = new HashMap<>();
+
+    /**
+     * Ids of the secondary items.
+     */
+    private final BitSet secondaryItems = new BitSet();
+
+    private int secondaryItemCount = 0;
+
+    /**
+     * Colors by color id. Index zero is the uncolored null.
+     */
+    private final List<Object> colors = new ArrayList<>();
+
+    /**
+     * Color ids by color.
+     */
+    private final Map<Object, Integer> colorIds = new HashMap<>();
+
+    /**
+     * Options by option id.
+     */
+    private final List<O> options = new ArrayList<>();
+
+    /**
+     * Option ids by option. Equal options map to the first of them. Built
+     * when an option is first looked up and kept up to date after that.
+     */
+    private volatile Map<O, Integer> optionIds;
+
+    /**
+     * The nodes of option <code>o</code> are in indexes
+     * <code>optionStart[o]</code> (inclusive) to
+     * <code>optionStart[o + 1]</code> (exclusive) of the node arrays.
+     */
+    private int[] optionStart = new int[INITIAL_CAPACITY + 1];
+
+    /**
+     * Item id of each node.
+     */
+    private int[] nodeItems = new int[INITIAL_CAPACITY];
+
+    /**
+     * Color id of each node.
+     */
+    private int[] nodeColors = new int[INITIAL_CAPACITY];
+
+    private int nodeCount = 0;
+
+    /**
+     * The stamp of the option being added, by item id. Used for finding
+     * items that appear twice in the same option.
+     */
+    private int[] itemStamps = new int[INITIAL_CAPACITY];
+
+    private int stamp = 0;
+
+    /**
+     * The node in which each item first appears, if the problem has been
+     * loaded from a {@link ProblemSnapshot} and the item objects have not
+     * been restored yet. Null otherwise.
+     */
+    private int[] itemOrigins;
+
+    /**
+     * The node in which each color first appears, if the problem has been
+     * loaded from a {@link ProblemSnapshot} and the color objects have not
+     * been restored yet. Null otherwise.
+     */
+    private int[] colorOrigins;
+
+    /**
+     * Have all the options been added with {@link #addOption(Object)} and
+     * has the item provider returned a list for each of them. Only then
+     * can the items of a node be found again by its position in the items
+     * of its option.
+     */
+    private boolean itemsByPosition = true;
+
+    /**
+     * Time when the first option was added, for the flight recorder. Zero
+     * if no options have been added.
+     */
+    private long firstOptionTime = 0;
+
+    /**
+     * Has the problem been frozen by a {@link FrozenMatrix}.
+     */
+    private boolean frozen = false;
+
+    // =================================================================== //
+
+    /**
+     * Create a problem that can only be built with the low-level methods
+     * that take item ids.
+     */
+    public CompiledProblem() {
+        this(null);
+    }
+
+    /**
+     * Create a problem.
+     *
+     * @param itemProvider
+     *      Mapper that creates the items that are covered by each option
+     *      that is added to the problem.
+     */
+    public CompiledProblem(final ItemProvider<O> itemProvider) {
+        this.itemProvider = itemProvider;
+        this.colors.add(null);
+    }
+
+    /**
+     * Create a problem from the arrays of a snapshot. The item and color
+     * objects are restored with the item provider when they are first
+     * needed.
+     */
+    CompiledProblem(
+            final ItemProvider<O> itemProvider,
+            final BitSet secondaryItems,
+            final int[] itemOrigins,
+            final int[] colorOrigins,
+            final List<O> options,
+            final int[] optionStart,
+            final int[] nodeItems,
+            final int[] nodeColors) {
+        this.itemProvider = itemProvider;
+        this.secondaryItems.or(secondaryItems);
+        this.secondaryItemCount = secondaryItems.cardinality();
+        this.itemOrigins = itemOrigins;
+        this.colorOrigins = colorOrigins;
+        this.options.addAll(options);
+        this.optionStart = optionStart;
+        this.nodeItems = nodeItems;
+        this.nodeColors = nodeColors;
+        this.nodeCount = nodeItems.length;
+
+        this.items.addAll(Collections.nCopies(itemOrigins.length, null));
+        this.colors.add(null);
+        this.colors.addAll(Collections.nCopies(colorOrigins.length, null));
+    }
+
+    // =================================================================== //
+    // Building the problem.
+
+    /**
+     * Add an option. The items covered by the option are generated using
+     * the item provider. Objects that are instances of {@link
+     * SecondaryItem} are treated as secondary items.
+     *
+     * @return The option id.
+     *
+     * @throws IllegalArgumentException
+     *      If the option covers the same item twice, or an item is both
+     *      primary and secondary. The items and colors that were interned
+     *      for the option are removed again.
+     *
+     * @throws IllegalStateException
+     *      If the problem has no item provider or it is frozen.
+     */
+    public int addOption(final O option) {
+        ensureNotFrozen();
+        final Collection<Object> optionItems = requireItemProvider()
+                .from(option);
+
+        restoreItems();
+        ensureNodeCapacity(nodeCount + optionItems.size());
+        final boolean ordered = optionItems instanceof List;
+        final int itemMark = items.size();
+        final int colorMark = colors.size();
+        final int stamp = nextStamp();
+        int node = nodeCount;
+        try {
+            for (Object item : optionItems) {
+                nodeItems[node] = stampItem(addItem(item), stamp);
+                nodeColors[node] = (item instanceof SecondaryItem s)
+                        ? addColor(s.getColor())
+                        : NO_COLOR;
+                node++;
+            }
+        } catch (RuntimeException e) {
+            removeItems(itemMark, colorMark);
+            throw e;
+        }
+
+        itemsByPosition &= ordered;
+        return endOption(option, node);
+    }
+
+    /**
+     * Add an uncolored option with the given items. The option is
+     * reported as <code>null</code> in solutions.
+     *
+     * @param items
+     *      Ids of the items covered by the option. The ids must be unique.
+     *
+     * @return The option id.
+     */
+    public int addOption(final int... items) {
+        return addOption(null, items, null);
+    }
+
+    /**
+     * Add an option with the given items.
+     *
+     * @param option
+     *      The object that represents the option in solutions.
+     *
+     * @param items
+     *      Ids of the items covered by the option. The ids must be unique.
+     *
+     * @param colors
+     *      Color ids of the items, or null if all items are uncolored.
+     *      Only secondary items can have a color.
+     *
+     * @return The option id.
+     *
+     * @throws IllegalArgumentException
+     *      If an item appears twice or a primary item has a color.
+     */
+    public int addOption(
+            final O option,
+            final int[] items,
+            final int[] colors) {
+        ensureNotFrozen();
+        if (colors != null && colors.length != items.length) {
+            throw new IllegalArgumentException("expected ["
+                    + items.length + "] colors, got [" + colors.length + "]");
+        }
+
+        ensureNodeCapacity(nodeCount + items.length);
+        final int stamp = nextStamp();
+        int node = nodeCount;
+        for (int k = 0; k < items.length; k++) {
+            final int item = items[k];
+            final int color = (colors != null) ? colors[k] : NO_COLOR;
+            Objects.checkIndex(item, itemCount());
+            Objects.checkIndex(color, colorCount());
+            if (color != NO_COLOR && isPrimary(item)) {
+                throw new IllegalArgumentException("primary item ["
+                        + item(item) + "] cannot have a color");
+            }
+
+            nodeItems[node] = stampItem(item, stamp);
+            nodeColors[node] = color;
+            node++;
+        }
+
+        itemsByPosition = false;
+        return endOption(option, node);
+    }
+
+    /**
+     * Intern an item. Objects that are instances of {@link SecondaryItem}
+     * are treated as secondary items.
+     *
+     * @return The item id.
+     */
+    public int addItem(final Object item) {
+        return addItem(item, item instanceof SecondaryItem);
+    }
+
+    /**
+     * Intern a primary item.
+     *
+     * @return The item id.
+     *
+     * @throws IllegalArgumentException If the item is a secondary item.
+     */
+    public int addPrimaryItem(final Object item) {
+        return addItem(item, false);
+    }
+
+    /**
+     * Intern a secondary item.
+     *
+     * @return The item id.
+     *
+     * @throws IllegalArgumentException If the item is a primary item.
+     */
+    public int addSecondaryItem(final Object item) {
+        return addItem(item, true);
+    }
+
+    /**
+     * Intern a color.
+     *
+     * @return The color id, or {@link #NO_COLOR} if the color is null.
+     */
+    public int addColor(final Object color) {
+        if (color == null) {
+            return NO_COLOR;
+        }
+
+        restoreItems();
+        ensureNotFrozen();
+
+        Integer id = colorIds.get(color);
+        if (id == null) {
+            id = colors.size();
+            colors.add(color);
+            colorIds.put(color, id);
+        }
+        return id;
+    }
+
+    private int addItem(final Object item, final boolean secondary) {
+        restoreItems();
+        ensureNotFrozen();
+        Integer id = itemIds.get(item);
+        if (id == null) {
+            id = items.size();
+            items.add(item);
+            itemIds.put(item, id);
+            if (secondary) {
+                secondaryItems.set(id);
+                secondaryItemCount++;
+            }
+        } else if (secondaryItems.get(id) != secondary) {
+            throw new IllegalArgumentException("item [" + item
+                    + "] is already a " + (secondary ? "primary" : "secondary")
+                    + " item");
+        }
+        return id;
+    }
+
+    /**
+     * Remove the items and colors that have been interned after the given
+     * counts were taken.
+     */
+    private void removeItems(final int itemMark, final int colorMark) {
+        while (items.size() > itemMark) {
+            final int id = items.size() - 1;
+            itemIds.remove(items.remove(id));
+            if (secondaryItems.get(id)) {
+                secondaryItems.clear(id);
+                secondaryItemCount--;
+            }
+        }
+        while (colors.size() > colorMark) {
+            colorIds.remove(colors.remove(colors.size() - 1));
+        }
+    }
+
+    /**
+     * Start a new stamp for finding duplicate items in an option.
+     */
+    private int nextStamp() {
+        if (++stamp == Integer.MAX_VALUE) {
+            Arrays.fill(itemStamps, 0);
+            stamp = 1;
+        }
+        return stamp;
+    }
+
+    /**
+     * Mark the item as seen in the option with the given stamp.
+     *
+     * @return The item id.
+     *
+     * @throws IllegalArgumentException
+     *      If the item has already been seen in the option.
+     */
+    private int stampItem(final int item, final int stamp) {
+        if (item >= itemStamps.length) {
+            itemStamps = Arrays.copyOf(itemStamps,
+                    Math.max(itemCount(), itemStamps.length * 2));
+        }
+        if (itemStamps[item] == stamp) {
+            throw new IllegalArgumentException("item ["
+                    + item(item) + "] appears twice in the option");
+        }
+        itemStamps[item] = stamp;
+        return item;
+    }
+
+    /**
+     * Finish adding an option whose nodes have been written to the node
+     * arrays up to the given index. The node arrays are not committed
+     * before this, so an option that fails halfway leaves no nodes behind.
+     */
+    private int endOption(final O option, final int end) {
+        final int id = options.size();
+        if (firstOptionTime == 0) {
+            firstOptionTime = System.nanoTime();
+        }
+        if (id + 2 > optionStart.length) {
+            optionStart = Arrays.copyOf(optionStart, optionStart.length * 2);
+        }
+        options.add(option);
+        optionStart[id + 1] = end;
+        nodeCount = end;
+        if (optionIds != null) {
+            optionIds.putIfAbsent(option, id);
+        }
+        return id;
+    }
+
+    private void ensureNodeCapacity(final int capacity) {
+        if (capacity > nodeItems.length) {
+            final int length = Math.max(capacity, nodeItems.length * 2);
+            nodeItems = Arrays.copyOf(nodeItems, length);
+            nodeColors = Arrays.copyOf(nodeColors, length);
+        }
+    }
+
+    // =================================================================== //
+    // Items.
+
+    public int itemCount() {
+        return items.size();
+    }
+
+    public int primaryItemCount() {
+        return itemCount() - secondaryItemCount();
+    }
+
+    public int secondaryItemCount() {
+        return secondaryItemCount;
+    }
+
+    public Object item(final int item) {
+        restoreItems();
+        return items.get(item);
+    }
+
+    public boolean isPrimary(final int item) {
+        return !isSecondary(item);
+    }
+
+    public boolean isSecondary(final int item) {
+        return secondaryItems.get(Objects.checkIndex(item, itemCount()));
+    }
+
+    /**
+     * Get the id of an item.
+     *
+     * @return The item id, or -1 if the item is not part of the problem.
+     */
+    public int itemId(final Object item) {
+        restoreItems();
+        final Integer id = itemIds.get(item);
+        return (id != null) ? id : -1;
+    }
+
+    // =================================================================== //
+    // Colors.
+
+    /**
+     * Number of colors, including the uncolored {@link #NO_COLOR}.
+     */
+    public int colorCount() {
+        return colors.size();
+    }
+
+    public Object color(final int color) {
+        restoreItems();
+        return colors.get(color);
+    }
+
+    // =================================================================== //
+    // Options.
+
+    public int optionCount() {
+        return options.size();
+    }
+
+    public O option(final int option) {
+        return options.get(option);
+    }
+
+    /**
+     * Get the id of an option. The options are indexed when this is first
+     * called, after which the lookup takes constant time.
+     *
+     * @return The id of the first option that is equal to the given one,
+     *      or -1 if the option is not part of the problem.
+     */
+    public int optionId(final O option) {
+        Map<O, Integer> ids = optionIds;
+        if (ids == null) {
+            ids = indexOptions();
+        }
+        final Integer id = ids.get(option);
+        return (id != null) ? id : -1;
+    }
+
+    /**
+     * Build the option index. Synchronized, because a frozen problem can
+     * be read by several threads.
+     */
+    private synchronized Map<O, Integer> indexOptions() {
+        if (optionIds == null) {
+            final Map<O, Integer> ids = new HashMap<>();
+            for (int o = 0; o < options.size(); o++) {
+                ids.putIfAbsent(options.get(o), o);
+            }
+            optionIds = ids;
+        }
+        return optionIds;
+    }
+
+    /**
+     * Total number of items in all options.
+     */
+    public int nodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * Index of the first node of the option.
+     */
+    public int optionStart(final int option) {
+        return optionStart[Objects.checkIndex(option, optionCount())];
+    }
+
+    /**
+     * Index after the last node of the option.
+     */
+    public int optionEnd(final int option) {
+        return optionStart[Objects.checkIndex(option, optionCount()) + 1];
+    }
+
+    /**
+     * Item id of the node.
+     */
+    public int nodeItem(final int node) {
+        return nodeItems[Objects.checkIndex(node, nodeCount)];
+    }
+
+    /**
+     * Color id of the node.
+     */
+    public int nodeColor(final int node) {
+        return nodeColors[Objects.checkIndex(node, nodeCount)];
+    }
+
+    /**
+     * Get the ids of the items covered by an option that is not
+     * necessarily part of the problem. The items are generated using the
+     * item provider.
+     *
+     * @throws IllegalArgumentException
+     *      If the option covers an item that is not part of the problem.
+     *
+     * @throws IllegalStateException If the problem has no item provider.
+     */
+    public int[] itemsOf(final O option) {
+        return requireItemProvider().from(option).stream()
+                .mapToInt(item -> {
+                    final int id = itemId(item);
+                    if (id < 0) {
+                        throw new IllegalArgumentException(
+                                Objects.toString(item));
+                    }
+                    return id;
+                })
+                .toArray();
+    }
+
+    /**
+     * Time when the first option was added to this instance, from {@link
+     * System#nanoTime()}, or zero if no options have been added. Options
+     * of a problem that was loaded from a snapshot do not count.
+     */
+    long firstOptionTime() {
+        return firstOptionTime;
+    }
+
+    /**
+     * Can the item and color objects be restored from the options? This
+     * is true if the problem has an item provider, every option has been
+     * added with {@link #addOption(Object)} and the item provider has
+     * returned a list for each of them.
+     */
+    boolean isRestorable() {
+        return itemProvider != null && itemsByPosition;
+    }
+
+    /**
+     * Restore the item and color objects of a problem that has been loaded
+     * from a snapshot by generating the items of the options in which they
+     * first appear.
+     */
+    private void restoreItems() {
+        if (itemOrigins == null) {
+            return;
+        }
+
+        final ItemProvider<O> provider = requireItemProvider();
+        final int[] itemNodes = itemOrigins;
+        final int[] colorNodes = colorOrigins;
+        itemOrigins = null;
+        colorOrigins = null;
+
+        int cachedOption = -1;
+        List<Object> cachedItems = null;
+        for (int k = 0; k < itemNodes.length + colorNodes.length; k++) {
+            final int node = (k < itemNodes.length)
+                    ? itemNodes[k]
+                    : colorNodes[k - itemNodes.length];
+            final int option = optionOf(node);
+            if (option != cachedOption) {
+                cachedOption = option;
+                cachedItems = new ArrayList<>(provider.from(options.get(option)));
+                if (cachedItems.size() != optionStart[option + 1] - optionStart[option]) {
+                    throw new IllegalStateException("item provider does not"
+                            + " match the snapshot in option [" + option + "]");
+                }
+            }
+
+            final Object item = cachedItems.get(node - optionStart[option]);
+            if (k < itemNodes.length) {
+                items.set(k, item);
+                itemIds.put(item, k);
+            } else {
+                final Object color = ((SecondaryItem) item).getColor();
+                colors.set(k - itemNodes.length + 1, color);
+                colorIds.put(color, k - itemNodes.length + 1);
+            }
+        }
+    }
+
+    /**
+     * Find the option that contains the node.
+     */
+    private int optionOf(final int node) {
+        int low = 0;
+        int high = optionCount() - 1;
+        while (low < high) {
+            final int mid = (low + high + 1) >>> 1;
+            if (optionStart[mid] <= node) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    // =================================================================== //
+    // Freezing.
+
+    /**
+     * Is the problem frozen? A frozen problem cannot be modified, and it
+     * can be read by several threads at the same time.
+     */
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    /**
+     * Freeze the problem. The item objects of a problem loaded from a
+     * snapshot are restored first, so that nothing is written when the
+     * problem is read.
+     */
+    void freeze() {
+        if (itemProvider != null) {
+            restoreItems();
+        }
+        frozen = true;
+    }
+
+    private void ensureNotFrozen() {
+        if (frozen) {
+            throw new IllegalStateException("problem is frozen");
+        }
+    }
+
+    private ItemProvider<O> requireItemProvider() {
+        if (itemProvider == null) {
+            throw new IllegalStateException("problem has no item provider");
+        }
+        return itemProvider;
+    }
+}
@@ -0,0 +1,584 @@
+package fi.iki.asb.xcc;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * A generic exact cover with color solver that splits the problem into
+ * independent components. The search is the same as in {@link
+ * ReferenceXCC}, but at chosen depths the solver finds the connected
+ * components of the remaining problem: two primary items are connected if
+ * an option covers both of them, directly or through a secondary item that
+ * has not been purified. If there are several components, each one is
+ * searched on its own and the solutions are combined, instead of
+ * searching the cross product. When counting, the counts of the
+ * components are multiplied. When searching, the solutions of each
+ * component are collected and every combination of them is reported.
+ *
+ * <p>This pays off when the problem falls apart into many independent
+ * parts, for example disconnected regions of a board after a few
+ * placements. Finding the components takes time proportional to the size
+ * of the remaining matrix, so for problems that rarely fall apart the
+ * components should only be looked for on some depths. The solutions of
+ * the components found at one split are kept in memory until their
+ * combinations have been reported.</p>
+ *
+ * <p>This class is <i>not thread safe</i>.</p>
+ *
+ * @param <O>
+ *     The type associated to options.
+ */
+public final class ComponentXCC<O> implements XCC<O> {
+
+    /**
+     * The problem the matrix is built from.
+     */
+    private final CompiledProblem<O> problem;
+
+    /**
+     * The matrix. Created when the first search starts, after which no
+     * more options can be added.
+     */
+    private ArrayMatrix matrix = null;
+
+    /**
+     * Is the matrix dirty? This is set to <code>true</code> when the
+     * algorithm starts and restored back to <code>false</code> when it
+     * finishes successfully. If the execution is interrupted by an
+     * exception, the flag is left "dirty" and subsequent executions
+     * are prevented.
+     */
+    private boolean dirty = false;
+
+    private XCCTrace trace = null;
+
+    /**
+     * The components are looked for on the depths that are multiples of
+     * this.
+     */
+    private int splitInterval = 1;
+
+    /**
+     * Number of times the problem was split during the last search.
+     */
+    private long splits = 0;
+
+    // Search state. Cleared when the search finishes.
+
+    private List<O> solution;
+
+    private BooleanSupplier emergencyBrake;
+
+    private boolean stopped;
+
+    /**
+     * Union-find parent of each item header.
+     */
+    private int[] parent;
+
+    /**
+     * Component number of each union-find root.
+     */
+    private int[] componentOf;
+
+    /**
+     * Marks of item headers and options. A value equal to
+     * <code>stamp</code> marks the entry for the current operation.
+     */
+    private int[] itemMark;
+
+    private int[] optionMark;
+
+    private int stamp;
+
+    // =================================================================== //
+
+    /**
+     * @param itemProvider
+     *      Mapper that creates the items that are covered by each option
+     *      that is added to the matrix.
+     */
+    public ComponentXCC(final ItemProvider<O> itemProvider) {
+        this(new CompiledProblem<>(itemProvider));
+    }
+
+    /**
+     * @param problem
+     *      The problem to solve. Options added to this instance are added
+     *      to the problem.
+     */
+    public ComponentXCC(final CompiledProblem<O> problem) {
+        this.problem = Objects.requireNonNull(problem);
+    }
+
+    @Override
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    @Override
+    public void setTrace(XCCTrace trace) {
+        this.trace = trace;
+    }
+
+    /**
+     * Look for the components on every <code>splitInterval</code>th depth
+     * of the search tree, starting from the root. The default is every
+     * depth.
+     *
+     * @throws IllegalArgumentException If the interval is not positive.
+     *
+     * @throws IllegalStateException If the matrix is dirty.
+     */
+    public void setSplitInterval(final int splitInterval) {
+        ensureClean();
+        if (splitInterval <= 0) {
+            throw new IllegalArgumentException(
+                    "split interval must be positive");
+        }
+        this.splitInterval = splitInterval;
+    }
+
+    /**
+     * Get the number of times the problem was split into components during
+     * the last search or count.
+     */
+    public long componentSplits() {
+        return splits;
+    }
+
+    // =================================================================== //
+    // Matrix initialization operations.
+
+    /**
+     * @throws IllegalStateException
+     *      If the matrix is locked because a search has been started.
+     */
+    @Override
+    public void addOption(final O option) {
+        ensureOpen();
+        problem.addOption(option);
+    }
+
+    // =================================================================== //
+    // The XCC solution.
+
+    @Override
+    public void search(
+            final Consumer<List<O>> solutionConsumer,
+            final List<O> preSelectedOptions,
+            final BooleanSupplier emergencyBrake) {
+        Objects.requireNonNull(preSelectedOptions);
+        Objects.requireNonNull(solutionConsumer);
+        Objects.requireNonNull(emergencyBrake);
+
+        final int[] hiddenItems = start(preSelectedOptions);
+        try {
+            this.solution = new ArrayList<>(preSelectedOptions);
+            this.emergencyBrake = emergencyBrake;
+            this.stopped = false;
+
+            if (trace != null) {
+                trace.onSearchStarted();
+            }
+
+            recursiveSearch(0, () -> solutionConsumer.accept(
+                    Collections.unmodifiableList(solution)));
+        } finally {
+            this.solution = null;
+            this.emergencyBrake = null;
+        }
+        finish(hiddenItems);
+    }
+
+    /**
+     * Step C2. The solution is reported to <code>onSolution</code>, which
+     * reads it from <code>solution</code>.
+     */
+    private void recursiveSearch(final int depth, final Runnable onSolution) {
+        if (stopped || (stopped = emergencyBrake.getAsBoolean())) {
+            return;
+        }
+
+        if (matrix.isSolved()) {
+            onSolution.run();
+            return;
+        }
+
+        if (depth % splitInterval == 0) {
+            final int[][] components = components();
+            if (components.length > 1) {
+                searchComponents(depth, components, onSolution);
+                return;
+            }
+        }
+
+        branch(depth, onSolution);
+    }
+
+    /**
+     * Choose an item and try each of its options (steps C3 to C7).
+     */
+    private void branch(final int depth, final Runnable onSolution) {
+        final int i = matrix.findColumn();
+
+        if (trace != null) {
+            trace.onRecursionEntered(matrix.LEN[i]);
+        }
+
+        matrix.cover(i);
+        for (int x = matrix.DLINK[i]; x != i; x = matrix.DLINK[x]) {
+            if (trace != null) {
+                trace.onItemSelected();
+            }
+
+            matrix.commitOption(x);
+            solution.add(problem.option(matrix.OPTION[x]));
+            recursiveSearch(depth + 1, onSolution);
+            solution.removeLast();
+            matrix.uncommitOption(x);
+        }
+        matrix.uncover(i);
+
+        if (trace != null) {
+            trace.onRecursionEnded();
+        }
+    }
+
+    /**
+     * Collect the solutions of each component and report every
+     * combination of them.
+     */
+    private void searchComponents(
+            final int depth,
+            final int[][] components,
+            final Runnable onSolution) {
+        splits++;
+
+        final List<List<List<O>>> parts = new ArrayList<>(components.length);
+        for (int[] component : components) {
+            final List<List<O>> found = new ArrayList<>();
+            final int base = solution.size();
+
+            final int[] others = restrict(component);
+            branch(depth, () -> found.add(new ArrayList<>(
+                    solution.subList(base, solution.size()))));
+            unrestrict(others);
+
+            if (found.isEmpty() || stopped) {
+                return;
+            }
+            parts.add(found);
+        }
+
+        combine(parts, 0, onSolution);
+    }
+
+    private void combine(
+            final List<List<List<O>>> parts,
+            final int k,
+            final Runnable onSolution) {
+        if (k == parts.size()) {
+            onSolution.run();
+            return;
+        }
+
+        for (List<O> part : parts.get(k)) {
+            if (stopped || (stopped = emergencyBrake.getAsBoolean())) {
+                return;
+            }
+
+            solution.addAll(part);
+            combine(parts, k + 1, onSolution);
+            solution.subList(solution.size() - part.size(), solution.size())
+                    .clear();
+        }
+    }
+
+    // =================================================================== //
+    // Streaming solutions.
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>The stream searches its own matrix built from the problem, so it
+     * does not make this instance dirty and several streams can be used at
+     * the same time. The solutions are not ordered in parallel streams.</p>
+     */
+    @Override
+    public Stream<List<O>> solutions(final List<O> preSelectedOptions) {
+        Objects.requireNonNull(preSelectedOptions);
+        ensureClean();
+        return IterativeSearch.stream(
+                problem, ArrayMatrix.build("ComponentXCC", problem),
+                preSelectedOptions);
+    }
+
+    // =================================================================== //
+    // Counting solutions.
+
+    /**
+     * Count the solutions, multiplying the counts of independent
+     * components.
+     *
+     * @throws IllegalStateException
+     *      A previous <code>search</code> was interrupted by an exception
+     *      and the matrix was left dirty. The XCC instance must be
+     *      recreated.
+     */
+    @Override
+    public BigInteger countSolutionsExact(final List<O> preSelectedOptions) {
+        Objects.requireNonNull(preSelectedOptions);
+
+        final int[] hiddenItems = start(preSelectedOptions);
+        if (trace != null) {
+            trace.onSearchStarted();
+        }
+
+        final BigInteger count = recursiveCount(0);
+
+        finish(hiddenItems);
+        return count;
+    }
+
+    private BigInteger recursiveCount(final int depth) {
+        if (matrix.isSolved()) {
+            return BigInteger.ONE;
+        }
+
+        if (depth % splitInterval == 0) {
+            final int[][] components = components();
+            if (components.length > 1) {
+                splits++;
+                BigInteger product = BigInteger.ONE;
+                for (int[] component : components) {
+                    final int[] others = restrict(component);
+                    final BigInteger count = branchCount(depth);
+                    unrestrict(others);
+
+                    if (count.signum() == 0) {
+                        return BigInteger.ZERO;
+                    }
+                    product = product.multiply(count);
+                }
+                return product;
+            }
+        }
+
+        return branchCount(depth);
+    }
+
+    private BigInteger branchCount(final int depth) {
+        final int i = matrix.findColumn();
+
+        if (trace != null) {
+            trace.onRecursionEntered(matrix.LEN[i]);
+        }
+
+        BigInteger count = BigInteger.ZERO;
+        matrix.cover(i);
+        for (int x = matrix.DLINK[i]; x != i; x = matrix.DLINK[x]) {
+            if (trace != null) {
+                trace.onItemSelected();
+            }
+
+            matrix.commitOption(x);
+            count = count.add(recursiveCount(depth + 1));
+            matrix.uncommitOption(x);
+        }
+        matrix.uncover(i);
+
+        if (trace != null) {
+            trace.onRecursionEnded();
+        }
+        return count;
+    }
+
+    // =================================================================== //
+    // Components.
+
+    /**
+     * Find the connected components of the active primary items.
+     *
+     * @return The item headers of each component, in the order of the
+     *      item list.
+     */
+    private int[][] components() {
+        final int head = matrix.COLUMN.length + 1;
+        for (int i = 1; i < head; i++) {
+            parent[i] = i;
+        }
+
+        stamp++;
+        int itemCount = 0;
+        for (int i = matrix.RLINK[0]; i != 0; i = matrix.RLINK[i]) {
+            itemCount++;
+            for (int x = matrix.DLINK[i]; x != i; x = matrix.DLINK[x]) {
+                if (optionMark[matrix.OPTION[x]] == stamp) {
+                    continue;
+                }
+                optionMark[matrix.OPTION[x]] = stamp;
+
+                // Join the items of the option. Purified nodes do not
+                // constrain each other.
+                int q = x + 1;
+                while (q != x) {
+                    final int j = matrix.TOP[q];
+                    if (j <= 0) {
+                        q = matrix.ULINK[q];
+                    } else {
+                        if (matrix.COLOR[q] >= 0) {
+                            union(i, j);
+                        }
+                        q++;
+                    }
+                }
+            }
+        }
+
+        // Number the components by their roots.
+        final int[] sizes = new int[itemCount];
+        int componentCount = 0;
+        for (int i = matrix.RLINK[0]; i != 0; i = matrix.RLINK[i]) {
+            final int root = find(i);
+            if (itemMark[root] != stamp) {
+                itemMark[root] = stamp;
+                componentOf[root] = componentCount++;
+            }
+            sizes[componentOf[root]]++;
+        }
+        if (componentCount == 1) {
+            return new int[][] { null };
+        }
+
+        final int[][] components = new int[componentCount][];
+        for (int c = 0; c < componentCount; c++) {
+            components[c] = new int[sizes[c]];
+            sizes[c] = 0;
+        }
+        for (int i = matrix.RLINK[0]; i != 0; i = matrix.RLINK[i]) {
+            final int c = componentOf[find(i)];
+            components[c][sizes[c]++] = i;
+        }
+        return components;
+    }
+
+    private int find(int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
+    private void union(final int i, final int j) {
+        final int a = find(i);
+        final int b = find(j);
+        if (a != b) {
+            parent[b] = a;
+        }
+    }
+
+    /**
+     * Unlink the active primary items that are not in the component from
+     * the item list, so that the search only sees the component.
+     *
+     * @return The unlinked items, in the order they were unlinked.
+     */
+    private int[] restrict(final int[] component) {
+        stamp++;
+        for (int i : component) {
+            itemMark[i] = stamp;
+        }
+
+        final List<Integer> others = new ArrayList<>();
+        for (int i = matrix.RLINK[0]; i != 0; i = matrix.RLINK[i]) {
+            if (itemMark[i] != stamp) {
+                others.add(i);
+            }
+        }
+
+        final int[] result = others.stream().mapToInt(Integer::intValue).toArray();
+        for (int i : result) {
+            matrix.RLINK[matrix.LLINK[i]] = matrix.RLINK[i];
+            matrix.LLINK[matrix.RLINK[i]] = matrix.LLINK[i];
+        }
+        return result;
+    }
+
+    /**
+     * Reverse of {@link #restrict(int[])}.
+     */
+    private void unrestrict(final int[] others) {
+        for (int k = others.length - 1; k >= 0; k--) {
+            final int i = others[k];
+            matrix.RLINK[matrix.LLINK[i]] = i;
+            matrix.LLINK[matrix.RLINK[i]] = i;
+        }
+    }
+
+    // =================================================================== //
+    // Auxiliary methods.
+
+    /**
+     * Start a search: build the matrix if needed and cover the items of the
+     * pre-selected options.
+     *
+     * @return The covered items.
+     */
+    private int[] start(final List<O> preSelectedOptions) {
+        ensureClean();
+        dirty = true;
+
+        if (matrix == null) {
+            matrix = ArrayMatrix.build("ComponentXCC", problem);
+        }
+
+        final int size = matrix.COLUMN.length + 2;
+        parent = new int[size];
+        componentOf = new int[size];
+        itemMark = new int[size];
+        optionMark = new int[problem.optionCount()];
+        stamp = 0;
+        splits = 0;
+
+        final int[] hiddenItems = matrix.columnsOf(problem, preSelectedOptions);
+        for (int i : hiddenItems) {
+            matrix.cover(i);
+        }
+        return hiddenItems;
+    }
+
+    /**
+     * Restore the matrix after a search.
+     */
+    private void finish(final int[] hiddenItems) {
+        for (int k = hiddenItems.length - 1; k >= 0; k--) {
+            matrix.uncover(hiddenItems[k]);
+        }
+
+        parent = null;
+        componentOf = null;
+        itemMark = null;
+        optionMark = null;
+        dirty = false;
+    }
+
+    private void ensureClean() {
+        if (dirty) {
+            throw new IllegalStateException("matrix is dirty");
+        }
+    }
+
+    private void ensureOpen() {
+        if (matrix != null) {
+            throw new IllegalStateException("matrix is locked");
+        }
+    }
+}
@@ -0,0 +1,504 @@
+package fi.iki.asb.xcc;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * A generic exact cover with color solver based on Knuth's "dancing cells"
+ * technique. Instead of doubly linked lists, the active items and the
+ * active options of each item are kept in sparse sets: compact arrays
+ * whose active elements are at the beginning. An element is removed by
+ * swapping it with the last active element and decrementing the size of
+ * the set. Because the removed elements stay right after the active ones,
+ * a removal is undone just by incrementing the size back, as long as the
+ * removals are undone in reverse order. The search keeps a trail of the
+ * removals for that purpose.
+ *
+ * <p>Compared to dancing links, the search touches a few small arrays
+ * sequentially instead of splicing links across the whole matrix, which is
+ * friendlier to the CPU cache.</p>
+ *
+ * <p>The search and the order of the chosen items are the same as in
+ * {@link ReferenceXCC}, but the options of an item may be tried in a
+ * different order after backtracking, so solutions can be found in a
+ * different order.</p>
+ *
+ * <p>This class is <i>not thread safe</i>.</p>
+ *
+ * @param <O>
+ *     The type associated to options. For example, in a sudoku solver this
+ *     might be a class that represents "placing a number in a given row,
+ *     column location".
+ */
+public final class DancingCellsXCC<O> implements XCC<O> {
+
+    /**
+     * Trail entry that restores the last removed primary item to the set
+     * of active items. Entries that are not negative restore an option to
+     * the item in question, and entries below this restore the color of
+     * item <code>ITEM_RESTORED - 1 - entry</code>.
+     */
+    private static final int ITEM_RESTORED = -1;
+
+    /**
+     * The problem this solver has been initialized with.
+     */
+    private final CompiledProblem<O> problem;
+
+    // =================================================================== //
+    // The sparse sets. Created when the first search starts.
+
+    /**
+     * The set of active primary items. The first <code>activeItems</code>
+     * elements are active.
+     */
+    private int[] ITEM;
+
+    /**
+     * Index is an item id, value is the position of the item in
+     * <code>ITEM</code>, or -1 for secondary items.
+     */
+    private int[] ITEM_LOC;
+
+    private int activeItems;
+
+    /**
+     * The options of each item, as nodes. The options of item
+     * <code>i</code> are in positions <code>BEGIN[i]</code> to
+     * <code>BEGIN[i] + SIZE[i]</code> (exclusive).
+     */
+    private int[] SET;
+
+    private int[] BEGIN;
+
+    private int[] SIZE;
+
+    /**
+     * Index is a node, value is the position of the node in
+     * <code>SET</code>.
+     */
+    private int[] LOC;
+
+    /**
+     * The color id an item has been purified with, or zero.
+     */
+    private int[] ITEM_COLOR;
+
+    // =================================================================== //
+    // The options, as they are in the compiled problem. These never
+    // change.
+
+    private int[] NODE_ITEM;
+
+    private int[] NODE_COLOR;
+
+    private int[] NODE_OPTION;
+
+    /**
+     * The nodes of option <code>o</code> are <code>OPTION_START[o]</code>
+     * to <code>OPTION_START[o + 1]</code> (exclusive).
+     */
+    private int[] OPTION_START;
+
+    /**
+     * The removals that have not been undone yet.
+     */
+    private int[] trail;
+
+    private int trailSize;
+
+    // =================================================================== //
+
+    /**
+     * Has the data structure been initialized.
+     */
+    private boolean initialized = false;
+
+    /**
+     * Is the matrix dirty? This is set to <code>true</code> when the
+     * algorithm starts and restored back to <code>false</code> when it
+     * finishes successfully. If the execution is interrupted by an
+     * exception, the flag is left "dirty" and subsequent executions
+     * are prevented.
+     */
+    private boolean dirty = false;
+
+    /**
+     * Current solution. Cleared when algorithm finishes.
+     */
+    private List<O> solution;
+
+    /**
+     * Current solution consumer. Cleared when algorithm finishes.
+     */
+    private Consumer<List<O>> solutionConsumer;
+
+    /**
+     * Current emergency brake. Cleared when algorithm finishes.
+     */
+    private BooleanSupplier emergencyBrake;
+
+    private XCCTrace trace = null;
+
+    // =================================================================== //
+
+    /**
+     * @param itemProvider
+     *      Mapper that creates the items that are covered by each option
+     *      that is added to the matrix.
+     */
+    public DancingCellsXCC(final ItemProvider<O> itemProvider) {
+        this(new CompiledProblem<>(itemProvider));
+    }
+
+    /**
+     * @param problem
+     *      The problem to solve. Options added to this instance are added
+     *      to the problem.
+     */
+    public DancingCellsXCC(final CompiledProblem<O> problem) {
+        this.problem = Objects.requireNonNull(problem);
+    }
+
+    @Override
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    @Override
+    public void setTrace(XCCTrace trace) {
+        this.trace = trace;
+    }
+
+    // =================================================================== //
+    // Matrix initialization operations.
+
+    @Override
+    public void addOption(final O option) {
+        ensureOpen();
+        problem.addOption(option);
+    }
+
+    private void initSets() {
+        initialized = true;
+        final long start = System.nanoTime();
+        final SearchRecorder.MatrixEvent event = SearchRecorder.matrixStarted();
+
+        final int itemCount = problem.itemCount();
+        final int optionCount = problem.optionCount();
+        final int nodeCount = problem.nodeCount();
+
+        ITEM = new int[problem.primaryItemCount()];
+        ITEM_LOC = new int[itemCount];
+        ITEM_COLOR = new int[itemCount];
+        BEGIN = new int[itemCount];
+        SIZE = new int[itemCount];
+        SET = new int[nodeCount];
+        LOC = new int[nodeCount];
+        NODE_ITEM = new int[nodeCount];
+        NODE_COLOR = new int[nodeCount];
+        NODE_OPTION = new int[nodeCount];
+        OPTION_START = new int[optionCount + 1];
+
+        for (int i = 0; i < itemCount; i++) {
+            if (problem.isPrimary(i)) {
+                ITEM_LOC[i] = activeItems;
+                ITEM[activeItems++] = i;
+            } else {
+                ITEM_LOC[i] = -1;
+            }
+        }
+
+        for (int o = 0; o < optionCount; o++) {
+            OPTION_START[o] = problem.optionStart(o);
+            for (int n = problem.optionStart(o); n < problem.optionEnd(o); n++) {
+                NODE_ITEM[n] = problem.nodeItem(n);
+                NODE_COLOR[n] = problem.nodeColor(n);
+                NODE_OPTION[n] = o;
+                SIZE[NODE_ITEM[n]]++;
+            }
+        }
+        OPTION_START[optionCount] = nodeCount;
+
+        // Reserve a segment of the set array for each item and fill the
+        // segments in the order of the options.
+        for (int i = 1; i < itemCount; i++) {
+            BEGIN[i] = BEGIN[i - 1] + SIZE[i - 1];
+        }
+        final int[] fill = new int[itemCount];
+        for (int n = 0; n < nodeCount; n++) {
+            final int i = NODE_ITEM[n];
+            LOC[n] = BEGIN[i] + fill[i]++;
+            SET[LOC[n]] = n;
+        }
+
+        // At most every node and every item has been removed at the same
+        // time, and every item has been purified.
+        trail = new int[nodeCount + 2 * itemCount];
+
+        SearchRecorder.matrixBuilt(event, "DancingCellsXCC", problem, start);
+    }
+
+    // =================================================================== //
+    // The XCC solution.
+
+    @Override
+    public void search(
+            final Consumer<List<O>> solutionConsumer,
+            final List<O> preSelectedOptions,
+            final BooleanSupplier emergencyBrake) {
+        Objects.requireNonNull(preSelectedOptions);
+        Objects.requireNonNull(solutionConsumer);
+        Objects.requireNonNull(emergencyBrake);
+
+        ensureClean();
+        dirty = true;
+
+        if (!initialized) {
+            initSets();
+        }
+
+        // Cover the distinct set of items that are covered by the
+        // pre-selected options.
+        final int mark = trailSize;
+        for (int i : collectHiddenItems(preSelectedOptions)) {
+            cover(i);
+        }
+
+        try {
+            this.solution = new ArrayList<>(preSelectedOptions);
+            this.solutionConsumer = solutionConsumer;
+            this.emergencyBrake = emergencyBrake;
+
+            if (trace != null) {
+                trace.onSearchStarted();
+            }
+
+            recursiveSearch();
+        } finally {
+            this.solution = null;
+            this.solutionConsumer = null;
+            this.emergencyBrake = null;
+        }
+
+        restore(mark);
+
+        dirty = false;
+    }
+
+    private void recursiveSearch() {
+        if (emergencyBrake.getAsBoolean()) {
+            return;
+        }
+
+        // If there are no active primary items, the solution is complete.
+        if (activeItems == 0) {
+            solutionConsumer.accept(Collections.unmodifiableList(
+                    solution));
+            return;
+        }
+
+        final int i = findItem();
+
+        if (trace != null) {
+            trace.onRecursionEntered(SIZE[i]);
+        }
+
+        final int itemMark = trailSize;
+        cover(i);
+
+        // The set of a covered item does not change in deeper levels.
+        final int end = BEGIN[i] + SIZE[i];
+        for (int k = BEGIN[i]; k < end; k++) {
+            final int x = SET[k];
+
+            if (trace != null) {
+                trace.onItemSelected();
+            }
+
+            final int optionMark = trailSize;
+            final int optionEnd = OPTION_START[NODE_OPTION[x] + 1];
+            for (int p = OPTION_START[NODE_OPTION[x]]; p < optionEnd; p++) {
+                if (p != x) {
+                    commit(p);
+                }
+            }
+
+            solution.add(problem.option(NODE_OPTION[x]));
+            recursiveSearch();
+            solution.removeLast();
+
+            restore(optionMark);
+        }
+
+        restore(itemMark);
+
+        if (trace != null) {
+            trace.onRecursionEnded();
+        }
+    }
+
+    /**
+     * Find the active item with the fewest options. Ties are broken by
+     * the item id, so that the item is the same that the linked list based
+     * solvers would choose.
+     */
+    private int findItem() {
+        int best = ITEM[0];
+        for (int k = 1; k < activeItems; k++) {
+            final int i = ITEM[k];
+            if (SIZE[i] < SIZE[best] || (SIZE[i] == SIZE[best] && i < best)) {
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    // =================================================================== //
+    // Streaming solutions.
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>The stream searches its own matrix built from the problem, so it
+     * does not make this instance dirty and several streams can be used at
+     * the same time. The solutions are not ordered in parallel streams.</p>
+     */
+    @Override
+    public Stream<List<O>> solutions(final List<O> preSelectedOptions) {
+        Objects.requireNonNull(preSelectedOptions);
+        ensureClean();
+        return IterativeSearch.stream(
+                problem, ArrayMatrix.build("DancingCellsXCC", problem),
+                preSelectedOptions);
+    }
+
+    // =================================================================== //
+    // Operations for manipulating the sets during search.
+
+    private void commit(final int p) {
+        final int i = NODE_ITEM[p];
+        final int c = NODE_COLOR[p];
+        if (c == 0) {
+            cover(i);
+        } else if (ITEM_COLOR[i] == 0) {
+            purify(i, c);
+        }
+    }
+
+    /**
+     * Remove the item from the active items and hide every option of it.
+     */
+    private void cover(final int i) {
+        final int k = ITEM_LOC[i];
+        if (k >= 0) {
+            final int last = ITEM[--activeItems];
+            ITEM[k] = last;
+            ITEM_LOC[last] = k;
+            ITEM[activeItems] = i;
+            ITEM_LOC[i] = activeItems;
+            trail[trailSize++] = ITEM_RESTORED;
+        }
+
+        final int end = BEGIN[i] + SIZE[i];
+        for (int q = BEGIN[i]; q < end; q++) {
+            hide(SET[q]);
+        }
+    }
+
+    /**
+     * Hide the options of a secondary item that have a different color.
+     * The options with the same color stay, and the item is not touched
+     * again by {@link #hide(int)} until it has been restored.
+     */
+    private void purify(final int i, final int c) {
+        ITEM_COLOR[i] = c;
+        trail[trailSize++] = ITEM_RESTORED - 1 - i;
+
+        final int end = BEGIN[i] + SIZE[i];
+        for (int q = BEGIN[i]; q < end; q++) {
+            final int x = SET[q];
+            if (NODE_COLOR[x] != c) {
+                hide(x);
+            }
+        }
+    }
+
+    /**
+     * Remove the option of node <code>x</code> from the sets of its other
+     * items.
+     */
+    private void hide(final int x) {
+        final int end = OPTION_START[NODE_OPTION[x] + 1];
+        for (int q = OPTION_START[NODE_OPTION[x]]; q < end; q++) {
+            final int j = NODE_ITEM[q];
+            if (q == x || ITEM_COLOR[j] != 0) {
+                continue;
+            }
+
+            // Swap the node with the last active option of the item.
+            final int last = BEGIN[j] + --SIZE[j];
+            final int other = SET[last];
+            final int loc = LOC[q];
+            SET[loc] = other;
+            LOC[other] = loc;
+            SET[last] = q;
+            LOC[q] = last;
+            trail[trailSize++] = j;
+        }
+    }
+
+    /**
+     * Undo the removals made after the trail had the given size, in
+     * reverse order.
+     */
+    private void restore(final int mark) {
+        while (trailSize > mark) {
+            final int entry = trail[--trailSize];
+            if (entry >= 0) {
+                SIZE[entry]++;
+            } else if (entry == ITEM_RESTORED) {
+                activeItems++;
+            } else {
+                ITEM_COLOR[ITEM_RESTORED - 1 - entry] = 0;
+            }
+        }
+    }
+
+    // =================================================================== //
+    // Auxiliary methods.
+
+    /**
+     * Collect the distinct items covered by the pre-selected options.
+     */
+    private int[] collectHiddenItems(
+            final Collection<O> preSelectedOptions) {
+        final BitSet seen = new BitSet(problem.itemCount());
+        return preSelectedOptions.stream()
+                .map(problem::itemsOf)
+                .flatMapToInt(IntStream::of)
+                .filter(item -> !seen.get(item))
+                .peek(seen::set)
+                .toArray();
+    }
+
+    private void ensureClean() {
+        if (dirty) {
+            throw new IllegalStateException("matrix is dirty");
+        }
+    }
+
+    private void ensureOpen() {
+        if (initialized) {
+            throw new IllegalStateException("matrix is locked");
+        }
+    }
+}
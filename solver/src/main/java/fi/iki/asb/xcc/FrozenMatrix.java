@@ -0,0 +1,58 @@
+package fi.iki.asb.xcc;
+
+import java.util.Objects;
+
+/**
+ * A matrix that has been built once and is then shared by any number of
+ * threads, each of which searches it in its own session.
+ *
+ * <p>Freezing a matrix freezes the {@link CompiledProblem} it is built
+ * from, after which the problem and the parts of the matrix that never
+ * change during the search (<code>TOP</code>, <code>OPTION</code> and, if
+ * the problem has no colors, <code>COLOR</code>) are immutable. A session
+ * copies only the link and length arrays, so creating one costs about as
+ * much as a few <code>System.arraycopy</code> calls.</p>
+ *
+ * <p>This class is thread safe. The sessions are not: each of them must be
+ * used by one thread at a time. Searches with pre-selected options call
+ * the item provider of the problem, so it must be thread safe too if the
+ * sessions are used with pre-selected options, unless the options are
+ * given by their ids with {@link IterativeXCC#search(java.util.function.Consumer,
+ * int[], java.util.function.BooleanSupplier)}.</p>
+ *
+ * @param <O>
+ *     The type associated to options.
+ */
+public final class FrozenMatrix<O> {
+
+    private final CompiledProblem<O> problem;
+
+    /**
+     * The matrix the sessions are copied from. Never searched.
+     */
+    private final ArrayMatrix template;
+
+    /**
+     * Freeze a problem and build its matrix.
+     */
+    public FrozenMatrix(final CompiledProblem<O> problem) {
+        this.problem = Objects.requireNonNull(problem);
+        problem.freeze();
+        this.template = ArrayMatrix.build("FrozenMatrix", problem);
+    }
+
+    /**
+     * Get the frozen problem.
+     */
+    public CompiledProblem<O> problem() {
+        return problem;
+    }
+
+    /**
+     * Create a new search session. The session is an {@link IterativeXCC}
+     * whose matrix is locked, so options cannot be added to it.
+     */
+    public IterativeXCC<O> newSession() {
+        return new IterativeXCC<>(problem, template.copy());
+    }
+}
@@ -0,0 +1,117 @@
+package fi.iki.asb.xcc;
+
+import java.util.Comparator;
+import java.util.Objects;
+import java.util.function.Predicate;
+
+/**
+ * Strategy for choosing the primary item that is covered next (step C3 of
+ * Knuth's algorithm). The choice has a large effect on the size of the
+ * search tree.
+ *
+ * <p>The solver offers every active primary item to the chooser in the
+ * order of the item list, after calling {@link #start()}. The item that
+ * was last accepted is chosen. The solver stops offering items early if
+ * {@link #isDone()} returns <code>true</code>.</p>
+ *
+ * <p>Choosers are stateful and <i>not thread safe</i>. Each solver must
+ * have its own instance.</p>
+ */
+public interface ItemChooser {
+
+    /**
+     * A function that scores an item. The item with the lowest score is
+     * chosen.
+     */
+    @FunctionalInterface
+    interface Score {
+
+        /**
+         * @param item The item.
+         * @param length The number of options that can still cover the
+         *               item.
+         */
+        long score(Object item, int length);
+
+    }
+
+    /**
+     * Called before the items are offered.
+     */
+    void start();
+
+    /**
+     * Offer an active primary item.
+     *
+     * @param item The item.
+     * @param length The number of options that can still cover the item.
+     *
+     * @return <code>true</code> if the item is the best one so far.
+     */
+    boolean offer(Object item, int length);
+
+    /**
+     * Can the rest of the items be skipped? Called after each offer.
+     */
+    default boolean isDone() {
+        return false;
+    }
+
+    // =================================================================== //
+
+    /**
+     * The "minimum remaining values" heuristic that the solvers use by
+     * default. The first of the items with the fewest options is chosen.
+     */
+    static ItemChooser mrv() {
+        return new ItemChoosers.Mrv(null, false);
+    }
+
+    /**
+     * The "minimum remaining values" heuristic that chooses the last of
+     * the items with the fewest options.
+     */
+    static ItemChooser mrvLast() {
+        return new ItemChoosers.Mrv(null, true);
+    }
+
+    /**
+     * The "minimum remaining values" heuristic that breaks ties with a
+     * comparator. The smallest of the items with the fewest options is
+     * chosen.
+     */
+    static ItemChooser mrv(final Comparator<Object> tieBreak) {
+        return new ItemChoosers.Mrv(Objects.requireNonNull(tieBreak), false);
+    }
+
+    /**
+     * The "minimum remaining values" heuristic that chooses randomly
+     * between the items with the fewest options. Each of them is equally
+     * likely to be chosen.
+     */
+    static ItemChooser random(final long seed) {
+        return new ItemChoosers.RandomMrv(seed);
+    }
+
+    /**
+     * Knuth's "sharp" preference. The designated items (whose names start
+     * with <code>#</code> in Knuth's programs) are preferred over the
+     * other items: an item that is not designated is chosen only if no
+     * designated item is active, or if it has at most one option left.
+     * Ties are broken as in {@link #mrv()}.
+     */
+    static ItemChooser sharp(final Predicate<Object> designated) {
+        Objects.requireNonNull(designated);
+        return scored((item, length) -> (length <= 1 || designated.test(item))
+                ? length
+                : (long) length + Integer.MAX_VALUE);
+    }
+
+    /**
+     * Choose the item with the lowest score. Ties are broken as in
+     * {@link #mrv()}.
+     */
+    static ItemChooser scored(final Score score) {
+        return new ItemChoosers.Scored(Objects.requireNonNull(score));
+    }
+}
@@ -0,0 +1,133 @@
+package fi.iki.asb.xcc;
+
+import java.util.Comparator;
+import java.util.Random;
+
+/**
+ * The implementations of the {@link ItemChooser} factory methods.
+ */
+final class ItemChoosers {
+
+    private ItemChoosers() {
+    }
+
+    /**
+     * Minimum remaining values with a tie-break.
+     */
+    static final class Mrv implements ItemChooser {
+
+        /**
+         * Breaks ties, or null to keep the first or the last item.
+         */
+        private final Comparator<Object> tieBreak;
+
+        private final boolean last;
+
+        private Object bestItem;
+
+        private int bestLength;
+
+        Mrv(final Comparator<Object> tieBreak, final boolean last) {
+            this.tieBreak = tieBreak;
+            this.last = last;
+        }
+
+        @Override
+        public void start() {
+            bestItem = null;
+            bestLength = Integer.MAX_VALUE;
+        }
+
+        @Override
+        public boolean offer(final Object item, final int length) {
+            if (length < bestLength || (length == bestLength && wins(item))) {
+                bestItem = item;
+                bestLength = length;
+                return true;
+            }
+            return false;
+        }
+
+        private boolean wins(final Object item) {
+            return (tieBreak != null)
+                    ? tieBreak.compare(item, bestItem) < 0
+                    : last;
+        }
+
+        /**
+         * Nothing beats the first item without options, unless ties are
+         * broken in favor of later items.
+         */
+        @Override
+        public boolean isDone() {
+            return bestLength == 0 && tieBreak == null && !last;
+        }
+    }
+
+    /**
+     * Minimum remaining values with random ties.
+     */
+    static final class RandomMrv implements ItemChooser {
+
+        private final Random random;
+
+        private int bestLength;
+
+        /**
+         * Number of items with the best length so far.
+         */
+        private int ties;
+
+        RandomMrv(final long seed) {
+            this.random = new Random(seed);
+        }
+
+        @Override
+        public void start() {
+            bestLength = Integer.MAX_VALUE;
+            ties = 0;
+        }
+
+        @Override
+        public boolean offer(final Object item, final int length) {
+            if (length < bestLength) {
+                bestLength = length;
+                ties = 1;
+                return true;
+            }
+
+            // Reservoir sampling: the n'th tie replaces the chosen item
+            // with probability 1/n.
+            return length == bestLength && random.nextInt(++ties) == 0;
+        }
+    }
+
+    /**
+     * Lowest score.
+     */
+    static final class Scored implements ItemChooser {
+
+        private final ItemChooser.Score score;
+
+        private long bestScore;
+
+        Scored(final ItemChooser.Score score) {
+            this.score = score;
+        }
+
+        @Override
+        public void start() {
+            bestScore = Long.MAX_VALUE;
+        }
+
+        @Override
+        public boolean offer(final Object item, final int length) {
+            final long s = score.score(item, length);
+            if (s < bestScore) {
+                bestScore = s;
+                return true;
+            }
+            return false;
+        }
+    }
+}
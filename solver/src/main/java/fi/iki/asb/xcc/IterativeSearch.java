@@ -0,0 +1,428 @@
+package fi.iki.asb.xcc;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * The state of one search of an {@link ArrayMatrix}. The search follows
+ * the steps of Algorithm C with the recursion replaced by the stack of
+ * chosen nodes <code>x[0..level-1]</code>. The options of those nodes are
+ * committed and their items are covered. On each level the options from
+ * <code>x[l]</code> up to, but not including, <code>end[l]</code> are
+ * tried. Normally the end is the item header, but when a search is split,
+ * the untried options are handed to the new search and the end is moved.
+ *
+ * <p>Used by {@link IterativeXCC} for its searches and by the other
+ * solvers that are built from a {@link CompiledProblem} for their solution
+ * streams.</p>
+ *
+ * @param <O>
+ *     The type associated to options.
+ */
+final class IterativeSearch<O> {
+
+    /**
+     * Step C2: enter a new level of the search tree.
+     */
+    private static final int ENTER = 0;
+
+    /**
+     * Step C5: try the option of the current node on this level.
+     */
+    private static final int TRY = 1;
+
+    /**
+     * Step C8: leave the current level and continue on the previous
+     * level with step C6.
+     */
+    private static final int LEAVE = 2;
+
+    private final CompiledProblem<O> problem;
+
+    private final ArrayMatrix matrix;
+
+    private final List<O> preSelectedOptions;
+
+    /**
+     * Columns that were covered by the pre-selected options.
+     */
+    private final int[] hiddenItems;
+
+    /**
+     * The item covered on each level.
+     */
+    private final int[] item;
+
+    /**
+     * The node whose option is being tried on each level.
+     */
+    private final int[] x;
+
+    /**
+     * The node after the last option to try on each level.
+     */
+    private final int[] end;
+
+    private final XCCTrace trace;
+
+    Consumer<? super List<O>> solutionConsumer = null;
+
+    BooleanSupplier emergencyBrake = () -> false;
+
+    private int level = 0;
+
+    private int state = ENTER;
+
+    /**
+     * Start a search. The items of the pre-selected options are covered in
+     * the matrix.
+     */
+    IterativeSearch(
+            final CompiledProblem<O> problem,
+            final ArrayMatrix matrix,
+            final List<O> preSelectedOptions,
+            final XCCTrace trace) {
+        this(problem, matrix, new ArrayList<>(preSelectedOptions),
+                matrix.columnsOf(problem, preSelectedOptions), trace);
+    }
+
+    /**
+     * Start a search with pre-selected options given by their ids. The
+     * items are covered without looking up any option or item by hash.
+     */
+    IterativeSearch(
+            final CompiledProblem<O> problem,
+            final ArrayMatrix matrix,
+            final int[] preSelectedOptions,
+            final XCCTrace trace) {
+        this(problem, matrix, optionsOf(problem, preSelectedOptions),
+                matrix.columnsOf(problem, preSelectedOptions), trace);
+    }
+
+    private IterativeSearch(
+            final CompiledProblem<O> problem,
+            final ArrayMatrix matrix,
+            final List<O> preSelectedOptions,
+            final int[] hiddenItems,
+            final XCCTrace trace) {
+        this.problem = problem;
+        this.matrix = matrix;
+        this.preSelectedOptions = preSelectedOptions;
+        this.hiddenItems = hiddenItems;
+        this.trace = trace;
+
+        // Every level covers at least one primary item.
+        this.item = new int[problem.primaryItemCount() + 1];
+        this.x = new int[item.length];
+        this.end = new int[item.length];
+
+        for (int i : hiddenItems) {
+            matrix.cover(i);
+        }
+    }
+
+    private static <O> List<O> optionsOf(
+            final CompiledProblem<O> problem,
+            final int[] options) {
+        final List<O> list = new ArrayList<>(options.length);
+        for (int o : options) {
+            list.add(problem.option(o));
+        }
+        return list;
+    }
+
+    /**
+     * Create a search that continues from the given level of the
+     * original search, in a matrix that has been restored to that
+     * level.
+     */
+    private IterativeSearch(
+            final IterativeSearch<O> original,
+            final ArrayMatrix matrix,
+            final int level) {
+        this.problem = original.problem;
+        this.matrix = matrix;
+        this.preSelectedOptions = original.preSelectedOptions;
+        this.hiddenItems = original.hiddenItems;
+        this.trace = null;
+        this.item = original.item.clone();
+        this.x = original.x.clone();
+        this.end = original.end.clone();
+        this.level = level;
+        this.state = TRY;
+    }
+
+    /**
+     * Get the solutions as a lazy stream that searches the given matrix.
+     * The matrix must not be used for anything else while the stream is
+     * in use. Splitting the stream hands parts of the search tree to
+     * copies of the matrix.
+     */
+    static <O> Stream<List<O>> stream(
+            final CompiledProblem<O> problem,
+            final ArrayMatrix matrix,
+            final List<O> preSelectedOptions) {
+        Objects.requireNonNull(preSelectedOptions);
+        return StreamSupport.stream(new SolutionSpliterator<>(
+                new IterativeSearch<>(problem, matrix, preSelectedOptions,
+                        null)), false);
+    }
+
+    /**
+     * Run the search until it ends or the given number of nodes has
+     * been visited.
+     *
+     * @param pauseOnSolution
+     *      If true, the search is also paused after each solution.
+     *
+     * @return True if the search can be continued.
+     */
+    boolean run(final long maxNodes, final boolean pauseOnSolution) {
+        long nodes = 0;
+        while (true) {
+            switch (state) {
+                case ENTER -> {
+                    if (nodes == maxNodes) {
+                        return true;
+                    }
+                    nodes++;
+
+                    if (emergencyBrake.getAsBoolean()) {
+                        abort();
+                        return false;
+                    }
+
+                    if (!expand()) {
+                        // Step C8.
+                        solutionConsumer.accept(solution());
+                        state = LEAVE;
+                        if (pauseOnSolution) {
+                            return true;
+                        }
+                    }
+                }
+                case TRY -> {
+                    if (x[level] == end[level]) {
+                        // Step C7.
+                        matrix.uncover(item[level]);
+                        if (trace != null) {
+                            trace.onRecursionEnded();
+                        }
+                        state = LEAVE;
+                    } else {
+                        // Step C5.
+                        if (trace != null) {
+                            trace.onItemSelected();
+                        }
+                        matrix.commitOption(x[level]);
+                        level++;
+                        state = ENTER;
+                    }
+                }
+                default -> {
+                    if (level == 0) {
+                        finish();
+                        return false;
+                    }
+
+                    // Step C6.
+                    level--;
+                    matrix.uncommitOption(x[level]);
+                    x[level] = matrix.DLINK[x[level]];
+                    state = TRY;
+                }
+            }
+        }
+    }
+
+    /**
+     * Steps C3 and C4: choose and cover an item on the current level.
+     *
+     * @return False if there are no items left and the stack contains
+     *      a solution.
+     */
+    private boolean expand() {
+        if (matrix.isSolved()) {
+            return false;
+        }
+
+        final int i = matrix.findColumn();
+        if (trace != null) {
+            trace.onRecursionEntered(matrix.LEN[i]);
+        }
+        matrix.cover(i);
+        item[level] = i;
+        x[level] = matrix.DLINK[i];
+        end[level] = i;
+        state = TRY;
+        return true;
+    }
+
+    /**
+     * Hand some of the untried options to a new search. The options
+     * are taken from the shallowest level that has any, so the new
+     * search gets as large a part of the tree as possible.
+     *
+     * @return The new search or null if nothing can be handed out.
+     */
+    IterativeSearch<O> split() {
+        if (state == ENTER && !expand()) {
+            return null;
+        }
+
+        // Levels whose option has already been committed.
+        for (int l = 0; l < level; l++) {
+            final int next = matrix.DLINK[x[l]];
+            if (next != end[l]) {
+                final IterativeSearch<O> search = new IterativeSearch<>(
+                        this, restoreCopy(l), l);
+                search.x[l] = next;
+                end[l] = next;
+                return search;
+            }
+        }
+
+        // The current level, if no option has been tried on it yet.
+        if (state == TRY) {
+            int count = 0;
+            for (int p = x[level]; p != end[level]; p = matrix.DLINK[p]) {
+                count++;
+            }
+            if (count > 1) {
+                int middle = x[level];
+                for (int k = 0; k < count / 2; k++) {
+                    middle = matrix.DLINK[middle];
+                }
+                final IterativeSearch<O> search = new IterativeSearch<>(
+                        this, matrix.copy(), level);
+                search.x[level] = middle;
+                end[level] = middle;
+                return search;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Copy the matrix and undo the changes made below level
+     * <code>l</code> in the copy, leaving the item of that level
+     * covered and its option uncommitted.
+     */
+    private ArrayMatrix restoreCopy(final int l) {
+        final ArrayMatrix copy = matrix.copy();
+        if (state == TRY) {
+            copy.uncover(item[level]);
+        }
+        for (int m = level - 1; m > l; m--) {
+            copy.uncommitOption(x[m]);
+            copy.uncover(item[m]);
+        }
+        copy.uncommitOption(x[l]);
+        return copy;
+    }
+
+    private List<O> solution() {
+        final List<O> solution = new ArrayList<>(
+                preSelectedOptions.size() + level);
+        solution.addAll(preSelectedOptions);
+        for (int l = 0; l < level; l++) {
+            solution.add(problem.option(matrix.OPTION[x[l]]));
+        }
+        return Collections.unmodifiableList(solution);
+    }
+
+    /**
+     * Restore the matrix from any level when the emergency brake has
+     * been pulled.
+     */
+    private void abort() {
+        while (level > 0) {
+            level--;
+            matrix.uncommitOption(x[level]);
+            matrix.uncover(item[level]);
+            if (trace != null) {
+                trace.onRecursionEnded();
+            }
+        }
+        finish();
+    }
+
+    /**
+     * Uncover the initial hidden columns in reverse order to restore
+     * the matrix to original state.
+     */
+    private void finish() {
+        for (int k = hiddenItems.length - 1; k >= 0; k--) {
+            matrix.uncover(hiddenItems[k]);
+        }
+    }
+
+    // =================================================================== //
+
+    /**
+     * Spliterator that advances its search until the next solution is
+     * found. Splitting hands untried options to a new spliterator, which
+     * searches its own copy of the matrix.
+     */
+    private static final class SolutionSpliterator<O>
+            implements Spliterator<List<O>> {
+
+        private final IterativeSearch<O> search;
+
+        private boolean finished = false;
+
+        SolutionSpliterator(final IterativeSearch<O> search) {
+            this.search = search;
+        }
+
+        @Override
+        public boolean tryAdvance(final Consumer<? super List<O>> action) {
+            Objects.requireNonNull(action);
+            if (finished) {
+                return false;
+            }
+
+            final boolean[] found = { false };
+            search.solutionConsumer = solution -> {
+                found[0] = true;
+                action.accept(solution);
+            };
+
+            while (!found[0]) {
+                if (!search.run(Long.MAX_VALUE, true)) {
+                    finished = true;
+                    break;
+                }
+            }
+            return found[0];
+        }
+
+        @Override
+        public Spliterator<List<O>> trySplit() {
+            if (finished) {
+                return null;
+            }
+
+            final IterativeSearch<O> split = search.split();
+            return (split != null) ? new SolutionSpliterator<>(split) : null;
+        }
+
+        @Override
+        public long estimateSize() {
+            return Long.MAX_VALUE;
+        }
+
+        @Override
+        public int characteristics() {
+            return NONNULL;
+        }
+    }
+}
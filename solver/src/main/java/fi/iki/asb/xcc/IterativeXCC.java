@@ -0,0 +1,314 @@
+package fi.iki.asb.xcc;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * A generic exact cover with color solver that does not use recursion. The
+ * algorithm is the same as in {@link ReferenceXCC}, but the chosen nodes
+ * are kept in an explicit stack, so the depth of the search is not limited
+ * by the size of the thread stack.
+ *
+ * <p>Because the whole state of the search is kept in the stack, the
+ * search can be paused. A search is started with {@link #start(Consumer,
+ * List, BooleanSupplier)} and then advanced in bounded slices with
+ * {@link #step(long)}. The slices can be executed by different threads, as
+ * long as each slice happens-before the next one, for example when the
+ * slices are submitted to an executor one after another. This allows a
+ * small thread pool to time-slice a large number of searches fairly.</p>
+ *
+ * <p>This class is <i>not thread safe</i>.</p>
+ *
+ * @param <O>
+ *     The type associated to options. For example, in a sudoku solver this
+ *     might be a class that represents "placing a number in a given row,
+ *     column location".
+ */
+public final class IterativeXCC<O> implements XCC<O> {
+
+    /**
+     * The problem the matrix is built from.
+     */
+    private final CompiledProblem<O> problem;
+
+    /**
+     * The matrix. Created when the first search starts, after which no
+     * more options can be added.
+     */
+    private ArrayMatrix matrix = null;
+
+    /**
+     * The search in progress or null.
+     */
+    private IterativeSearch<O> search = null;
+
+    /**
+     * Is the matrix dirty? This is set to <code>true</code> when a search
+     * starts and restored back to <code>false</code> when it finishes
+     * successfully. If the execution is interrupted by an exception, the
+     * flag is left "dirty" and subsequent executions are prevented.
+     */
+    private boolean dirty = false;
+
+    private XCCTrace trace = null;
+
+    // =================================================================== //
+
+    /**
+     * @param itemProvider
+     *      Mapper that creates the items that are covered by each option
+     *      that is added to the matrix.
+     */
+    public IterativeXCC(final ItemProvider<O> itemProvider) {
+        this(new CompiledProblem<>(itemProvider));
+    }
+
+    /**
+     * @param problem
+     *      The problem to solve. Options added to this instance are added
+     *      to the problem.
+     */
+    public IterativeXCC(final CompiledProblem<O> problem) {
+        this.problem = Objects.requireNonNull(problem);
+    }
+
+    /**
+     * Create a solver for a matrix that has already been built from the
+     * problem. Used by {@link FrozenMatrix#newSession()}.
+     */
+    IterativeXCC(final CompiledProblem<O> problem, final ArrayMatrix matrix) {
+        this.problem = problem;
+        this.matrix = matrix;
+    }
+
+    @Override
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    @Override
+    public void setTrace(XCCTrace trace) {
+        this.trace = trace;
+    }
+
+    // =================================================================== //
+    // Matrix initialization operations.
+
+    @Override
+    public void addOption(final O option) {
+        ensureOpen();
+        problem.addOption(option);
+    }
+
+    // =================================================================== //
+    // The XCC solution.
+
+    @Override
+    public void search(
+            final Consumer<List<O>> solutionConsumer,
+            final List<O> preSelectedOptions,
+            final BooleanSupplier emergencyBrake) {
+        start(solutionConsumer, preSelectedOptions, emergencyBrake);
+        while (step(Long.MAX_VALUE)) {
+            // Keep going.
+        }
+    }
+
+    /**
+     * Search with pre-selected options given by their ids in the problem.
+     * The items of the options are read from the node tables of the
+     * problem instead of the item provider, so this is the cheapest way
+     * to run many short searches, for example one for each puzzle of a
+     * batch.
+     *
+     * @throws IndexOutOfBoundsException
+     *      If some id is not an option of the problem.
+     */
+    public void search(
+            final Consumer<List<O>> solutionConsumer,
+            final int[] preSelectedOptions,
+            final BooleanSupplier emergencyBrake) {
+        start(solutionConsumer, preSelectedOptions, emergencyBrake);
+        while (step(Long.MAX_VALUE)) {
+            // Keep going.
+        }
+    }
+
+    /**
+     * Start a search. Nothing is searched before {@link #step(long)} is
+     * called.
+     *
+     * @param solutionConsumer
+     *      The consumer which collects the results. Cannot be null.
+     *
+     * @param preSelectedOptions
+     *      The options that are pre-selected to be part of the solution.
+     *      Cannot be null. Can be empty.
+     *
+     * @param emergencyBrake
+     *      A boolean supplier which is checked on every node of the search
+     *      tree. When this supplier returns true, the search is stopped.
+     *      Cannot be null.
+     *
+     * @throws IllegalStateException
+     *      A previous search is still in progress, or it was interrupted
+     *      by an exception and the matrix was left dirty.
+     */
+    public void start(
+            final Consumer<List<O>> solutionConsumer,
+            final List<O> preSelectedOptions,
+            final BooleanSupplier emergencyBrake) {
+        Objects.requireNonNull(preSelectedOptions);
+        Objects.requireNonNull(solutionConsumer);
+        Objects.requireNonNull(emergencyBrake);
+
+        ensureClean();
+        if (matrix == null) {
+            matrix = ArrayMatrix.build("IterativeXCC", problem);
+        }
+
+        start(new IterativeSearch<>(
+                problem, matrix, preSelectedOptions, trace),
+                solutionConsumer, emergencyBrake);
+    }
+
+    /**
+     * Start a search with pre-selected options given by their ids in the
+     * problem.
+     *
+     * @throws IndexOutOfBoundsException
+     *      If some id is not an option of the problem.
+     *
+     * @see #start(Consumer, List, BooleanSupplier)
+     */
+    public void start(
+            final Consumer<List<O>> solutionConsumer,
+            final int[] preSelectedOptions,
+            final BooleanSupplier emergencyBrake) {
+        Objects.requireNonNull(preSelectedOptions);
+        Objects.requireNonNull(solutionConsumer);
+        Objects.requireNonNull(emergencyBrake);
+
+        ensureClean();
+        if (matrix == null) {
+            matrix = ArrayMatrix.build("IterativeXCC", problem);
+        }
+
+        start(new IterativeSearch<>(
+                problem, matrix, preSelectedOptions, trace),
+                solutionConsumer, emergencyBrake);
+    }
+
+    /**
+     * Start a search whose pre-selected items have been covered. The
+     * matrix is dirty from now on until the search finishes.
+     */
+    private void start(
+            final IterativeSearch<O> search,
+            final Consumer<List<O>> solutionConsumer,
+            final BooleanSupplier emergencyBrake) {
+        dirty = true;
+
+        this.search = search;
+        search.solutionConsumer = solutionConsumer;
+        search.emergencyBrake = emergencyBrake;
+
+        if (trace != null) {
+            trace.onSearchStarted();
+        }
+    }
+
+    /**
+     * Continue the search in progress.
+     *
+     * @param maxNodes
+     *      The maximum number of nodes of the search tree to visit before
+     *      returning.
+     *
+     * @return
+     *      True if the search was paused and can be continued by calling
+     *      this method again. False if the search has finished, either
+     *      because the whole tree was searched or because the emergency
+     *      brake was pulled. The matrix is clean again after that.
+     *
+     * @throws IllegalStateException
+     *      There is no search in progress.
+     */
+    public boolean step(final long maxNodes) {
+        if (maxNodes <= 0) {
+            throw new IllegalArgumentException("maxNodes must be positive");
+        }
+        if (search == null) {
+            throw new IllegalStateException("no search in progress");
+        }
+
+        final boolean running;
+        try {
+            running = search.run(maxNodes, false);
+        } catch (RuntimeException | Error ex) {
+            // The matrix is left dirty.
+            search = null;
+            throw ex;
+        }
+
+        if (!running) {
+            search = null;
+            dirty = false;
+        }
+        return running;
+    }
+
+    /**
+     * Is there a search in progress?
+     */
+    public boolean isRunning() {
+        return search != null;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>The stream searches its own copy of the matrix, so it does not
+     * make this instance dirty and several streams can be used at the
+     * same time. The matrix is locked when the first stream is created.
+     * The solutions are not ordered in parallel streams.</p>
+     *
+     * @throws IllegalStateException
+     *      A search started with {@link #start(Consumer, List,
+     *      BooleanSupplier)} is still in progress, or the matrix was left
+     *      dirty.
+     */
+    @Override
+    public Stream<List<O>> solutions(final List<O> preSelectedOptions) {
+        Objects.requireNonNull(preSelectedOptions);
+        ensureClean();
+
+        if (matrix == null) {
+            matrix = ArrayMatrix.build("IterativeXCC", problem);
+        }
+
+        return IterativeSearch.stream(
+                problem, matrix.copy(), preSelectedOptions);
+    }
+
+    // =================================================================== //
+    // Auxiliary methods.
+
+    private void ensureClean() {
+        if (search != null) {
+            throw new IllegalStateException("search in progress");
+        }
+        if (dirty) {
+            throw new IllegalStateException("matrix is dirty");
+        }
+    }
+
+    private void ensureOpen() {
+        if (matrix != null) {
+            throw new IllegalStateException("matrix is locked");
+        }
+    }
+}
@@ -1,8 +1,10 @@
 package fi.iki.asb.xcc;
 
+import java.math.BigInteger;
 import java.util.*;
 import java.util.function.BooleanSupplier;
 import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * A generic exact cover with color solver. An implementation of Knuth's
@@ -26,6 +28,27 @@ public final class LinkedXCC<O> implements XCC<O> {
      */
     private static final Object PURIFIED = new Object();
 
+    /**
+     * Counters of the lookahead during the last search.
+     *
+     * @param forcedOptions
+     *      Number of options that were committed without a recursion
+     *      frame, because they were the only option of some item.
+     *
+     * @param deadEnds
+     *      Number of options that were not descended into, because
+     *      committing them left some primary item without options.
+     */
+    public record LookaheadCounters(long forcedOptions, long deadEnds) {
+
+        /**
+         * Number of search tree nodes that the lookahead saved.
+         */
+        public long nodesSaved() {
+            return forcedOptions + deadEnds;
+        }
+    }
+
     /**
      * A constraint node in the matrix.
      *
@@ -38,6 +61,12 @@ public final class LinkedXCC<O> implements XCC<O> {
         Node<OO> up, down, left, right;
         Object color = null;
 
+        /**
+         * The number of the option in the order the options were added.
+         * Used to restore the original order of the nodes in a column.
+         */
+        int index = 0;
+
         Node(Column<OO> column, OO option) {
             this.column = column;
             this.option = option;
@@ -63,6 +92,24 @@ public final class LinkedXCC<O> implements XCC<O> {
          */
         int size = 0;
 
+        /**
+         * Is this a primary item column. Only primary item columns are kept
+         * in the item buckets.
+         */
+        boolean primary = false;
+
+        /**
+         * Previous column in the same item bucket, or null if this is the
+         * first one.
+         */
+        Column<OO> bucketPrev;
+
+        /**
+         * Next column in the same item bucket, or null if this is the last
+         * one.
+         */
+        Column<OO> bucketNext;
+
         Column(Object item) {
             super(null, null);
             this.item = item;
@@ -133,14 +180,119 @@ public final class LinkedXCC<O> implements XCC<O> {
     private Consumer<List<O>> solutionConsumer;
 
     /**
-     * Current emergency brake. Cleared when algorithm finishes. As with
-     * <code>solution</code> this is stored as an instance field to reduce
-     * the number of parameters in the recursive calls.
+     * Enforces the limits of the current search, including the emergency
+     * brake. Cleared when algorithm finishes. As with <code>solution</code>
+     * this is stored as an instance field to reduce the number of
+     * parameters in the recursive calls.
      */
-    private BooleanSupplier emergencyBrake;
+    private SearchMonitor monitor;
 
     private XCCTrace trace = null;
 
+    /**
+     * Strategy for choosing the item to cover, or null for the built-in
+     * MRV heuristic.
+     */
+    private ItemChooser itemChooser = null;
+
+    /**
+     * Keep the active primary items in buckets by their size during the
+     * search.
+     */
+    private boolean itemBuckets = false;
+
+    /**
+     * Index is a column size, value is the first column in the bucket of
+     * that size. Null unless a search with item buckets is running.
+     */
+    private Column<O>[] buckets;
+
+    /**
+     * Detect empty items and force the options of single-option items as
+     * soon as options are committed.
+     */
+    private boolean lookahead = false;
+
+    /**
+     * Number of active primary columns without nodes. Only maintained if
+     * lookahead is enabled.
+     */
+    private int emptyColumns;
+
+    /**
+     * Number of active primary columns with one node. Only maintained if
+     * lookahead is enabled.
+     */
+    private int singletonColumns;
+
+    /**
+     * The options committed by the lookahead, in the order they were
+     * committed.
+     */
+    private Node<O>[] forced;
+
+    /**
+     * Number of options in <code>forced</code>.
+     */
+    private int forcedTop;
+
+    private long forcedOptions;
+
+    private long deadEnds;
+
+    /**
+     * Options in the order they were added. Compiled into
+     * <code>problem</code> when the solutions are streamed.
+     */
+    private final List<O> options = new ArrayList<>();
+
+    /**
+     * Number of nodes in the matrix, for the flight recorder.
+     */
+    private long nodeCount = 0;
+
+    /**
+     * Time when the first option was added after the previous search, for
+     * the flight recorder. Zero if no options have been added since.
+     */
+    private long firstOptionTime = 0;
+
+    /**
+     * The options compiled for streaming, or null if the solutions have
+     * not been streamed yet.
+     */
+    private CompiledProblem<O> problem = null;
+
+    /**
+     * Seed of the randomized search, or null if the search is not
+     * randomized.
+     */
+    private Long randomSeed = null;
+
+    private RestartPolicy restartPolicy = null;
+
+    /**
+     * Number of restarts during the last search.
+     */
+    private long restarts;
+
+    // Run state of a search with restarts.
+
+    private boolean restart;
+
+    private long runNodes;
+
+    private long runLimit;
+
+    private boolean runFound;
+
+    private boolean runAborted;
+
+    /**
+     * Statistics of the running search, or null if they are not collected.
+     */
+    private SearchStatistics.Collector statistics = null;
+
     // =================================================================== //
 
     /**
@@ -159,6 +311,107 @@ public final class LinkedXCC<O> implements XCC<O> {
         this.trace = trace;
     }
 
+    /**
+     * Set the strategy for choosing the item that is covered next.
+     *
+     * @param itemChooser
+     *      The strategy, or null for the default "minimum remaining
+     *      values" heuristic, which is the same as {@link
+     *      ItemChooser#mrv()} but faster.
+     *
+     * @throws IllegalStateException If the matrix is dirty.
+     */
+    public void setItemChooser(final ItemChooser itemChooser) {
+        ensureClean();
+        this.itemChooser = itemChooser;
+    }
+
+    /**
+     * Keep the active primary items in buckets by their size, so that a
+     * column with the fewest nodes is found without scanning all the
+     * active columns. The buckets are updated whenever the size of a
+     * column changes, which makes each update a little slower, so this
+     * pays off for problems with thousands of primary items. The solutions
+     * are found in a different order than without buckets. The buckets are
+     * not used if an {@link ItemChooser} has been set.
+     *
+     * @throws IllegalStateException If the matrix is dirty.
+     */
+    public void setItemBuckets(final boolean itemBuckets) {
+        ensureClean();
+        this.itemBuckets = itemBuckets;
+    }
+
+    /**
+     * Look ahead after each option is committed. A branch in which some
+     * primary item has no options left is abandoned immediately, and the
+     * only option of an item is committed without a recursion frame of
+     * its own. The counts of empty and single-option items are updated
+     * whenever the size of a column changes, which makes each update a
+     * little slower, so whether this pays off depends on the problem. Use
+     * {@link #lookaheadCounters()} to see how many nodes it saved.
+     *
+     * <p>The single-option options are not reported to the trace.</p>
+     *
+     * @throws IllegalStateException If the matrix is dirty.
+     */
+    public void setLookahead(final boolean lookahead) {
+        ensureClean();
+        this.lookahead = lookahead;
+    }
+
+    /**
+     * Randomize the search. Before the search, the options of each item
+     * are shuffled and, unless an {@link ItemChooser} has been set, the
+     * ties of the "minimum remaining values" heuristic are broken randomly
+     * as in {@link ItemChooser#random(long)}. The item buckets are not
+     * used in a randomized search. The same seed always gives the same
+     * solutions in the same order. The original order of the options is
+     * restored after the search.
+     *
+     * @param randomSeed
+     *      The seed, or null to search in the order the options were added.
+     *
+     * @throws IllegalStateException If the matrix is dirty.
+     */
+    public void setRandomSeed(final Long randomSeed) {
+        ensureClean();
+        this.randomSeed = randomSeed;
+    }
+
+    /**
+     * Restart a randomized search with a new random order when a run
+     * exceeds its node limit. A run that has found a solution is never
+     * abandoned, so no solution is reported twice, but the solutions of
+     * the abandoned runs are not searched again either: with restarts the
+     * search is meant for finding the first solution quickly, not for
+     * enumerating all of them. The policy is not used if the search is
+     * not randomized.
+     *
+     * @param restartPolicy
+     *      The node limits of the runs, or null to never restart.
+     *
+     * @throws IllegalStateException If the matrix is dirty.
+     */
+    public void setRestartPolicy(final RestartPolicy restartPolicy) {
+        ensureClean();
+        this.restartPolicy = restartPolicy;
+    }
+
+    /**
+     * Get the number of restarts during the last search.
+     */
+    public long restarts() {
+        return restarts;
+    }
+
+    /**
+     * Get the counters of the lookahead during the last search or count.
+     */
+    public LookaheadCounters lookaheadCounters() {
+        return new LookaheadCounters(forcedOptions, deadEnds);
+    }
+
     @Override
     public boolean isDirty() {
         return dirty;
@@ -179,6 +432,9 @@ public final class LinkedXCC<O> implements XCC<O> {
     @Override
     public void addOption(final O option) {
         ensureClean();
+        if (firstOptionTime == 0) {
+            firstOptionTime = System.nanoTime();
+        }
 
         // Needed for linking nodes horizontally.
         Node<O> previousNode = null;
@@ -188,6 +444,7 @@ public final class LinkedXCC<O> implements XCC<O> {
         for (Object item: itemProvider.from(option)) {
             final Column<O> column = getOrCreateColumn(item);
             final Node<O> newNode = new Node<>(column, option);
+            newNode.index = options.size();
 
             if (isSecondary(item)) {
                 newNode.color = ((SecondaryItem) item).getColor();
@@ -208,7 +465,10 @@ public final class LinkedXCC<O> implements XCC<O> {
                 previousNode.right = newNode;
             }
             previousNode = newNode;
+            nodeCount++;
         }
+
+        options.add(option);
     }
 
     /**
@@ -218,6 +478,7 @@ public final class LinkedXCC<O> implements XCC<O> {
         Column<O> column = itemColumns.get(item);
         if (column == null) {
             column = new Column<>(item);
+            column.primary = isPrimary(item);
 
             // Secondary items are not mapped to the header row. Thus, they
             // get ignored when the search method checks if the matrix is
@@ -269,60 +530,237 @@ public final class LinkedXCC<O> implements XCC<O> {
             final Consumer<List<O>> solutionConsumer,
             final List<O> preSelectedOptions,
             final BooleanSupplier emergencyBrake) {
+        Objects.requireNonNull(emergencyBrake);
+        runSearch(solutionConsumer, preSelectedOptions,
+                SearchMonitor.of(emergencyBrake));
+    }
+
+    /**
+     * Search within limits. The limits are checked directly in the search
+     * loop, instead of through an emergency brake. With restarts the node
+     * budget covers all the runs.
+     */
+    @Override
+    public SearchResult search(
+            final Consumer<List<O>> solutionConsumer,
+            final List<O> preSelectedOptions,
+            final SearchLimits limits) {
+        Objects.requireNonNull(solutionConsumer);
+        final SearchMonitor monitor = new SearchMonitor(limits);
+        runSearch(monitor.wrap(solutionConsumer), preSelectedOptions, monitor);
+        return monitor.result();
+    }
+
+    private void runSearch(
+            final Consumer<List<O>> solutionConsumer,
+            final List<O> preSelectedOptions,
+            final SearchMonitor monitor) {
         Objects.requireNonNull(preSelectedOptions);
         Objects.requireNonNull(solutionConsumer);
-        Objects.requireNonNull(emergencyBrake);
 
         ensureClean();
         dirty = true;
 
+        final Random random = (randomSeed != null)
+                ? new Random(randomSeed)
+                : null;
+        restart = random != null && restartPolicy != null;
+        restarts = 0;
+
+        final long start = System.nanoTime();
+        final SearchRecorder.MatrixEvent event = SearchRecorder.matrixStarted();
+        if (itemBuckets && itemChooser == null && random == null) {
+            initBuckets();
+        }
+        if (lookahead) {
+            initLookahead();
+        }
+        recordMatrix(event, start);
+
         // Find the distinct set of items that are covered by the
-        // pre-selected options and cover them.
+        // pre-selected options.
         final List<Object> hiddenItems = collectHiddenItems(
                 preSelectedOptions);
-        hiddenItems.forEach(i -> coverItem(itemColumns.get(i)));
 
+        final ItemChooser userChooser = itemChooser;
+        final XCCTrace userTrace = trace;
+        final SearchRecorder recorder = SearchRecorder.start(
+                "LinkedXCC", false, preSelectedOptions.size(), trace);
         try {
             this.solution = new LinkedList<>(preSelectedOptions);
-            this.solutionConsumer = solutionConsumer;
-            this.emergencyBrake = emergencyBrake;
+            this.solutionConsumer = restart
+                    ? s -> {
+                        runFound = true;
+                        solutionConsumer.accept(s);
+                    }
+                    : solutionConsumer;
+            this.monitor = monitor;
+
+            if (recorder != null) {
+                this.trace = recorder;
+                this.solutionConsumer = recorder.wrap(this.solutionConsumer);
+            }
 
             if (trace != null) {
                 trace.onSearchStarted();
             }
 
-            recursiveSearch();
+            for (int run = 0; ; run++) {
+                // The nodes can only be reordered when no item is covered.
+                if (random != null) {
+                    reorderColumns(random);
+                    if (userChooser == null) {
+                        itemChooser = ItemChooser.random(random.nextLong());
+                    }
+                }
+                if (restart) {
+                    runNodes = 0;
+                    runLimit = restartPolicy.nodeLimit(run);
+                    runFound = false;
+                    runAborted = false;
+                }
+
+                for (Object i : hiddenItems) {
+                    if (statistics != null) {
+                        coverItemWithStatistics(itemColumns.get(i));
+                    } else {
+                        coverItem(itemColumns.get(i));
+                    }
+                }
+                if (statistics != null) {
+                    recursiveSearchWithStatistics();
+                } else {
+                    recursiveSearch();
+                }
+
+                // Uncover the initial hidden columns in reverse order to
+                // restore the matrix to original state.
+                hiddenItems.reversed().forEach(
+                        i -> uncoverItem(itemColumns.get(i)));
+
+                if (!restart || !runAborted || monitor.isStopped()) {
+                    break;
+                }
+                restarts++;
+            }
+
+            if (random != null) {
+                reorderColumns(null);
+            }
         } finally {
             this.solution = null;
             this.solutionConsumer = null;
-            this.emergencyBrake = null;
+            this.monitor = null;
+            this.itemChooser = userChooser;
+            this.trace = userTrace;
+            if (recorder != null) {
+                recorder.end();
+            }
         }
 
-        // Uncover the initial hidden columns in reverse order to restore
-        // the matrix to original state.
-        hiddenItems.reversed().forEach(i -> uncoverItem(itemColumns.get(i)));
-
+        buckets = null;
+        forced = null;
         dirty = false;
     }
 
+    /**
+     * Search the solutions and collect the statistics of the search.
+     */
+    public SearchStatistics searchWithStatistics(
+            final Consumer<List<O>> solutionConsumer) {
+        return searchWithStatistics(solutionConsumer, new ArrayList<>(), () -> false);
+    }
+
+    /**
+     * Search the solutions and collect the statistics of the search. The
+     * statistics are counted in a separate instrumented copy of the search
+     * loop, so the operations of {@link #search} do not check for them.
+     * The statistics include the forced options of the lookahead and the
+     * nodes of all runs with restarts.
+     *
+     * @throws IllegalStateException
+     *      A previous <code>search</code> was interrupted by an exception
+     *      and the matrix was left dirty. The XCC instance must be
+     *      recreated.
+     */
+    public SearchStatistics searchWithStatistics(
+            final Consumer<List<O>> solutionConsumer,
+            final List<O> preSelectedOptions,
+            final BooleanSupplier emergencyBrake) {
+        Objects.requireNonNull(solutionConsumer);
+
+        final XCCTrace userTrace = trace;
+        final SearchStatistics.Collector collector
+                = new SearchStatistics.Collector(userTrace);
+        try {
+            this.statistics = collector;
+            this.trace = collector;
+            search(collector.wrap(solutionConsumer), preSelectedOptions,
+                    emergencyBrake);
+        } finally {
+            this.statistics = null;
+            this.trace = userTrace;
+        }
+        return collector.toStatistics();
+    }
+
+    /**
+     * Record the options that have been added since the previous search.
+     * The matrix is built as the options are added, so the construction
+     * time covers the building and the event itself only covers the
+     * preparation of the search that started at the given time.
+     */
+    private void recordMatrix(
+            final SearchRecorder.MatrixEvent event,
+            final long start) {
+        if (firstOptionTime != 0) {
+            SearchRecorder.matrixBuilt(event, "LinkedXCC", options.size(),
+                    itemColumns.size(), nodeCount, start, firstOptionTime);
+            firstOptionTime = 0;
+        }
+    }
+
+    /**
+     * Count a node of a run with restarts and check if the run has
+     * exceeded its node limit without finding a solution. Called once for
+     * each node.
+     */
+    private boolean runExhausted() {
+        if (!runAborted && !runFound && ++runNodes > runLimit) {
+            runAborted = true;
+        }
+        return runAborted;
+    }
+
     /**
      * Entry point for the recursive search (step C2).
      */
     private void recursiveSearch() {
-        if (emergencyBrake.getAsBoolean()) {
+        // The node of an abandoned run is not counted by the monitor.
+        if ((restart && runExhausted()) || monitor.stop()) {
             return;
         }
 
+        final int forcedCount = lookahead ? commitForcedOptions() : 0;
+
         // If there are no uncovered columns, the matrix is empty
         // and the list contains a solution (step C8).
         if (primaryHead.right == primaryHead) {
             solutionConsumer.accept(Collections.unmodifiableList(
                      solution));
+            uncommitForcedOptions(forcedCount);
+            return;
+        }
+
+        // The forced options left some item without options.
+        if (lookahead && emptyColumns > 0) {
+            deadEnds++;
+            uncommitForcedOptions(forcedCount);
             return;
         }
 
         // Select and cover column (step C3 and C4).
-        final Column<O> column = findColumn();
+        final Column<O> column = nextColumn();
 
         if (trace != null) {
             trace.onRecursionEntered(column.size);
@@ -356,9 +794,13 @@ public final class LinkedXCC<O> implements XCC<O> {
                 commitItem(n1);
             }
 
-            solution.add(n.option);
-            recursiveSearch();
-            solution.removeLast();
+            if (lookahead && emptyColumns > 0) {
+                deadEnds++;
+            } else {
+                solution.add(n.option);
+                recursiveSearch();
+                solution.removeLast();
+            }
 
             // Rollback changes made before recursion.
             for (Node<O> n1 = n.left; n1 != n; n1 = n1.left) {
@@ -372,6 +814,239 @@ public final class LinkedXCC<O> implements XCC<O> {
         if (trace != null) {
             trace.onRecursionEnded();
         }
+
+        uncommitForcedOptions(forcedCount);
+    }
+
+    /**
+     * Same as {@link #recursiveSearch()}, but counts the operations in the
+     * statistics before doing them.
+     */
+    private void recursiveSearchWithStatistics() {
+        if ((restart && runExhausted()) || monitor.stop()) {
+            return;
+        }
+
+        final int forcedCount = lookahead ? commitForcedOptions() : 0;
+
+        if (primaryHead.right == primaryHead) {
+            solutionConsumer.accept(Collections.unmodifiableList(
+                     solution));
+            uncommitForcedOptions(forcedCount);
+            return;
+        }
+
+        if (lookahead && emptyColumns > 0) {
+            deadEnds++;
+            uncommitForcedOptions(forcedCount);
+            return;
+        }
+
+        if (itemChooser == null && buckets == null) {
+            statistics.mems += findColumnMems();
+        }
+        final Column<O> column = nextColumn();
+
+        trace.onRecursionEntered(column.size);
+
+        coverItemWithStatistics(column);
+        for (Node<O> n = column.down; n != column; n = n.down) {
+            trace.onItemSelected();
+
+            for (Node<O> n1 = n.right; n1 != n; n1 = n1.right) {
+                commitItemWithStatistics(n1);
+            }
+
+            if (lookahead && emptyColumns > 0) {
+                deadEnds++;
+            } else {
+                solution.add(n.option);
+                recursiveSearchWithStatistics();
+                solution.removeLast();
+            }
+
+            for (Node<O> n1 = n.left; n1 != n; n1 = n1.left) {
+                uncommit(n1);
+            }
+        }
+        uncoverItem(column);
+
+        trace.onRecursionEnded();
+
+        uncommitForcedOptions(forcedCount);
+    }
+
+    // =================================================================== //
+    // Streaming solutions.
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>The linked matrix can only be searched recursively, so the stream
+     * searches an array based matrix that is compiled from the options
+     * when the first stream is created. The options added after that are
+     * compiled when the next stream is created. The stream uses the
+     * default "minimum remaining values" heuristic, and finds the
+     * solutions in the same order as {@link #search(Consumer)} does
+     * without an item chooser, item buckets or randomization. The stream
+     * does not make this instance dirty and several streams can be used
+     * at the same time. The solutions are not ordered in parallel
+     * streams.</p>
+     */
+    @Override
+    public Stream<List<O>> solutions(final List<O> preSelectedOptions) {
+        Objects.requireNonNull(preSelectedOptions);
+        ensureClean();
+
+        if (problem == null) {
+            problem = new CompiledProblem<>(itemProvider);
+        }
+        for (int o = problem.optionCount(); o < options.size(); o++) {
+            problem.addOption(options.get(o));
+        }
+
+        return IterativeSearch.stream(
+                problem, ArrayMatrix.build("LinkedXCC", problem),
+                preSelectedOptions);
+    }
+
+    // =================================================================== //
+    // Counting solutions.
+
+    /**
+     * Count the solutions without maintaining the solution or calling a
+     * consumer.
+     *
+     * @throws IllegalStateException
+     *      A previous <code>search</code> was interrupted by an exception
+     *      and the matrix was left dirty. The XCC instance must be
+     *      recreated.
+     */
+    @Override
+    public BigInteger countSolutionsExact(final List<O> preSelectedOptions) {
+        Objects.requireNonNull(preSelectedOptions);
+
+        ensureClean();
+        dirty = true;
+
+        final long start = System.nanoTime();
+        final SearchRecorder.MatrixEvent event = SearchRecorder.matrixStarted();
+        if (itemBuckets && itemChooser == null) {
+            initBuckets();
+        }
+        if (lookahead) {
+            initLookahead();
+        }
+        recordMatrix(event, start);
+
+        final List<Object> hiddenItems = collectHiddenItems(
+                preSelectedOptions);
+        hiddenItems.forEach(i -> coverItem(itemColumns.get(i)));
+
+        final XCCTrace userTrace = trace;
+        final SearchRecorder recorder = SearchRecorder.start(
+                "LinkedXCC", true, preSelectedOptions.size(), trace);
+        if (recorder != null) {
+            trace = recorder;
+        }
+
+        if (trace != null) {
+            trace.onSearchStarted();
+        }
+
+        final SolutionCounter counter = new SolutionCounter();
+        try {
+            recursiveCount(counter);
+        } finally {
+            trace = userTrace;
+            if (recorder != null) {
+                recorder.end(counter.value());
+            }
+        }
+
+        hiddenItems.reversed().forEach(i -> uncoverItem(itemColumns.get(i)));
+
+        buckets = null;
+        forced = null;
+        dirty = false;
+        return counter.value();
+    }
+
+    /**
+     * Same as {@link #recursiveSearch()}, but only counts the solutions.
+     */
+    private void recursiveCount(final SolutionCounter counter) {
+        final int forcedCount = lookahead ? commitForcedOptions() : 0;
+
+        if (primaryHead.right == primaryHead) {
+            counter.add(1);
+            uncommitForcedOptions(forcedCount);
+            return;
+        }
+
+        // If only one primary item is left, each of the options that are
+        // still in its column completes a solution. There is no need to
+        // descend into them.
+        if (primaryHead.right.right == primaryHead) {
+            counter.add(((Column<O>) primaryHead.right).size);
+            uncommitForcedOptions(forcedCount);
+            return;
+        }
+
+        if (lookahead && emptyColumns > 0) {
+            deadEnds++;
+            uncommitForcedOptions(forcedCount);
+            return;
+        }
+
+        final Column<O> column = nextColumn();
+
+        if (trace != null) {
+            trace.onRecursionEntered(column.size);
+        }
+
+        coverItem(column);
+
+        for (Node<O> n = column.down; n != column; n = n.down) {
+            if (trace != null) {
+                trace.onItemSelected();
+            }
+
+            for (Node<O> n1 = n.right; n1 != n; n1 = n1.right) {
+                commitItem(n1);
+            }
+
+            if (lookahead && emptyColumns > 0) {
+                deadEnds++;
+            } else {
+                recursiveCount(counter);
+            }
+
+            for (Node<O> n1 = n.left; n1 != n; n1 = n1.left) {
+                uncommit(n1);
+            }
+        }
+
+        uncoverItem(column);
+
+        if (trace != null) {
+            trace.onRecursionEnded();
+        }
+
+        uncommitForcedOptions(forcedCount);
+    }
+
+    /**
+     * Choose the column to cover (step C3).
+     */
+    private Column<O> nextColumn() {
+        if (itemChooser != null) {
+            return chooseColumn();
+        } else if (buckets != null) {
+            return bucketColumn();
+        } else {
+            return findColumn();
+        }
     }
 
     /**
@@ -396,6 +1071,222 @@ public final class LinkedXCC<O> implements XCC<O> {
         return fewest;
     }
 
+    /**
+     * Find column using the item chooser.
+     */
+    private Column<O> chooseColumn() {
+        itemChooser.start();
+        Column<O> chosen = (Column<O>) primaryHead.right;
+        for (Column<O> candidate = chosen;
+                candidate != primaryHead;
+                candidate = (Column<O>) candidate.right) {
+            if (itemChooser.offer(candidate.item, candidate.size)) {
+                chosen = candidate;
+            }
+            if (itemChooser.isDone()) {
+                break;
+            }
+        }
+
+        return chosen;
+    }
+
+    /**
+     * Find column with the fewest nodes from the item buckets. The search
+     * usually stops at the buckets of size zero or one.
+     */
+    private Column<O> bucketColumn() {
+        int size = 0;
+        while (buckets[size] == null) {
+            size++;
+        }
+        return buckets[size];
+    }
+
+    // =================================================================== //
+    // Item buckets.
+
+    /**
+     * Put the primary item columns in the buckets. The columns are added
+     * in reverse order, so each bucket starts in the order of the header
+     * row.
+     */
+    @SuppressWarnings("unchecked")
+    private void initBuckets() {
+        int maxSize = 0;
+        for (Column<O> c = (Column<O>) primaryHead.right; c != primaryHead;
+                c = (Column<O>) c.right) {
+            maxSize = Math.max(maxSize, c.size);
+        }
+
+        buckets = (Column<O>[]) new Column<?>[maxSize + 1];
+        for (Column<O> c = (Column<O>) primaryHead.left; c != primaryHead;
+                c = (Column<O>) c.left) {
+            bucket(c);
+        }
+    }
+
+    private void bucket(final Column<O> column) {
+        final Column<O> first = buckets[column.size];
+        column.bucketPrev = null;
+        column.bucketNext = first;
+        if (first != null) {
+            first.bucketPrev = column;
+        }
+        buckets[column.size] = column;
+    }
+
+    private void unbucket(final Column<O> column) {
+        final Column<O> next = column.bucketNext;
+        final Column<O> prev = column.bucketPrev;
+        if (prev == null) {
+            buckets[column.size] = next;
+        } else {
+            prev.bucketNext = next;
+        }
+        if (next != null) {
+            next.bucketPrev = prev;
+        }
+    }
+
+    // =================================================================== //
+    // Lookahead.
+
+    /**
+     * Count the empty and single-option primary columns and reset the
+     * counters.
+     */
+    @SuppressWarnings("unchecked")
+    private void initLookahead() {
+        emptyColumns = 0;
+        singletonColumns = 0;
+        for (Column<O> c = (Column<O>) primaryHead.right; c != primaryHead;
+                c = (Column<O>) c.right) {
+            columnActivated(c);
+        }
+
+        forced = (Node<O>[]) new Node<?>[16];
+        forcedTop = 0;
+        forcedOptions = 0;
+        deadEnds = 0;
+    }
+
+    /**
+     * Commit the only options of the single-option items, until there are
+     * no such items left or some item becomes empty. The options are
+     * added to the solution, if there is one.
+     *
+     * @return The number of options committed.
+     */
+    private int commitForcedOptions() {
+        int count = 0;
+        while (emptyColumns == 0 && singletonColumns > 0) {
+            final Column<O> column = findSingleton();
+            final Node<O> node = column.down;
+
+            if (statistics != null) {
+                coverItemWithStatistics(column);
+                for (Node<O> n = node.right; n != node; n = n.right) {
+                    commitItemWithStatistics(n);
+                }
+            } else {
+                coverItem(column);
+                for (Node<O> n = node.right; n != node; n = n.right) {
+                    commitItem(n);
+                }
+            }
+            if (solution != null) {
+                solution.add(node.option);
+            }
+
+            if (forcedTop == forced.length) {
+                forced = Arrays.copyOf(forced, 2 * forcedTop);
+            }
+            forced[forcedTop++] = node;
+            count++;
+        }
+
+        forcedOptions += count;
+        return count;
+    }
+
+    /**
+     * Reverse of {@link #commitForcedOptions()}.
+     */
+    private void uncommitForcedOptions(final int count) {
+        for (int k = 0; k < count; k++) {
+            final Node<O> node = forced[--forcedTop];
+            forced[forcedTop] = null;
+
+            if (solution != null) {
+                solution.removeLast();
+            }
+            for (Node<O> n = node.left; n != node; n = n.left) {
+                uncommit(n);
+            }
+            uncoverItem(node.column);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Column<O> findSingleton() {
+        if (buckets != null) {
+            return buckets[1];
+        }
+
+        Column<O> column = (Column<O>) primaryHead.right;
+        while (column.size != 1) {
+            column = (Column<O>) column.right;
+        }
+        return column;
+    }
+
+    /**
+     * Update the lookahead counts when a primary column is linked back to
+     * the header row.
+     */
+    private void columnActivated(final Column<O> column) {
+        if (column.size == 0) {
+            emptyColumns++;
+        } else if (column.size == 1) {
+            singletonColumns++;
+        }
+    }
+
+    /**
+     * Update the lookahead counts when a primary column is unlinked from
+     * the header row.
+     */
+    private void columnDeactivated(final Column<O> column) {
+        if (column.size == 0) {
+            emptyColumns--;
+        } else if (column.size == 1) {
+            singletonColumns--;
+        }
+    }
+
+    /**
+     * Change the size of a primary column and keep the buckets and the
+     * lookahead counts up to date.
+     */
+    private void resize(final Column<O> column, final int delta) {
+        if (buckets != null) {
+            unbucket(column);
+        }
+        if (lookahead) {
+            columnDeactivated(column);
+        }
+
+        column.size += delta;
+
+        if (buckets != null) {
+            bucket(column);
+        }
+        if (lookahead) {
+            columnActivated(column);
+        }
+    }
+
     // =================================================================== //
     // Operations for manipulating the matrix during search.
 
@@ -454,6 +1345,13 @@ public final class LinkedXCC<O> implements XCC<O> {
      * there when the algorithm backtracks.</p>
      */
     private void coverItem(final Column<O> column) {
+        if (buckets != null && column.primary) {
+            unbucket(column);
+        }
+        if (lookahead && column.primary) {
+            columnDeactivated(column);
+        }
+
         for (Node<O> n = column.down; n != column; n = n.down) {
             hideOption(n);
         }
@@ -475,7 +1373,11 @@ public final class LinkedXCC<O> implements XCC<O> {
             if (n.color != PURIFIED) {
                 n.down.up = n.up;
                 n.up.down = n.down;
-                n.column.size--;
+                if (n.column.primary && (buckets != null || lookahead)) {
+                    resize(n.column, -1);
+                } else {
+                    n.column.size--;
+                }
             }
         }
     }
@@ -522,6 +1424,13 @@ public final class LinkedXCC<O> implements XCC<O> {
 
         column.right.left = column;
         column.left.right = column;
+
+        if (buckets != null && column.primary) {
+            bucket(column);
+        }
+        if (lookahead && column.primary) {
+            columnActivated(column);
+        }
     }
 
     /**
@@ -530,13 +1439,124 @@ public final class LinkedXCC<O> implements XCC<O> {
     private void unhideOption(final Node<O> node) {
         for (Node<O> n = node.left; n != node; n = n.left) {
             if (n.color != PURIFIED) {
-                n.column.size++;
+                if (n.column.primary && (buckets != null || lookahead)) {
+                    resize(n.column, +1);
+                } else {
+                    n.column.size++;
+                }
                 n.down.up = n;
                 n.up.down = n;
             }
         }
     }
 
+    // =================================================================== //
+    // Statistics. The instrumented search counts each operation just before
+    // doing it. The inverse operations access the same fields in the same
+    // state of the matrix, so the mems of an operation are counted twice
+    // and the inverse operations are not instrumented at all.
+
+    private void coverItemWithStatistics(final Column<O> column) {
+        long mems = coverMems(column);
+        for (Node<O> n = column.down; n != column; n = n.down) {
+            statistics.hides++;
+            mems += hideMems(n);
+        }
+        statistics.covers++;
+        statistics.mems += 2 * mems;
+        coverItem(column);
+    }
+
+    private void commitItemWithStatistics(final Node<O> node) {
+        if (node.color == null) {
+            coverItemWithStatistics(node.column);
+        } else if (node.color != PURIFIED) {
+            purifyItemWithStatistics(node);
+        }
+    }
+
+    private void purifyItemWithStatistics(final Node<O> node) {
+        final Column<O> column = node.column;
+        long mems = purifyMems(node);
+        for (Node<O> n = column.down; n != column; n = n.down) {
+            if (n.color != node.color) {
+                statistics.hides++;
+                mems += hideMems(n);
+            }
+        }
+        statistics.purifies++;
+        statistics.mems += 2 * mems;
+        purifyItem(node);
+    }
+
+    // =================================================================== //
+    // Mems. Each method counts the fields of the nodes that the operation of
+    // the same name reads or writes, given the current state of the matrix.
+    // The item buckets and the lookahead counts are not included.
+
+    private long findColumnMems() {
+        long mems = 1;
+        for (Node<O> c = primaryHead.right; c != primaryHead; c = c.right) {
+            mems += 2;
+        }
+        return mems;
+    }
+
+    private long coverMems(final Column<O> column) {
+        return column.size + 1 + 4;
+    }
+
+    private long purifyMems(final Node<O> node) {
+        return 4 + 2L * node.column.size;
+    }
+
+    private long hideMems(final Node<O> node) {
+        long mems = 0;
+        for (Node<O> n = node.right; n != node; n = n.right) {
+            mems += (n.color != PURIFIED) ? 8 : 2;
+        }
+        return mems;
+    }
+
+    // =================================================================== //
+    // Randomization.
+
+    /**
+     * Put the nodes of each column in the order the options were added
+     * and then shuffle them. Must only be called when no item is covered.
+     *
+     * @param random
+     *      The source of randomness, or null to only restore the original
+     *      order.
+     */
+    @SuppressWarnings("unchecked")
+    private void reorderColumns(final Random random) {
+        final List<Node<O>> nodes = new ArrayList<>();
+        for (Column<O> head : List.of(primaryHead, secondaryHead)) {
+            for (Node<O> c = head.right; c != head; c = c.right) {
+                final Column<O> column = (Column<O>) c;
+
+                nodes.clear();
+                for (Node<O> n = column.down; n != column; n = n.down) {
+                    nodes.add(n);
+                }
+                nodes.sort(Comparator.comparingInt(n -> n.index));
+                if (random != null) {
+                    Collections.shuffle(nodes, random);
+                }
+
+                Node<O> previous = column;
+                for (Node<O> n : nodes) {
+                    previous.down = n;
+                    n.up = previous;
+                    previous = n;
+                }
+                previous.down = column;
+                column.up = previous;
+            }
+        }
+    }
+
     // =================================================================== //
     // Auxiliary methods.
 
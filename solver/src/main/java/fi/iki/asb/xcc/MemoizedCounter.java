@@ -0,0 +1,346 @@
+package fi.iki.asb.xcc;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.SplittableRandom;
+
+/**
+ * Counts the solutions of a problem and memoizes the counts of the
+ * subproblems. The search is the same as in {@link ReferenceXCC}, but the
+ * remaining subproblem is completely determined by the items that are
+ * still active and the colors of the purified secondary items, so when
+ * the same subproblem is reached along another path, for example by
+ * placing the same pieces in a different order, its count is taken from
+ * the cache instead of being searched again.
+ *
+ * <p>The subproblems are identified by a 128-bit fingerprint of the
+ * active items, computed from random keys of the items and colors.
+ * Different subproblems get the same fingerprint with a negligible
+ * probability. If even that is not acceptable, the cache can also store
+ * the full state and compare it on each hit, which takes more memory.</p>
+ *
+ * <p>The cache is kept within a memory limit by evicting the least
+ * recently used counts. Computing the fingerprint takes time proportional
+ * to the number of active items, so the subproblems can be memoized only
+ * on some depths of the search tree.</p>
+ *
+ * <p>This class is <i>not thread safe</i>.</p>
+ *
+ * @param <O>
+ *     The type associated to options.
+ */
+public final class MemoizedCounter<O> {
+
+    /**
+     * Estimated size of a cache entry in bytes: the fingerprint, the entry
+     * record, the count and the hash map entry with its links.
+     */
+    private static final long ENTRY_BYTES = 32 + 24 + 40 + 64;
+
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    /**
+     * 128-bit fingerprint of a subproblem.
+     */
+    private record Fingerprint(long high, long low) { }
+
+    /**
+     * A cached count. The state is only stored if the keys are verified.
+     */
+    private record Entry(int[] state, BigInteger count) { }
+
+    /**
+     * Statistics of the memo cache during one count.
+     *
+     * @param lookups
+     *      Number of times a subproblem was looked up in the cache.
+     *
+     * @param hits
+     *      Number of times the count of the subproblem was in the cache.
+     *
+     * @param collisions
+     *      Number of times the fingerprint was in the cache but the
+     *      verified state was different. Always zero if the keys are not
+     *      verified.
+     *
+     * @param evictions
+     *      Number of counts evicted to keep the cache within the memory
+     *      limit.
+     *
+     * @param entries
+     *      Number of counts in the cache when the count finished.
+     *
+     * @param bytes
+     *      Estimated size of the cache when the count finished.
+     */
+    public record CacheStatistics(
+            long lookups,
+            long hits,
+            long collisions,
+            long evictions,
+            long entries,
+            long bytes) {
+
+        /**
+         * Get the share of the lookups that were hits, or zero if there
+         * were no lookups.
+         */
+        public double hitRate() {
+            return (lookups == 0) ? 0.0 : (double) hits / lookups;
+        }
+    }
+
+    private final CompiledProblem<O> problem;
+
+    private long memoryLimit = 64L * 1024 * 1024;
+
+    private int memoInterval = 1;
+
+    private boolean verifyKeys = false;
+
+    private CacheStatistics statistics =
+            new CacheStatistics(0, 0, 0, 0, 0, 0);
+
+    // Count state. Cleared when the count finishes.
+
+    private ArrayMatrix matrix;
+
+    /**
+     * Random keys of the items. The key of a secondary item with a color
+     * is derived from the key of the item and the color.
+     */
+    private long[] highKeys;
+
+    private long[] lowKeys;
+
+    private LinkedHashMap<Fingerprint, Entry> cache;
+
+    private long cacheBytes;
+
+    private long lookups;
+
+    private long hits;
+
+    private long collisions;
+
+    private long evictions;
+
+    // =================================================================== //
+
+    /**
+     * @param problem
+     *      The problem to count the solutions of. The problem can still be
+     *      modified between counts.
+     */
+    public MemoizedCounter(final CompiledProblem<O> problem) {
+        this.problem = Objects.requireNonNull(problem);
+    }
+
+    /**
+     * Set the estimated number of bytes the cache can use. The default is
+     * 64 MiB.
+     *
+     * @throws IllegalArgumentException If the limit is not positive.
+     */
+    public void setMemoryLimit(final long memoryLimit) {
+        if (memoryLimit <= 0) {
+            throw new IllegalArgumentException(
+                    "memory limit must be positive");
+        }
+        this.memoryLimit = memoryLimit;
+    }
+
+    /**
+     * Memoize the subproblems on every <code>memoInterval</code>th depth of
+     * the search tree. The default is every depth.
+     *
+     * @throws IllegalArgumentException If the interval is not positive.
+     */
+    public void setMemoInterval(final int memoInterval) {
+        if (memoInterval <= 0) {
+            throw new IllegalArgumentException(
+                    "memo interval must be positive");
+        }
+        this.memoInterval = memoInterval;
+    }
+
+    /**
+     * Store the full state of each subproblem in the cache and compare it
+     * when the fingerprint is found, so that a fingerprint collision can
+     * not give a wrong count. The default is <code>false</code>.
+     */
+    public void setVerifyKeys(final boolean verifyKeys) {
+        this.verifyKeys = verifyKeys;
+    }
+
+    /**
+     * Get the statistics of the cache during the last count.
+     */
+    public CacheStatistics cacheStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Count all the solutions.
+     */
+    public BigInteger count() {
+        return count(new ArrayList<>());
+    }
+
+    /**
+     * Count the solutions that contain the pre-selected options.
+     */
+    public BigInteger count(final List<O> preSelectedOptions) {
+        Objects.requireNonNull(preSelectedOptions);
+
+        matrix = ArrayMatrix.build("MemoizedCounter", problem);
+        createKeys();
+        cache = new LinkedHashMap<>(16, 0.75f, true);
+        cacheBytes = 0;
+        lookups = hits = collisions = evictions = 0;
+
+        try {
+            for (int i : matrix.columnsOf(problem, preSelectedOptions)) {
+                matrix.cover(i);
+            }
+
+            return recursiveCount(0);
+        } finally {
+            statistics = new CacheStatistics(lookups, hits, collisions,
+                    evictions, cache.size(), cacheBytes);
+            matrix = null;
+            highKeys = lowKeys = null;
+            cache = null;
+        }
+    }
+
+    // =================================================================== //
+
+    private BigInteger recursiveCount(final int depth) {
+        if (matrix.isSolved()) {
+            return BigInteger.ONE;
+        }
+
+        Fingerprint fingerprint = null;
+        int[] state = null;
+        if (depth > 0 && depth % memoInterval == 0) {
+            fingerprint = fingerprint();
+            state = verifyKeys ? matrix.state() : null;
+
+            lookups++;
+            final Entry entry = cache.get(fingerprint);
+            if (entry != null) {
+                if (state == null || Arrays.equals(state, entry.state)) {
+                    hits++;
+                    return entry.count;
+                }
+                collisions++;
+            }
+        }
+
+        final int i = matrix.findColumn();
+        final SolutionCounter counter = new SolutionCounter();
+        BigInteger large = BigInteger.ZERO;
+
+        matrix.cover(i);
+        for (int x = matrix.DLINK[i]; x != i; x = matrix.DLINK[x]) {
+            matrix.commitOption(x);
+            final BigInteger count = recursiveCount(depth + 1);
+            if (count.bitLength() < Long.SIZE - 1) {
+                counter.add(count.longValue());
+            } else {
+                large = large.add(count);
+            }
+            matrix.uncommitOption(x);
+        }
+        matrix.uncover(i);
+
+        final BigInteger result = counter.value().add(large);
+        if (fingerprint != null) {
+            remember(fingerprint, new Entry(state, result));
+        }
+        return result;
+    }
+
+    /**
+     * Compute the fingerprint of the current subproblem by combining the
+     * keys of the active primary items and the keys of the active
+     * secondary items with their colors.
+     */
+    private Fingerprint fingerprint() {
+        final int head = matrix.COLUMN.length + 1;
+        long high = 0;
+        long low = 0;
+        for (int i = matrix.RLINK[0]; i != 0; i = matrix.RLINK[i]) {
+            high += highKeys[i];
+            low += lowKeys[i];
+        }
+        for (int i = matrix.RLINK[head]; i != head; i = matrix.RLINK[i]) {
+            final long color = matrix.COLOR[i];
+            high += mix(highKeys[i] + color * GOLDEN_GAMMA);
+            low += mix(lowKeys[i] + color * GOLDEN_GAMMA);
+        }
+        return new Fingerprint(high, low);
+    }
+
+    /**
+     * Add a count to the cache, evicting the least recently used counts if
+     * the cache would exceed the memory limit.
+     */
+    private void remember(final Fingerprint fingerprint, final Entry entry) {
+        final long bytes = bytes(entry);
+        if (bytes > memoryLimit) {
+            return;
+        }
+
+        final Entry replaced = cache.remove(fingerprint);
+        if (replaced != null) {
+            cacheBytes -= bytes(replaced);
+        }
+
+        final Iterator<Map.Entry<Fingerprint, Entry>> eldest =
+                cache.entrySet().iterator();
+        while (cacheBytes + bytes > memoryLimit) {
+            cacheBytes -= bytes(eldest.next().getValue());
+            eldest.remove();
+            evictions++;
+        }
+
+        cache.put(fingerprint, entry);
+        cacheBytes += bytes;
+    }
+
+    private static long bytes(final Entry entry) {
+        long bytes = ENTRY_BYTES + entry.count.bitLength() / 8;
+        if (entry.state != null) {
+            bytes += 16 + 4L * entry.state.length;
+        }
+        return bytes;
+    }
+
+    private void createKeys() {
+        // Fixed seed, so that the counts are reproducible.
+        final SplittableRandom random = new SplittableRandom(0);
+        highKeys = new long[matrix.COLUMN.length + 1];
+        lowKeys = new long[matrix.COLUMN.length + 1];
+        for (int i = 1; i < highKeys.length; i++) {
+            highKeys[i] = random.nextLong();
+            lowKeys[i] = random.nextLong();
+        }
+    }
+
+    /**
+     * The finalizer of SplitMix64.
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
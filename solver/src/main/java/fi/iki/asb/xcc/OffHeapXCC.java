@@ -0,0 +1,964 @@
+package fi.iki.asb.xcc;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static java.lang.foreign.ValueLayout.JAVA_INT;
+import static java.lang.foreign.ValueLayout.JAVA_LONG;
+
+/**
+ * A generic exact cover with color solver whose matrix lives outside the
+ * Java heap. The algorithm and the layout of the matrix are the same as in
+ * {@link ReferenceXCC}, but the arrays are {@link MemorySegment}s indexed
+ * with <code>long</code>s, so the number of nodes is not limited to
+ * 2<sup>31</sup> and the matrix puts no pressure on the garbage collector.
+ * The matrix can also be backed by a file, in which case the operating
+ * system can page it in and out as the search moves around.
+ *
+ * <p>The items of each option are staged in native memory as the options
+ * are added, and the matrix is allocated to its exact size when the first
+ * search starts. The option objects and the items themselves are still
+ * kept on the heap, because they are needed for reporting the solutions
+ * and the pre-selected options.</p>
+ *
+ * <p>The native memory is released when the solver is closed. A closed
+ * solver cannot be used any more.</p>
+ *
+ * <p>This class is <i>not thread safe</i>.</p>
+ *
+ * @param <O>
+ *     The type associated to options. For example, in a sudoku solver this
+ *     might be a class that represents "placing a number in a given row,
+ *     column location".
+ */
+public final class OffHeapXCC<O> implements XCC<O>, AutoCloseable {
+
+    /**
+     * A secret color that is used as a marker for items that have been
+     * purified.
+     */
+    private static final int PURIFIED = -1;
+
+    /**
+     * Initial number of elements in the staging segments.
+     */
+    private static final long INITIAL_CAPACITY = 1024;
+
+    /**
+     * Mapper that creates items for options.
+     */
+    private final ItemProvider<O> itemProvider;
+
+    /**
+     * The file the matrix is mapped to, or null if the matrix is in
+     * anonymous native memory.
+     */
+    private final Path file;
+
+    /**
+     * The arena that owns the native memory.
+     */
+    private final Arena arena = Arena.ofShared();
+
+    // =================================================================== //
+    // The problem as it is being built.
+
+    private final List<O> options = new ArrayList<>();
+
+    private final List<Object> items = new ArrayList<>();
+
+    private final Map<Object, Integer> itemIds = new HashMap<>();
+
+    private final Map<Object, Integer> colorIds = new HashMap<>();
+
+    private int secondaryItemCount = 0;
+
+    /**
+     * Time when the first option was added, for the flight recorder. Zero
+     * if no options have been added.
+     */
+    private long firstOptionTime = 0;
+
+    /**
+     * Item id in the low and color id in the high half of each node.
+     * Released when the matrix is built.
+     */
+    private LongStage stagedNodes = new LongStage();
+
+    /**
+     * The index after the last node of each option. Released when the
+     * matrix is built.
+     */
+    private LongStage stagedOptionEnds = new LongStage();
+
+    // =================================================================== //
+    // The matrix. See ReferenceXCC for the meaning of the arrays.
+
+    /**
+     * Index is an item id, value is the index of the column of the item.
+     */
+    private int[] COLUMN;
+
+    private MemorySegment LLINK;
+
+    private MemorySegment RLINK;
+
+    private MemorySegment LEN;
+
+    private MemorySegment TOP;
+
+    private MemorySegment ULINK;
+
+    private MemorySegment DLINK;
+
+    private MemorySegment COLOR;
+
+    private MemorySegment OPTION;
+
+    // =================================================================== //
+
+    /**
+     * Has the matrix been built.
+     */
+    private boolean initialized = false;
+
+    private boolean closed = false;
+
+    /**
+     * Is the matrix dirty? This is set to <code>true</code> when the
+     * algorithm starts and restored back to <code>false</code> when it
+     * finishes successfully. If the execution is interrupted by an
+     * exception, the flag is left "dirty" and subsequent executions
+     * are prevented.
+     */
+    private boolean dirty = false;
+
+    /**
+     * Current solution. Cleared when algorithm finishes.
+     */
+    private List<O> solution;
+
+    /**
+     * Current solution consumer. Cleared when algorithm finishes.
+     */
+    private Consumer<List<O>> solutionConsumer;
+
+    /**
+     * Current emergency brake. Cleared when algorithm finishes.
+     */
+    private BooleanSupplier emergencyBrake;
+
+    private XCCTrace trace = null;
+
+    /**
+     * The solution stream in progress, or null.
+     */
+    private SolutionIterator stream = null;
+
+    // =================================================================== //
+
+    /**
+     * Create a solver whose matrix is in anonymous native memory.
+     *
+     * @param itemProvider
+     *      Mapper that creates the items that are covered by each option
+     *      that is added to the matrix.
+     */
+    public OffHeapXCC(final ItemProvider<O> itemProvider) {
+        this(itemProvider, null);
+    }
+
+    /**
+     * Create a solver whose matrix is mapped to a file.
+     *
+     * @param itemProvider
+     *      Mapper that creates the items that are covered by each option
+     *      that is added to the matrix.
+     *
+     * @param file
+     *      The file the matrix is mapped to. The file is created or
+     *      truncated when the first search starts. It can be deleted after
+     *      the solver has been closed. Null for anonymous native memory.
+     */
+    public OffHeapXCC(final ItemProvider<O> itemProvider, final Path file) {
+        this.itemProvider = Objects.requireNonNull(itemProvider);
+        this.file = file;
+    }
+
+    @Override
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    @Override
+    public void setTrace(XCCTrace trace) {
+        this.trace = trace;
+    }
+
+    /**
+     * Release the native memory. The memory is released even if the matrix
+     * is dirty or a solution stream is in progress. The stream ends, and a
+     * search that is still running fails when it next touches the matrix.
+     * Does nothing if the solver has already been closed.
+     */
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            if (stream != null) {
+                stream.finish();
+            }
+            arena.close();
+            if (stagedNodes != null) {
+                stagedNodes.release();
+                stagedNodes = null;
+                stagedOptionEnds.release();
+                stagedOptionEnds = null;
+            }
+        }
+    }
+
+    // =================================================================== //
+    // Matrix initialization operations.
+
+    @Override
+    public void addOption(final O option) {
+        ensureOpen();
+        if (firstOptionTime == 0) {
+            firstOptionTime = System.nanoTime();
+        }
+
+        final Collection<Object> optionItems = itemProvider.from(option);
+        for (Object item : optionItems) {
+            final long color = (item instanceof SecondaryItem s)
+                    ? colorId(s.getColor())
+                    : 0;
+            stagedNodes.add((color << 32) | itemId(item));
+        }
+
+        options.add(option);
+        stagedOptionEnds.add(stagedNodes.size);
+    }
+
+    private int itemId(final Object item) {
+        Integer id = itemIds.get(item);
+        if (id == null) {
+            id = items.size();
+            items.add(item);
+            itemIds.put(item, id);
+            if (item instanceof SecondaryItem) {
+                secondaryItemCount++;
+            }
+        }
+        return id;
+    }
+
+    private int colorId(final Object color) {
+        if (color == null) {
+            return 0;
+        }
+        return colorIds.computeIfAbsent(color, c -> colorIds.size() + 1);
+    }
+
+    /**
+     * Step C1. The segments are allocated to their exact sizes and filled
+     * from the staged nodes in one pass.
+     */
+    private void initMatrix() {
+        initialized = true;
+        final long start = System.nanoTime();
+        final SearchRecorder.MatrixEvent event = SearchRecorder.matrixStarted();
+
+        final int N = items.size();
+        final int N1 = N - secondaryItemCount;
+        final long nodeCount = stagedNodes.size;
+        final long size = N + 1 + nodeCount + options.size() + 1;
+
+        allocate(N, size);
+
+        // Item headers: primary items first, then secondary items.
+        COLUMN = new int[N];
+        int primary = 1;
+        int secondary = N1 + 1;
+        for (int item = 0; item < N; item++) {
+            COLUMN[item] = (items.get(item) instanceof SecondaryItem)
+                    ? secondary++
+                    : primary++;
+        }
+
+        for (int i = 1; i <= N + 1; i++) {
+            LLINK.setAtIndex(JAVA_INT, i, i - 1);
+            RLINK.setAtIndex(JAVA_INT, i - 1, i);
+        }
+        LLINK.setAtIndex(JAVA_INT, N1 + 1, N + 1);
+        RLINK.setAtIndex(JAVA_INT, N + 1, N1 + 1);
+        LLINK.setAtIndex(JAVA_INT, 0, N1);
+        RLINK.setAtIndex(JAVA_INT, N1, 0);
+
+        for (int i = 1; i <= N; i++) {
+            ULINK.setAtIndex(JAVA_LONG, i, i);
+            DLINK.setAtIndex(JAVA_LONG, i, i);
+        }
+
+        // First spacer.
+        long rowStart = N + 1;
+        TOP.setAtIndex(JAVA_INT, rowStart, 0);
+        ULINK.setAtIndex(JAVA_LONG, rowStart, -1);
+
+        long x = rowStart;
+        long node = 0;
+        for (int option = 0; option < options.size(); option++) {
+            final long end = stagedOptionEnds.get(option);
+            for (; node < end; node++) {
+                final long staged = stagedNodes.get(node);
+                final int column = COLUMN[(int) staged];
+                x++;
+                TOP.setAtIndex(JAVA_INT, x, column);
+                COLOR.setAtIndex(JAVA_INT, x, (int) (staged >>> 32));
+                OPTION.setAtIndex(JAVA_INT, x, option);
+
+                final long last = ULINK.getAtIndex(JAVA_LONG, column);
+                ULINK.setAtIndex(JAVA_LONG, x, last);
+                DLINK.setAtIndex(JAVA_LONG, x, column);
+                DLINK.setAtIndex(JAVA_LONG, last, x);
+                ULINK.setAtIndex(JAVA_LONG, column, x);
+                LEN.setAtIndex(JAVA_INT, column,
+                        LEN.getAtIndex(JAVA_INT, column) + 1);
+            }
+
+            DLINK.setAtIndex(JAVA_LONG, rowStart, x);
+
+            x++;
+            TOP.setAtIndex(JAVA_INT, x, -(option + 1));
+            ULINK.setAtIndex(JAVA_LONG, x, rowStart + 1);
+            rowStart = x;
+        }
+        DLINK.setAtIndex(JAVA_LONG, rowStart, -1);
+
+        SearchRecorder.matrixBuilt(event, "OffHeapXCC", options.size(), N,
+                nodeCount, start, firstOptionTime);
+
+        stagedNodes.release();
+        stagedNodes = null;
+        stagedOptionEnds.release();
+        stagedOptionEnds = null;
+    }
+
+    /**
+     * Allocate the segments of the matrix from one block of memory, which
+     * is mapped to the file if there is one.
+     */
+    private void allocate(final int N, final long size) {
+        final long headerBytes = (N + 2L) * JAVA_INT.byteSize();
+        final long longBytes = size * JAVA_LONG.byteSize();
+        final long intBytes = size * JAVA_INT.byteSize();
+        final long total = 2 * longBytes + 3 * intBytes + 3 * headerBytes;
+
+        final MemorySegment block;
+        if (file == null) {
+            // The memory of the arena is zeroed when it is allocated.
+            block = arena.allocate(total, JAVA_LONG.byteAlignment());
+        } else {
+            try (FileChannel channel = FileChannel.open(file,
+                    StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.READ,
+                    StandardOpenOption.WRITE)) {
+                block = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                        total, arena);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+
+        long offset = 0;
+        ULINK = block.asSlice(offset, longBytes);
+        DLINK = block.asSlice(offset += longBytes, longBytes);
+        TOP = block.asSlice(offset += longBytes, intBytes);
+        COLOR = block.asSlice(offset += intBytes, intBytes);
+        OPTION = block.asSlice(offset += intBytes, intBytes);
+        LLINK = block.asSlice(offset += intBytes, headerBytes);
+        RLINK = block.asSlice(offset += headerBytes, headerBytes);
+        LEN = block.asSlice(offset + headerBytes, headerBytes);
+    }
+
+    // =================================================================== //
+    // The XCC solution.
+
+    @Override
+    public void search(
+            final Consumer<List<O>> solutionConsumer,
+            final List<O> preSelectedOptions,
+            final BooleanSupplier emergencyBrake) {
+        Objects.requireNonNull(preSelectedOptions);
+        Objects.requireNonNull(solutionConsumer);
+        Objects.requireNonNull(emergencyBrake);
+
+        ensureNotClosed();
+        ensureClean();
+        dirty = true;
+
+        if (!initialized) {
+            initMatrix();
+        }
+
+        // Find the distinct set of items that are covered by the
+        // pre-selected options and cover them.
+        final int[] hiddenItems = collectHiddenItems(preSelectedOptions);
+        for (int i : hiddenItems) {
+            cover(i);
+        }
+
+        try {
+            this.solution = new ArrayList<>(preSelectedOptions);
+            this.solutionConsumer = solutionConsumer;
+            this.emergencyBrake = emergencyBrake;
+
+            if (trace != null) {
+                trace.onSearchStarted();
+            }
+
+            recursiveSearch();
+        } finally {
+            this.solution = null;
+            this.solutionConsumer = null;
+            this.emergencyBrake = null;
+        }
+
+        // Uncover the initial hidden columns in reverse order to restore
+        // the matrix to original state.
+        for (int k = hiddenItems.length - 1; k >= 0; k--) {
+            uncover(hiddenItems[k]);
+        }
+
+        dirty = false;
+    }
+
+    /**
+     * Step C2
+     */
+    private void recursiveSearch() {
+        if (emergencyBrake.getAsBoolean()) {
+            return;
+        }
+
+        // If there are no uncovered columns, the matrix is empty
+        // and the list contains a solution (step C8).
+        if (RLINK.getAtIndex(JAVA_INT, 0) == 0) {
+            solutionConsumer.accept(Collections.unmodifiableList(
+                    solution));
+            return;
+        }
+
+        // Select and cover column (steps C3 and C4).
+        final int i = findColumn();
+
+        if (trace != null) {
+            trace.onRecursionEntered(LEN.getAtIndex(JAVA_INT, i));
+        }
+
+        cover(i);
+
+        // Steps C5 and C6.
+        for (long x = DLINK.getAtIndex(JAVA_LONG, i); x != i;
+                x = DLINK.getAtIndex(JAVA_LONG, x)) {
+            if (trace != null) {
+                trace.onItemSelected();
+            }
+
+            commitOption(x);
+            solution.add(options.get(OPTION.getAtIndex(JAVA_INT, x)));
+            recursiveSearch();
+            solution.removeLast();
+            uncommitOption(x);
+        }
+
+        // C7 or return to C6 if we are in recursion.
+        uncover(i);
+
+        if (trace != null) {
+            trace.onRecursionEnded();
+        }
+    }
+
+    /**
+     * Find column using Minimum-Remaining-Value (MRV) heuristic.
+     */
+    private int findColumn() {
+        int smallest = RLINK.getAtIndex(JAVA_INT, 0);
+        int smallestLen = LEN.getAtIndex(JAVA_INT, smallest);
+        for (int i = RLINK.getAtIndex(JAVA_INT, smallest); i != 0;
+                i = RLINK.getAtIndex(JAVA_INT, i)) {
+            final int len = LEN.getAtIndex(JAVA_INT, i);
+            if (len < smallestLen) {
+                smallest = i;
+                smallestLen = len;
+            }
+        }
+        return smallest;
+    }
+
+    // =================================================================== //
+    // Streaming solutions.
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>The stream searches the matrix of this instance, so no other
+     * search can be started until the stream has been consumed to the end
+     * or closed. Close the stream, for example with try-with-resources,
+     * if it is not consumed to the end. The stream cannot be split, so
+     * a parallel stream only processes the solutions in parallel.</p>
+     *
+     * @throws IllegalStateException
+     *      The solver has been closed, another stream is in progress or the
+     *      matrix was left dirty.
+     */
+    @Override
+    public Stream<List<O>> solutions(final List<O> preSelectedOptions) {
+        Objects.requireNonNull(preSelectedOptions);
+
+        ensureNotClosed();
+        ensureClean();
+
+        if (!initialized) {
+            initMatrix();
+        }
+
+        final SolutionIterator iterator =
+                new SolutionIterator(preSelectedOptions);
+        stream = iterator;
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(
+                        iterator, Spliterator.NONNULL), false)
+                .onClose(iterator::finish);
+    }
+
+    /**
+     * The search of a solution stream. The same steps as in {@link
+     * IterativeXCC}, with the recursion replaced by a stack of the chosen
+     * nodes, but without splitting.
+     */
+    private final class SolutionIterator implements Iterator<List<O>> {
+
+        /**
+         * Step C2: enter a new level of the search tree.
+         */
+        private static final int ENTER = 0;
+
+        /**
+         * Step C5: try the option of the current node on this level.
+         */
+        private static final int TRY = 1;
+
+        /**
+         * Step C8: leave the current level and continue on the previous
+         * level with step C6.
+         */
+        private static final int LEAVE = 2;
+
+        private final List<O> preSelectedOptions;
+
+        /**
+         * Columns that were covered by the pre-selected options.
+         */
+        private final int[] hiddenItems;
+
+        /**
+         * The item covered on each level.
+         */
+        private final int[] item;
+
+        /**
+         * The node whose option is being tried on each level.
+         */
+        private final long[] x;
+
+        private int level = 0;
+
+        private int state = ENTER;
+
+        /**
+         * The solution found by the last step, or null.
+         */
+        private List<O> next = null;
+
+        private boolean finished = false;
+
+        SolutionIterator(final List<O> preSelectedOptions) {
+            this.preSelectedOptions = new ArrayList<>(preSelectedOptions);
+            this.hiddenItems = collectHiddenItems(preSelectedOptions);
+
+            // Every level covers at least one primary item.
+            this.item = new int[items.size() - secondaryItemCount + 1];
+            this.x = new long[item.length];
+
+            for (int i : hiddenItems) {
+                cover(i);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null && !finished) {
+                advance();
+            }
+            return next != null;
+        }
+
+        @Override
+        public List<O> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            final List<O> solution = next;
+            next = null;
+            return solution;
+        }
+
+        /**
+         * Run the search until the next solution is found or the whole
+         * tree has been searched.
+         */
+        private void advance() {
+            while (true) {
+                switch (state) {
+                    case ENTER -> {
+                        if (RLINK.getAtIndex(JAVA_INT, 0) == 0) {
+                            // Step C8.
+                            next = solution();
+                            state = LEAVE;
+                            return;
+                        }
+
+                        // Steps C3 and C4.
+                        final int i = findColumn();
+                        cover(i);
+                        item[level] = i;
+                        x[level] = DLINK.getAtIndex(JAVA_LONG, i);
+                        state = TRY;
+                    }
+                    case TRY -> {
+                        if (x[level] == item[level]) {
+                            // Step C7.
+                            uncover(item[level]);
+                            state = LEAVE;
+                        } else {
+                            // Step C5.
+                            commitOption(x[level]);
+                            level++;
+                            state = ENTER;
+                        }
+                    }
+                    default -> {
+                        if (level == 0) {
+                            finish();
+                            return;
+                        }
+
+                        // Step C6.
+                        level--;
+                        uncommitOption(x[level]);
+                        x[level] = DLINK.getAtIndex(JAVA_LONG, x[level]);
+                        state = TRY;
+                    }
+                }
+            }
+        }
+
+        private List<O> solution() {
+            final List<O> solution = new ArrayList<>(
+                    preSelectedOptions.size() + level);
+            solution.addAll(preSelectedOptions);
+            for (int l = 0; l < level; l++) {
+                solution.add(options.get(OPTION.getAtIndex(JAVA_INT, x[l])));
+            }
+            return Collections.unmodifiableList(solution);
+        }
+
+        /**
+         * Restore the matrix from any level and end the stream. Does
+         * nothing if the stream has already ended or the solver has been
+         * closed.
+         */
+        void finish() {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            next = null;
+
+            if (!closed) {
+                while (level > 0) {
+                    level--;
+                    uncommitOption(x[level]);
+                    uncover(item[level]);
+                }
+                for (int k = hiddenItems.length - 1; k >= 0; k--) {
+                    uncover(hiddenItems[k]);
+                }
+            }
+            stream = null;
+        }
+    }
+
+    // =================================================================== //
+    // Operations for manipulating the matrix during search.
+
+    /**
+     * Commit the items of the option of node <code>x</code>, except the
+     * item of <code>x</code> itself.
+     */
+    private void commitOption(final long x) {
+        long p = x + 1;
+        while (p != x) {
+            final int j = TOP.getAtIndex(JAVA_INT, p);
+            if (j <= 0) {
+                p = ULINK.getAtIndex(JAVA_LONG, p);
+            } else {
+                commit(p, j);
+                p++;
+            }
+        }
+    }
+
+    /**
+     * Reverse of {@link #commitOption(long)}.
+     */
+    private void uncommitOption(final long x) {
+        long p = x - 1;
+        while (p != x) {
+            final int j = TOP.getAtIndex(JAVA_INT, p);
+            if (j <= 0) {
+                p = DLINK.getAtIndex(JAVA_LONG, p);
+            } else {
+                uncommit(p, j);
+                p--;
+            }
+        }
+    }
+
+    private void commit(final long p, final int j) {
+        final int c = COLOR.getAtIndex(JAVA_INT, p);
+        if (c == 0) {
+            cover(j);
+        } else if (c > 0) {
+            purify(p);
+        }
+    }
+
+    private void uncommit(final long p, final int j) {
+        final int c = COLOR.getAtIndex(JAVA_INT, p);
+        if (c == 0) {
+            uncover(j);
+        } else if (c > 0) {
+            unpurify(p);
+        }
+    }
+
+    private void purify(final long p) {
+        final int c = COLOR.getAtIndex(JAVA_INT, p);
+        final int i = TOP.getAtIndex(JAVA_INT, p);
+
+        // Save color.
+        COLOR.setAtIndex(JAVA_INT, i, c);
+
+        for (long q = DLINK.getAtIndex(JAVA_LONG, i); q != i;
+                q = DLINK.getAtIndex(JAVA_LONG, q)) {
+            if (COLOR.getAtIndex(JAVA_INT, q) == c) {
+                COLOR.setAtIndex(JAVA_INT, q, PURIFIED);
+            } else {
+                hide(q);
+            }
+        }
+    }
+
+    private void unpurify(final long p) {
+        final int i = TOP.getAtIndex(JAVA_INT, p);
+        final int c = COLOR.getAtIndex(JAVA_INT, i);
+
+        for (long q = ULINK.getAtIndex(JAVA_LONG, i); q != i;
+                q = ULINK.getAtIndex(JAVA_LONG, q)) {
+            if (COLOR.getAtIndex(JAVA_INT, q) == PURIFIED) {
+                COLOR.setAtIndex(JAVA_INT, q, c);
+            } else {
+                unhide(q);
+            }
+        }
+
+        COLOR.setAtIndex(JAVA_INT, i, 0);
+    }
+
+    private void cover(final int i) {
+        for (long p = DLINK.getAtIndex(JAVA_LONG, i); p != i;
+                p = DLINK.getAtIndex(JAVA_LONG, p)) {
+            hide(p);
+        }
+
+        final int l = LLINK.getAtIndex(JAVA_INT, i);
+        final int r = RLINK.getAtIndex(JAVA_INT, i);
+        RLINK.setAtIndex(JAVA_INT, l, r);
+        LLINK.setAtIndex(JAVA_INT, r, l);
+    }
+
+    private void uncover(final int i) {
+        final int l = LLINK.getAtIndex(JAVA_INT, i);
+        final int r = RLINK.getAtIndex(JAVA_INT, i);
+        RLINK.setAtIndex(JAVA_INT, l, i);
+        LLINK.setAtIndex(JAVA_INT, r, i);
+
+        for (long p = ULINK.getAtIndex(JAVA_LONG, i); p != i;
+                p = ULINK.getAtIndex(JAVA_LONG, p)) {
+            unhide(p);
+        }
+    }
+
+    private void hide(final long p) {
+        long q = p + 1;
+        while (q != p) {
+            final int x = TOP.getAtIndex(JAVA_INT, q);
+            final long u = ULINK.getAtIndex(JAVA_LONG, q);
+
+            if (x <= 0) {
+                q = u;
+            } else {
+                if (COLOR.getAtIndex(JAVA_INT, q) != PURIFIED) {
+                    final long d = DLINK.getAtIndex(JAVA_LONG, q);
+                    DLINK.setAtIndex(JAVA_LONG, u, d);
+                    ULINK.setAtIndex(JAVA_LONG, d, u);
+                    LEN.setAtIndex(JAVA_INT, x,
+                            LEN.getAtIndex(JAVA_INT, x) - 1);
+                }
+                q++;
+            }
+        }
+    }
+
+    private void unhide(final long p) {
+        long q = p - 1;
+        while (q != p) {
+            final int x = TOP.getAtIndex(JAVA_INT, q);
+            final long d = DLINK.getAtIndex(JAVA_LONG, q);
+
+            if (x <= 0) {
+                q = d;
+            } else {
+                if (COLOR.getAtIndex(JAVA_INT, q) != PURIFIED) {
+                    final long u = ULINK.getAtIndex(JAVA_LONG, q);
+                    DLINK.setAtIndex(JAVA_LONG, u, q);
+                    ULINK.setAtIndex(JAVA_LONG, d, q);
+                    LEN.setAtIndex(JAVA_INT, x,
+                            LEN.getAtIndex(JAVA_INT, x) + 1);
+                }
+                q--;
+            }
+        }
+    }
+
+    // =================================================================== //
+    // Auxiliary methods.
+
+    /**
+     * Collect the distinct columns of the items covered by the pre-selected
+     * options.
+     */
+    private int[] collectHiddenItems(
+            final Collection<O> preSelectedOptions) {
+        final Set<Object> hidden = new LinkedHashSet<>();
+        preSelectedOptions.forEach(o -> hidden.addAll(itemProvider.from(o)));
+        return hidden.stream()
+                .mapToInt(item -> {
+                    final Integer id = itemIds.get(item);
+                    if (id == null) {
+                        throw new IllegalArgumentException(
+                                Objects.toString(item));
+                    }
+                    return COLUMN[id];
+                })
+                .toArray();
+    }
+
+    private void ensureClean() {
+        if (stream != null) {
+            throw new IllegalStateException("stream in progress");
+        }
+        if (dirty) {
+            throw new IllegalStateException("matrix is dirty");
+        }
+    }
+
+    private void ensureOpen() {
+        ensureNotClosed();
+        if (initialized) {
+            throw new IllegalStateException("matrix is locked");
+        }
+    }
+
+    private void ensureNotClosed() {
+        if (closed) {
+            throw new IllegalStateException("matrix is closed");
+        }
+    }
+
+    /**
+     * A growable array of longs in native memory. The segment is doubled
+     * when it runs out of space. Each segment has its own arena, so the
+     * old segment is released as soon as it has been copied.
+     */
+    private static final class LongStage {
+
+        private Arena arena = Arena.ofShared();
+
+        private MemorySegment segment = allocate(arena, INITIAL_CAPACITY);
+
+        private long size = 0;
+
+        void add(final long value) {
+            if (size == segment.byteSize() / JAVA_LONG.byteSize()) {
+                final Arena grownArena = Arena.ofShared();
+                final MemorySegment grown = allocate(grownArena, 2 * size);
+                grown.copyFrom(segment);
+                arena.close();
+                arena = grownArena;
+                segment = grown;
+            }
+            segment.setAtIndex(JAVA_LONG, size++, value);
+        }
+
+        private static MemorySegment allocate(
+                final Arena arena,
+                final long capacity) {
+            return arena.allocate(capacity * JAVA_LONG.byteSize(),
+                    JAVA_LONG.byteAlignment());
+        }
+
+        long get(final long index) {
+            return segment.getAtIndex(JAVA_LONG, index);
+        }
+
+        void release() {
+            arena.close();
+        }
+    }
+}
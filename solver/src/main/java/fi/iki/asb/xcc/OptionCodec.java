@@ -0,0 +1,24 @@
+package fi.iki.asb.xcc;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Interface for writing options to a {@link ProblemSnapshot} and reading
+ * them back.
+ */
+public interface OptionCodec<O> {
+
+    /**
+     * Write an option. The option can be null if the problem has been
+     * built with the low-level methods of {@link CompiledProblem}.
+     */
+    void write(O option, DataOutput out) throws IOException;
+
+    /**
+     * Read an option that has been written with {@link #write}.
+     */
+    O read(DataInput in) throws IOException;
+
+}
@@ -0,0 +1,496 @@
+package fi.iki.asb.xcc;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * A generic exact cover with color solver that splits the search tree
+ * across the worker threads of a {@link ForkJoinPool}. The search is the
+ * same as in {@link ReferenceXCC}, but when the pool is running out of
+ * work, the options of the item chosen by the MRV heuristic are handed
+ * out to new tasks. Each task gets its own copy of the link arrays, so the
+ * workers never share mutable state.
+ *
+ * <p>Solutions are found in a nondeterministic order. The solution
+ * consumer and the emergency brake are called by the worker threads, but
+ * never concurrently, so they do not need to be thread safe. The trace is
+ * only notified when the search starts, because the recursion events of
+ * concurrent workers would be meaningless to it.</p>
+ *
+ * <p>This class is <i>not thread safe</i>. One search may be running at
+ * a time.</p>
+ *
+ * @param <O>
+ *     The type associated to options. For example, in a sudoku solver this
+ *     might be a class that represents "placing a number in a given row,
+ *     column location".
+ */
+public final class ParallelXCC<O> implements XCC<O> {
+
+    /**
+     * A new task is split off only if the current worker has at most this
+     * many queued tasks that other workers have not stolen yet. This
+     * adapts the split depth to the load: when the workers are busy, the
+     * queues fill up and the subtrees are searched without task overhead.
+     */
+    private static final int MAX_SURPLUS_TASKS = 2;
+
+    /**
+     * Number of search nodes a worker visits between the checks of the
+     * emergency brake, when the search has no limits.
+     */
+    private static final int BRAKE_CHECK_INTERVAL = 1024;
+
+    /**
+     * The problem the matrix is built from.
+     */
+    private final CompiledProblem<O> problem;
+
+    /**
+     * The pool that executes the search tasks.
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * The matrix in its initial state. Created when the first search
+     * starts, after which no more options can be added. The search tasks
+     * work on copies of it.
+     */
+    private ArrayMatrix matrix = null;
+
+    /**
+     * Is the matrix dirty? This is set to <code>true</code> when the
+     * algorithm starts and restored back to <code>false</code> when it
+     * finishes successfully. If the execution is interrupted by an
+     * exception, the flag is left "dirty" and subsequent executions
+     * are prevented.
+     */
+    private boolean dirty = false;
+
+    private XCCTrace trace = null;
+
+    // =================================================================== //
+
+    /**
+     * Create a new instance that uses the common fork-join pool.
+     *
+     * @param itemProvider
+     *      Mapper that creates the items that are covered by each option
+     *      that is added to the matrix.
+     */
+    public ParallelXCC(final ItemProvider<O> itemProvider) {
+        this(new CompiledProblem<>(itemProvider));
+    }
+
+    /**
+     * Create a new instance.
+     *
+     * @param itemProvider
+     *      Mapper that creates the items that are covered by each option
+     *      that is added to the matrix.
+     *
+     * @param pool
+     *      The pool that executes the search.
+     */
+    public ParallelXCC(
+            final ItemProvider<O> itemProvider,
+            final ForkJoinPool pool) {
+        this(new CompiledProblem<>(itemProvider), pool);
+    }
+
+    /**
+     * Create a new instance that searches a compiled problem using the
+     * common fork-join pool. Options added to this instance are added to
+     * the problem.
+     */
+    public ParallelXCC(final CompiledProblem<O> problem) {
+        this(problem, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Create a new instance that searches a compiled problem. Options added
+     * to this instance are added to the problem.
+     *
+     * @param pool
+     *      The pool that executes the search.
+     */
+    public ParallelXCC(
+            final CompiledProblem<O> problem,
+            final ForkJoinPool pool) {
+        this.problem = Objects.requireNonNull(problem);
+        this.pool = Objects.requireNonNull(pool);
+    }
+
+    @Override
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    @Override
+    public void setTrace(XCCTrace trace) {
+        this.trace = trace;
+    }
+
+    // =================================================================== //
+    // Matrix initialization operations.
+
+    @Override
+    public void addOption(final O option) {
+        ensureOpen();
+        problem.addOption(option);
+    }
+
+    // =================================================================== //
+    // The XCC solution.
+
+    @Override
+    public void search(
+            final Consumer<List<O>> solutionConsumer,
+            final List<O> preSelectedOptions,
+            final BooleanSupplier emergencyBrake) {
+        Objects.requireNonNull(emergencyBrake);
+        runSearch(solutionConsumer, preSelectedOptions,
+                SearchMonitor.of(emergencyBrake), BRAKE_CHECK_INTERVAL);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>The workers reserve nodes from the budget in batches of the check
+     * interval, and the other limits are checked whenever a batch is
+     * reserved, so the search never visits more nodes than the budget.
+     * The interrupt status is read from the calling thread. A limit on the
+     * CPU time is not supported, because the calling thread only waits
+     * while the workers search.</p>
+     *
+     * @throws IllegalArgumentException If the limits include CPU time.
+     */
+    @Override
+    public SearchResult search(
+            final Consumer<List<O>> solutionConsumer,
+            final List<O> preSelectedOptions,
+            final SearchLimits limits) {
+        Objects.requireNonNull(solutionConsumer);
+        if (limits.cpuTime() != null) {
+            throw new IllegalArgumentException(
+                    "cpu time limit is not supported");
+        }
+
+        final SearchMonitor monitor = new SearchMonitor(limits);
+        runSearch(monitor.wrap(solutionConsumer), preSelectedOptions,
+                monitor, limits.checkInterval());
+        return monitor.result();
+    }
+
+    private void runSearch(
+            final Consumer<List<O>> solutionConsumer,
+            final List<O> preSelectedOptions,
+            final SearchMonitor monitor,
+            final int batchSize) {
+        Objects.requireNonNull(preSelectedOptions);
+        Objects.requireNonNull(solutionConsumer);
+
+        ensureClean();
+        dirty = true;
+
+        if (matrix == null) {
+            matrix = ArrayMatrix.build("ParallelXCC", problem);
+        }
+
+        // The pre-selected items are covered in the copy that is given to
+        // the root task, so the initial matrix never changes.
+        final ArrayMatrix root = matrix.copy();
+        for (int i : root.columnsOf(problem, preSelectedOptions)) {
+            root.cover(i);
+        }
+
+        if (trace != null) {
+            trace.onSearchStarted();
+        }
+
+        final SearchContext context = new SearchContext(
+                solutionConsumer, monitor, batchSize);
+        await(pool.submit(new SearchTask(context, root,
+                new ArrayList<>(preSelectedOptions))), context);
+
+        dirty = false;
+    }
+
+    // =================================================================== //
+
+    /**
+     * State shared by all tasks of one search. The solution consumer and
+     * the monitor, which calls the emergency brake, are only called while
+     * holding the lock of this object.
+     */
+    private final class SearchContext {
+
+        private final Consumer<List<O>> solutionConsumer;
+
+        private final SearchMonitor monitor;
+
+        /**
+         * Number of nodes a task reserves at a time.
+         */
+        private final int batchSize;
+
+        /**
+         * Set when the monitor has stopped the search or a worker has
+         * failed. Every worker checks this on every search node.
+         */
+        private volatile boolean stopped = false;
+
+        SearchContext(
+                final Consumer<List<O>> solutionConsumer,
+                final SearchMonitor monitor,
+                final int batchSize) {
+            this.solutionConsumer = solutionConsumer;
+            this.monitor = monitor;
+            this.batchSize = batchSize;
+        }
+
+        boolean isStopped() {
+            return stopped;
+        }
+
+        /**
+         * Reserve the next batch of nodes for a task.
+         *
+         * @return The number of nodes reserved, or zero if the search
+         *      should stop.
+         */
+        synchronized long reserve() {
+            if (stopped) {
+                return 0;
+            }
+
+            final long reserved = monitor.reserve(batchSize);
+            if (reserved == 0) {
+                stopped = true;
+            }
+            return reserved;
+        }
+
+        synchronized void release(final long unused) {
+            monitor.release(unused);
+        }
+
+        synchronized void interrupt() {
+            if (monitor.interrupt()) {
+                stopped = true;
+            }
+        }
+
+        synchronized void accept(final List<O> solution) {
+            if (stopped) {
+                return;
+            }
+
+            try {
+                solutionConsumer.accept(Collections.unmodifiableList(
+                        solution));
+            } catch (RuntimeException | Error ex) {
+                stopped = true;
+                throw ex;
+            }
+
+            if (monitor.checkLimits()) {
+                stopped = true;
+            }
+        }
+    }
+
+    /**
+     * A task that searches the subtree below the state of its matrix. The
+     * task owns the matrix and the partial solution.
+     */
+    // Fork-join tasks are serializable only because ForkJoinTask is. The
+    // task is never serialized, as it refers to the solver and the matrix.
+    @SuppressWarnings("serial")
+    private final class SearchTask extends RecursiveAction {
+
+        private final SearchContext context;
+
+        private final ArrayMatrix matrix;
+
+        private final List<O> solution;
+
+        /**
+         * Number of nodes this task has reserved but not visited yet.
+         */
+        private long reserved = 0;
+
+        SearchTask(
+                final SearchContext context,
+                final ArrayMatrix matrix,
+                final List<O> solution) {
+            this.context = context;
+            this.matrix = matrix;
+            this.solution = solution;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                recursiveSearch();
+            } finally {
+                context.release(reserved);
+                reserved = 0;
+            }
+        }
+
+        /**
+         * Step C2.
+         */
+        private void recursiveSearch() {
+            if (shouldStop()) {
+                return;
+            }
+
+            // If there are no uncovered columns, the matrix is empty
+            // and the list contains a solution (step C8).
+            if (matrix.isSolved()) {
+                context.accept(solution);
+                return;
+            }
+
+            // Select and cover column (steps C3 and C4).
+            final int i = matrix.findColumn();
+            matrix.cover(i);
+
+            if (matrix.LEN[i] > 1
+                    && getSurplusQueuedTaskCount() <= MAX_SURPLUS_TASKS) {
+                split(i);
+            } else {
+                // Steps C5 and C6.
+                for (int x = matrix.DLINK[i]; x != i; x = matrix.DLINK[x]) {
+                    matrix.commitOption(x);
+                    solution.add(problem.option(matrix.OPTION[x]));
+                    recursiveSearch();
+                    solution.removeLast();
+                    matrix.uncommitOption(x);
+                }
+            }
+
+            // C7 or return to C6 if we are in recursion.
+            matrix.uncover(i);
+        }
+
+        /**
+         * Hand each option of the covered item to a task of its own and
+         * wait for them to finish.
+         */
+        private void split(final int i) {
+            final List<SearchTask> subtasks = new ArrayList<>(matrix.LEN[i]);
+            for (int x = matrix.DLINK[i]; x != i; x = matrix.DLINK[x]) {
+                final ArrayMatrix copy = matrix.copy();
+                copy.commitOption(x);
+
+                final List<O> subSolution = new ArrayList<>(solution.size() + 1);
+                subSolution.addAll(solution);
+                subSolution.add(problem.option(matrix.OPTION[x]));
+
+                subtasks.add(new SearchTask(context, copy, subSolution));
+            }
+
+            // Leave the reserved nodes to the subtasks.
+            context.release(reserved);
+            reserved = 0;
+            invokeAll(subtasks);
+        }
+
+        private boolean shouldStop() {
+            if (context.isStopped()) {
+                return true;
+            }
+
+            if (reserved == 0) {
+                reserved = context.reserve();
+                if (reserved == 0) {
+                    return true;
+                }
+            }
+
+            reserved--;
+            return false;
+        }
+    }
+
+    // =================================================================== //
+    // Streaming solutions.
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>The stream searches its own matrix built from the problem, so it
+     * does not make this instance dirty and several streams can be used at
+     * the same time. The solutions are not ordered in parallel streams.</p>
+     */
+    @Override
+    public Stream<List<O>> solutions(final List<O> preSelectedOptions) {
+        Objects.requireNonNull(preSelectedOptions);
+        ensureClean();
+        return IterativeSearch.stream(
+                problem, ArrayMatrix.build("ParallelXCC", problem),
+                preSelectedOptions);
+    }
+
+    // =================================================================== //
+    // Auxiliary methods.
+
+    /**
+     * Wait for the root task of a search to finish. The interrupts of the
+     * calling thread are passed to the monitor, because the workers cannot
+     * see them while the thread is waiting. The interrupt status is set
+     * again when the search has finished.
+     */
+    private void await(
+            final ForkJoinTask<?> task,
+            final SearchContext context) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    task.get();
+                    return;
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                    context.interrupt();
+                } catch (ExecutionException ex) {
+                    if (ex.getCause() instanceof RuntimeException r) {
+                        throw r;
+                    }
+                    if (ex.getCause() instanceof Error e) {
+                        throw e;
+                    }
+                    throw new IllegalStateException(ex.getCause());
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void ensureClean() {
+        if (dirty) {
+            throw new IllegalStateException("matrix is dirty");
+        }
+    }
+
+    private void ensureOpen() {
+        if (matrix != null) {
+            throw new IllegalStateException("matrix is locked");
+        }
+    }
+}
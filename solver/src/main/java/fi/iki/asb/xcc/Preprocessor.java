@@ -0,0 +1,592 @@
+package fi.iki.asb.xcc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Reduces a problem before the search, in the spirit of Knuth's Algorithm
+ * P. The reduced problem has the same solutions as the original one, but
+ * usually far fewer options and items, so the search does not have to
+ * rediscover the same dead ends over and over again.
+ *
+ * <p>First the pre-selected options are forced into the solution and
+ * identical options, with the same items and colors, are merged into one.
+ * The duplicates are restored by {@link Reduction#expand(List)}. Then the
+ * following reductions are applied until neither of them changes the
+ * problem:</p>
+ *
+ * <ul>
+ *     <li>If a primary item can only be covered by one option, the option
+ *     is forced into every solution. The items of a forced option are
+ *     removed from the problem, together with the options that conflict
+ *     with it.</li>
+ *     <li>Each option is probed: if choosing it would leave some primary
+ *     item without any options, the option is blocked and removed.</li>
+ * </ul>
+ *
+ * <p>Finally primary items that are covered by exactly the same options
+ * are merged into one, and the remaining options and items are copied
+ * into a new, compact {@link CompiledProblem}, which can be given to any
+ * solver that takes a compiled problem. The reduced problem has no item
+ * provider, so options must be pre-selected when the problem is reduced
+ * rather than when it is searched.</p>
+ *
+ * <p>This class is <i>not thread safe</i>.</p>
+ *
+ * @param <O>
+ *     The type associated to options.
+ */
+public final class Preprocessor<O> {
+
+    /**
+     * The only item of the reduced problem of an unsolvable problem.
+     */
+    private static final Object UNSOLVABLE = new Object() {
+        @Override
+        public String toString() {
+            return "unsolvable";
+        }
+    };
+
+    /**
+     * The color of a secondary item that has not been fixed by a forced
+     * option.
+     */
+    private static final int FREE = -1;
+
+    /**
+     * Result of the reduction.
+     *
+     * @param <O>
+     *     The type associated to options.
+     */
+    public static final class Reduction<O> {
+
+        private final CompiledProblem<O> problem;
+
+        private final List<O> forcedOptions;
+
+        private final Map<O, List<O>> duplicates;
+
+        private final boolean solvable;
+
+        private final int removedOptions;
+
+        private final int removedItems;
+
+        private Reduction(
+                final CompiledProblem<O> problem,
+                final List<O> forcedOptions,
+                final Map<O, List<O>> duplicates,
+                final boolean solvable,
+                final int removedOptions,
+                final int removedItems) {
+            this.problem = problem;
+            this.forcedOptions = forcedOptions;
+            this.duplicates = duplicates;
+            this.solvable = solvable;
+            this.removedOptions = removedOptions;
+            this.removedItems = removedItems;
+        }
+
+        /**
+         * Get the reduced problem. If the original problem has no
+         * solutions, the reduced problem consists of one primary item
+         * without options.
+         */
+        public CompiledProblem<O> problem() {
+            return problem;
+        }
+
+        /**
+         * Get the options that are part of every solution, including the
+         * pre-selected options. They are not in the reduced problem.
+         */
+        public List<O> forcedOptions() {
+            return forcedOptions;
+        }
+
+        /**
+         * Was the problem found to have solutions? If this returns false,
+         * the problem has no solutions. If it returns true, the problem can
+         * still turn out to have none when it is searched.
+         */
+        public boolean isSolvable() {
+            return solvable;
+        }
+
+        /**
+         * Number of options that are not in the reduced problem, including
+         * the forced options.
+         */
+        public int removedOptions() {
+            return removedOptions;
+        }
+
+        /**
+         * Number of items that are not in the reduced problem.
+         */
+        public int removedItems() {
+            return removedItems;
+        }
+
+        /**
+         * Get the solutions of the original problem that correspond to a
+         * solution of the reduced problem: the solution with the forced
+         * options, once for each combination of the duplicates of its
+         * options. The options are matched by identity, so the solution
+         * must contain the option objects of the reduced problem, as the
+         * solvers report them.
+         */
+        public List<List<O>> expand(final List<O> solution) {
+            List<List<O>> result = List.of(List.of());
+            final List<O> all = new ArrayList<>(solution);
+            all.addAll(forcedOptions);
+            for (O option : all) {
+                final List<O> alternatives = duplicates.getOrDefault(
+                        option, List.of(option));
+                final List<List<O>> next = new ArrayList<>();
+                for (List<O> partial : result) {
+                    for (O alternative : alternatives) {
+                        final List<O> extended = new ArrayList<>(partial);
+                        extended.add(alternative);
+                        next.add(extended);
+                    }
+                }
+                result = next;
+            }
+            return result;
+        }
+    }
+
+    // =================================================================== //
+
+    private final CompiledProblem<O> problem;
+
+    // Reduction state. Cleared when the reduction finishes.
+
+    /**
+     * Node indexes of each item.
+     */
+    private int[][] COLUMN;
+
+    /**
+     * Option id of each node.
+     */
+    private int[] OPTION;
+
+    /**
+     * Number of alive options that contain each item.
+     */
+    private int[] LEN;
+
+    private BitSet alive;
+
+    /**
+     * Primary items covered by the forced options.
+     */
+    private BitSet covered;
+
+    /**
+     * Color of each secondary item fixed by the forced options, or FREE.
+     */
+    private int[] fixedColor;
+
+    private List<Integer> forced;
+
+    private boolean solvable;
+
+    // =================================================================== //
+
+    /**
+     * @param problem
+     *      The problem to reduce. The problem is not modified.
+     */
+    public Preprocessor(final CompiledProblem<O> problem) {
+        this.problem = Objects.requireNonNull(problem);
+    }
+
+    /**
+     * Reduce the problem.
+     */
+    public Reduction<O> reduce() {
+        return reduce(new ArrayList<>());
+    }
+
+    /**
+     * Reduce the problem with pre-selected options. The options are
+     * matched with <code>equals</code>.
+     *
+     * @throws IllegalArgumentException
+     *      If a pre-selected option is not part of the problem.
+     */
+    public Reduction<O> reduce(final List<O> preSelectedOptions) {
+        Objects.requireNonNull(preSelectedOptions);
+        final int[] preSelected = preSelectedOptions.stream()
+                .mapToInt(this::optionId)
+                .toArray();
+
+        init();
+        try {
+            for (int o : preSelected) {
+                if (!alive.get(o) || !force(o)) {
+                    solvable = false;
+                    break;
+                }
+            }
+
+            // The duplicates of the pre-selected options have been removed
+            // already, because they conflict with them.
+            final Map<Integer, List<Integer>> duplicates = mergeDuplicates();
+
+            boolean changed = solvable;
+            while (changed) {
+                changed = forceOptions();
+                if (solvable) {
+                    changed |= blockOptions();
+                }
+                changed &= solvable;
+            }
+
+            return solvable
+                    ? compact(duplicates)
+                    : unsolvable();
+        } finally {
+            COLUMN = null;
+            OPTION = null;
+            LEN = null;
+            alive = null;
+            covered = null;
+            fixedColor = null;
+            forced = null;
+        }
+    }
+
+    private void init() {
+        final int itemCount = problem.itemCount();
+        final int[] counts = new int[itemCount];
+        for (int n = 0; n < problem.nodeCount(); n++) {
+            counts[problem.nodeItem(n)]++;
+        }
+
+        COLUMN = new int[itemCount][];
+        for (int i = 0; i < itemCount; i++) {
+            COLUMN[i] = new int[counts[i]];
+        }
+        LEN = counts.clone();
+        Arrays.fill(counts, 0);
+
+        OPTION = new int[problem.nodeCount()];
+        for (int o = 0; o < problem.optionCount(); o++) {
+            for (int n = problem.optionStart(o); n < problem.optionEnd(o); n++) {
+                final int i = problem.nodeItem(n);
+                COLUMN[i][counts[i]++] = n;
+                OPTION[n] = o;
+            }
+        }
+
+        alive = new BitSet(problem.optionCount());
+        alive.set(0, problem.optionCount());
+        covered = new BitSet(itemCount);
+        fixedColor = new int[itemCount];
+        Arrays.fill(fixedColor, FREE);
+        forced = new ArrayList<>();
+        solvable = true;
+    }
+
+    // =================================================================== //
+    // Reductions.
+
+    /**
+     * Remove the options that have the same items and colors as an earlier
+     * option.
+     *
+     * @return The duplicates of each option that has them, including the
+     *      option itself.
+     */
+    private Map<Integer, List<Integer>> mergeDuplicates() {
+        final Map<List<Integer>, Integer> first = new HashMap<>();
+        final Map<Integer, List<Integer>> duplicates = new HashMap<>();
+        for (int o = alive.nextSetBit(0); o >= 0; o = alive.nextSetBit(o + 1)) {
+            final Integer existing = first.putIfAbsent(key(o), o);
+            if (existing != null) {
+                duplicates.computeIfAbsent(existing,
+                        k -> new ArrayList<>(List.of(k))).add(o);
+                kill(o);
+            }
+        }
+        return duplicates;
+    }
+
+    /**
+     * Get the sorted items and colors of an option.
+     */
+    private List<Integer> key(final int o) {
+        final int start = problem.optionStart(o);
+        final long[] nodes = new long[problem.optionEnd(o) - start];
+        for (int k = 0; k < nodes.length; k++) {
+            nodes[k] = ((long) problem.nodeItem(start + k) << 32)
+                    | problem.nodeColor(start + k);
+        }
+        Arrays.sort(nodes);
+
+        final List<Integer> key = new ArrayList<>(2 * nodes.length);
+        for (long node : nodes) {
+            key.add((int) (node >>> 32));
+            key.add((int) node);
+        }
+        return key;
+    }
+
+    /**
+     * Force the options of the primary items that have only one option.
+     *
+     * @return True if an option was forced.
+     */
+    private boolean forceOptions() {
+        boolean changed = false;
+        for (int i = 0; i < problem.itemCount() && solvable; i++) {
+            if (problem.isSecondary(i) || covered.get(i)) {
+                continue;
+            }
+            if (LEN[i] == 0) {
+                solvable = false;
+            } else if (LEN[i] == 1) {
+                for (int n : COLUMN[i]) {
+                    if (alive.get(OPTION[n])) {
+                        solvable = force(OPTION[n]);
+                        changed = true;
+                        break;
+                    }
+                }
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Add an option to every solution and remove the options that conflict
+     * with it.
+     *
+     * @return False if the option conflicts with the options forced before.
+     */
+    private boolean force(final int o) {
+        for (int n = problem.optionStart(o); n < problem.optionEnd(o); n++) {
+            final int i = problem.nodeItem(n);
+            final int c = problem.nodeColor(n);
+            if (problem.isPrimary(i)) {
+                if (covered.get(i)) {
+                    return false;
+                }
+                covered.set(i);
+            } else if (fixedColor[i] == FREE) {
+                fixedColor[i] = c;
+            } else if (fixedColor[i] != c || c == CompiledProblem.NO_COLOR) {
+                return false;
+            }
+        }
+
+        forced.add(o);
+        kill(o);
+        for (int n = problem.optionStart(o); n < problem.optionEnd(o); n++) {
+            for (int m : COLUMN[problem.nodeItem(n)]) {
+                if (alive.get(OPTION[m]) && conflicts(n, m)) {
+                    kill(OPTION[m]);
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Probe each option and remove the options that would leave some
+     * primary item without options. Also removes the options that no
+     * longer contain primary items, because the search never chooses them.
+     *
+     * @return True if an option was removed.
+     */
+    private boolean blockOptions() {
+        final int[] seen = new int[problem.optionCount()];
+        final int[] touched = new int[problem.itemCount()];
+        final int[] killed = new int[problem.itemCount()];
+        final int[] own = new int[problem.itemCount()];
+        final int[] items = new int[problem.itemCount()];
+        int stamp = 0;
+
+        boolean changed = false;
+        for (int o = alive.nextSetBit(0); o >= 0; o = alive.nextSetBit(o + 1)) {
+            stamp++;
+            boolean primary = false;
+            for (int n = problem.optionStart(o); n < problem.optionEnd(o); n++) {
+                own[problem.nodeItem(n)] = stamp;
+                primary |= problem.isPrimary(problem.nodeItem(n));
+            }
+
+            // Count the options of each primary item that conflict with o.
+            int itemCount = 0;
+            seen[o] = stamp;
+            for (int n = problem.optionStart(o); n < problem.optionEnd(o); n++) {
+                for (int m : COLUMN[problem.nodeItem(n)]) {
+                    final int p = OPTION[m];
+                    if (seen[p] == stamp || !alive.get(p) || !conflicts(n, m)) {
+                        continue;
+                    }
+                    seen[p] = stamp;
+                    for (int q = problem.optionStart(p); q < problem.optionEnd(p); q++) {
+                        final int j = problem.nodeItem(q);
+                        if (own[j] == stamp || problem.isSecondary(j)) {
+                            continue;
+                        }
+                        if (touched[j] != stamp) {
+                            touched[j] = stamp;
+                            killed[j] = 0;
+                            items[itemCount++] = j;
+                        }
+                        killed[j]++;
+                    }
+                }
+            }
+
+            boolean blocked = !primary;
+            for (int k = 0; k < itemCount && !blocked; k++) {
+                blocked = killed[items[k]] == LEN[items[k]];
+            }
+            if (blocked) {
+                kill(o);
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Do two nodes of the same item exclude each other? The nodes of a
+     * secondary item are compatible only if they have the same color.
+     */
+    private boolean conflicts(final int n, final int m) {
+        final int c = problem.nodeColor(n);
+        return c == CompiledProblem.NO_COLOR || c != problem.nodeColor(m);
+    }
+
+    private void kill(final int o) {
+        alive.clear(o);
+        for (int n = problem.optionStart(o); n < problem.optionEnd(o); n++) {
+            LEN[problem.nodeItem(n)]--;
+        }
+    }
+
+    // =================================================================== //
+    // Building the reduced problem.
+
+    /**
+     * Copy the remaining options into a new problem. The items of the
+     * forced options are left out, as are the primary items that are
+     * covered by the same options as an earlier item.
+     */
+    private Reduction<O> compact(final Map<Integer, List<Integer>> duplicates) {
+        final CompiledProblem<O> reduced = new CompiledProblem<>();
+        final int[] itemIds = new int[problem.itemCount()];
+        Arrays.fill(itemIds, -1);
+
+        final Map<List<Integer>, Integer> optionSets = new HashMap<>();
+        for (int i = 0; i < problem.itemCount(); i++) {
+            if (covered.get(i) || fixedColor[i] != FREE || LEN[i] == 0) {
+                continue;
+            }
+            if (problem.isPrimary(i)) {
+                if (optionSets.putIfAbsent(aliveOptions(i), i) == null) {
+                    itemIds[i] = reduced.addPrimaryItem(problem.item(i));
+                }
+            } else {
+                itemIds[i] = reduced.addSecondaryItem(problem.item(i));
+            }
+        }
+
+        final int[] colorIds = new int[problem.colorCount()];
+        for (int c = 1; c < colorIds.length; c++) {
+            colorIds[c] = reduced.addColor(problem.color(c));
+        }
+
+        final int[] items = new int[problem.itemCount()];
+        final int[] colors = new int[problem.itemCount()];
+        final Map<O, List<O>> duplicateOptions = new IdentityHashMap<>();
+        for (int o = alive.nextSetBit(0); o >= 0; o = alive.nextSetBit(o + 1)) {
+            int size = 0;
+            for (int n = problem.optionStart(o); n < problem.optionEnd(o); n++) {
+                final int i = itemIds[problem.nodeItem(n)];
+                if (i >= 0) {
+                    items[size] = i;
+                    colors[size] = colorIds[problem.nodeColor(n)];
+                    size++;
+                }
+            }
+            reduced.addOption(problem.option(o),
+                    Arrays.copyOf(items, size),
+                    Arrays.copyOf(colors, size));
+            addDuplicates(o, duplicates, duplicateOptions);
+        }
+
+        final List<O> forcedOptions = new ArrayList<>();
+        for (int o : forced) {
+            forcedOptions.add(problem.option(o));
+            addDuplicates(o, duplicates, duplicateOptions);
+        }
+
+        return new Reduction<>(reduced,
+                Collections.unmodifiableList(forcedOptions),
+                duplicateOptions,
+                true,
+                problem.optionCount() - reduced.optionCount(),
+                problem.itemCount() - reduced.itemCount());
+    }
+
+    private List<Integer> aliveOptions(final int i) {
+        final List<Integer> options = new ArrayList<>(LEN[i]);
+        for (int n : COLUMN[i]) {
+            if (alive.get(OPTION[n])) {
+                options.add(OPTION[n]);
+            }
+        }
+        return options;
+    }
+
+    private void addDuplicates(
+            final int o,
+            final Map<Integer, List<Integer>> duplicates,
+            final Map<O, List<O>> duplicateOptions) {
+        final List<Integer> ids = duplicates.get(o);
+        if (ids != null) {
+            duplicateOptions.put(problem.option(o),
+                    ids.stream().map(problem::option).toList());
+        }
+    }
+
+    private Reduction<O> unsolvable() {
+        final CompiledProblem<O> reduced = new CompiledProblem<>();
+        reduced.addPrimaryItem(UNSOLVABLE);
+        return new Reduction<>(reduced,
+                List.of(),
+                new IdentityHashMap<>(),
+                false,
+                problem.optionCount(),
+                problem.itemCount() - 1);
+    }
+
+    /**
+     * Find the id of a pre-selected option.
+     */
+    private int optionId(final O option) {
+        final int id = problem.optionId(option);
+        if (id < 0) {
+            throw new IllegalArgumentException("unknown option " + option);
+        }
+        return id;
+    }
+}
@@ -0,0 +1,251 @@
+package fi.iki.asb.xcc;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Saves a {@link CompiledProblem} to a binary file and loads it back, so
+ * that a large problem does not have to be rebuilt through the item
+ * provider every time a JVM starts.
+ *
+ * <p>The file contains the id tables of the problem: the secondary items,
+ * the items and colors of each node and the option boundaries. The loader
+ * reads the tables straight into the arrays of the problem, after checking
+ * the counts in the header against the size of the file. The option
+ * objects are written and read with an {@link OptionCodec}. The item and
+ * color objects are not written at all. They are restored from the options
+ * in which they first appear when they are first needed, which is usually
+ * when a search with pre-selected options starts.</p>
+ *
+ * <p>An item is restored by its position in the items of its option, so
+ * only problems whose options have all been added with {@link
+ * CompiledProblem#addOption(Object)}, with an item provider that returns
+ * the items as a list in the same order every time, can be saved. A
+ * problem built with the low-level methods or reduced by the {@link
+ * Preprocessor} cannot be saved.</p>
+ *
+ * <p>The matrix of an array based solver is built from the loaded problem
+ * in linear time, without hashing any items.</p>
+ */
+public final class ProblemSnapshot {
+
+    /**
+     * "XCCS" in ASCII.
+     */
+    private static final int MAGIC = 0x58434353;
+
+    private static final int VERSION = 1;
+
+    /**
+     * Magic, version and the four counts.
+     */
+    private static final int HEADER_BYTES = 6 * Integer.BYTES;
+
+    private ProblemSnapshot() {
+    }
+
+    // =================================================================== //
+
+    /**
+     * Save a problem to a file. The file is created or truncated.
+     *
+     * @throws IllegalArgumentException
+     *      If the problem has an item that is not covered by any option,
+     *      or its items cannot be restored from its options.
+     */
+    public static <O> void save(
+            final CompiledProblem<O> problem,
+            final Path file,
+            final OptionCodec<O> codec) throws IOException {
+        Objects.requireNonNull(codec);
+        if (!problem.isRestorable()) {
+            throw new IllegalArgumentException("problem must be built with"
+                    + " addOption(O) and an item provider that returns lists");
+        }
+
+        final int[] itemOrigins = new int[problem.itemCount()];
+        final int[] colorOrigins = new int[problem.colorCount() - 1];
+        Arrays.fill(itemOrigins, -1);
+        Arrays.fill(colorOrigins, -1);
+        for (int n = problem.nodeCount() - 1; n >= 0; n--) {
+            itemOrigins[problem.nodeItem(n)] = n;
+            if (problem.nodeColor(n) != CompiledProblem.NO_COLOR) {
+                colorOrigins[problem.nodeColor(n) - 1] = n;
+            }
+        }
+        for (int i = 0; i < itemOrigins.length; i++) {
+            if (itemOrigins[i] < 0) {
+                throw new IllegalArgumentException("item ["
+                        + problem.item(i) + "] is not covered by any option");
+            }
+        }
+
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(problem.itemCount());
+            out.writeInt(colorOrigins.length);
+            out.writeInt(problem.optionCount());
+            out.writeInt(problem.nodeCount());
+
+            for (int i = 0; i < itemOrigins.length; i++) {
+                out.writeInt(problem.isSecondary(i) ? 1 : 0);
+            }
+            for (int origin : itemOrigins) {
+                out.writeInt(origin);
+            }
+            for (int origin : colorOrigins) {
+                out.writeInt(origin);
+            }
+            for (int o = 0; o < problem.optionCount(); o++) {
+                out.writeInt(problem.optionStart(o));
+            }
+            out.writeInt(problem.nodeCount());
+            for (int n = 0; n < problem.nodeCount(); n++) {
+                out.writeInt(problem.nodeItem(n));
+            }
+            for (int n = 0; n < problem.nodeCount(); n++) {
+                out.writeInt(problem.nodeColor(n));
+            }
+
+            for (int o = 0; o < problem.optionCount(); o++) {
+                codec.write(problem.option(o), out);
+            }
+        }
+    }
+
+    /**
+     * Load a problem from a file.
+     *
+     * @param itemProvider
+     *      The item provider the problem was built with. It is used for
+     *      restoring the items and for adding options to the problem.
+     *
+     * @throws IOException
+     *      If the file cannot be read, it is not a snapshot of a
+     *      supported version or its tables are truncated or inconsistent.
+     */
+    public static <O> CompiledProblem<O> load(
+            final Path file,
+            final ItemProvider<O> itemProvider,
+            final OptionCodec<O> codec) throws IOException {
+        Objects.requireNonNull(itemProvider);
+        Objects.requireNonNull(codec);
+
+        final long size = Files.size(file);
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(file)))) {
+            if (size < 8 || in.readInt() != MAGIC) {
+                throw new IOException("not a problem snapshot: " + file);
+            }
+            final int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("unsupported snapshot version ["
+                        + version + "]: " + file);
+            }
+
+            final int itemCount = in.readInt();
+            final int colorCount = in.readInt();
+            final int optionCount = in.readInt();
+            final int nodeCount = in.readInt();
+
+            // Check the counts before allocating anything for them. The
+            // options follow the tables, so the tables alone must fit.
+            if (itemCount < 0 || colorCount < 0 || optionCount < 0
+                    || nodeCount < 0) {
+                throw new IOException("corrupt problem snapshot: " + file);
+            }
+            final long tableInts = 2L * itemCount + colorCount
+                    + optionCount + 1 + 2L * nodeCount;
+            if (HEADER_BYTES + tableInts * Integer.BYTES > size) {
+                throw new IOException("truncated problem snapshot: " + file);
+            }
+
+            final int[] secondary = readInts(in, itemCount);
+            final BitSet secondaryItems = new BitSet(itemCount);
+            for (int i = 0; i < itemCount; i++) {
+                secondaryItems.set(i, secondary[i] != 0);
+            }
+            final int[] itemOrigins = readInts(in, itemCount);
+            final int[] colorOrigins = readInts(in, colorCount);
+            final int[] optionStart = readInts(in, optionCount + 1);
+            final int[] nodeItems = readInts(in, nodeCount);
+            final int[] nodeColors = readInts(in, nodeCount);
+
+            if (!isInRange(itemOrigins, nodeCount)
+                    || !isInRange(colorOrigins, nodeCount)
+                    || !isInRange(nodeItems, itemCount)
+                    || !isInRange(nodeColors, colorCount + 1)
+                    || !isAscending(optionStart, nodeCount)) {
+                throw new IOException("corrupt problem snapshot: " + file);
+            }
+
+            final List<O> options = new ArrayList<>(optionCount);
+            for (int o = 0; o < optionCount; o++) {
+                options.add(codec.read(in));
+            }
+
+            return new CompiledProblem<>(itemProvider, secondaryItems,
+                    itemOrigins, colorOrigins, options, optionStart,
+                    nodeItems, nodeColors);
+        } catch (EOFException ex) {
+            throw new IOException("truncated problem snapshot: " + file, ex);
+        }
+    }
+
+    // =================================================================== //
+
+    private static int[] readInts(
+            final DataInputStream in,
+            final int count) throws IOException {
+        final int[] values = new int[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = in.readInt();
+        }
+        return values;
+    }
+
+    /**
+     * Are all the values in the range from zero (inclusive) to the given
+     * limit (exclusive).
+     */
+    private static boolean isInRange(final int[] values, final int limit) {
+        for (int value : values) {
+            if (value < 0 || value >= limit) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Do the option boundaries run from zero to the number of nodes
+     * without going back.
+     */
+    private static boolean isAscending(
+            final int[] optionStart,
+            final int nodeCount) {
+        if (optionStart[0] != 0
+                || optionStart[optionStart.length - 1] != nodeCount) {
+            return false;
+        }
+        for (int o = 1; o < optionStart.length; o++) {
+            if (optionStart[o] < optionStart[o - 1]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
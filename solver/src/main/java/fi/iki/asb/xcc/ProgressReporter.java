@@ -1,19 +1,29 @@
 package fi.iki.asb.xcc;
 
+import java.time.Duration;
 import java.util.LinkedList;
+import java.util.function.LongSupplier;
 
 /**
  * Progress reporter that estimates the progress based on the number of
  * items processed on each recursion level. The estimate is more accurate
  * if the matrix is consistent (each column has a similar number of items
  * and the items are linked similarly).
+ *
+ * <p>The reporter also estimates the time remaining. If the size of the
+ * search has been estimated with a {@link SearchEstimator}, the time is
+ * computed from the remaining items and the number of items tried per
+ * second. Otherwise it is extrapolated from the progress.</p>
  */
 public class ProgressReporter implements XCCTrace {
 
     public static ProgressReporter systemOut(long reportInterval) {
-        return new ProgressReporter(
-                (i, p) -> System.out.printf("Progress: %d items, %.5f\n", i, p),
+        final ProgressReporter[] reporter = new ProgressReporter[1];
+        reporter[0] = new ProgressReporter(
+                (i, p) -> System.out.printf("Progress: %d items, %.5f, ETA %s\n",
+                        i, p, reporter[0].getEta()),
                 reportInterval);
+        return reporter[0];
     }
 
     @FunctionalInterface
@@ -90,6 +100,21 @@ public class ProgressReporter implements XCCTrace {
      */
     private long itemsTried = 0;
 
+    /**
+     * Source of the current time in nanoseconds.
+     */
+    private final LongSupplier clock;
+
+    /**
+     * Time when the search started.
+     */
+    private long startTime;
+
+    /**
+     * Estimated number of items the search tries, or NaN if not known.
+     */
+    private double estimatedItems = Double.NaN;
+
     // =================================================================== //
 
     /**
@@ -99,14 +124,31 @@ public class ProgressReporter implements XCCTrace {
     public ProgressReporter(
             final ProgressConsumer progressConsumer,
             final long reportInterval) {
+        this(progressConsumer, reportInterval, System::nanoTime);
+    }
+
+    ProgressReporter(
+            final ProgressConsumer progressConsumer,
+            final long reportInterval,
+            final LongSupplier clock) {
         this.progressConsumer = progressConsumer;
         this.reportInterval = reportInterval;
+        this.clock = clock;
+    }
+
+    /**
+     * Use an estimate of the search for computing the time remaining.
+     */
+    public void setEstimate(final SearchEstimator.Estimate estimate) {
+        this.estimatedItems = estimate.nodes();
     }
 
     @Override
     public void onSearchStarted() {
         stack.clear();
         progress = new Progress();
+        itemsTried = 0;
+        startTime = clock.getAsLong();
     }
 
     @Override
@@ -138,4 +180,35 @@ public class ProgressReporter implements XCCTrace {
     public long getItemsTried() {
         return itemsTried;
     }
+
+    /**
+     * Get the number of items tried per second since the search started.
+     */
+    public double getItemsPerSecond() {
+        final long elapsed = clock.getAsLong() - startTime;
+        return (progress != null && elapsed > 0)
+                ? itemsTried * 1e9 / elapsed
+                : Double.NaN;
+    }
+
+    /**
+     * Get the estimated time remaining, or null if it cannot be estimated
+     * yet.
+     */
+    public Duration getEta() {
+        if (progress == null || itemsTried == 0) {
+            return null;
+        }
+
+        final double elapsed = clock.getAsLong() - startTime;
+        final double remaining;
+        if (!Double.isNaN(estimatedItems)) {
+            remaining = Math.max(0.0, estimatedItems - itemsTried)
+                    * elapsed / itemsTried;
+        } else {
+            final double p = getProgress();
+            remaining = elapsed * (1.0 - p) / p;
+        }
+        return Duration.ofNanos((long) Math.min(remaining, Long.MAX_VALUE));
+    }
 }
@@ -1,15 +1,16 @@
 package fi.iki.asb.xcc;
 
+import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Objects;
-import java.util.Set;
 import java.util.function.BooleanSupplier;
 import java.util.function.Consumer;
-import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 /**
  * A generic exact cover with color solver. An implementation of Knuth's
@@ -29,12 +30,19 @@ public final class ReferenceXCC<O> implements XCC<O> {
      * go through the coloured items again once they have already been
      * purified.
      */
-    private static final Object PURIFIED = new Object();
+    private static final int PURIFIED = -1;
 
     /**
-     * Names of items.
+     * Index is the id of an item in the compiled problem, value is the
+     * index of the column of the item.
      */
-    private Object[] NAME;
+    private int[] COLUMN;
+
+    /**
+     * Index is the index of a column, value is the id of the item in the
+     * compiled problem. The inverse of <code>COLUMN</code>.
+     */
+    private int[] ITEM;
 
     /**
      * Column header: index is the index of column <code>i</code>, value is
@@ -76,32 +84,23 @@ public final class ReferenceXCC<O> implements XCC<O> {
     private int[] DLINK;
 
     /**
-     * The color associated to each item. Null corresponds to 0 in the Knuth
-     * algorithm, non-null value corresponds to a positive value and PURIFIED
-     * corresponds to negative value.
-     */
-    private Object[] COLOR;
-
-    /**
-     * The option associated to each node in the matrix.
+     * The color id associated to each item. Uncolored items have color
+     * zero as in the Knuth algorithm, and PURIFIED corresponds to the
+     * negative value.
      */
-    private Object[] OPTION;
+    private int[] COLOR;
 
     /**
-     * The options this solver has been initialized with.
+     * The option id associated to each node in the matrix.
      */
-    private final List<O> initializedOptions = new ArrayList<>();
+    private int[] OPTION;
 
     /**
-     * Mapper that creates items for options.
+     * The problem this solver has been initialized with. Items, options
+     * and colors are interned into it as the options are added, so the
+     * matrix can be built without looking anything up by value.
      */
-    private final ItemProvider<O> itemProvider;
-
-    /**
-     * Number of options. The value is negative. The actual number of options
-     * is the absolute value.
-     */
-    private int numOptions = 0;
+    private final CompiledProblem<O> problem;
 
     /**
      * Has the data structure been initialized.
@@ -133,14 +132,54 @@ public final class ReferenceXCC<O> implements XCC<O> {
     private Consumer<List<O>> solutionConsumer;
 
     /**
-     * Current emergency brake. Cleared when algorithm finishes. As with
-     * <code>solution</code> this is stored as an instance field to reduce
-     * the number of parameters in the recursive calls.
+     * Enforces the limits of the current search, including the emergency
+     * brake. Cleared when algorithm finishes. As with <code>solution</code>
+     * this is stored as an instance field to reduce the number of
+     * parameters in the recursive calls.
      */
-    private BooleanSupplier emergencyBrake;
+    private SearchMonitor monitor;
 
     private XCCTrace trace = null;
 
+    /**
+     * Strategy for choosing the item to cover, or null for the built-in
+     * MRV heuristic.
+     */
+    private ItemChooser itemChooser = null;
+
+    /**
+     * Keep the active primary items in buckets by their length during the
+     * search.
+     */
+    private boolean itemBuckets = false;
+
+    /**
+     * Index is a length, value is the first column in the bucket of that
+     * length or zero if the bucket is empty. Null unless a search with
+     * item buckets is running.
+     */
+    private int[] BUCKET;
+
+    /**
+     * The next column in the same bucket or zero.
+     */
+    private int[] BNEXT;
+
+    /**
+     * The previous column in the same bucket or zero.
+     */
+    private int[] BPREV;
+
+    /**
+     * Number of primary items. Columns 1..primaryCount are primary.
+     */
+    private int primaryCount;
+
+    /**
+     * Statistics of the running search, or null if they are not collected.
+     */
+    private SearchStatistics.Collector statistics = null;
+
     /**
      * @param itemProvider
      *      Mapper that creates the items that are covered by each option
@@ -148,7 +187,17 @@ public final class ReferenceXCC<O> implements XCC<O> {
      */
     public ReferenceXCC(
             final ItemProvider<O> itemProvider) {
-        this.itemProvider = itemProvider;
+        this(new CompiledProblem<>(itemProvider));
+    }
+
+    /**
+     * @param problem
+     *      The problem to solve. Options added to this instance are added
+     *      to the problem.
+     */
+    public ReferenceXCC(
+            final CompiledProblem<O> problem) {
+        this.problem = Objects.requireNonNull(problem);
     }
 
     @Override
@@ -162,7 +211,7 @@ public final class ReferenceXCC<O> implements XCC<O> {
     @Override
     public void addOption(O option) {
         ensureOpen();
-        initializedOptions.add(option);
+        problem.addOption(option);
     }
 
     @Override
@@ -171,147 +220,73 @@ public final class ReferenceXCC<O> implements XCC<O> {
     }
 
     /**
-     * Step C1
+     * Set the strategy for choosing the item that is covered next.
+     *
+     * @param itemChooser
+     *      The strategy, or null for the default "minimum remaining
+     *      values" heuristic, which is the same as {@link
+     *      ItemChooser#mrv()} but faster.
+     *
+     * @throws IllegalStateException If the matrix is dirty.
+     */
+    public void setItemChooser(final ItemChooser itemChooser) {
+        ensureClean();
+        this.itemChooser = itemChooser;
+    }
+
+    /**
+     * Keep the active primary items in buckets by their length, so that
+     * an item with the fewest options is found without scanning all the
+     * active items. The buckets are updated whenever the length of an
+     * item changes, which makes each update a little slower, so this pays
+     * off for problems with thousands of primary items. The solutions are
+     * found in a different order than without buckets. The buckets are
+     * not used if an {@link ItemChooser} has been set.
+     *
+     * @throws IllegalStateException If the matrix is dirty.
+     */
+    public void setItemBuckets(final boolean itemBuckets) {
+        ensureClean();
+        this.itemBuckets = itemBuckets;
+    }
+
+    /**
+     * Step C1. The arrays are allocated to their final sizes up front,
+     * because the compiled problem already knows the number of items and
+     * nodes.
      */
     private void initMatrix() {
         ensureOpen();
         initialized = true;
-
-        final List<Object> NAME = new ArrayList<>();
-        final List<Integer> LLINK = new ArrayList<>();
-        final List<Integer> RLINK = new ArrayList<>();
-        final List<Integer> TOP = new ArrayList<>();
-        final List<Integer> LEN = TOP;
-        final List<Integer> ULINK = new ArrayList<>();
-        final List<Integer> DLINK = new ArrayList<>();
-        final List<Object> COLOR = new ArrayList<>();
-        final List<Object> OPTION = new ArrayList<>();
-
-        // Add header elements.
-        NAME.add("header");
-        LLINK.add(0);
-        RLINK.add(0);
-        LEN.add(-1);
-        COLOR.add(null);
-        OPTION.add(null);
-        ULINK.add(-1);
-        DLINK.add(-1);
-
-        // Gather items from the options and add them.
-        final Set<Object> uniqueItems = initializedOptions.stream()
-                .map(itemProvider::from)
-                .flatMap(Collection::stream)
-                .collect(Collectors.toSet());
-
-        final Set<Object> primaryItems = uniqueItems.stream()
-                .filter(this::isPrimary)
-                .collect(Collectors.toSet());
-        final Set<Object> secondaryItems = uniqueItems.stream()
-                .filter(this::isSecondary)
-                .collect(Collectors.toSet());
-
-        for (Object item : primaryItems) {
-            int i = NAME.size();
-
-            // Initialize column header.
-            NAME.add(item);
-            LLINK.add(i - 1);
-            RLINK.add(0);
-            RLINK.set(LLINK.getFirst(), i);
-            LLINK.set(0, i);
-
-            LEN.add(0);
-            COLOR.add(null);
-            OPTION.add(null);
-            ULINK.add(i);
-            DLINK.add(i);
-        }
-
-        boolean firstSecondary = true;
-        for (Object item : secondaryItems) {
-            int i = NAME.size(); // Current item.
-            int p = i - 1;
-
-            // Initialize column header.
-            NAME.add(item);
-            if (firstSecondary) {
-                firstSecondary = false;
-                LLINK.add(i);
-                RLINK.add(i);
-            } else {
-                RLINK.add(RLINK.get(p));
-                LLINK.add(p);
-                LLINK.set(RLINK.get(i), i);
-                RLINK.set(LLINK.get(i), i);
-            }
-
-            LEN.add(0);
-            COLOR.add(null);
-            OPTION.add(null);
-            ULINK.add(i);
-            DLINK.add(i);
-        }
-
-        // Add first spacer.
-        TOP.add(numOptions--);
-        COLOR.add(null);
-        OPTION.add(null);
-        ULINK.add(-1);
-        DLINK.add(-1);
-
-        for (O option : initializedOptions) {
-            final Collection<Object> items = itemProvider.from(option);
-
-            int rowStart = TOP.size() - 1;
-            for (Object item : items) {
-                // Add item.
-                int column = NAME.indexOf(item);
-                int i = TOP.size();
-                TOP.add(column);
-
-                if (isSecondary(item)) {
-                    COLOR.add(((SecondaryItem) item).getColor());
-                } else {
-                    COLOR.add(null);
-                }
-
-                OPTION.add(option);
-                ULINK.add(ULINK.get(column));
-                DLINK.add(column);
-
-                // Update existing links.
-                DLINK.set(ULINK.get(column), i);
-                ULINK.set(column, i);
-                LEN.set(column, LEN.get(column) + 1);
-            }
-
-            // Link row start spacer to the end of row.
-            DLINK.set(rowStart, TOP.size() - 1);
-
-            // Row start spacer for next row.
-            TOP.add(numOptions--);
-            COLOR.add(null);
-            OPTION.add(null);
-            ULINK.add(rowStart + 1);
-            DLINK.add(-1);
+        final long start = System.nanoTime();
+        final SearchRecorder.MatrixEvent event = SearchRecorder.matrixStarted();
+
+        final int N = problem.itemCount();
+        final int N1 = problem.primaryItemCount();
+        primaryCount = N1;
+        final int size = N + 1 + problem.nodeCount() + problem.optionCount() + 1;
+
+        COLUMN = new int[N];
+        ITEM = new int[N + 1];
+        LLINK = new int[N + 2];
+        RLINK = new int[N + 2];
+        TOP = new int[size];
+        LEN = TOP;
+        ULINK = new int[size];
+        DLINK = new int[size];
+        COLOR = new int[size];
+        OPTION = new int[size];
+
+        // Primary items are in indexes 1..N1 and linked to the header in
+        // index 0. Secondary items are in N1+1..N and linked to the header
+        // in index N+1.
+        ArrayMatrix.fill(problem, COLUMN, LLINK, RLINK, LEN, TOP, ULINK,
+                DLINK, COLOR, OPTION);
+        for (int item = 0; item < N; item++) {
+            ITEM[COLUMN[item]] = item;
         }
 
-
-        this.NAME = NAME.toArray();
-        this.LLINK = toArray(LLINK);
-        this.RLINK = toArray(RLINK);
-        this.TOP = toArray(TOP);
-        this.LEN = this.TOP;
-        this.ULINK = toArray(ULINK);
-        this.DLINK = toArray(DLINK);
-        this.COLOR = COLOR.toArray();
-        this.OPTION = OPTION.toArray();
-    }
-
-    private int[] toArray(List<Integer> list) {
-        return list.stream()
-                .mapToInt(Integer::intValue)
-                .toArray();
+        SearchRecorder.matrixBuilt(event, "ReferenceXCC", problem, start);
     }
 
     // =========================================================== //
@@ -322,10 +297,33 @@ public final class ReferenceXCC<O> implements XCC<O> {
             final Consumer<List<O>> solutionConsumer,
             final List<O> preSelectedOptions,
             final BooleanSupplier emergencyBrake) {
+        Objects.requireNonNull(emergencyBrake);
+        runSearch(solutionConsumer, preSelectedOptions,
+                SearchMonitor.of(emergencyBrake));
+    }
+
+    /**
+     * Search within limits. The limits are checked directly in the search
+     * loop, instead of through an emergency brake.
+     */
+    @Override
+    public SearchResult search(
+            final Consumer<List<O>> solutionConsumer,
+            final List<O> preSelectedOptions,
+            final SearchLimits limits) {
+        Objects.requireNonNull(solutionConsumer);
+        final SearchMonitor monitor = new SearchMonitor(limits);
+        runSearch(monitor.wrap(solutionConsumer), preSelectedOptions, monitor);
+        return monitor.result();
+    }
+
+    private void runSearch(
+            final Consumer<List<O>> solutionConsumer,
+            final List<O> preSelectedOptions,
+            final SearchMonitor monitor) {
 
         Objects.requireNonNull(preSelectedOptions);
         Objects.requireNonNull(solutionConsumer);
-        Objects.requireNonNull(emergencyBrake);
 
         ensureClean();
         dirty = true;
@@ -333,42 +331,107 @@ public final class ReferenceXCC<O> implements XCC<O> {
         if (isInitialized()) {
             initMatrix();
         }
+        if (itemBuckets && itemChooser == null) {
+            initBuckets();
+        }
 
         // Find the distinct set of items that are covered by the
         // pre-selected options and cover them.
-        final List<Object> hiddenItems = collectHiddenItems(
-                preSelectedOptions);
-        hiddenItems.forEach(i -> cover(columnIndex(i)));
+        final int[] hiddenItems = collectHiddenItems(preSelectedOptions);
+        for (int i : hiddenItems) {
+            if (statistics != null) {
+                coverWithStatistics(i);
+            } else {
+                cover(i);
+            }
+        }
 
+        final XCCTrace userTrace = trace;
+        final SearchRecorder recorder = SearchRecorder.start(
+                "ReferenceXCC", false, preSelectedOptions.size(), trace);
         try {
             this.solution = new ArrayList<>(preSelectedOptions);
             this.solutionConsumer = solutionConsumer;
-            this.emergencyBrake = emergencyBrake;
+            this.monitor = monitor;
+
+            if (recorder != null) {
+                this.trace = recorder;
+                this.solutionConsumer = recorder.wrap(solutionConsumer);
+            }
 
             if (trace != null) {
                 trace.onSearchStarted();
             }
 
-            recursiveSearch();
+            if (statistics != null) {
+                recursiveSearchWithStatistics();
+            } else {
+                recursiveSearch();
+            }
         } finally {
             this.solution = null;
             this.solutionConsumer = null;
-            this.emergencyBrake = null;
+            this.monitor = null;
+            this.trace = userTrace;
+            if (recorder != null) {
+                recorder.end();
+            }
         }
 
         // Uncover the initial hidden columns in reverse order to restore
         // the matrix to original state.
-        hiddenItems.reversed().forEach(i -> uncover(columnIndex(i)));
+        for (int k = hiddenItems.length - 1; k >= 0; k--) {
+            uncover(hiddenItems[k]);
+        }
 
+        BUCKET = null;
         dirty = false;
     }
 
+    /**
+     * Search the solutions and collect the statistics of the search.
+     */
+    public SearchStatistics searchWithStatistics(
+            final Consumer<List<O>> solutionConsumer) {
+        return searchWithStatistics(solutionConsumer, new ArrayList<>(), () -> false);
+    }
+
+    /**
+     * Search the solutions and collect the statistics of the search. The
+     * statistics are counted in a separate instrumented copy of the search
+     * loop, so the operations of {@link #search} do not check for them.
+     *
+     * @throws IllegalStateException
+     *      A previous <code>search</code> was interrupted by an exception
+     *      and the matrix was left dirty. The XCC instance must be
+     *      recreated.
+     */
+    public SearchStatistics searchWithStatistics(
+            final Consumer<List<O>> solutionConsumer,
+            final List<O> preSelectedOptions,
+            final BooleanSupplier emergencyBrake) {
+        Objects.requireNonNull(solutionConsumer);
+
+        final XCCTrace userTrace = trace;
+        final SearchStatistics.Collector collector
+                = new SearchStatistics.Collector(userTrace);
+        try {
+            this.statistics = collector;
+            this.trace = collector;
+            search(collector.wrap(solutionConsumer), preSelectedOptions,
+                    emergencyBrake);
+        } finally {
+            this.statistics = null;
+            this.trace = userTrace;
+        }
+        return collector.toStatistics();
+    }
+
     /**
      * Step C2
      */
-    @SuppressWarnings("unchecked")
     private void recursiveSearch() {
-        if (emergencyBrake.getAsBoolean()) {
+        if (monitor.stop()) {
             return;
         }
 
@@ -381,7 +444,7 @@ public final class ReferenceXCC<O> implements XCC<O> {
         }
 
         // Select and cover column (steps C3 and C4).
-        int i = findColumn();
+        int i = nextColumn();
 
         if (trace != null) {
             trace.onRecursionEntered(LEN[i]);
@@ -409,7 +472,7 @@ public final class ReferenceXCC<O> implements XCC<O> {
             }
 
             // Return to C2
-            solution.add((O) OPTION[x1]);
+            solution.add(problem.option(OPTION[x1]));
             recursiveSearch();
             solution.removeLast();
 
@@ -438,6 +501,216 @@ public final class ReferenceXCC<O> implements XCC<O> {
         }
     }
 
+    /**
+     * Same as {@link #recursiveSearch()}, but counts the operations in the
+     * statistics before doing them.
+     */
+    private void recursiveSearchWithStatistics() {
+        if (monitor.stop()) {
+            return;
+        }
+
+        if (RLINK[0] == 0) {
+            solutionConsumer.accept(Collections.unmodifiableList(
+                    solution));
+            return;
+        }
+
+        if (itemChooser == null && BUCKET == null) {
+            statistics.mems += findColumnMems();
+        }
+        int i = nextColumn();
+
+        trace.onRecursionEntered(LEN[i]);
+
+        coverWithStatistics(i);
+        for (int x1 = DLINK[i]; x1 != i; x1 = DLINK[x1]) {
+            trace.onItemSelected();
+
+            int p = x1 + 1;
+            while (p != x1) {
+                int j = TOP[p];
+                if (j <= 0) {
+                    p = ULINK[p];
+                } else {
+                    commitWithStatistics(p, j);
+                    p = p + 1;
+                }
+            }
+
+            solution.add(problem.option(OPTION[x1]));
+            recursiveSearchWithStatistics();
+            solution.removeLast();
+
+            p = x1 - 1;
+            while (p != x1) {
+                int j = TOP[p];
+                if (j <= 0) {
+                    p = DLINK[p];
+                } else {
+                    uncommit(p, j);
+                    p = p - 1;
+                }
+            }
+        }
+        uncover(i);
+
+        trace.onRecursionEnded();
+    }
+
+    // =========================================================== //
+    // Streaming solutions.
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>The stream searches its own matrix built from the problem, so it
+     * does not make this instance dirty and several streams can be used at
+     * the same time. The solutions are not ordered in parallel streams.</p>
+     */
+    @Override
+    public Stream<List<O>> solutions(final List<O> preSelectedOptions) {
+        Objects.requireNonNull(preSelectedOptions);
+        ensureClean();
+        return IterativeSearch.stream(
+                problem, ArrayMatrix.build("ReferenceXCC", problem),
+                preSelectedOptions);
+    }
+
+    // =========================================================== //
+    // Counting solutions.
+
+    /**
+     * Count the solutions without maintaining the solution or calling a
+     * consumer.
+     *
+     * @throws IllegalStateException
+     *      A previous <code>search</code> was interrupted by an exception
+     *      and the matrix was left dirty. The XCC instance must be
+     *      recreated.
+     */
+    @Override
+    public BigInteger countSolutionsExact(final List<O> preSelectedOptions) {
+        Objects.requireNonNull(preSelectedOptions);
+
+        ensureClean();
+        dirty = true;
+
+        if (isInitialized()) {
+            initMatrix();
+        }
+        if (itemBuckets && itemChooser == null) {
+            initBuckets();
+        }
+
+        final int[] hiddenItems = collectHiddenItems(preSelectedOptions);
+        for (int i : hiddenItems) {
+            cover(i);
+        }
+
+        final XCCTrace userTrace = trace;
+        final SearchRecorder recorder = SearchRecorder.start(
+                "ReferenceXCC", true, preSelectedOptions.size(), trace);
+        if (recorder != null) {
+            trace = recorder;
+        }
+
+        if (trace != null) {
+            trace.onSearchStarted();
+        }
+
+        final SolutionCounter counter = new SolutionCounter();
+        try {
+            recursiveCount(counter);
+        } finally {
+            trace = userTrace;
+            if (recorder != null) {
+                recorder.end(counter.value());
+            }
+        }
+
+        for (int k = hiddenItems.length - 1; k >= 0; k--) {
+            uncover(hiddenItems[k]);
+        }
+
+        BUCKET = null;
+        dirty = false;
+        return counter.value();
+    }
+
+    /**
+     * Same as {@link #recursiveSearch()}, but only counts the solutions.
+     */
+    private void recursiveCount(final SolutionCounter counter) {
+        if (RLINK[0] == 0) {
+            counter.add(1);
+            return;
+        }
+
+        // If only one primary item is left, each of the options that are
+        // still in its column completes a solution. There is no need to
+        // descend into them.
+        if (RLINK[RLINK[0]] == 0) {
+            counter.add(LEN[RLINK[0]]);
+            return;
+        }
+
+        int i = nextColumn();
+
+        if (trace != null) {
+            trace.onRecursionEntered(LEN[i]);
+        }
+
+        cover(i);
+        for (int x1 = DLINK[i]; x1 != i; x1 = DLINK[x1]) {
+            if (trace != null) {
+                trace.onItemSelected();
+            }
+
+            int p = x1 + 1;
+            while (p != x1) {
+                int j = TOP[p];
+                if (j <= 0) {
+                    p = ULINK[p];
+                } else {
+                    commit(p, j);
+                    p = p + 1;
+                }
+            }
+
+            recursiveCount(counter);
+
+            p = x1 - 1;
+            while (p != x1) {
+                int j = TOP[p];
+                if (j <= 0) {
+                    p = DLINK[p];
+                } else {
+                    uncommit(p, j);
+                    p = p - 1;
+                }
+            }
+        }
+        uncover(i);
+
+        if (trace != null) {
+            trace.onRecursionEnded();
+        }
+    }
+
+    /**
+     * Choose the column to cover (step C3).
+     */
+    private int nextColumn() {
+        if (itemChooser != null) {
+            return chooseColumn();
+        } else if (BUCKET != null) {
+            return bucketColumn();
+        } else {
+            return findColumn();
+        }
+    }
+
     /**
      * Find column using Minimum-Remaining-Value (MRV) heuristic. It chooses
      * the column with the fewest remaining values. Also called most
@@ -458,20 +731,85 @@ public final class ReferenceXCC<O> implements XCC<O> {
         return smallest;
     }
 
+    /**
+     * Find column using the item chooser.
+     */
+    private int chooseColumn() {
+        itemChooser.start();
+        int chosen = RLINK[0];
+        for (int i = chosen; i != 0; i = RLINK[i]) {
+            if (itemChooser.offer(problem.item(ITEM[i]), LEN[i])) {
+                chosen = i;
+            }
+            if (itemChooser.isDone()) {
+                break;
+            }
+        }
+
+        return chosen;
+    }
+
+    /**
+     * Find column with the fewest remaining values from the buckets. The
+     * search usually stops at the buckets of length zero or one.
+     */
+    private int bucketColumn() {
+        int len = 0;
+        while (BUCKET[len] == 0) {
+            len++;
+        }
+        return BUCKET[len];
+    }
+
+    // =================================================================== //
+    // Item buckets.
+
+    /**
+     * Put the active primary items in the buckets. The items are added in
+     * reverse order, so each bucket starts in the order of the item list.
+     */
+    private void initBuckets() {
+        BUCKET = new int[problem.optionCount() + 1];
+        BNEXT = new int[primaryCount + 1];
+        BPREV = new int[primaryCount + 1];
+        for (int i = LLINK[0]; i != 0; i = LLINK[i]) {
+            bucket(i);
+        }
+    }
+
+    private void bucket(int i) {
+        final int first = BUCKET[LEN[i]];
+        BNEXT[i] = first;
+        BPREV[i] = 0;
+        BPREV[first] = i;
+        BUCKET[LEN[i]] = i;
+    }
+
+    private void unbucket(int i) {
+        final int next = BNEXT[i];
+        final int prev = BPREV[i];
+        if (prev == 0) {
+            BUCKET[LEN[i]] = next;
+        } else {
+            BNEXT[prev] = next;
+        }
+        BPREV[next] = prev;
+    }
+
     // =================================================================== //
     // Operations for manipulating the matrix during search.
 
     private void commit(int p, int j) {
-        Object c = COLOR[p];
-        if (c == null) {
+        int c = COLOR[p];
+        if (c == 0) {
             cover(j);
-        } else if (c != PURIFIED) {
+        } else if (c > 0) {
             purify(p);
         }
     }
 
     private void purify(int p) {
-        Object c = COLOR[p];
+        int c = COLOR[p];
         int i = TOP[p];
         int q = DLINK[i];
 
@@ -479,7 +817,7 @@ public final class ReferenceXCC<O> implements XCC<O> {
         COLOR[i] = c;
 
         while (q != i) {
-            if (Objects.equals(COLOR[q], c)) {
+            if (COLOR[q] == c) {
                 COLOR[q] = PURIFIED;
             } else {
                 hide(q);
@@ -500,6 +838,10 @@ public final class ReferenceXCC<O> implements XCC<O> {
         final int r = RLINK[i];
         RLINK[l] = r;
         LLINK[r] = l;
+
+        if (BUCKET != null && i <= primaryCount) {
+            unbucket(i);
+        }
     }
 
     private void hide(int p) {
@@ -515,7 +857,13 @@ public final class ReferenceXCC<O> implements XCC<O> {
                     int d = DLINK[q];
                     DLINK[u] = d;
                     ULINK[d] = u;
-                    LEN[x]--;
+                    if (BUCKET != null && x <= primaryCount) {
+                        unbucket(x);
+                        LEN[x]--;
+                        bucket(x);
+                    } else {
+                        LEN[x]--;
+                    }
                 }
                 q++;
             }
@@ -524,10 +872,10 @@ public final class ReferenceXCC<O> implements XCC<O> {
     }
 
     private void uncommit(int p, int j) {
-        Object c = COLOR[p];
-        if (c == null) {
+        int c = COLOR[p];
+        if (c == 0) {
             uncover(j);
-        } else if (c != PURIFIED) {
+        } else if (c > 0) {
             unpurify(p);
         }
     }
@@ -535,7 +883,7 @@ public final class ReferenceXCC<O> implements XCC<O> {
     private void unpurify(int p) {
         int i = TOP[p];
         int q = ULINK[i];
-        Object c = COLOR[i];
+        int c = COLOR[i];
 
         while (q != i) {
             if (COLOR[q] == PURIFIED) {
@@ -547,7 +895,7 @@ public final class ReferenceXCC<O> implements XCC<O> {
             q = ULINK[q];
         }
 
-        COLOR[i] = null;
+        COLOR[i] = 0;
     }
 
     private void uncover(int i) {
@@ -556,6 +904,10 @@ public final class ReferenceXCC<O> implements XCC<O> {
         RLINK[l] = i;
         LLINK[r] = i;
 
+        if (BUCKET != null && i <= primaryCount) {
+            bucket(i);
+        }
+
         int p = ULINK[i];
         while (p != i) {
             unhide(p);
@@ -577,55 +929,118 @@ public final class ReferenceXCC<O> implements XCC<O> {
                     int u = ULINK[q];
                     DLINK[u] = q;
                     ULINK[d] = q;
-                    LEN[x]++;
+                    if (BUCKET != null && x <= primaryCount) {
+                        unbucket(x);
+                        LEN[x]++;
+                        bucket(x);
+                    } else {
+                        LEN[x]++;
+                    }
                 }
                 q--;
             }
         }
     }
 
-    // =========================================================== //
-    // Auxiliary methods.
-
-    /**
-     * Collect hidden items from the pre-selected options.
-     */
-    private List<Object> collectHiddenItems(
-            final Collection<O> preSelectedOptions) {
+    // =================================================================== //
+    // Statistics. The instrumented search counts each operation just before
+    // doing it. The inverse operations access the same elements in the same
+    // state of the matrix, so the mems of an operation are counted twice
+    // and the inverse operations are not instrumented at all.
+
+    private void coverWithStatistics(int i) {
+        long mems = coverMems(i);
+        for (int p = DLINK[i]; p != i; p = DLINK[p]) {
+            statistics.hides++;
+            mems += hideMems(p);
+        }
+        statistics.covers++;
+        statistics.mems += 2 * mems;
+        cover(i);
+    }
 
-        // Gather distinct items that should be hidden.
-        return preSelectedOptions.stream()
-                .map(itemProvider::from)
-                .flatMap(Collection::stream)
-                .distinct()
-                .toList();
+    private void commitWithStatistics(int p, int j) {
+        int c = COLOR[p];
+        if (c == 0) {
+            coverWithStatistics(j);
+        } else if (c > 0) {
+            purifyWithStatistics(p);
+        }
     }
 
-    /**
-     * Find the index of the given item. This is used in the beginning
-     * and end of the search to cover and uncover pre-selected items so
-     * the O(N) running time is not so much of a concern.
-     */
-    private int columnIndex(Object item) {
-        for (int i = 1; i < NAME.length; i++) {
-            if (Objects.equals(item, NAME[i])) {
-                return i;
+    private void purifyWithStatistics(int p) {
+        int c = COLOR[p];
+        int i = TOP[p];
+        long mems = purifyMems(p);
+        for (int q = DLINK[i]; q != i; q = DLINK[q]) {
+            if (COLOR[q] != c) {
+                statistics.hides++;
+                mems += hideMems(q);
             }
         }
+        statistics.purifies++;
+        statistics.mems += 2 * mems;
+        purify(p);
+    }
+
+    // =================================================================== //
+    // Mems. Each method counts the array elements that the operation of the
+    // same name reads or writes, given the current state of the matrix.
 
-        throw new IllegalArgumentException(item.toString());
+    private long findColumnMems() {
+        long mems = 1;
+        for (int i = RLINK[0]; i != 0; i = RLINK[i]) {
+            mems += 2;
+        }
+        return mems;
     }
 
-    private boolean isInitialized() {
-        return !initialized;
+    private long coverMems(int i) {
+        return LEN[i] + 1 + 4;
     }
 
-    private boolean isPrimary(Object item) {
-        return !(item instanceof SecondaryItem);
+    private long purifyMems(int p) {
+        return 4 + 2L * LEN[TOP[p]];
     }
 
-    private boolean isSecondary(Object item) {
-        return (item instanceof SecondaryItem);
+    private long hideMems(int p) {
+        long mems = 0;
+        int q = p + 1;
+        while (q != p) {
+            mems += 2;
+            if (TOP[q] <= 0) {
+                q = ULINK[q];
+            } else {
+                mems += (COLOR[q] != PURIFIED) ? 5 : 1;
+                q++;
+            }
+        }
+        return mems;
+    }
+
+    // =========================================================== //
+    // Auxiliary methods.
+
+    /**
+     * Collect the distinct columns of the items covered by the pre-selected
+     * options. The items are looked up from the compiled problem by hash,
+     * so this takes time proportional to the size of the options.
+     */
+    private int[] collectHiddenItems(
+            final Collection<O> preSelectedOptions) {
+
+        final BitSet seen = new BitSet(COLUMN.length);
+        return preSelectedOptions.stream()
+                .map(problem::itemsOf)
+                .flatMapToInt(IntStream::of)
+                .filter(item -> !seen.get(item))
+                .peek(seen::set)
+                .map(item -> COLUMN[item])
+                .toArray();
+    }
+
+    private boolean isInitialized() {
+        return !initialized;
     }
 
     private void ensureClean() {
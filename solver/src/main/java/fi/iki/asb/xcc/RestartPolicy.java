@@ -0,0 +1,82 @@
+package fi.iki.asb.xcc;
+
+/**
+ * Node limits of the runs of a randomized search. A run that tries more
+ * options than its limit without finding a solution is abandoned, and the
+ * search restarts with a different random order. Restarts cut off the
+ * long runs that a randomized search sometimes gets stuck in, which
+ * improves the time to the first solution.
+ *
+ * @see LinkedXCC#setRestartPolicy(RestartPolicy)
+ */
+@FunctionalInterface
+public interface RestartPolicy {
+
+    /**
+     * Get the node limit of a run.
+     *
+     * @param run The number of the run, starting from zero.
+     *
+     * @return The maximum number of options the run may try.
+     */
+    long nodeLimit(int run);
+
+    // =================================================================== //
+
+    /**
+     * Luby's universal restart sequence 1, 1, 2, 1, 1, 2, 4, 1, 1, 2, ...
+     * multiplied by the unit. It is within a constant factor of the best
+     * fixed limit, without knowing anything of the problem.
+     *
+     * @throws IllegalArgumentException If the unit is not positive.
+     */
+    static RestartPolicy luby(final long unit) {
+        if (unit <= 0) {
+            throw new IllegalArgumentException("unit must be positive");
+        }
+        return run -> {
+            // Find the element of the sequence by removing the complete
+            // prefixes of length 2^k - 1.
+            long i = run + 1L;
+            while (true) {
+                long size = 1;
+                while (size < i + 1) {
+                    size = 2 * size;
+                }
+                if (size - 1 == i) {
+                    return multiply(unit, size / 2);
+                }
+                i -= size / 2 - 1;
+            }
+        };
+    }
+
+    /**
+     * Limits that grow geometrically: <code>first</code>,
+     * <code>first * factor</code>, <code>first * factor^2</code>, ...
+     *
+     * @throws IllegalArgumentException
+     *      If the first limit is not positive or the factor is less than
+     *      one.
+     */
+    static RestartPolicy geometric(final long first, final double factor) {
+        if (first <= 0) {
+            throw new IllegalArgumentException("first limit must be positive");
+        }
+        if (!(factor >= 1.0)) {
+            throw new IllegalArgumentException("factor must be at least one");
+        }
+        return run -> {
+            final double limit = first * Math.pow(factor, run);
+            return (limit >= Long.MAX_VALUE) ? Long.MAX_VALUE : (long) limit;
+        };
+    }
+
+    private static long multiply(final long a, final long b) {
+        try {
+            return Math.multiplyExact(a, b);
+        } catch (ArithmeticException ex) {
+            return Long.MAX_VALUE;
+        }
+    }
+}
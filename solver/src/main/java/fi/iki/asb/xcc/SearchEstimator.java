@@ -0,0 +1,225 @@
+package fi.iki.asb.xcc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+
+/**
+ * Estimates the size of the search tree and the number of solutions of a
+ * problem with Knuth's random probes, before the actual search is run.
+ * Each probe walks from the root of the search tree to a leaf, choosing
+ * the item with the same MRV heuristic as the solvers and then one of its
+ * options at random. The product of the branching degrees along the path
+ * is an unbiased estimate of the number of nodes on that level of the
+ * tree. The mean of many probes converges to the true counts, but the
+ * variance can be large if the tree is very unbalanced, which shows up as
+ * a wide confidence interval.
+ *
+ * <p>The nodes are counted the same way as {@link ProgressReporter}
+ * counts tried items: one for each option that the search tries. The
+ * estimate can be passed to {@link ProgressReporter#setEstimate(Estimate)}
+ * to get an estimated time of arrival.</p>
+ *
+ * <p>This class is <i>not thread safe</i>.</p>
+ *
+ * @param <O>
+ *     The type associated to options.
+ */
+public final class SearchEstimator<O> {
+
+    /**
+     * The z value of a 95% confidence interval.
+     */
+    private static final double Z95 = 1.96;
+
+    /**
+     * Result of the estimation.
+     *
+     * @param probes
+     *      The number of probes.
+     *
+     * @param nodes
+     *      The estimated number of options the search tries.
+     *
+     * @param nodesError
+     *      The standard error of <code>nodes</code>.
+     *
+     * @param solutions
+     *      The estimated number of solutions.
+     *
+     * @param solutionsError
+     *      The standard error of <code>solutions</code>.
+     */
+    public record Estimate(
+            long probes,
+            double nodes,
+            double nodesError,
+            double solutions,
+            double solutionsError) {
+
+        /**
+         * Lower bound of the 95% confidence interval of the node count.
+         */
+        public double nodesLow() {
+            return Math.max(0.0, nodes - Z95 * nodesError);
+        }
+
+        /**
+         * Upper bound of the 95% confidence interval of the node count.
+         */
+        public double nodesHigh() {
+            return nodes + Z95 * nodesError;
+        }
+
+        /**
+         * Lower bound of the 95% confidence interval of the solution count.
+         */
+        public double solutionsLow() {
+            return Math.max(0.0, solutions - Z95 * solutionsError);
+        }
+
+        /**
+         * Upper bound of the 95% confidence interval of the solution count.
+         */
+        public double solutionsHigh() {
+            return solutions + Z95 * solutionsError;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                    "Estimate{probes=%d, nodes=%.4g (%.4g..%.4g), solutions=%.4g (%.4g..%.4g)}",
+                    probes, nodes, nodesLow(), nodesHigh(),
+                    solutions, solutionsLow(), solutionsHigh());
+        }
+    }
+
+    // =================================================================== //
+
+    private final CompiledProblem<O> problem;
+
+    private final Random random;
+
+    /**
+     * @param problem
+     *      The problem to estimate.
+     *
+     * @param seed
+     *      Seed of the random choices, so that estimates can be repeated.
+     */
+    public SearchEstimator(final CompiledProblem<O> problem, final long seed) {
+        this.problem = Objects.requireNonNull(problem);
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Estimate the search with the given number of probes.
+     *
+     * @throws IllegalArgumentException If the number of probes is not positive.
+     */
+    public Estimate estimate(final int probes) {
+        return estimate(probes, new ArrayList<>());
+    }
+
+    /**
+     * Estimate the search with pre-selected options.
+     *
+     * @throws IllegalArgumentException If the number of probes is not positive.
+     */
+    public Estimate estimate(final int probes, final List<O> preSelectedOptions) {
+        if (probes <= 0) {
+            throw new IllegalArgumentException("probes must be positive");
+        }
+        Objects.requireNonNull(preSelectedOptions);
+
+        final ArrayMatrix matrix =
+                ArrayMatrix.build("SearchEstimator", problem);
+        for (int i : matrix.columnsOf(problem, preSelectedOptions)) {
+            matrix.cover(i);
+        }
+
+        // Welford's running mean and variance.
+        final double[] nodes = new double[3];
+        final double[] solutions = new double[3];
+        final double[] probe = new double[2];
+        final int[] items = new int[problem.primaryItemCount() + 1];
+        final int[] chosen = new int[items.length];
+
+        for (int k = 0; k < probes; k++) {
+            probe(matrix, items, chosen, probe);
+            accumulate(nodes, probe[0]);
+            accumulate(solutions, probe[1]);
+        }
+
+        return new Estimate(probes,
+                nodes[1], standardError(nodes),
+                solutions[1], standardError(solutions));
+    }
+
+    /**
+     * Walk from the root to a leaf and restore the matrix.
+     *
+     * @param result
+     *      Receives the estimated node count and solution count.
+     */
+    private void probe(
+            final ArrayMatrix matrix,
+            final int[] items,
+            final int[] chosen,
+            final double[] result) {
+        double nodes = 0.0;
+        double weight = 1.0;
+        int level = 0;
+
+        while (!matrix.isSolved()) {
+            final int i = matrix.findColumn();
+            final int degree = matrix.LEN[i];
+            nodes += weight * degree;
+            if (degree == 0) {
+                weight = 0.0;
+                break;
+            }
+            weight *= degree;
+
+            matrix.cover(i);
+            int x = matrix.DLINK[i];
+            for (int skip = random.nextInt(degree); skip > 0; skip--) {
+                x = matrix.DLINK[x];
+            }
+            matrix.commitOption(x);
+
+            items[level] = i;
+            chosen[level] = x;
+            level++;
+        }
+
+        while (level > 0) {
+            level--;
+            matrix.uncommitOption(chosen[level]);
+            matrix.uncover(items[level]);
+        }
+
+        result[0] = nodes;
+        result[1] = weight;
+    }
+
+    /**
+     * Add a sample to the running count, mean and sum of squared
+     * differences.
+     */
+    private static void accumulate(final double[] stats, final double value) {
+        stats[0]++;
+        final double delta = value - stats[1];
+        stats[1] += delta / stats[0];
+        stats[2] += delta * (value - stats[1]);
+    }
+
+    private static double standardError(final double[] stats) {
+        if (stats[0] < 2) {
+            return Double.POSITIVE_INFINITY;
+        }
+        final double variance = stats[2] / (stats[0] - 1);
+        return Math.sqrt(variance / stats[0]);
+    }
+}
@@ -0,0 +1,126 @@
+package fi.iki.asb.xcc;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Limits of one search, passed to {@link XCC#search(Consumer, List,
+ * SearchLimits)}. The search stops when the first limit is reached and
+ * reports the limit in the {@link SearchResult}.
+ *
+ * <p>Apart from the solution cap, the limits are checked only on every
+ * <code>checkInterval</code> nodes, so that reading the clocks costs
+ * nothing measurable. The node budget is still exact. A node is one call of
+ * the recursive step of the search, which is also when the emergency brake
+ * of {@link XCC#search(Consumer, List, java.util.function.BooleanSupplier)}
+ * is checked.</p>
+ *
+ * <p>This class is immutable. Use {@link #none()} and the
+ * <code>with</code> methods to create limits.</p>
+ *
+ * @param deadline
+ *      Wall-clock time when the search is stopped, or null.
+ *
+ * @param cpuTime
+ *      CPU time of the thread that starts the search after which the
+ *      search is stopped, or null. Not supported by {@link ParallelXCC},
+ *      whose calling thread only waits for the workers.
+ *
+ * @param maxNodes
+ *      Number of nodes after which the search is stopped.
+ *
+ * @param maxSolutions
+ *      Number of solutions after which the search is stopped.
+ *
+ * @param interruptible
+ *      Stop the search if the thread that starts the search is
+ *      interrupted. The interrupt status is left set, so that the caller
+ *      can see it.
+ *
+ * @param checkInterval
+ *      Number of nodes between the checks of the clocks and the interrupt
+ *      status.
+ */
+public record SearchLimits(
+        Instant deadline,
+        Duration cpuTime,
+        long maxNodes,
+        long maxSolutions,
+        boolean interruptible,
+        int checkInterval) {
+
+    /**
+     * The default number of nodes between the checks.
+     */
+    public static final int DEFAULT_CHECK_INTERVAL = 1024;
+
+    private static final SearchLimits NONE = new SearchLimits(
+            null, null, Long.MAX_VALUE, Long.MAX_VALUE, false,
+            DEFAULT_CHECK_INTERVAL);
+
+    /**
+     * @throws IllegalArgumentException
+     *      If a count or the check interval is not positive, or the CPU
+     *      time is negative.
+     */
+    public SearchLimits {
+        if (cpuTime != null && cpuTime.isNegative()) {
+            throw new IllegalArgumentException("cpu time must not be negative");
+        }
+        if (maxNodes <= 0) {
+            throw new IllegalArgumentException("max nodes must be positive");
+        }
+        if (maxSolutions <= 0) {
+            throw new IllegalArgumentException("max solutions must be positive");
+        }
+        if (checkInterval <= 0) {
+            throw new IllegalArgumentException("check interval must be positive");
+        }
+    }
+
+    /**
+     * Get limits that never stop the search.
+     */
+    public static SearchLimits none() {
+        return NONE;
+    }
+
+    public SearchLimits withDeadline(final Instant deadline) {
+        return new SearchLimits(deadline, cpuTime, maxNodes, maxSolutions,
+                interruptible, checkInterval);
+    }
+
+    /**
+     * Set the deadline to the given time from now.
+     */
+    public SearchLimits withTimeout(final Duration timeout) {
+        return withDeadline(Instant.now().plus(timeout));
+    }
+
+    public SearchLimits withCpuTime(final Duration cpuTime) {
+        return new SearchLimits(deadline, cpuTime, maxNodes, maxSolutions,
+                interruptible, checkInterval);
+    }
+
+    public SearchLimits withMaxNodes(final long maxNodes) {
+        return new SearchLimits(deadline, cpuTime, maxNodes, maxSolutions,
+                interruptible, checkInterval);
+    }
+
+    public SearchLimits withMaxSolutions(final long maxSolutions) {
+        return new SearchLimits(deadline, cpuTime, maxNodes, maxSolutions,
+                interruptible, checkInterval);
+    }
+
+    public SearchLimits withInterruptible(final boolean interruptible) {
+        return new SearchLimits(deadline, cpuTime, maxNodes, maxSolutions,
+                interruptible, checkInterval);
+    }
+
+    public SearchLimits withCheckInterval(final int checkInterval) {
+        return new SearchLimits(deadline, cpuTime, maxNodes, maxSolutions,
+                interruptible, checkInterval);
+    }
+}
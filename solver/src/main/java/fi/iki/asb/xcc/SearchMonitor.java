@@ -0,0 +1,252 @@
+package fi.iki.asb.xcc;
+
+import fi.iki.asb.xcc.SearchResult.StopReason;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * Enforces the {@link SearchLimits} of one search. The solver calls
+ * {@link #stop()} on every node. It only increments and compares the node
+ * count, except on every <code>checkInterval</code> nodes when the clocks
+ * and the interrupt status are read. The class is final, so the call is
+ * monomorphic and can be inlined, unlike a call of an emergency brake.
+ *
+ * <p>The CPU time and the interrupt status are those of the thread that
+ * created the monitor, even if the search calls the monitor from other
+ * threads. A parallel search reserves the nodes in batches with {@link
+ * #reserve(long)} instead of calling {@link #stop()}.</p>
+ *
+ * <p>The monitor is also a <code>BooleanSupplier</code>, so it can be passed
+ * as the emergency brake to a solver that does not support the limits
+ * directly. Such a solver counts a node whenever it checks the brake.</p>
+ *
+ * <p>This class is <i>not thread safe</i>.</p>
+ */
+final class SearchMonitor implements BooleanSupplier {
+
+    private static final ThreadMXBean THREADS
+            = ManagementFactory.getThreadMXBean();
+
+    private final SearchLimits limits;
+
+    /**
+     * The thread that started the search.
+     */
+    private final Thread caller;
+
+    /**
+     * The emergency brake, or null.
+     */
+    private final BooleanSupplier emergencyBrake;
+
+    /**
+     * Deadline in {@link System#nanoTime()} or null.
+     */
+    private final Long deadline;
+
+    /**
+     * Deadline in CPU time of the thread that started the search, or null.
+     */
+    private final Long cpuDeadline;
+
+    private long nodes = 0;
+
+    private long solutions = 0;
+
+    /**
+     * The node count on which the limits are checked next.
+     */
+    private long nextCheck;
+
+    private boolean stopped = false;
+
+    private StopReason stopReason = null;
+
+    /**
+     * Start monitoring a search. The clocks start now.
+     */
+    SearchMonitor(final SearchLimits limits) {
+        this(limits, null);
+    }
+
+    private SearchMonitor(
+            final SearchLimits limits,
+            final BooleanSupplier emergencyBrake) {
+        this.limits = limits;
+        this.caller = Thread.currentThread();
+        this.emergencyBrake = emergencyBrake;
+        this.deadline = (limits.deadline() == null)
+                ? null
+                : System.nanoTime() + nanosUntil(limits.deadline());
+        this.cpuDeadline = (limits.cpuTime() == null)
+                ? null
+                : callerCpuTime() + limits.cpuTime().toNanos();
+        this.nextCheck = Math.min(limits.checkInterval(), limits.maxNodes() + 1);
+    }
+
+    /**
+     * Create a monitor that only checks the emergency brake on every node,
+     * for the searches without limits.
+     */
+    static SearchMonitor of(final BooleanSupplier emergencyBrake) {
+        return new SearchMonitor(
+                SearchLimits.none().withCheckInterval(1), emergencyBrake);
+    }
+
+    /**
+     * Wrap the solution consumer of the search, so that the solutions are
+     * counted.
+     */
+    <O> Consumer<List<O>> wrap(final Consumer<List<O>> solutionConsumer) {
+        return solution -> {
+            solutionConsumer.accept(solution);
+            solutions++;
+            if (solutions >= limits.maxSolutions()) {
+                stop(StopReason.MAX_SOLUTIONS);
+            }
+
+            // Check the emergency brake before the next node, like the
+            // search did before the limits.
+            nextCheck = nodes + 1;
+        };
+    }
+
+    /**
+     * Count a node and check if the search should stop. Once this returns
+     * true, it returns true on every call.
+     */
+    boolean stop() {
+        if (++nodes < nextCheck) {
+            return false;
+        }
+        return check();
+    }
+
+    @Override
+    public boolean getAsBoolean() {
+        return stop();
+    }
+
+    /**
+     * Reserve nodes from the node budget for a worker of a parallel search
+     * and check the other limits. The nodes are counted as visited until
+     * the unused ones are returned with {@link #release(long)}.
+     *
+     * @return The number of nodes the worker may visit, or zero if the
+     *      search should stop.
+     */
+    long reserve(final long count) {
+        if (stopped || checkLimits()) {
+            return 0;
+        }
+
+        final long reserved = Math.min(count, limits.maxNodes() - nodes);
+        if (reserved == 0) {
+            stop(StopReason.MAX_NODES);
+        }
+        nodes += reserved;
+        return reserved;
+    }
+
+    /**
+     * Return the reserved nodes that a worker did not visit.
+     */
+    void release(final long count) {
+        nodes -= count;
+    }
+
+    /**
+     * Check the limits other than the node budget and the solution cap,
+     * and the emergency brake.
+     *
+     * @return True if the search should stop.
+     */
+    boolean checkLimits() {
+        if (stopped) {
+            return true;
+        }
+
+        if (deadline != null && System.nanoTime() - deadline >= 0) {
+            stop(StopReason.DEADLINE);
+        } else if (cpuDeadline != null && callerCpuTime() >= cpuDeadline) {
+            stop(StopReason.CPU_TIME);
+        } else if (limits.interruptible() && caller.isInterrupted()) {
+            stop(StopReason.INTERRUPTED);
+        } else if (emergencyBrake != null && emergencyBrake.getAsBoolean()) {
+            stopped = true;
+        }
+        return stopped;
+    }
+
+    /**
+     * Tell the monitor that the thread that started the search has been
+     * interrupted. Used when the interrupt status cannot be read, because
+     * the thread is waiting for the workers of a parallel search.
+     *
+     * @return True if the search should stop.
+     */
+    boolean interrupt() {
+        if (!stopped && limits.interruptible()) {
+            stop(StopReason.INTERRUPTED);
+        }
+        return stopped;
+    }
+
+    boolean isStopped() {
+        return stopped;
+    }
+
+    private boolean check() {
+        if (stopped) {
+            // The search did not visit the node.
+            nodes--;
+            return true;
+        }
+
+        if (nodes > limits.maxNodes()) {
+            stop(StopReason.MAX_NODES);
+        } else if (!checkLimits()) {
+            nextCheck = Math.min(nodes + limits.checkInterval(),
+                    limits.maxNodes() + 1);
+        }
+
+        if (stopped) {
+            nodes--;
+        }
+        return stopped;
+    }
+
+    private long callerCpuTime() {
+        return THREADS.getThreadCpuTime(caller.threadId());
+    }
+
+    private void stop(final StopReason reason) {
+        stopped = true;
+        stopReason = reason;
+    }
+
+    /**
+     * Get the result when the search has returned. The stop reason is null
+     * if the emergency brake stopped the search.
+     */
+    SearchResult result() {
+        return new SearchResult(
+                stopped ? stopReason : StopReason.COMPLETED,
+                nodes,
+                solutions);
+    }
+
+    private static long nanosUntil(final Instant deadline) {
+        try {
+            return Duration.between(Instant.now(), deadline).toNanos();
+        } catch (ArithmeticException e) {
+            return deadline.isBefore(Instant.now()) ? 0 : Long.MAX_VALUE / 2;
+        }
+    }
+}
@@ -0,0 +1,415 @@
+package fi.iki.asb.xcc;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Java Flight Recorder events of the solvers. The events are enabled and
+ * configured like any other JFR event, for example in a <code>.jfc</code>
+ * file or with <code>-XX:StartFlightRecording</code> settings, using the
+ * names below.
+ *
+ * <p>A recorder is created for a search only if one of the search events
+ * is enabled when the search starts. It is installed as the trace of the
+ * solver, forwarding the calls to the trace set by the user, so that the
+ * nodes can be counted. If the events are disabled, the solver runs
+ * exactly as it does without JFR: the only cost is the check at the
+ * start of the search.</p>
+ */
+final class SearchRecorder implements XCCTrace {
+
+    @Name("fi.iki.asb.xcc.Search")
+    @Label("Search")
+    @Category("Exact Cover")
+    @Description("A search or a count of the solutions")
+    @StackTrace(false)
+    static final class SearchEvent extends Event {
+        @Label("Solver")
+        String solver;
+
+        @Label("Counting")
+        @Description("Were the solutions only counted")
+        boolean counting;
+
+        @Label("Pre-selected Options")
+        int preSelected;
+
+        @Label("Nodes")
+        @Description("Number of options tried")
+        long nodes;
+
+        @Label("Solutions")
+        long solutions;
+    }
+
+    @Name("fi.iki.asb.xcc.Solution")
+    @Label("Solution Found")
+    @Category("Exact Cover")
+    @StackTrace(false)
+    static final class SolutionEvent extends Event {
+        @Label("Solver")
+        String solver;
+
+        @Label("Size")
+        @Description("Number of options in the solution")
+        int size;
+
+        @Label("Nodes")
+        @Description("Number of options tried before the solution was found")
+        long nodes;
+    }
+
+    @Name("fi.iki.asb.xcc.NodeRate")
+    @Label("Node Rate")
+    @Category("Exact Cover")
+    @Description("Periodic sample of the progress of each running search")
+    @Period("1 s")
+    @StackTrace(false)
+    static final class NodeRateEvent extends Event {
+        @Label("Solver")
+        String solver;
+
+        @Label("Nodes")
+        long nodes;
+
+        @Label("Nodes per Second")
+        double nodesPerSecond;
+
+        @Label("Depth")
+        int depth;
+    }
+
+    @Name("fi.iki.asb.xcc.DepthHistogram")
+    @Label("Depth Histogram")
+    @Category("Exact Cover")
+    @Description("Number of options tried on one level of the search tree, "
+            + "committed for each level when the search ends")
+    @StackTrace(false)
+    static final class DepthEvent extends Event {
+        @Label("Solver")
+        String solver;
+
+        @Label("Depth")
+        int depth;
+
+        @Label("Nodes")
+        long nodes;
+    }
+
+    @Name("fi.iki.asb.xcc.MatrixBuilt")
+    @Label("Matrix Built")
+    @Category("Exact Cover")
+    @Description("Building the matrix of a problem")
+    @StackTrace(false)
+    static final class MatrixEvent extends Event {
+        @Label("Solver")
+        String solver;
+
+        @Label("Options")
+        int options;
+
+        @Label("Items")
+        int items;
+
+        @Label("Nodes")
+        long nodes;
+
+        @Label("Construction Time")
+        @Description("Time from the first added option to the start of "
+                + "the build")
+        @Timespan
+        long constructionTime;
+    }
+
+    /**
+     * Access to the node count and the depth, which the periodic event
+     * reads from the recorder thread. Opaque access makes the values
+     * visible without ordering the writes, which would slow down the
+     * search.
+     */
+    private static final VarHandle NODES;
+
+    private static final VarHandle DEPTH;
+
+    static {
+        try {
+            final MethodHandles.Lookup lookup = MethodHandles.lookup();
+            NODES = lookup.findVarHandle(
+                    SearchRecorder.class, "nodes", long.class);
+            DEPTH = lookup.findVarHandle(
+                    SearchRecorder.class, "depth", int.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * Searches that are running, for the periodic node rate event.
+     */
+    private static final Set<SearchRecorder> RUNNING
+            = ConcurrentHashMap.newKeySet();
+
+    static {
+        FlightRecorder.addPeriodicEvent(NodeRateEvent.class,
+                SearchRecorder::emitNodeRates);
+    }
+
+    // =================================================================== //
+
+    private final SearchEvent event = new SearchEvent();
+
+    private final String solver;
+
+    private final XCCTrace trace;
+
+    private final boolean solutionsEnabled;
+
+    /**
+     * Nodes tried on each depth, or null if the histogram is disabled.
+     */
+    private long[] histogram;
+
+    /**
+     * Number of options tried. Written with opaque access, see {@link
+     * #NODES}.
+     */
+    private long nodes = 0;
+
+    private long solutions = 0;
+
+    /**
+     * Current depth of the search. Written with opaque access, see {@link
+     * #DEPTH}.
+     */
+    private int depth = 0;
+
+    private long sampleTime;
+
+    private long sampleNodes = 0;
+
+    private SearchRecorder(
+            final String solver,
+            final XCCTrace trace,
+            final boolean histogramEnabled,
+            final boolean solutionsEnabled) {
+        this.solver = solver;
+        this.trace = trace;
+        this.histogram = histogramEnabled ? new long[16] : null;
+        this.solutionsEnabled = solutionsEnabled;
+    }
+
+    /**
+     * Start recording a search.
+     *
+     * @param trace
+     *      The trace set by the user, or null.
+     *
+     * @return The recorder, or null if all the search events are disabled.
+     */
+    static SearchRecorder start(
+            final String solver,
+            final boolean counting,
+            final int preSelected,
+            final XCCTrace trace) {
+        final SearchEvent event = new SearchEvent();
+        final boolean histogramEnabled = new DepthEvent().isEnabled();
+        final boolean solutionsEnabled = new SolutionEvent().isEnabled();
+        if (!event.isEnabled()
+                && !histogramEnabled
+                && !solutionsEnabled
+                && !new NodeRateEvent().isEnabled()) {
+            return null;
+        }
+
+        final SearchRecorder recorder = new SearchRecorder(
+                solver, trace, histogramEnabled, solutionsEnabled);
+        recorder.event.solver = solver;
+        recorder.event.counting = counting;
+        recorder.event.preSelected = preSelected;
+        recorder.sampleTime = System.nanoTime();
+        recorder.event.begin();
+        RUNNING.add(recorder);
+        return recorder;
+    }
+
+    /**
+     * Wrap the solution consumer of a search, so that the solutions are
+     * counted.
+     */
+    <O> Consumer<List<O>> wrap(final Consumer<List<O>> solutionConsumer) {
+        return solution -> {
+            solutions++;
+            if (solutionsEnabled) {
+                final SolutionEvent e = new SolutionEvent();
+                e.solver = solver;
+                e.size = solution.size();
+                e.nodes = nodes;
+                e.commit();
+            }
+            solutionConsumer.accept(solution);
+        };
+    }
+
+    /**
+     * End recording a search whose solutions were passed to the consumer
+     * returned by {@link #wrap(Consumer)}.
+     */
+    void end() {
+        end(BigInteger.valueOf(solutions));
+    }
+
+    /**
+     * End recording a search that counted the given number of solutions.
+     */
+    void end(final BigInteger solutionCount) {
+        RUNNING.remove(this);
+        event.end();
+        if (event.shouldCommit()) {
+            event.nodes = nodes;
+            event.solutions = solutionCount
+                    .min(BigInteger.valueOf(Long.MAX_VALUE))
+                    .longValue();
+            event.commit();
+        }
+
+        if (histogram != null) {
+            for (int d = 0; d < histogram.length; d++) {
+                if (histogram[d] > 0) {
+                    final DepthEvent e = new DepthEvent();
+                    e.solver = solver;
+                    e.depth = d;
+                    e.nodes = histogram[d];
+                    e.commit();
+                }
+            }
+        }
+    }
+
+    /**
+     * Start timing the build of a matrix.
+     */
+    static MatrixEvent matrixStarted() {
+        final MatrixEvent e = new MatrixEvent();
+        e.begin();
+        return e;
+    }
+
+    /**
+     * Commit the event of building the matrix of a compiled problem.
+     *
+     * @param start
+     *      Time when the build started, from {@link System#nanoTime()}.
+     */
+    static void matrixBuilt(
+            final MatrixEvent e,
+            final String solver,
+            final CompiledProblem<?> problem,
+            final long start) {
+        matrixBuilt(e, solver, problem.optionCount(), problem.itemCount(),
+                problem.nodeCount(), start, problem.firstOptionTime());
+    }
+
+    /**
+     * Commit the event of building a matrix.
+     *
+     * @param start
+     *      Time when the build started, from {@link System#nanoTime()}.
+     *
+     * @param firstOption
+     *      Time when the first option was added, or zero if not known.
+     */
+    static void matrixBuilt(
+            final MatrixEvent e,
+            final String solver,
+            final int options,
+            final int items,
+            final long nodes,
+            final long start,
+            final long firstOption) {
+        e.end();
+        if (e.shouldCommit()) {
+            e.solver = solver;
+            e.options = options;
+            e.items = items;
+            e.nodes = nodes;
+            e.constructionTime = (firstOption != 0) ? start - firstOption : 0;
+            e.commit();
+        }
+    }
+
+    private static void emitNodeRates() {
+        final long now = System.nanoTime();
+        for (SearchRecorder recorder : RUNNING) {
+            final long nodes = (long) NODES.getOpaque(recorder);
+            final NodeRateEvent e = new NodeRateEvent();
+            e.solver = recorder.solver;
+            e.nodes = nodes;
+            e.depth = (int) DEPTH.getOpaque(recorder);
+            e.nodesPerSecond = (now > recorder.sampleTime)
+                    ? (nodes - recorder.sampleNodes) * 1e9 / (now - recorder.sampleTime)
+                    : 0.0;
+            e.commit();
+
+            recorder.sampleTime = now;
+            recorder.sampleNodes = nodes;
+        }
+    }
+
+    // =================================================================== //
+    // Trace.
+
+    @Override
+    public void onSearchStarted() {
+        if (trace != null) {
+            trace.onSearchStarted();
+        }
+    }
+
+    @Override
+    public void onRecursionEntered(final int itemCount) {
+        DEPTH.setOpaque(this, depth + 1);
+        if (trace != null) {
+            trace.onRecursionEntered(itemCount);
+        }
+    }
+
+    @Override
+    public void onItemSelected() {
+        NODES.setOpaque(this, nodes + 1);
+        if (histogram != null) {
+            // The root level is depth zero.
+            final int d = depth - 1;
+            if (d >= histogram.length) {
+                histogram = Arrays.copyOf(histogram, 2 * depth);
+            }
+            histogram[d]++;
+        }
+        if (trace != null) {
+            trace.onItemSelected();
+        }
+    }
+
+    @Override
+    public void onRecursionEnded() {
+        DEPTH.setOpaque(this, depth - 1);
+        if (trace != null) {
+            trace.onRecursionEnded();
+        }
+    }
+}
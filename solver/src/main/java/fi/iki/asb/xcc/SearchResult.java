@@ -0,0 +1,60 @@
+package fi.iki.asb.xcc;
+
+/**
+ * Result of a search with {@link SearchLimits}.
+ *
+ * @param stopReason
+ *      Why the search stopped.
+ *
+ * @param nodes
+ *      Number of nodes visited.
+ *
+ * @param solutions
+ *      Number of solutions passed to the consumer.
+ */
+public record SearchResult(
+        StopReason stopReason,
+        long nodes,
+        long solutions) {
+
+    public enum StopReason {
+
+        /**
+         * The whole search tree was searched.
+         */
+        COMPLETED,
+
+        /**
+         * The wall-clock deadline passed.
+         */
+        DEADLINE,
+
+        /**
+         * The CPU time budget was used.
+         */
+        CPU_TIME,
+
+        /**
+         * The node budget was used.
+         */
+        MAX_NODES,
+
+        /**
+         * The maximum number of solutions was found.
+         */
+        MAX_SOLUTIONS,
+
+        /**
+         * The searching thread was interrupted.
+         */
+        INTERRUPTED
+    }
+
+    /**
+     * Did the search go through the whole search tree? If it did, every
+     * solution was found.
+     */
+    public boolean isComplete() {
+        return stopReason == StopReason.COMPLETED;
+    }
+}
@@ -0,0 +1,206 @@
+package fi.iki.asb.xcc;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Statistics of one search, returned by {@link
+ * ReferenceXCC#searchWithStatistics(Consumer, List, java.util.function.BooleanSupplier)}
+ * and {@link
+ * LinkedXCC#searchWithStatistics(Consumer, List, java.util.function.BooleanSupplier)}.
+ * The statistics are collected by an instrumented copy of the search loop,
+ * so a plain search does not pay for them.
+ *
+ * <p>The mems are Knuth's machine independent measure of the running time:
+ * the number of times an element of the matrix arrays, or a field of a
+ * node in {@link LinkedXCC}, is read or written (a read followed by a
+ * write of the same element counts once). They are
+ * counted in choosing the item with the default MRV heuristic and in the
+ * cover, hide and purify operations and their inverses, which is where the
+ * search spends almost all of its time. The same search of the same
+ * problem always gives the same statistics, so they can be asserted in
+ * tests to compare changes of the engine without timing noise. The mems
+ * of the two engines are counted from different data structures, so only
+ * the other statistics are comparable between them.</p>
+ *
+ * @param nodesPerDepth
+ *      Number of options tried on each level of the search tree. The root
+ *      level is depth zero.
+ *
+ * @param solutionsPerDepth
+ *      Number of solutions found at each depth, where the depth is the
+ *      number of options chosen by the search (the pre-selected options are
+ *      not counted).
+ *
+ * @param covers
+ *      Number of items covered.
+ *
+ * @param hides
+ *      Number of options hidden.
+ *
+ * @param purifies
+ *      Number of secondary items purified.
+ *
+ * @param mems
+ *      Number of memory accesses.
+ */
+public record SearchStatistics(
+        long[] nodesPerDepth,
+        long[] solutionsPerDepth,
+        long covers,
+        long hides,
+        long purifies,
+        long mems) {
+
+    /**
+     * Get the total number of options tried.
+     */
+    public long nodes() {
+        return Arrays.stream(nodesPerDepth).sum();
+    }
+
+    /**
+     * Get the total number of solutions.
+     */
+    public long solutions() {
+        return Arrays.stream(solutionsPerDepth).sum();
+    }
+
+    @Override
+    public long[] nodesPerDepth() {
+        return nodesPerDepth.clone();
+    }
+
+    @Override
+    public long[] solutionsPerDepth() {
+        return solutionsPerDepth.clone();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof SearchStatistics s
+                && Arrays.equals(nodesPerDepth, s.nodesPerDepth)
+                && Arrays.equals(solutionsPerDepth, s.solutionsPerDepth)
+                && covers == s.covers
+                && hides == s.hides
+                && purifies == s.purifies
+                && mems == s.mems;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(mems) * 31 + Arrays.hashCode(nodesPerDepth);
+    }
+
+    @Override
+    public String toString() {
+        return "SearchStatistics{" +
+                "nodesPerDepth=" + Arrays.toString(nodesPerDepth) +
+                ", solutionsPerDepth=" + Arrays.toString(solutionsPerDepth) +
+                ", covers=" + covers +
+                ", hides=" + hides +
+                ", purifies=" + purifies +
+                ", mems=" + mems +
+                '}';
+    }
+
+    // =================================================================== //
+
+    /**
+     * Collects the statistics during a search. The collector is installed
+     * as the trace of the solver and forwards the calls to the trace set by
+     * the user. The instrumented search of the solver updates the
+     * operation counters directly.
+     */
+    static final class Collector implements XCCTrace {
+
+        private final XCCTrace trace;
+
+        private long[] nodes = new long[16];
+
+        private long[] solutions = new long[16];
+
+        private int depth = 0;
+
+        long covers = 0;
+
+        long hides = 0;
+
+        long purifies = 0;
+
+        long mems = 0;
+
+        Collector(final XCCTrace trace) {
+            this.trace = trace;
+        }
+
+        /**
+         * Wrap the solution consumer of the search, so that the solutions
+         * are counted.
+         */
+        <O> Consumer<List<O>> wrap(final Consumer<List<O>> solutionConsumer) {
+            return solution -> {
+                solutions = increment(solutions, depth);
+                solutionConsumer.accept(solution);
+            };
+        }
+
+        SearchStatistics toStatistics() {
+            return new SearchStatistics(
+                    trim(nodes), trim(solutions),
+                    covers, hides, purifies, mems);
+        }
+
+        private static long[] increment(long[] counts, final int index) {
+            if (index >= counts.length) {
+                counts = Arrays.copyOf(counts, 2 * index);
+            }
+            counts[index]++;
+            return counts;
+        }
+
+        /**
+         * Drop the trailing zeros.
+         */
+        private static long[] trim(final long[] counts) {
+            int length = counts.length;
+            while (length > 0 && counts[length - 1] == 0) {
+                length--;
+            }
+            return Arrays.copyOf(counts, length);
+        }
+
+        @Override
+        public void onSearchStarted() {
+            if (trace != null) {
+                trace.onSearchStarted();
+            }
+        }
+
+        @Override
+        public void onRecursionEntered(final int itemCount) {
+            depth++;
+            if (trace != null) {
+                trace.onRecursionEntered(itemCount);
+            }
+        }
+
+        @Override
+        public void onItemSelected() {
+            // The root level is depth zero.
+            nodes = increment(nodes, depth - 1);
+            if (trace != null) {
+                trace.onItemSelected();
+            }
+        }
+
+        @Override
+        public void onRecursionEnded() {
+            depth--;
+            if (trace != null) {
+                trace.onRecursionEnded();
+            }
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package fi.iki.asb.xcc;
+
+import java.math.BigInteger;
+
+/**
+ * Counter for the number of solutions that does not overflow. Counts are
+ * accumulated in a <code>long</code> and carried over to a {@link
+ * BigInteger} only when the <code>long</code> would overflow, so counting
+ * does not allocate in practice.
+ */
+final class SolutionCounter {
+
+    private long low = 0;
+
+    private BigInteger high = BigInteger.ZERO;
+
+    /**
+     * Add a non-negative number of solutions.
+     */
+    void add(final long count) {
+        if (low > Long.MAX_VALUE - count) {
+            high = high.add(BigInteger.valueOf(low));
+            low = 0;
+        }
+        low += count;
+    }
+
+    BigInteger value() {
+        return high.add(BigInteger.valueOf(low));
+    }
+}
@@ -0,0 +1,577 @@
+package fi.iki.asb.xcc;
+
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.ObjIntConsumer;
+import java.util.stream.Stream;
+
+/**
+ * Exact cover solver for problems that are symmetric, for example tiling
+ * a board that can be rotated and reflected. Each solution of such a
+ * problem has symmetric images that are also solutions. This solver finds
+ * only one canonical representative of each set of symmetric solutions
+ * (an orbit) and reports the size of the orbit, so that the total number
+ * of solutions can still be computed.
+ *
+ * <p>The symmetries are given as generators of the group. The solver
+ * completes the group by combining them. The search is done by another
+ * XCC instance. If there is an item that every symmetry maps to itself
+ * (for example the item that marks a pentomino as used), the options
+ * covering that item are divided into orbits and only one option of each
+ * orbit is tried, which prunes the symmetric branches from the search.
+ * The remaining duplicates are filtered out by choosing the solution
+ * whose sorted option indexes are lexicographically the smallest.</p>
+ *
+ * <p>If pre-selected options are given, only the symmetries that map the
+ * pre-selected options to themselves are used.</p>
+ *
+ * @param <O>
+ *     The type associated to options.
+ */
+public final class SymmetricXCC<O> implements XCC<O> {
+
+    /**
+     * Permutation of option indexes. Wrapped for use as a hash key.
+     */
+    private record Permutation(int[] images) {
+
+        Permutation then(final Permutation p) {
+            final int[] result = new int[images.length];
+            for (int o = 0; o < images.length; o++) {
+                result[o] = p.images[images[o]];
+            }
+            return new Permutation(result);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Permutation p
+                    && Arrays.equals(images, p.images);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(images);
+        }
+    }
+
+    // =================================================================== //
+
+    private final XCC<O> xcc;
+
+    private final ItemProvider<O> itemProvider;
+
+    private final List<Symmetry<O>> generators;
+
+    /**
+     * Options in the order they were added. The index of an option in this
+     * list is used to compare solutions.
+     */
+    private final List<O> options = new ArrayList<>();
+
+    /**
+     * Option indexes by option.
+     */
+    private final Map<O, Integer> optionIndex = new HashMap<>();
+
+    /**
+     * The group generated by the symmetries, excluding the identity.
+     * Created when the first search starts.
+     */
+    private List<Permutation> group;
+
+    /**
+     * The items of each option by option index. Created with the group, so
+     * that the searches do not need to generate the items again.
+     */
+    private List<List<Object>> optionItems;
+
+    /**
+     * Indexes of the options that cover each primary item, in the order
+     * the items are first covered. Created with the group.
+     */
+    private Map<Object, List<Integer>> itemOptions;
+
+    // =================================================================== //
+
+    /**
+     * Create a new instance.
+     *
+     * @param xcc
+     *      The solver that does the actual search. Options must not have
+     *      been added to it.
+     *
+     * @param itemProvider
+     *      The item provider that was used to create the solver.
+     *
+     * @param generators
+     *      Symmetries that generate the symmetry group of the problem.
+     *      The identity does not need to be included.
+     */
+    public SymmetricXCC(
+            final XCC<O> xcc,
+            final ItemProvider<O> itemProvider,
+            final List<Symmetry<O>> generators) {
+        this.xcc = Objects.requireNonNull(xcc);
+        this.itemProvider = Objects.requireNonNull(itemProvider);
+        this.generators = List.copyOf(generators);
+    }
+
+    @Override
+    public boolean isDirty() {
+        return xcc.isDirty();
+    }
+
+    @Override
+    public void addOption(final O option) {
+        xcc.addOption(option);
+        optionIndex.put(option, options.size());
+        options.add(option);
+        group = null;
+    }
+
+    @Override
+    public void setTrace(final XCCTrace trace) {
+        xcc.setTrace(trace);
+    }
+
+    /**
+     * Get the number of elements in the symmetry group, including the
+     * identity.
+     *
+     * @throws IllegalArgumentException
+     *      A symmetry does not map the options to options.
+     */
+    public int groupSize() {
+        return group().size() + 1;
+    }
+
+    // =================================================================== //
+    // Searching.
+
+    /**
+     * Search for the canonical solutions. Symmetric images of the
+     * solutions are not passed to the consumer.
+     *
+     * @throws IllegalArgumentException
+     *      A symmetry does not map the options to options.
+     */
+    @Override
+    public void search(
+            final Consumer<List<O>> solutionConsumer,
+            final List<O> preSelectedOptions,
+            final BooleanSupplier emergencyBrake) {
+        Objects.requireNonNull(solutionConsumer);
+        searchOrbits((s, size) -> solutionConsumer.accept(s),
+                preSelectedOptions, emergencyBrake);
+    }
+
+    /**
+     * Search for the canonical solutions and report the number of
+     * solutions in the orbit of each one, including the canonical
+     * solution itself.
+     *
+     * @throws IllegalArgumentException
+     *      A symmetry does not map the options to options.
+     */
+    public void searchOrbits(final ObjIntConsumer<List<O>> orbitConsumer) {
+        searchOrbits(orbitConsumer, new ArrayList<>(), () -> false);
+    }
+
+    /**
+     * Search for the canonical solutions with pre-selected options and an
+     * emergency brake, and report the number of solutions in the orbit of
+     * each one. The orbits consist of the symmetric images that contain
+     * the pre-selected options.
+     *
+     * @throws IllegalArgumentException
+     *      A symmetry does not map the options to options.
+     */
+    public void searchOrbits(
+            final ObjIntConsumer<List<O>> orbitConsumer,
+            final List<O> preSelectedOptions,
+            final BooleanSupplier emergencyBrake) {
+        Objects.requireNonNull(orbitConsumer);
+        Objects.requireNonNull(preSelectedOptions);
+        Objects.requireNonNull(emergencyBrake);
+
+        final int[] preSelectedIds = indexesOf(preSelectedOptions);
+        final List<Permutation> symmetries = stabilizer(group(), preSelectedIds);
+        final List<Integer> covering = invariantItem(symmetries, preSelectedIds);
+        if (covering == null) {
+            xcc.search(s -> acceptSolution(s, symmetries, symmetries,
+                    orbitConsumer), preSelectedOptions, emergencyBrake);
+            return;
+        }
+        final Map<Object, Object> colors = colorsOf(preSelectedIds);
+
+        // Try one option of each orbit of the options that cover the
+        // invariant item. Solutions that contain the representative can
+        // only be mapped to each other by the symmetries that keep the
+        // representative in place.
+        for (int r: representatives(covering, symmetries)) {
+            if (emergencyBrake.getAsBoolean()) {
+                return;
+            } else if (conflicts(r, colors)) {
+                continue;
+            }
+
+            final List<Permutation> filter = stabilizer(
+                    symmetries, new int[] { r });
+            final List<O> preSelected = new ArrayList<>(preSelectedOptions);
+            preSelected.add(options.get(r));
+            xcc.search(s -> acceptSolution(s, symmetries, filter,
+                    orbitConsumer), preSelected, emergencyBrake);
+        }
+    }
+
+    /**
+     * Get the canonical solutions as a lazy stream. The solutions are
+     * streamed from the solver that does the actual search, one
+     * representative option at a time.
+     *
+     * @throws IllegalArgumentException
+     *      A symmetry does not map the options to options.
+     */
+    @Override
+    public Stream<List<O>> solutions(final List<O> preSelectedOptions) {
+        Objects.requireNonNull(preSelectedOptions);
+
+        final int[] preSelectedIds = indexesOf(preSelectedOptions);
+        final List<Permutation> symmetries = stabilizer(group(), preSelectedIds);
+        final List<Integer> covering = invariantItem(symmetries, preSelectedIds);
+        if (covering == null) {
+            return xcc.solutions(preSelectedOptions)
+                    .filter(s -> isCanonical(s, symmetries));
+        }
+        final Map<Object, Object> colors = colorsOf(preSelectedIds);
+
+        // See searchOrbits.
+        return representatives(covering, symmetries).stream()
+                .filter(r -> !conflicts(r, colors))
+                .flatMap(r -> {
+                    final List<Permutation> filter = stabilizer(
+                            symmetries, new int[] { r });
+                    final List<O> preSelected =
+                            new ArrayList<>(preSelectedOptions);
+                    preSelected.add(options.get(r));
+                    return xcc.solutions(preSelected)
+                            .filter(s -> isCanonical(s, filter));
+                });
+    }
+
+    /**
+     * Count all the solutions by adding up the sizes of the orbits of the
+     * canonical solutions.
+     */
+    @Override
+    public BigInteger countSolutionsExact(final List<O> preSelectedOptions) {
+        final SolutionCounter counter = new SolutionCounter();
+        searchOrbits((s, size) -> counter.add(size),
+                preSelectedOptions, () -> false);
+        return counter.value();
+    }
+
+    /**
+     * Count the canonical solutions.
+     */
+    public BigInteger countOrbits() {
+        return countOrbits(new ArrayList<>());
+    }
+
+    /**
+     * Count the canonical solutions with pre-selected options.
+     */
+    public BigInteger countOrbits(final List<O> preSelectedOptions) {
+        final SolutionCounter counter = new SolutionCounter();
+        searchOrbits((s, size) -> counter.add(1),
+                preSelectedOptions, () -> false);
+        return counter.value();
+    }
+
+    /**
+     * Pass the solution to the consumer if no symmetry in the filter maps
+     * it to a smaller solution. The orbit size is computed with all the
+     * symmetries.
+     */
+    private void acceptSolution(
+            final List<O> solution,
+            final List<Permutation> symmetries,
+            final List<Permutation> filter,
+            final ObjIntConsumer<List<O>> orbitConsumer) {
+        if (!isCanonical(solution, filter)) {
+            return;
+        }
+
+        final int[] indexes = indexesOf(solution);
+        Arrays.sort(indexes);
+
+        int fixed = 1;
+        for (Permutation p: symmetries) {
+            if (Arrays.equals(image(p, indexes), indexes)) {
+                fixed++;
+            }
+        }
+
+        orbitConsumer.accept(solution, (symmetries.size() + 1) / fixed);
+    }
+
+    /**
+     * Is the solution the smallest of its images under the symmetries in
+     * the filter.
+     */
+    private boolean isCanonical(
+            final List<O> solution,
+            final List<Permutation> filter) {
+        final int[] indexes = indexesOf(solution);
+        Arrays.sort(indexes);
+
+        for (Permutation p: filter) {
+            if (compare(image(p, indexes), indexes) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // =================================================================== //
+    // Symmetry group.
+
+    /**
+     * Get the symmetry group excluding the identity.
+     */
+    private List<Permutation> group() {
+        if (group == null) {
+            indexItems();
+            group = closure();
+        }
+        return group;
+    }
+
+    /**
+     * Generate the items of the options and index the options by the
+     * primary items they cover.
+     */
+    private void indexItems() {
+        optionItems = new ArrayList<>(options.size());
+        itemOptions = new LinkedHashMap<>();
+        for (int o = 0; o < options.size(); o++) {
+            final List<Object> items = List.copyOf(
+                    itemProvider.from(options.get(o)));
+            optionItems.add(items);
+            for (Object item: items) {
+                if (!(item instanceof SecondaryItem)) {
+                    itemOptions.computeIfAbsent(item, i -> new ArrayList<>())
+                            .add(o);
+                }
+            }
+        }
+    }
+
+    /**
+     * Combine the generators until no new permutations are found.
+     */
+    private List<Permutation> closure() {
+        final List<Permutation> base = new ArrayList<>();
+        for (Symmetry<O> s: generators) {
+            base.add(new Permutation(s.permutation(options, itemProvider)));
+        }
+
+        final int[] identity = new int[options.size()];
+        Arrays.setAll(identity, o -> o);
+
+        final Set<Permutation> found = new HashSet<>();
+        final Deque<Permutation> queue = new ArrayDeque<>();
+        found.add(new Permutation(identity));
+        queue.add(new Permutation(identity));
+        while (!queue.isEmpty()) {
+            final Permutation p = queue.poll();
+            for (Permutation g: base) {
+                final Permutation q = p.then(g);
+                if (found.add(q)) {
+                    queue.add(q);
+                }
+            }
+        }
+
+        found.remove(new Permutation(identity));
+        return new ArrayList<>(found);
+    }
+
+    /**
+     * Get the symmetries that map the given set of options to itself.
+     */
+    private static List<Permutation> stabilizer(
+            final List<Permutation> symmetries,
+            final int[] indexes) {
+        if (indexes.length == 0) {
+            return symmetries;
+        }
+
+        final int[] sorted = indexes.clone();
+        Arrays.sort(sorted);
+
+        final List<Permutation> result = new ArrayList<>();
+        for (Permutation p: symmetries) {
+            if (Arrays.equals(image(p, sorted), sorted)) {
+                result.add(p);
+            }
+        }
+        return result;
+    }
+
+    // =================================================================== //
+    // Pruning.
+
+    /**
+     * Find a primary item that every symmetry maps to itself and that is
+     * not covered by the pre-selected options. Of those, the item whose
+     * options fall into the fewest orbits is chosen.
+     *
+     * @return The indexes of the options that cover the item, or null if
+     *      there is no such item.
+     */
+    private List<Integer> invariantItem(
+            final List<Permutation> symmetries,
+            final int[] preSelected) {
+        if (symmetries.isEmpty()) {
+            return null;
+        }
+
+        final Set<Object> covered = new HashSet<>();
+        for (int o: preSelected) {
+            covered.addAll(optionItems.get(o));
+        }
+
+        List<Integer> best = null;
+        int fewest = Integer.MAX_VALUE;
+        for (Map.Entry<Object, List<Integer>> e: itemOptions.entrySet()) {
+            final List<Integer> covering = e.getValue();
+            if (!covered.contains(e.getKey())
+                    && isInvariant(covering, symmetries)) {
+                final int orbits = representatives(covering, symmetries)
+                        .size();
+                if (orbits < fewest) {
+                    fewest = orbits;
+                    best = covering;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Does every symmetry map the options to options in the same list.
+     */
+    private static boolean isInvariant(
+            final List<Integer> covering,
+            final List<Permutation> symmetries) {
+        final Set<Integer> set = new HashSet<>(covering);
+        for (Permutation p: symmetries) {
+            for (int o: covering) {
+                if (!set.contains(p.images[o])) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get the smallest option index of each orbit.
+     */
+    private static List<Integer> representatives(
+            final List<Integer> covering,
+            final List<Permutation> symmetries) {
+        final Set<Integer> seen = new HashSet<>();
+        final List<Integer> result = new ArrayList<>();
+        for (int o: covering) {
+            if (seen.add(o)) {
+                result.add(o);
+                for (Permutation p: symmetries) {
+                    seen.add(p.images[o]);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get the items covered by the pre-selected options with their colors.
+     * Primary items and uncolored secondary items map to null.
+     */
+    private Map<Object, Object> colorsOf(final int[] preSelected) {
+        final Map<Object, Object> colors = new HashMap<>();
+        for (int o: preSelected) {
+            for (Object item: optionItems.get(o)) {
+                colors.put(item, (item instanceof SecondaryItem s)
+                        ? s.getColor()
+                        : null);
+            }
+        }
+        return colors;
+    }
+
+    /**
+     * Does the option conflict with the pre-selected options whose items
+     * are given with their colors. Options conflict if they cover the same
+     * primary item, the same uncolored secondary item or the same
+     * secondary item with different colors.
+     */
+    private boolean conflicts(final int option, final Map<Object, Object> colors) {
+        for (Object item: optionItems.get(option)) {
+            if (colors.containsKey(item)) {
+                final Object color = colors.get(item);
+                if (color == null
+                        || !color.equals(((SecondaryItem) item).getColor())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // =================================================================== //
+    // Auxiliary methods.
+
+    private int[] indexesOf(final List<O> solution) {
+        final int[] indexes = new int[solution.size()];
+        for (int k = 0; k < indexes.length; k++) {
+            final Integer index = optionIndex.get(solution.get(k));
+            if (index == null) {
+                throw new IllegalArgumentException(
+                        "unknown option " + solution.get(k));
+            }
+            indexes[k] = index;
+        }
+        return indexes;
+    }
+
+    /**
+     * Map the sorted option indexes and sort the result.
+     */
+    private static int[] image(final Permutation p, final int[] indexes) {
+        final int[] image = new int[indexes.length];
+        for (int k = 0; k < indexes.length; k++) {
+            image[k] = p.images[indexes[k]];
+        }
+        Arrays.sort(image);
+        return image;
+    }
+
+    private static int compare(final int[] a, final int[] b) {
+        return Arrays.compare(a, b);
+    }
+}
@@ -0,0 +1,131 @@
+package fi.iki.asb.xcc;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.UnaryOperator;
+
+/**
+ * A symmetry of an exact cover problem, for example a rotation or a
+ * reflection of a board. A symmetry maps every option of the problem to
+ * another option of the problem, so that it maps solutions to solutions.
+ * It can be declared either as a mapping of options or as a mapping of
+ * items. The symmetries of a problem are given to a {@link SymmetricXCC}.
+ *
+ * @param <O>
+ *     The type associated to options.
+ */
+public final class Symmetry<O> {
+
+    /**
+     * Mapping of options, or null if this symmetry maps items.
+     */
+    private final UnaryOperator<O> optionMapping;
+
+    /**
+     * Mapping of items, or null if this symmetry maps options.
+     */
+    private final UnaryOperator<Object> itemMapping;
+
+    private Symmetry(
+            final UnaryOperator<O> optionMapping,
+            final UnaryOperator<Object> itemMapping) {
+        this.optionMapping = optionMapping;
+        this.itemMapping = itemMapping;
+    }
+
+    /**
+     * Create a symmetry that maps options to options. The image of an
+     * option must be equal to an option that has been added to the
+     * problem.
+     */
+    public static <O> Symmetry<O> ofOptions(final UnaryOperator<O> mapping) {
+        return new Symmetry<>(Objects.requireNonNull(mapping), null);
+    }
+
+    /**
+     * Create a symmetry that maps items to items. The image of an option is
+     * the option that covers the images of its items. Secondary items are
+     * mapped together with their colors.
+     */
+    public static <O> Symmetry<O> ofItems(final UnaryOperator<Object> mapping) {
+        return new Symmetry<>(null, Objects.requireNonNull(mapping));
+    }
+
+    /**
+     * Resolve this symmetry into a permutation of option indexes.
+     *
+     * @throws IllegalArgumentException
+     *      The image of an option is not an option of the problem, or two
+     *      options have the same image.
+     */
+    int[] permutation(
+            final List<O> options,
+            final ItemProvider<O> itemProvider) {
+        final Map<Object, Integer> index = new HashMap<>();
+        for (int o = 0; o < options.size(); o++) {
+            index.putIfAbsent(key(itemProvider, options.get(o)), o);
+        }
+
+        final int[] permutation = new int[options.size()];
+        final boolean[] taken = new boolean[options.size()];
+        for (int o = 0; o < options.size(); o++) {
+            final Object image = (optionMapping != null)
+                    ? key(itemProvider, optionMapping.apply(options.get(o)))
+                    : mapItems(itemProvider.from(options.get(o)));
+            final Integer target = index.get(image);
+            if (target == null) {
+                throw new IllegalArgumentException(
+                        "symmetry maps option " + options.get(o)
+                                + " outside the problem");
+            } else if (taken[target]) {
+                throw new IllegalArgumentException(
+                        "symmetry is not a permutation of the options");
+            }
+            taken[target] = true;
+            permutation[o] = target;
+        }
+        return permutation;
+    }
+
+    /**
+     * Map the items of an option. The result is comparable to the key
+     * created by {@link #key(ItemProvider, Object)}.
+     */
+    private Set<Object> mapItems(final Collection<Object> items) {
+        final Set<Object> mapped = new HashSet<>();
+        for (Object item: items) {
+            mapped.add(itemKey(itemMapping.apply(item)));
+        }
+        return mapped;
+    }
+
+    /**
+     * Identify an option by the items it covers, including the colors of
+     * the secondary items.
+     */
+    private static <O> Set<Object> key(
+            final ItemProvider<O> itemProvider,
+            final O option) {
+        final Set<Object> key = new HashSet<>();
+        for (Object item: itemProvider.from(option)) {
+            key.add(itemKey(item));
+        }
+        return key;
+    }
+
+    private static Object itemKey(final Object item) {
+        if (item instanceof SecondaryItem secondary) {
+            final List<Object> key = new ArrayList<>(2);
+            key.add(item);
+            key.add(secondary.getColor());
+            return key;
+        }
+        return item;
+    }
+}
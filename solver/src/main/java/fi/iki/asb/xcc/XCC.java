@@ -1,9 +1,11 @@
 package fi.iki.asb.xcc;
 
+import java.math.BigInteger;
 import java.util.*;
 import java.util.function.BooleanSupplier;
 import java.util.function.Consumer;
 import java.util.function.DoubleConsumer;
+import java.util.stream.Stream;
 
 /**
  * A generic exact cover with color solver. An implementation of Knuth's
@@ -140,4 +142,164 @@ public interface XCC<O> {
             final List<O> preSelectedOptions,
             final BooleanSupplier emergencyBrake);
 
+    /**
+     * Search for exact cover solutions within limits.
+     *
+     * @see #search(Consumer, List, SearchLimits)
+     */
+    default SearchResult search(
+            final Consumer<List<O>> solutionConsumer,
+            final SearchLimits limits) {
+        return search(solutionConsumer, new ArrayList<>(), limits);
+    }
+
+    /**
+     * Search for exact cover solutions with pre-selected options within
+     * limits. The search stops when the first of the limits is reached. The
+     * default implementation passes a brake that enforces the limits to
+     * {@link #search(Consumer, List, BooleanSupplier)}, so the nodes are
+     * counted whenever the implementation checks its brake. The CPU time
+     * and the interrupt status are always those of the calling thread.
+     *
+     * @param solutionConsumer
+     *      The consumer which collects the results. Cannot be null.
+     *
+     * @param preSelectedOptions
+     *      The options that are pre-selected to be part of the solution.
+     *      Cannot be null. Can be empty.
+     *
+     * @param limits
+     *      The limits of the search. Cannot be null.
+     *
+     * @return Why the search stopped and how far it got.
+     *
+     * @throws IllegalStateException
+     *      A previous <code>search</code> was interrupted by an exception
+     *      and the matrix was left dirty. The XCC instance must be
+     *      recreated.
+     */
+    default SearchResult search(
+            final Consumer<List<O>> solutionConsumer,
+            final List<O> preSelectedOptions,
+            final SearchLimits limits) {
+        Objects.requireNonNull(solutionConsumer);
+        final SearchMonitor monitor = new SearchMonitor(limits);
+        search(monitor.wrap(solutionConsumer), preSelectedOptions, monitor);
+        return monitor.result();
+    }
+
+    /**
+     * Get the solutions as a lazy stream. The search advances only when
+     * the next solution is requested from the stream or from its {@link
+     * Stream#iterator() iterator}, so short-circuiting operations such as
+     * <code>limit</code> and <code>findFirst</code> stop the search without
+     * an emergency brake. The search runs in the calling thread, unless the
+     * stream is made parallel. The stream finds the same solutions as
+     * {@link #search(Consumer)}, but not necessarily in the same order.
+     *
+     * @throws IllegalStateException
+     *      A previous <code>search</code> was interrupted by an exception
+     *      and the matrix was left dirty. The XCC instance must be
+     *      recreated.
+     */
+    default Stream<List<O>> solutions() {
+        return solutions(new ArrayList<>());
+    }
+
+    /**
+     * Get the solutions with pre-selected options as a lazy stream.
+     *
+     * @param preSelectedOptions
+     *      The options that are pre-selected to be part of the solution.
+     *      Cannot be null. Can be empty.
+     *
+     * @see #solutions()
+     *
+     * @throws IllegalStateException
+     *      A previous <code>search</code> was interrupted by an exception
+     *      and the matrix was left dirty. The XCC instance must be
+     *      recreated.
+     */
+    Stream<List<O>> solutions(final List<O> preSelectedOptions);
+
+    /**
+     * Count the solutions without collecting them. The default
+     * implementation counts the solutions passed to a consumer, but
+     * implementations can skip the bookkeeping of the options that is only
+     * needed for reporting the solutions.
+     *
+     * @return The number of solutions.
+     *
+     * @throws ArithmeticException
+     *      The number of solutions does not fit in a <code>long</code>.
+     *      Use {@link #countSolutionsExact()} instead.
+     *
+     * @throws IllegalStateException
+     *      A previous <code>search</code> was interrupted by an exception
+     *      and the matrix was left dirty. The XCC instance must be
+     *      recreated.
+     */
+    default long countSolutions() {
+        return countSolutions(new ArrayList<>());
+    }
+
+    /**
+     * Count the solutions with pre-selected options without collecting
+     * them.
+     *
+     * @param preSelectedOptions
+     *      The options that are pre-selected to be part of the solution.
+     *      Cannot be null. Can be empty.
+     *
+     * @return The number of solutions.
+     *
+     * @throws ArithmeticException
+     *      The number of solutions does not fit in a <code>long</code>.
+     *      Use {@link #countSolutionsExact(List)} instead.
+     *
+     * @throws IllegalStateException
+     *      A previous <code>search</code> was interrupted by an exception
+     *      and the matrix was left dirty. The XCC instance must be
+     *      recreated.
+     */
+    default long countSolutions(final List<O> preSelectedOptions) {
+        return countSolutionsExact(preSelectedOptions).longValueExact();
+    }
+
+    /**
+     * Count the solutions without collecting them. The count cannot
+     * overflow.
+     *
+     * @return The number of solutions.
+     *
+     * @throws IllegalStateException
+     *      A previous <code>search</code> was interrupted by an exception
+     *      and the matrix was left dirty. The XCC instance must be
+     *      recreated.
+     */
+    default BigInteger countSolutionsExact() {
+        return countSolutionsExact(new ArrayList<>());
+    }
+
+    /**
+     * Count the solutions with pre-selected options without collecting
+     * them. The count cannot overflow.
+     *
+     * @param preSelectedOptions
+     *      The options that are pre-selected to be part of the solution.
+     *      Cannot be null. Can be empty.
+     *
+     * @return The number of solutions.
+     *
+     * @throws IllegalStateException
+     *      A previous <code>search</code> was interrupted by an exception
+     *      and the matrix was left dirty. The XCC instance must be
+     *      recreated.
+     */
+    default BigInteger countSolutionsExact(final List<O> preSelectedOptions) {
+        final SolutionCounter counter = new SolutionCounter();
+        search(s -> counter.add(1), preSelectedOptions);
+        return counter.value();
+    }
+
 }
@@ -0,0 +1,342 @@
+package fi.iki.asb.xcc;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Random;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A zero-suppressed decision diagram (ZDD) of the solutions of a problem,
+ * built with {@link ZddBuilder}. Each node tests one option: the
+ * <i>hi</i> branch contains the solutions that include the option and the
+ * <i>lo</i> branch the solutions that do not. Every path from the root to
+ * the true terminal is a solution. The nodes are shared between all the
+ * paths that lead to the same remaining subproblem, so the diagram can be
+ * exponentially smaller than the list of solutions.
+ *
+ * <p>As in Knuth's DXZ, the options are only ordered along the
+ * <i>lo</i> chains, which list the options of one item. Different paths
+ * can test the options in different orders.</p>
+ *
+ * <p>Nodes are numbered so that the children of a node always have a
+ * smaller number than the node itself. Node {@link #FALSE} is the empty
+ * family and node {@link #TRUE} is the family that contains only the empty
+ * solution.</p>
+ *
+ * <p>This class is immutable and thread safe, as long as the problem is
+ * not modified.</p>
+ *
+ * @param <O>
+ *     The type associated to options.
+ */
+public final class Zdd<O> implements Iterable<List<O>> {
+
+    /**
+     * The terminal node of the empty family.
+     */
+    public static final int FALSE = 0;
+
+    /**
+     * The terminal node of the family that contains the empty solution.
+     */
+    public static final int TRUE = 1;
+
+    private static final String HEADER = "zdd";
+
+    private final CompiledProblem<O> problem;
+
+    /**
+     * Option id tested by each node. Undefined for the terminals.
+     */
+    private final int[] VAR;
+
+    private final int[] LO;
+
+    private final int[] HI;
+
+    private final int root;
+
+    /**
+     * Number of solutions below each node. Computed when first needed.
+     */
+    private volatile BigInteger[] counts;
+
+    Zdd(final CompiledProblem<O> problem,
+        final int[] VAR,
+        final int[] LO,
+        final int[] HI,
+        final int root) {
+        this.problem = problem;
+        this.VAR = VAR;
+        this.LO = LO;
+        this.HI = HI;
+        this.root = root;
+    }
+
+    // =================================================================== //
+    // Structure.
+
+    /**
+     * Get the problem whose options the nodes refer to.
+     */
+    public CompiledProblem<O> problem() {
+        return problem;
+    }
+
+    /**
+     * Get the number of nodes, including the two terminals.
+     */
+    public int nodeCount() {
+        return VAR.length;
+    }
+
+    public int root() {
+        return root;
+    }
+
+    /**
+     * Get the id of the option that a non-terminal node tests.
+     */
+    public int option(final int node) {
+        return VAR[node];
+    }
+
+    public int lo(final int node) {
+        return LO[node];
+    }
+
+    public int hi(final int node) {
+        return HI[node];
+    }
+
+    // =================================================================== //
+    // Queries.
+
+    /**
+     * Count the solutions.
+     */
+    public BigInteger count() {
+        return counts()[root];
+    }
+
+    /**
+     * Iterate the solutions. The solutions are generated lazily while the
+     * iterator advances.
+     */
+    @Override
+    public Iterator<List<O>> iterator() {
+        return new Iterator<>() {
+
+            /**
+             * Pending nodes and the length of the path to each of them.
+             */
+            private final int[] stack = new int[2 * nodeCount() + 2];
+
+            private int top = 0;
+
+            private final List<O> path = new ArrayList<>();
+
+            private List<O> next = null;
+
+            {
+                if (root != FALSE) {
+                    push(root, 0);
+                }
+            }
+
+            private void push(final int node, final int length) {
+                stack[top++] = node;
+                stack[top++] = length;
+            }
+
+            @Override
+            public boolean hasNext() {
+                while (next == null && top > 0) {
+                    final int length = stack[--top];
+                    final int node = stack[--top];
+                    path.subList(length, path.size()).clear();
+
+                    if (node == TRUE) {
+                        next = List.copyOf(path);
+                    } else {
+                        if (LO[node] != FALSE) {
+                            push(LO[node], length);
+                        }
+                        path.add(problem.option(VAR[node]));
+                        push(HI[node], length + 1);
+                    }
+                }
+                return next != null;
+            }
+
+            @Override
+            public List<O> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                final List<O> result = next;
+                next = null;
+                return result;
+            }
+        };
+    }
+
+    /**
+     * Get the solutions as a lazy stream.
+     */
+    public Stream<List<O>> solutions() {
+        return StreamSupport.stream(Spliterators.spliterator(
+                iterator(), count().min(BigInteger.valueOf(Long.MAX_VALUE))
+                        .longValue(),
+                Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    /**
+     * Pick a solution uniformly at random.
+     *
+     * @throws NoSuchElementException If there are no solutions.
+     */
+    public List<O> sample(final Random random) {
+        final BigInteger[] counts = counts();
+        if (counts[root].signum() == 0) {
+            throw new NoSuchElementException("no solutions");
+        }
+
+        final List<O> solution = new ArrayList<>();
+        int node = root;
+        while (node != TRUE) {
+            // Go to the hi branch with probability hi / (lo + hi).
+            final BigInteger pick = randomBelow(counts[node], random);
+            if (pick.compareTo(counts[HI[node]]) < 0) {
+                solution.add(problem.option(VAR[node]));
+                node = HI[node];
+            } else {
+                node = LO[node];
+            }
+        }
+        return solution;
+    }
+
+    private static BigInteger randomBelow(
+            final BigInteger bound,
+            final Random random) {
+        BigInteger r;
+        do {
+            r = new BigInteger(bound.bitLength(), random);
+        } while (r.compareTo(bound) >= 0);
+        return r;
+    }
+
+    private BigInteger[] counts() {
+        BigInteger[] c = counts;
+        if (c == null) {
+            c = new BigInteger[nodeCount()];
+            c[FALSE] = BigInteger.ZERO;
+            c[TRUE] = BigInteger.ONE;
+            for (int node = 2; node < c.length; node++) {
+                c[node] = c[LO[node]].add(c[HI[node]]);
+            }
+            counts = c;
+        }
+        return c;
+    }
+
+    // =================================================================== //
+    // Files.
+
+    /**
+     * Write the diagram to a text file. The first line is
+     * <code>zdd &lt;nodes&gt; &lt;root&gt;</code>, followed by one line
+     * <code>&lt;node&gt; &lt;option&gt; &lt;lo&gt; &lt;hi&gt;</code> per
+     * non-terminal node in increasing order, where the option is the id
+     * of the option in the problem. The file is created or truncated.
+     */
+    public void write(final Path file) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(file)) {
+            out.write(HEADER + " " + nodeCount() + " " + root);
+            out.newLine();
+            for (int node = 2; node < nodeCount(); node++) {
+                out.write(node + " " + VAR[node] + " " + LO[node] + " " + HI[node]);
+                out.newLine();
+            }
+        }
+    }
+
+    /**
+     * Read a diagram that was written with {@link #write(Path)}.
+     *
+     * @param problem
+     *      The problem the diagram was built for.
+     *
+     * @throws IOException
+     *      If the file cannot be read or is not a valid diagram of the
+     *      problem.
+     */
+    public static <O> Zdd<O> read(
+            final Path file,
+            final CompiledProblem<O> problem) throws IOException {
+        Objects.requireNonNull(problem);
+        try (BufferedReader in = Files.newBufferedReader(file)) {
+            final String[] header = split(in.readLine(), 3);
+            if (!HEADER.equals(header[0])) {
+                throw new IOException("not a zdd");
+            }
+
+            final int nodeCount = parse(header[1], 2, Integer.MAX_VALUE);
+            final int root = parse(header[2], 0, nodeCount - 1);
+            final int[] var = new int[nodeCount];
+            final int[] lo = new int[nodeCount];
+            final int[] hi = new int[nodeCount];
+            for (int node = 2; node < nodeCount; node++) {
+                final String[] line = split(in.readLine(), 4);
+                parse(line[0], node, node);
+                var[node] = parse(line[1], 0, problem.optionCount() - 1);
+                lo[node] = parse(line[2], 0, node - 1);
+                hi[node] = parse(line[3], 0, node - 1);
+            }
+            return new Zdd<>(problem, var, lo, hi, root);
+        }
+    }
+
+    private static String[] split(final String line, final int fields)
+            throws IOException {
+        if (line == null) {
+            throw new IOException("truncated");
+        }
+        final String[] result = line.trim().split(" +");
+        if (result.length != fields) {
+            throw new IOException("malformed line: " + line);
+        }
+        return result;
+    }
+
+    private static int parse(final String s, final int min, final int max)
+            throws IOException {
+        try {
+            final int value = Integer.parseInt(s);
+            if (value < min || value > max) {
+                throw new IOException("value out of range: " + s);
+            }
+            return value;
+        } catch (NumberFormatException e) {
+            throw new IOException("malformed number: " + s, e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Zdd{nodes=" + nodeCount() + ", root=" + root + '}';
+    }
+}
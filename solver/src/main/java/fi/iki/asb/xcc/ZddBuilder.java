@@ -0,0 +1,270 @@
+package fi.iki.asb.xcc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Builds a {@link Zdd} of all the solutions of a problem with Knuth's
+ * Algorithm DXZ. The search is the same as in {@link ReferenceXCC}, but
+ * the result of each subproblem is memoized on the set of items that are
+ * still active (and the colors of the purified secondary items), which
+ * determines the subproblem completely. When the same subproblem is
+ * reached again along another path, its diagram is reused instead of
+ * being searched again.
+ *
+ * <p>The memo cache and the diagram are kept within a memory limit. When
+ * the estimated size exceeds the limit, the memo cache is cleared, which
+ * only makes the rest of the build slower. If the diagram alone exceeds
+ * the limit, the build fails.</p>
+ *
+ * <p>This class is <i>not thread safe</i>.</p>
+ *
+ * @param <O>
+ *     The type associated to options.
+ */
+public final class ZddBuilder<O> {
+
+    /**
+     * Estimated size of a node in bytes: three array slots and an entry in
+     * the unique table.
+     */
+    private static final long NODE_BYTES = 12 + 64;
+
+    /**
+     * Estimated overhead of a memo cache entry in bytes, excluding the key
+     * array contents.
+     */
+    private static final long MEMO_BYTES = 80;
+
+    /**
+     * The set of active items and the colors of the active secondary
+     * items. Wrapped for use as a hash key.
+     */
+    private record State(int[] items) {
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof State s && Arrays.equals(items, s.items);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(items);
+        }
+    }
+
+    /**
+     * Key of the unique table. Equal nodes are created only once.
+     */
+    private record Node(int option, int lo, int hi) { }
+
+    private final CompiledProblem<O> problem;
+
+    private long memoryLimit = Long.MAX_VALUE;
+
+    // Build state. Cleared when the build finishes.
+
+    private ArrayMatrix matrix;
+
+    private int[] VAR;
+
+    private int[] LO;
+
+    private int[] HI;
+
+    private int nodeCount;
+
+    private Map<Node, Integer> unique;
+
+    private Map<State, Integer> memo;
+
+    private long memoBytes;
+
+    private long memoHits;
+
+    // =================================================================== //
+
+    /**
+     * @param problem
+     *      The problem to build the diagram for. The problem can still be
+     *      modified between builds.
+     */
+    public ZddBuilder(final CompiledProblem<O> problem) {
+        this.problem = Objects.requireNonNull(problem);
+    }
+
+    /**
+     * Set the estimated number of bytes the memo cache and the diagram can
+     * use during a build. The default is unlimited.
+     *
+     * @throws IllegalArgumentException If the limit is not positive.
+     */
+    public void setMemoryLimit(final long memoryLimit) {
+        if (memoryLimit <= 0) {
+            throw new IllegalArgumentException(
+                    "memory limit must be positive");
+        }
+        this.memoryLimit = memoryLimit;
+    }
+
+    /**
+     * Get the number of times a subproblem was found in the memo cache
+     * during the last build.
+     */
+    public long memoHits() {
+        return memoHits;
+    }
+
+    /**
+     * Build the diagram of all the solutions.
+     *
+     * @throws IllegalStateException
+     *      If the diagram does not fit in the memory limit.
+     */
+    public Zdd<O> build() {
+        return build(new ArrayList<>());
+    }
+
+    /**
+     * Build the diagram of the solutions that contain the pre-selected
+     * options.
+     *
+     * @throws IllegalStateException
+     *      If the diagram does not fit in the memory limit.
+     */
+    public Zdd<O> build(final List<O> preSelectedOptions) {
+        Objects.requireNonNull(preSelectedOptions);
+
+        matrix = ArrayMatrix.build("ZddBuilder", problem);
+        VAR = new int[16];
+        LO = new int[16];
+        HI = new int[16];
+        nodeCount = 2;
+        unique = new HashMap<>();
+        memo = new HashMap<>();
+        memoBytes = 0;
+        memoHits = 0;
+
+        try {
+            for (int i : matrix.columnsOf(problem, preSelectedOptions)) {
+                matrix.cover(i);
+            }
+
+            int root = search();
+            for (O option : preSelectedOptions.reversed()) {
+                if (root != Zdd.FALSE) {
+                    root = node(optionId(option), Zdd.FALSE, root);
+                }
+            }
+
+            return new Zdd<>(problem,
+                    Arrays.copyOf(VAR, nodeCount),
+                    Arrays.copyOf(LO, nodeCount),
+                    Arrays.copyOf(HI, nodeCount),
+                    root);
+        } finally {
+            matrix = null;
+            VAR = LO = HI = null;
+            unique = null;
+            memo = null;
+        }
+    }
+
+    // =================================================================== //
+
+    /**
+     * Build the diagram of the current subproblem. The options of the
+     * chosen item are chained with their lo links, each one having the
+     * diagram of the remaining subproblem as its hi link.
+     */
+    private int search() {
+        if (matrix.isSolved()) {
+            return Zdd.TRUE;
+        }
+
+        final State state = new State(matrix.state());
+        final Integer known = memo.get(state);
+        if (known != null) {
+            memoHits++;
+            return known;
+        }
+
+        final int i = matrix.findColumn();
+        int result = Zdd.FALSE;
+
+        matrix.cover(i);
+
+        // Go through the options from the bottom up, so that the first
+        // option ends up at the top of the chain.
+        for (int x = matrix.ULINK[i]; x != i; x = matrix.ULINK[x]) {
+            matrix.commitOption(x);
+            final int hi = search();
+            matrix.uncommitOption(x);
+
+            if (hi != Zdd.FALSE) {
+                result = node(matrix.OPTION[x], result, hi);
+            }
+        }
+
+        matrix.uncover(i);
+
+        remember(state, result);
+        return result;
+    }
+
+    private void remember(final State state, final int result) {
+        final long bytes = MEMO_BYTES + 4L * state.items.length;
+        if (nodeBytes() + memoBytes + bytes > memoryLimit) {
+            memo.clear();
+            memoBytes = 0;
+        }
+        memo.put(state, result);
+        memoBytes += bytes;
+    }
+
+    /**
+     * Get the node with the given option and children, creating it if it
+     * does not exist yet.
+     */
+    private int node(final int option, final int lo, final int hi) {
+        final Node key = new Node(option, lo, hi);
+        final Integer existing = unique.get(key);
+        if (existing != null) {
+            return existing;
+        }
+
+        if (nodeBytes() + NODE_BYTES > memoryLimit) {
+            throw new IllegalStateException("zdd exceeds memory limit");
+        }
+        if (nodeCount == VAR.length) {
+            VAR = Arrays.copyOf(VAR, 2 * nodeCount);
+            LO = Arrays.copyOf(LO, 2 * nodeCount);
+            HI = Arrays.copyOf(HI, 2 * nodeCount);
+        }
+
+        VAR[nodeCount] = option;
+        LO[nodeCount] = lo;
+        HI[nodeCount] = hi;
+        unique.put(key, nodeCount);
+        return nodeCount++;
+    }
+
+    /**
+     * Find the id of a pre-selected option.
+     */
+    private int optionId(final O option) {
+        final int id = problem.optionId(option);
+        if (id < 0) {
+            throw new IllegalArgumentException("unknown option " + option);
+        }
+        return id;
+    }
+
+    private long nodeBytes() {
+        return NODE_BYTES * nodeCount;
+    }
+}
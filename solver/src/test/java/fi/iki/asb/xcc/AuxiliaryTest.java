@@ -108,6 +108,28 @@ public class AuxiliaryTest {
         runEmergencyBrakeTest(createSolver(ReferenceXCC::new));
     }
 
+    @Test
+    public void givenIterativeXcc_shouldPullEmergencyBrake() {
+        runEmergencyBrakeTest(createSolver(IterativeXCC::new));
+    }
+
+    @Test
+    public void givenDancingCellsXcc_shouldPullEmergencyBrake() {
+        runEmergencyBrakeTest(createSolver(DancingCellsXCC::new));
+    }
+
+    @Test
+    public void givenOffHeapXcc_shouldPullEmergencyBrake() {
+        try (OffHeapXCC<String> xcc = new OffHeapXCC<>(new MultipleSolutionExample())) {
+            runEmergencyBrakeTest(createSolver(p -> xcc));
+        }
+    }
+
+    @Test
+    public void givenBitsetXcc_shouldPullEmergencyBrake() {
+        runEmergencyBrakeTest(createSolver(BitsetXCC::new));
+    }
+
     // =================================================================== //
     // Test that trace is called.
 
@@ -140,4 +162,26 @@ public class AuxiliaryTest {
         runTracingTest(createSolver(ReferenceXCC::new));
     }
 
+    @Test
+    public void givenIterativeXcc_shouldCallTracer() {
+        runTracingTest(createSolver(IterativeXCC::new));
+    }
+
+    @Test
+    public void givenDancingCellsXcc_shouldCallTracer() {
+        runTracingTest(createSolver(DancingCellsXCC::new));
+    }
+
+    @Test
+    public void givenOffHeapXcc_shouldCallTracer() {
+        try (OffHeapXCC<String> xcc = new OffHeapXCC<>(new MultipleSolutionExample())) {
+            runTracingTest(createSolver(p -> xcc));
+        }
+    }
+
+    @Test
+    public void givenBitsetXcc_shouldCallTracer() {
+        runTracingTest(createSolver(BitsetXCC::new));
+    }
+
 }
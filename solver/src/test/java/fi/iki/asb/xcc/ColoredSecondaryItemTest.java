@@ -96,4 +96,35 @@ public class ColoredSecondaryItemTest {
     public void givenReferenceXcc_shouldNotIncludeWrongColor() {
         runColoredTest(createSolver(ReferenceXCC::new));
     }
+
+    @Test
+    public void givenIterativeXcc_shouldNotIncludeWrongColor() {
+        runColoredTest(createSolver(IterativeXCC::new));
+    }
+
+    @Test
+    public void givenDancingCellsXcc_shouldNotIncludeWrongColor() {
+        runColoredTest(createSolver(DancingCellsXCC::new));
+    }
+
+    @Test
+    public void givenOffHeapXcc_shouldNotIncludeWrongColor() {
+        try (OffHeapXCC<String> xcc = new OffHeapXCC<>(new ColoredSolutionExample())) {
+            runColoredTest(createSolver(p -> xcc));
+        }
+    }
+
+    @Test
+    public void givenBitsetXcc_shouldNotIncludeWrongColor() {
+        runColoredTest(createSolver(BitsetXCC::new));
+    }
+
+    @Test
+    public void givenParallelXcc_shouldNotIncludeWrongColor() {
+        createSolver(ParallelXCC::new).search(this::solutionConsumer);
+
+        // The solutions are found in a nondeterministic order.
+        solutions.sort(null);
+        assertEquals(List.of("A,B", "D,E"), solutions);
+    }
 }
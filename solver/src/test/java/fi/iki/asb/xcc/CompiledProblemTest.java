@@ -0,0 +1,208 @@
+package fi.iki.asb.xcc;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CompiledProblemTest {
+
+    private record Secondary(String name, Object color) implements SecondaryItem {
+        @Override
+        public Object getColor() {
+            return color;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Secondary s && name.equals(s.name);
+        }
+
+        @Override
+        public int hashCode() {
+            return name.hashCode();
+        }
+    }
+
+    @Test
+    public void shouldInternItemsOptionsAndColors() {
+        final CompiledProblem<String> problem = new CompiledProblem<>(
+                option -> switch (option) {
+                    case "A" -> asList("x", new Secondary("s", "red"));
+                    case "B" -> asList("y", new Secondary("s", "blue"));
+                    default -> asList("x", "y", new Secondary("s", "red"));
+                });
+
+        assertEquals(0, problem.addOption("A"));
+        assertEquals(1, problem.addOption("B"));
+        assertEquals(2, problem.addOption("C"));
+
+        assertEquals(3, problem.itemCount());
+        assertEquals(2, problem.primaryItemCount());
+        assertEquals(1, problem.secondaryItemCount());
+        assertEquals(0, problem.itemId("x"));
+        assertEquals(2, problem.itemId("y"));
+        assertEquals(-1, problem.itemId("z"));
+        assertTrue(problem.isSecondary(1));
+
+        // Colors are numbered from one.
+        assertEquals(3, problem.colorCount());
+        assertNull(problem.color(CompiledProblem.NO_COLOR));
+        assertEquals("red", problem.color(1));
+        assertEquals("blue", problem.color(2));
+
+        assertEquals(7, problem.nodeCount());
+        assertEquals(4, problem.optionStart(2));
+        assertEquals(7, problem.optionEnd(2));
+        assertEquals(2, problem.nodeItem(5));
+        assertEquals(1, problem.nodeColor(6));
+        assertArrayEquals(new int[] { 2, 1 }, problem.itemsOf("B"));
+    }
+
+    @Test
+    public void givenLowLevelOptions_shouldFindSolutions() {
+        // The Wikipedia example of Algorithm X.
+        final CompiledProblem<String> problem = new CompiledProblem<>();
+        for (int i = 0; i < 7; i++) {
+            assertEquals(i, problem.addPrimaryItem(i));
+        }
+        problem.addOption("A", new int[] { 0, 3, 6 }, null);
+        problem.addOption("B", new int[] { 0, 3 }, null);
+        problem.addOption("C", new int[] { 3, 4, 6 }, null);
+        problem.addOption("D", new int[] { 2, 4, 5 }, null);
+        problem.addOption("E", new int[] { 1, 2, 5, 6 }, null);
+        problem.addOption("F", new int[] { 1, 6 }, null);
+
+        final List<String> solutions = new ArrayList<>();
+        new ParallelXCC<>(problem).search(
+                s -> solutions.add(String.join(",", s)));
+
+        assertEquals(List.of("B,D,F"), solutions);
+    }
+
+    @Test
+    public void givenAnonymousOptions_shouldReportThemAsNull() {
+        final CompiledProblem<String> problem = new CompiledProblem<>();
+        final int item = problem.addPrimaryItem("x");
+        problem.addOption(item);
+
+        final List<List<String>> solutions = new ArrayList<>();
+        new ParallelXCC<>(problem).search(
+                s -> solutions.add(new ArrayList<>(s)));
+
+        assertEquals(List.of(Collections.singletonList(null)), solutions);
+    }
+
+    @Test
+    public void givenColorOnPrimaryItem_shouldRejectOption() {
+        final CompiledProblem<String> problem = new CompiledProblem<>();
+        final int item = problem.addPrimaryItem("x");
+        final int color = problem.addColor("red");
+
+        try {
+            problem.addOption("A", new int[] { item }, new int[] { color });
+            fail();
+        } catch (IllegalArgumentException ex) {
+            // Ok.
+        }
+
+        assertEquals(0, problem.optionCount());
+        assertEquals(0, problem.nodeCount());
+    }
+
+    @Test
+    public void givenUnknownItemId_shouldRejectOption() {
+        final CompiledProblem<String> problem = new CompiledProblem<>();
+        problem.addPrimaryItem("x");
+
+        try {
+            problem.addOption(0, 1);
+            fail();
+        } catch (IndexOutOfBoundsException ex) {
+            // Ok.
+        }
+
+        assertEquals(0, problem.optionCount());
+    }
+
+    @Test
+    public void givenDuplicateItemId_shouldRejectOption() {
+        final CompiledProblem<String> problem = new CompiledProblem<>();
+        final int x = problem.addPrimaryItem("x");
+        final int y = problem.addPrimaryItem("y");
+
+        try {
+            problem.addOption(x, y, x);
+            fail();
+        } catch (IllegalArgumentException ex) {
+            // Ok.
+        }
+
+        assertEquals(0, problem.optionCount());
+        assertEquals(0, problem.addOption(x, y));
+    }
+
+    @Test
+    public void givenOptionThatFailsHalfway_shouldRemoveItsNewItems() {
+        final CompiledProblem<String> problem = new CompiledProblem<>(
+                o -> asList((Object[]) o.split(",")));
+        problem.addOption("x,y");
+
+        try {
+            problem.addOption("z,w,z");
+            fail();
+        } catch (IllegalArgumentException ex) {
+            // Ok.
+        }
+
+        assertEquals(2, problem.itemCount());
+        assertEquals(-1, problem.itemId("z"));
+        assertEquals(-1, problem.itemId("w"));
+        assertEquals(1, problem.addOption("z,w"));
+        assertEquals(2, problem.itemId("z"));
+        assertEquals(3, problem.itemId("w"));
+    }
+
+    @Test
+    public void shouldFindOptionIds() {
+        final CompiledProblem<String> problem =
+                WikipediaExample.letterProblem("AB", "C", "AB");
+
+        assertEquals(0, problem.optionId("AB"));
+        assertEquals(1, problem.optionId("C"));
+        assertEquals(-1, problem.optionId("D"));
+
+        // Options added after the lookup are found as well.
+        problem.addOption("D");
+        assertEquals(3, problem.optionId("D"));
+    }
+
+    @Test
+    public void cannotChangeItemFromPrimaryToSecondary() {
+        final CompiledProblem<String> problem = new CompiledProblem<>();
+        problem.addPrimaryItem("x");
+
+        try {
+            problem.addSecondaryItem("x");
+            fail();
+        } catch (IllegalArgumentException ex) {
+            // Ok.
+        }
+
+        assertFalse(problem.isSecondary(0));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void givenNoItemProvider_cannotAddOptionObjects() {
+        new CompiledProblem<String>().addOption("A");
+    }
+}
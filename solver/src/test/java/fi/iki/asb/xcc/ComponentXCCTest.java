@@ -0,0 +1,96 @@
+package fi.iki.asb.xcc;
+
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for splitting the search into independent components.
+ */
+public class ComponentXCCTest {
+
+    private static <O> Set<Set<O>> solve(final XCC<O> xcc, final List<O> pre) {
+        final Set<Set<O>> solutions = new HashSet<>();
+        xcc.search(s -> assertTrue(solutions.add(new HashSet<>(s))), pre);
+        return solutions;
+    }
+
+    @Test
+    public void givenDominoes_shouldMultiplyComponentCounts() {
+        final ComponentXCC<String> xcc = new ComponentXCC<>(DominoStrip.problem(30));
+
+        // F(31) tilings.
+        assertEquals(BigInteger.valueOf(1346269), xcc.countSolutionsExact());
+
+        // The vertical domino leaves boards of 15 and 14 columns.
+        assertEquals(BigInteger.valueOf(987 * 610),
+                xcc.countSolutionsExact(List.of("v15")));
+        assertEquals(1, xcc.componentSplits());
+        assertFalse(xcc.isDirty());
+    }
+
+    @Test
+    public void givenDominoes_shouldFindSameSolutionsAsReferenceXcc() {
+        final CompiledProblem<String> problem = DominoStrip.problem(10);
+        final ComponentXCC<String> xcc = new ComponentXCC<>(problem);
+        final Set<Set<String>> solutions = solve(xcc, List.of());
+
+        assertEquals(89, solutions.size());
+        assertEquals(solve(new ReferenceXCC<>(problem), List.of()), solutions);
+
+        // Pre-selected vertical domino splits the board at the root.
+        assertEquals(
+                solve(new ReferenceXCC<>(problem), List.of("v4")),
+                solve(xcc, List.of("v4")));
+        assertEquals(1, xcc.componentSplits());
+    }
+
+    @Test
+    public void givenRandomColoredProblems_shouldFindSameSolutionsAsReferenceXcc() {
+        final Random random = new Random(5);
+        long splits = 0;
+        for (int round = 0; round < 200; round++) {
+            // The options are indexes to the item lists, so that equal
+            // lists are different options.
+            final List<List<Object>> options
+                    = RandomProblems.options(random, 20, 10);
+            final CompiledProblem<Integer> problem = new CompiledProblem<>(
+                    options::get);
+            for (int o = 0; o < options.size(); o++) {
+                problem.addOption(o);
+            }
+
+            final ComponentXCC<Integer> xcc = new ComponentXCC<>(problem);
+            xcc.setSplitInterval(1 + round % 3);
+
+            final Set<Set<Integer>> expected =
+                    solve(new ReferenceXCC<>(problem), List.of());
+            assertEquals(expected, solve(xcc, List.of()));
+            assertEquals(BigInteger.valueOf(expected.size()),
+                    xcc.countSolutionsExact());
+            splits += xcc.componentSplits();
+        }
+        assertTrue(splits > 0);
+    }
+
+    @Test
+    public void shouldStopWhenEmergencyBrakeIsPulled() {
+        final ComponentXCC<String> xcc = new ComponentXCC<>(DominoStrip.problem(12));
+        final AtomicInteger solutionCount = new AtomicInteger();
+
+        xcc.search(s -> solutionCount.incrementAndGet(),
+                () -> solutionCount.get() >= 5);
+
+        assertEquals(5, solutionCount.get());
+        assertFalse(xcc.isDirty());
+    }
+}
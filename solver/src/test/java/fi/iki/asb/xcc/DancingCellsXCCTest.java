@@ -0,0 +1,50 @@
+package fi.iki.asb.xcc;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests unique to dancing cells XCC.
+ */
+public class DancingCellsXCCTest {
+
+    @Test
+    public void givenRandomColoredProblems_shouldFindSameSolutionsAsReferenceXcc() {
+        final Random random = new Random(42);
+        int solutionCount = 0;
+        for (int round = 0; round < 200; round++) {
+            final List<List<Object>> options
+                    = RandomProblems.options(random, 20, 6);
+
+            final List<String> expected = RandomProblems.solve(
+                    new ReferenceXCC<>(RandomProblems.PROVIDER), options);
+            assertEquals(expected, RandomProblems.solve(
+                    new DancingCellsXCC<>(RandomProblems.PROVIDER), options));
+            solutionCount += expected.size();
+        }
+
+        // Make sure the problems are not trivially unsolvable.
+        assertTrue(solutionCount > 100);
+    }
+
+    @Test
+    public void cannotModifyMatrixAfterInitialization() {
+        DancingCellsXCC<Object> xcc = new DancingCellsXCC<>(Collections::singletonList);
+        xcc.addOption("A");
+        xcc.search(s -> {});
+
+        try {
+            xcc.addOption("B");
+            fail();
+        } catch (IllegalStateException ex) {
+            // Ok.
+        }
+    }
+}
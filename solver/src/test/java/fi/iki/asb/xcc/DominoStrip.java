@@ -0,0 +1,41 @@
+package fi.iki.asb.xcc;
+
+import java.util.List;
+
+/**
+ * Dominoes on a board of two rows, shared by the tests. Option
+ * <code>v</code><i>c</i> is a vertical domino in column <i>c</i> and option
+ * <code>h</code><i>r</i><code>,</code><i>c</i> is a horizontal domino in
+ * row <i>r</i> and columns <i>c</i> and <i>c + 1</i>. The number of tilings
+ * of a board of <i>n</i> columns is the Fibonacci number
+ * <i>F(n + 1)</i>, and a vertical domino splits the board in two.
+ */
+final class DominoStrip {
+
+    private DominoStrip() {
+    }
+
+    /**
+     * Create the problem of tiling a board with the given number of
+     * columns.
+     */
+    static CompiledProblem<String> problem(final int columns) {
+        final CompiledProblem<String> problem = new CompiledProblem<>(o -> {
+            if (o.startsWith("v")) {
+                final int c = Integer.parseInt(o.substring(1));
+                return List.of(c, columns + c);
+            }
+            final int r = o.charAt(1) - '0';
+            final int c = Integer.parseInt(o.substring(3));
+            return List.of(r * columns + c, r * columns + c + 1);
+        });
+        for (int c = 0; c < columns; c++) {
+            problem.addOption("v" + c);
+            if (c + 1 < columns) {
+                problem.addOption("h0," + c);
+                problem.addOption("h1," + c);
+            }
+        }
+        return problem;
+    }
+}
@@ -0,0 +1,129 @@
+package fi.iki.asb.xcc;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests unique to frozen matrices.
+ */
+public class FrozenMatrixTest {
+
+    /**
+     * The Wikipedia example of Algorithm X, with an extra option that
+     * allows two more solutions.
+     */
+    private static CompiledProblem<String> createProblem() {
+        final CompiledProblem<String> problem = WikipediaExample.letterProblem(
+                WikipediaExample.LETTER_OPTIONS.toArray(String[]::new));
+        problem.addOption("CF");
+        problem.addOption("E");
+        return problem;
+    }
+
+    private static FrozenMatrix<String> createMatrix() {
+        return new FrozenMatrix<>(createProblem());
+    }
+
+    private static List<String> solve(final XCC<String> xcc, final List<String> preSelected) {
+        final List<String> solutions = new ArrayList<>();
+        xcc.search(s -> solutions.add(String.join(",", s)), preSelected, () -> false);
+        return solutions;
+    }
+
+    @Test
+    public void givenSessions_shouldSearchIndependently() {
+        final FrozenMatrix<String> matrix = createMatrix();
+        final List<String> expected = solve(
+                new ReferenceXCC<>(createProblem()), List.of());
+
+        final IterativeXCC<String> first = matrix.newSession();
+        final IterativeXCC<String> second = matrix.newSession();
+
+        // Pause the first search in the middle and run the second one to
+        // completion.
+        final List<String> solutions = new ArrayList<>();
+        first.start(s -> solutions.add(String.join(",", s)), List.of(), () -> false);
+        first.step(3);
+        assertEquals(expected, solve(second, List.of()));
+        while (first.step(3)) {
+            // Continue.
+        }
+
+        assertEquals(expected, solutions);
+        assertEquals(3, expected.size());
+    }
+
+    @Test
+    public void givenThreads_shouldFindSameSolutions() throws Exception {
+        final FrozenMatrix<String> matrix = createMatrix();
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<List<String>>> results = new ArrayList<>();
+            for (int k = 0; k < 100; k++) {
+                final List<String> preSelected = (k % 2 == 0) ? List.of() : List.of("BG");
+                results.add(executor.submit(() -> solve(matrix.newSession(), preSelected)));
+            }
+
+            for (int k = 0; k < results.size(); k++) {
+                final List<String> solutions = results.get(k).get();
+                if (k % 2 == 0) {
+                    assertEquals(3, solutions.size());
+                } else {
+                    assertEquals(List.of("BG,AD,CEF", "BG,AD,E,CF"), solutions);
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void givenOptionIds_shouldFindSameSolutionsAsOptions() {
+        final FrozenMatrix<String> matrix = createMatrix();
+        final IterativeXCC<String> session = matrix.newSession();
+        final int[] ids = { matrix.problem().optionId("AD") };
+
+        final List<String> solutions = new ArrayList<>();
+        session.search(s -> solutions.add(String.join(",", s)), ids, () -> false);
+        assertEquals(solve(matrix.newSession(), List.of("AD")), solutions);
+        assertEquals(3, solutions.size());
+
+        // An unknown id is rejected before anything is covered.
+        try {
+            session.search(s -> { }, new int[] { 8 }, () -> false);
+            fail();
+        } catch (IndexOutOfBoundsException ex) {
+            // Ok.
+        }
+        assertEquals(solutions, solve(session, List.of("AD")));
+    }
+
+    @Test
+    public void cannotModifyFrozenProblem() {
+        final FrozenMatrix<String> matrix = createMatrix();
+        assertTrue(matrix.problem().isFrozen());
+
+        try {
+            matrix.problem().addOption("A");
+            fail();
+        } catch (IllegalStateException ex) {
+            // Ok.
+        }
+
+        try {
+            matrix.newSession().addOption("A");
+            fail();
+        } catch (IllegalStateException ex) {
+            // Ok.
+        }
+    }
+}
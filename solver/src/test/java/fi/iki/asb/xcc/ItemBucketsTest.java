@@ -0,0 +1,77 @@
+package fi.iki.asb.xcc;
+
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Function;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for keeping the active items in buckets by their length.
+ */
+public class ItemBucketsTest {
+
+    private static void assertSameSolutions(
+            final Function<Boolean, XCC<List<Object>>> factory) {
+        final Random random = new Random(7);
+        int solutionCount = 0;
+        for (int round = 0; round < 200; round++) {
+            final List<List<Object>> options
+                    = RandomProblems.options(random, 30, 8);
+
+            final List<String> expected = RandomProblems.solve(
+                    factory.apply(false), options);
+            assertEquals(expected, RandomProblems.solve(
+                    factory.apply(true), options));
+
+            final XCC<List<Object>> xcc = factory.apply(true);
+            options.forEach(xcc::addOption);
+            assertEquals(BigInteger.valueOf(expected.size()),
+                    xcc.countSolutionsExact());
+
+            solutionCount += expected.size();
+        }
+
+        // Make sure the problems are not trivially unsolvable.
+        assertTrue(solutionCount > 100);
+    }
+
+    @Test
+    public void givenReferenceXccWithBuckets_shouldFindSameSolutions() {
+        assertSameSolutions(buckets -> {
+            final ReferenceXCC<List<Object>> xcc = new ReferenceXCC<>(RandomProblems.PROVIDER);
+            xcc.setItemBuckets(buckets);
+            return xcc;
+        });
+    }
+
+    @Test
+    public void givenLinkedXccWithBuckets_shouldFindSameSolutions() {
+        assertSameSolutions(buckets -> {
+            final LinkedXCC<List<Object>> xcc = new LinkedXCC<>(RandomProblems.PROVIDER);
+            xcc.setItemBuckets(buckets);
+            return xcc;
+        });
+    }
+
+    @Test
+    public void givenPreSelectedOption_shouldRestoreBucketsAfterSearch() {
+        final ReferenceXCC<String> xcc = new ReferenceXCC<>(
+                WikipediaExample.letters());
+        xcc.setItemBuckets(true);
+        for (String option : List.of("CEF", "ADG", "BCF", "AD", "BG", "DEG")) {
+            xcc.addOption(option);
+        }
+
+        final List<String> solutions = new ArrayList<>();
+        xcc.search(s -> solutions.add(s.toString()), List.of("BG"), () -> false);
+        xcc.search(s -> solutions.add(s.toString()));
+
+        assertEquals(List.of("[BG, CEF, AD]", "[CEF, BG, AD]"), solutions);
+    }
+}
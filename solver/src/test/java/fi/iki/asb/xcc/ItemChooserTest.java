@@ -0,0 +1,125 @@
+package fi.iki.asb.xcc;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ItemChooserTest {
+
+    /**
+     * Options of the Wikipedia example of Algorithm X, with extra options
+     * that allow more solutions.
+     */
+    private static final List<String> OPTIONS = List.of(
+            "ADG", "AD", "DEG", "CEF", "BCFG", "BG", "CF", "E", "A", "D");
+
+    private static List<String> solve(final XCC<String> xcc) {
+        OPTIONS.forEach(xcc::addOption);
+        final List<String> solutions = new ArrayList<>();
+        xcc.search(s -> {
+            final List<String> solution = new ArrayList<>(s);
+            Collections.sort(solution);
+            solutions.add(solution.toString());
+        });
+        return solutions;
+    }
+
+    private static ReferenceXCC<String> reference(final ItemChooser chooser) {
+        final ReferenceXCC<String> xcc = new ReferenceXCC<>(WikipediaExample.letters());
+        xcc.setItemChooser(chooser);
+        return xcc;
+    }
+
+    private static LinkedXCC<String> linked(final ItemChooser chooser) {
+        final LinkedXCC<String> xcc = new LinkedXCC<>(WikipediaExample.letters());
+        xcc.setItemChooser(chooser);
+        return xcc;
+    }
+
+    /**
+     * Get the first option of the first solution. It covers the item that
+     * was chosen first.
+     */
+    private static String firstOption(final XCC<String> xcc) {
+        OPTIONS.forEach(xcc::addOption);
+        final List<String> first = new ArrayList<>();
+        xcc.search(s -> first.add(s.get(0)), () -> !first.isEmpty());
+        return first.get(0);
+    }
+
+    private static List<String> sorted(final List<String> solutions) {
+        final List<String> copy = new ArrayList<>(solutions);
+        Collections.sort(copy);
+        return copy;
+    }
+
+    private static void runChooserTest(final Supplier<ItemChooser> chooser) {
+        final List<String> expected = sorted(solve(reference(null)));
+        assertEquals(expected, sorted(solve(reference(chooser.get()))));
+        assertEquals(expected, sorted(solve(linked(chooser.get()))));
+    }
+
+    @Test
+    public void givenMrvChooser_shouldFindSolutionsInDefaultOrder() {
+        assertEquals(solve(reference(null)), solve(reference(ItemChooser.mrv())));
+        assertEquals(solve(linked(null)), solve(linked(ItemChooser.mrv())));
+    }
+
+    @Test
+    public void givenMrvLastChooser_shouldFindAllSolutions() {
+        runChooserTest(ItemChooser::mrvLast);
+    }
+
+    @Test
+    public void givenTieBreakChooser_shouldFindAllSolutions() {
+        runChooserTest(() -> ItemChooser.mrv(
+                Comparator.comparing(Object::toString).reversed()));
+    }
+
+    @Test
+    public void givenRandomChooser_shouldFindAllSolutions() {
+        runChooserTest(() -> ItemChooser.random(42));
+
+        // The same seed makes the same choices.
+        assertEquals(solve(reference(ItemChooser.random(7))),
+                solve(reference(ItemChooser.random(7))));
+    }
+
+    @Test
+    public void givenSharpChooser_shouldPreferDesignatedItems() {
+        runChooserTest(() -> ItemChooser.sharp("E"::equals));
+
+        // Item B has the fewest options, but the designated item E is
+        // chosen first, so the first option of a solution covers E.
+        assertFalse(firstOption(reference(null)).contains("E"));
+        assertTrue(firstOption(reference(ItemChooser.sharp("E"::equals))).contains("E"));
+        assertTrue(firstOption(linked(ItemChooser.sharp("E"::equals))).contains("E"));
+    }
+
+    @Test
+    public void givenScoredChooser_shouldChooseLowestScore() {
+        runChooserTest(() -> ItemChooser.scored((item, length) -> -length));
+
+        // Choosing the item with the most options changes the order.
+        assertNotEquals(solve(reference(null)),
+                solve(reference(ItemChooser.scored((item, length) -> -length))));
+    }
+
+    @Test
+    public void givenMrvChooser_shouldStopAtItemWithoutOptions() {
+        final ItemChooser chooser = ItemChooser.mrv();
+        chooser.start();
+        chooser.offer("A", 2);
+        chooser.offer("B", 0);
+        assertTrue(chooser.isDone());
+    }
+}
@@ -0,0 +1,288 @@
+package fi.iki.asb.xcc;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests unique to iterative XCC.
+ */
+public class IterativeXCCTest {
+
+    private static final int SIZE = 5;
+
+    /**
+     * Item provider for placing a rook on each row and column of a chess
+     * board. There are <code>SIZE!</code> solutions.
+     */
+    private static class RookExample implements ItemProvider<Integer> {
+        @Override
+        public Collection<Object> from(Integer square) {
+            return asList("r" + (square / SIZE), "c" + (square % SIZE));
+        }
+    }
+
+    private IterativeXCC<Integer> createSolver() {
+        final IterativeXCC<Integer> xcc = new IterativeXCC<>(new RookExample());
+        for (int square = 0; square < SIZE * SIZE; square++) {
+            xcc.addOption(square);
+        }
+        return xcc;
+    }
+
+    private static List<List<Integer>> searchAll(final XCC<Integer> xcc) {
+        final List<List<Integer>> solutions = new ArrayList<>();
+        xcc.search(s -> solutions.add(new ArrayList<>(s)));
+        return solutions;
+    }
+
+    @Test
+    public void givenSingleNodeSteps_shouldFindSameSolutionsAsReferenceXcc() {
+        final XCC<Integer> reference = new ReferenceXCC<>(new RookExample());
+        for (int square = 0; square < SIZE * SIZE; square++) {
+            reference.addOption(square);
+        }
+
+        final IterativeXCC<Integer> xcc = createSolver();
+        final List<List<Integer>> solutions = new ArrayList<>();
+        xcc.start(s -> solutions.add(new ArrayList<>(s)),
+                Collections.emptyList(), () -> false);
+
+        int steps = 0;
+        while (xcc.step(1)) {
+            assertTrue(xcc.isRunning());
+            assertTrue(xcc.isDirty());
+            steps++;
+        }
+
+        assertEquals(searchAll(reference), solutions);
+        assertTrue(steps > solutions.size());
+        assertFalse(xcc.isRunning());
+        assertFalse(xcc.isDirty());
+    }
+
+    @Test
+    public void givenStepsOnDifferentThreads_shouldFindEverySolution()
+            throws Exception {
+        final IterativeXCC<Integer> xcc = createSolver();
+        final List<List<Integer>> solutions = new ArrayList<>();
+        xcc.start(s -> solutions.add(new ArrayList<>(s)),
+                Collections.emptyList(), () -> false);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            // Each slice is submitted after the previous one has finished.
+            while (executor.submit(() -> xcc.step(7)).get()) {
+                // Keep going.
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(120, solutions.size());
+        assertEquals(searchAll(xcc), solutions);
+    }
+
+    @Test
+    public void givenDeepProblem_shouldNotOverflowStack() {
+        // Every option covers one item, so the search tree is as deep as
+        // there are items.
+        final int depth = 20_000;
+        final CompiledProblem<Integer> problem = new CompiledProblem<>();
+        for (int i = 0; i < depth; i++) {
+            problem.addOption(i, new int[] { problem.addPrimaryItem(i) }, null);
+        }
+
+        final List<Integer> sizes = new ArrayList<>();
+        new IterativeXCC<>(problem).search(s -> sizes.add(s.size()));
+
+        assertEquals(List.of(depth), sizes);
+    }
+
+    @Test
+    public void cannotStartSearchWhileSearchIsInProgress() {
+        final IterativeXCC<Integer> xcc = createSolver();
+        xcc.start(s -> {}, Collections.emptyList(), () -> false);
+        xcc.step(1);
+
+        try {
+            xcc.search(s -> {});
+            fail();
+        } catch (IllegalStateException ex) {
+            // Ok.
+        }
+
+        while (xcc.step(100)) {
+            // Keep going.
+        }
+        assertEquals(120, searchAll(xcc).size());
+    }
+
+    // =================================================================== //
+    // Pull based solutions.
+
+    @Test
+    public void givenStream_shouldFindSameSolutionsAsSearch() {
+        final IterativeXCC<Integer> xcc = createSolver();
+        assertEquals(searchAll(xcc), xcc.solutions().toList());
+        assertFalse(xcc.isDirty());
+    }
+
+    @Test
+    public void givenLimitedStream_shouldOnlySearchUntilLimit() {
+        final AtomicInteger seen = new AtomicInteger();
+        final IterativeXCC<Integer> xcc = createSolver();
+        final List<List<Integer>> first = xcc.solutions()
+                .peek(s -> seen.incrementAndGet())
+                .limit(3)
+                .toList();
+
+        assertEquals(searchAll(xcc).subList(0, 3), first);
+        assertEquals(3, seen.get());
+    }
+
+    @Test
+    public void givenIterator_shouldAdvanceOnDemand() {
+        final IterativeXCC<Integer> xcc = createSolver();
+        final Iterator<List<Integer>> it = xcc.solutions(List.of(0)).iterator();
+
+        // The rook in the corner leaves 4! solutions.
+        int count = 0;
+        while (it.hasNext()) {
+            assertEquals(Integer.valueOf(0), it.next().getFirst());
+            count++;
+        }
+        assertEquals(24, count);
+    }
+
+    @Test
+    public void givenSplitSpliterator_shouldFindEverySolutionOnce() {
+        final Spliterator<List<Integer>> spliterator = createSolver()
+                .solutions().spliterator();
+
+        // Take some solutions before splitting, so that the split happens
+        // below the root.
+        final List<List<Integer>> solutions = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            spliterator.tryAdvance(s -> solutions.add(sorted(s)));
+        }
+
+        final Spliterator<List<Integer>> split = spliterator.trySplit();
+        assertNotNull(split);
+        split.forEachRemaining(s -> solutions.add(sorted(s)));
+        spliterator.forEachRemaining(s -> solutions.add(sorted(s)));
+
+        assertEquals(120, solutions.size());
+        assertEquals(120, new HashSet<>(solutions).size());
+    }
+
+    @Test
+    public void givenParallelStream_shouldFindEverySolutionOnce() {
+        final Set<List<Integer>> solutions = createSolver().solutions()
+                .parallel()
+                .map(IterativeXCCTest::sorted)
+                .collect(Collectors.toSet());
+        assertEquals(120, solutions.size());
+    }
+
+    @Test
+    public void givenOtherXccs_shouldStreamSameSolutionsAsSearch() {
+        final List<Function<ItemProvider<Integer>, XCC<Integer>>> factories =
+                List.of(LinkedXCC::new, ReferenceXCC::new, ParallelXCC::new,
+                        DancingCellsXCC::new, BitsetXCC::new,
+                        ComponentXCC::new);
+        for (Function<ItemProvider<Integer>, XCC<Integer>> factory : factories) {
+            final XCC<Integer> xcc = factory.apply(new RookExample());
+            for (int square = 0; square < SIZE * SIZE; square++) {
+                xcc.addOption(square);
+            }
+
+            final Set<List<Integer>> expected = searchAll(xcc).stream()
+                    .map(IterativeXCCTest::sorted)
+                    .collect(Collectors.toSet());
+            assertEquals(120, expected.size());
+            assertEquals(expected, xcc.solutions().parallel()
+                    .map(IterativeXCCTest::sorted)
+                    .collect(Collectors.toSet()));
+            assertEquals(24, xcc.solutions(List.of(0)).count());
+            assertFalse(xcc.isDirty());
+        }
+    }
+
+    @Test
+    public void givenLinkedXcc_shouldStreamSolutionsInSearchOrder() {
+        final LinkedXCC<Integer> xcc = new LinkedXCC<>(new RookExample());
+        for (int square = 0; square < SIZE * SIZE; square++) {
+            xcc.addOption(square);
+        }
+        assertEquals(searchAll(xcc), xcc.solutions().toList());
+    }
+
+    @Test
+    public void givenOffHeapXcc_shouldStreamSolutionsAndRestoreMatrixOnClose() {
+        try (OffHeapXCC<Integer> xcc = new OffHeapXCC<>(new RookExample())) {
+            for (int square = 0; square < SIZE * SIZE; square++) {
+                xcc.addOption(square);
+            }
+
+            final List<List<Integer>> all = searchAll(xcc);
+            assertEquals(all, xcc.solutions().toList());
+
+            // An abandoned stream restores the matrix when it is closed.
+            try (Stream<List<Integer>> stream = xcc.solutions()) {
+                assertEquals(all.subList(0, 3), stream.limit(3).toList());
+                try {
+                    xcc.search(s -> {});
+                    fail();
+                } catch (IllegalStateException ex) {
+                    // Ok.
+                }
+            }
+            assertEquals(all, searchAll(xcc));
+        }
+    }
+
+    private static List<Integer> sorted(final List<Integer> solution) {
+        return solution.stream().sorted().toList();
+    }
+
+    // =================================================================== //
+
+    @Test(expected = IllegalStateException.class)
+    public void cannotStepWithoutSearch() {
+        createSolver().step(1);
+    }
+
+    @Test
+    public void cannotModifyMatrixAfterInitialization() {
+        final IterativeXCC<Integer> xcc = createSolver();
+        xcc.search(s -> {});
+
+        try {
+            xcc.addOption(0);
+            fail();
+        } catch (IllegalStateException ex) {
+            // Ok.
+        }
+    }
+}
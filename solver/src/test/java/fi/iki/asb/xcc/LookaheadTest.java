@@ -0,0 +1,101 @@
+package fi.iki.asb.xcc;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the lookahead of {@link LinkedXCC}.
+ */
+public class LookaheadTest {
+
+    private static LinkedXCC<List<Object>> solver(
+            final boolean lookahead,
+            final boolean buckets) {
+        final LinkedXCC<List<Object>> xcc = new LinkedXCC<>(
+                RandomProblems.PROVIDER);
+        xcc.setLookahead(lookahead);
+        xcc.setItemBuckets(buckets);
+        return xcc;
+    }
+
+    @Test
+    public void givenRandomProblems_shouldFindSameSolutions() {
+        final Random random = new Random(5);
+        long saved = 0;
+        int solutionCount = 0;
+        for (int round = 0; round < 200; round++) {
+            final List<List<Object>> options
+                    = RandomProblems.options(random, 30, 8);
+            final List<String> expected = RandomProblems.solve(
+                    solver(false, false), options);
+
+            final LinkedXCC<List<Object>> xcc = solver(true, false);
+            assertEquals(expected, RandomProblems.solve(xcc, options));
+            saved += xcc.lookaheadCounters().nodesSaved();
+
+            assertEquals(expected, RandomProblems.solve(
+                    solver(true, true), options));
+
+            final LinkedXCC<List<Object>> counter = solver(true, false);
+            options.forEach(counter::addOption);
+            assertEquals(expected.size(), counter.countSolutions());
+
+            solutionCount += expected.size();
+        }
+
+        assertTrue(solutionCount > 100);
+        assertTrue(saved > 0);
+    }
+
+    @Test
+    public void givenForcedOptions_shouldSaveNodes() {
+        // Item 3 forces option [2, 3], after which [0, 1] is the only
+        // option of item 0.
+        final List<List<Object>> options = List.of(
+                List.of(0, 1), List.of(0, 2), List.of(2, 3), List.of(1, 4),
+                List.of(4));
+
+        final LinkedXCC<List<Object>> xcc = solver(true, false);
+        assertEquals(List.of("[[0, 1], [2, 3], [4]]"),
+                RandomProblems.solve(xcc, options));
+        assertEquals(new LinkedXCC.LookaheadCounters(3, 0),
+                xcc.lookaheadCounters());
+    }
+
+    @Test
+    public void givenDeadEnd_shouldNotDescend() {
+        // Choosing [0, 1] leaves item 2 without options.
+        final List<List<Object>> options = List.of(
+                List.of(0, 1), List.of(0), List.of(1, 2), List.of(3),
+                List.of(3, 4), List.of(4));
+
+        final int[] nodes = new int[2];
+        for (int k = 0; k < 2; k++) {
+            final LinkedXCC<List<Object>> xcc = solver(k == 1, false);
+            final int index = k;
+            xcc.setTrace(new XCCTrace() {
+                @Override
+                public void onSearchStarted() { }
+
+                @Override
+                public void onRecursionEntered(int itemCount) { }
+
+                @Override
+                public void onItemSelected() {
+                    nodes[index]++;
+                }
+
+                @Override
+                public void onRecursionEnded() { }
+            });
+            assertEquals(2, RandomProblems.solve(xcc, options).size());
+        }
+
+        assertTrue(nodes[1] < nodes[0]);
+    }
+}
@@ -0,0 +1,73 @@
+package fi.iki.asb.xcc;
+
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for counting the solutions with a memo cache.
+ */
+public class MemoizedCounterTest {
+
+    @Test
+    public void givenDominoes_shouldReuseSubproblemCounts() {
+        final MemoizedCounter<String> counter =
+                new MemoizedCounter<>(DominoStrip.problem(100));
+
+        // F(101) tilings.
+        assertEquals(new BigInteger("573147844013817084101"), counter.count());
+
+        final MemoizedCounter.CacheStatistics statistics =
+                counter.cacheStatistics();
+        assertTrue(statistics.hits() > 0);
+        assertTrue(statistics.hitRate() > 0.3);
+        assertEquals(0, statistics.evictions());
+    }
+
+    @Test
+    public void givenSmallMemoryLimit_shouldEvictAndStillCountCorrectly() {
+        final MemoizedCounter<String> counter =
+                new MemoizedCounter<>(DominoStrip.problem(24));
+        counter.setMemoryLimit(2000);
+        counter.setVerifyKeys(true);
+
+        assertEquals(BigInteger.valueOf(75025), counter.count());
+
+        final MemoizedCounter.CacheStatistics statistics =
+                counter.cacheStatistics();
+        assertTrue(statistics.evictions() > 0);
+        assertTrue(statistics.bytes() <= 2000);
+        assertEquals(0, statistics.collisions());
+    }
+
+    @Test
+    public void givenRandomColoredProblems_shouldCountSameAsReferenceXcc() {
+        final Random random = new Random(7);
+        for (int round = 0; round < 100; round++) {
+            final CompiledProblem<List<Object>> problem
+                    = RandomProblems.problem(random, 25, 8);
+
+            final MemoizedCounter<List<Object>> counter =
+                    new MemoizedCounter<>(problem);
+            counter.setMemoInterval(1 + round % 2);
+            counter.setVerifyKeys(round % 3 == 0);
+            assertEquals(new ReferenceXCC<>(problem).countSolutionsExact(),
+                    counter.count());
+        }
+    }
+
+    @Test
+    public void givenPreSelectedOption_shouldCountSolutionsThatContainIt() {
+        final MemoizedCounter<String> counter =
+                new MemoizedCounter<>(DominoStrip.problem(6));
+
+        // Two columns on the left and three on the right.
+        assertEquals(BigInteger.valueOf(2 * 3),
+                counter.count(List.of("v2")));
+    }
+}
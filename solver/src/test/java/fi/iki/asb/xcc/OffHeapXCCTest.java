@@ -0,0 +1,133 @@
+package fi.iki.asb.xcc;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests unique to off-heap XCC.
+ */
+public class OffHeapXCCTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void givenRandomColoredProblems_shouldFindSameSolutionsAsReferenceXcc() {
+        final Random random = new Random(42);
+        int solutionCount = 0;
+        for (int round = 0; round < 200; round++) {
+            final List<List<Object>> options
+                    = RandomProblems.options(random, 20, 6);
+
+            final List<String> expected = RandomProblems.solve(
+                    new ReferenceXCC<>(RandomProblems.PROVIDER), options);
+            try (OffHeapXCC<List<Object>> xcc
+                         = new OffHeapXCC<>(RandomProblems.PROVIDER)) {
+                assertEquals(expected, RandomProblems.solve(xcc, options));
+            }
+            solutionCount += expected.size();
+        }
+
+        // Make sure the problems are not trivially unsolvable.
+        assertTrue(solutionCount > 100);
+    }
+
+    @Test
+    public void givenFileBackedMatrix_shouldFindSolution() throws Exception {
+        final Path file = folder.getRoot().toPath().resolve("matrix");
+        final List<String> solutions = new ArrayList<>();
+        try (OffHeapXCC<String> xcc = new OffHeapXCC<>(
+                WikipediaExample.letters(), file)) {
+            for (String option : List.of("CEF", "ADG", "BCF", "AD", "BG", "DEG")) {
+                xcc.addOption(option);
+            }
+            xcc.search(s -> solutions.add(new ArrayList<>(s).toString()));
+
+            assertTrue(Files.size(file) > 0);
+        }
+
+        assertEquals(List.of("[CEF, BG, AD]"), solutions);
+    }
+
+    @Test
+    public void cannotModifyMatrixAfterInitialization() {
+        try (OffHeapXCC<Object> xcc = new OffHeapXCC<>(Collections::singletonList)) {
+            xcc.addOption("A");
+            xcc.search(s -> {});
+
+            try {
+                xcc.addOption("B");
+                fail();
+            } catch (IllegalStateException ex) {
+                // Ok.
+            }
+        }
+    }
+
+    @Test
+    public void cannotSearchAfterClose() {
+        OffHeapXCC<Object> xcc = new OffHeapXCC<>(Collections::singletonList);
+        xcc.addOption("A");
+        xcc.close();
+
+        try {
+            xcc.search(s -> {});
+            fail();
+        } catch (IllegalStateException ex) {
+            // Ok.
+        }
+    }
+
+    @Test
+    public void givenDirtyMatrix_shouldReleaseMemoryOnClose() {
+        final OffHeapXCC<Object> xcc = new OffHeapXCC<>(Collections::singletonList);
+        xcc.addOption("A");
+        try {
+            xcc.search(s -> {
+                throw new RuntimeException();
+            });
+            fail();
+        } catch (RuntimeException ex) {
+            // Ok.
+        }
+        assertTrue(xcc.isDirty());
+
+        xcc.close();
+        try {
+            xcc.search(s -> {});
+            fail();
+        } catch (IllegalStateException ex) {
+            assertEquals("matrix is closed", ex.getMessage());
+        }
+    }
+
+    @Test
+    public void givenManyOptions_shouldGrowStagingArea() {
+        // 500 options of 10 items each, which is several times the initial
+        // capacity of the staging area.
+        try (OffHeapXCC<Integer> xcc = new OffHeapXCC<>(o -> IntStream
+                .range(10 * o, 10 * o + 10).<Object>mapToObj(i -> i).toList())) {
+            for (int o = 0; o < 500; o++) {
+                xcc.addOption(o);
+            }
+
+            final List<List<Integer>> solutions = new ArrayList<>();
+            xcc.search(s -> solutions.add(new ArrayList<>(s)));
+            assertEquals(1, solutions.size());
+            assertEquals(500, solutions.get(0).size());
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package fi.iki.asb.xcc;
+
+import org.junit.Test;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests unique to parallel XCC. The order in which the solutions are
+ * found is not deterministic.
+ */
+public class ParallelXCCTest {
+
+    private static final int SIZE = 6;
+
+    /**
+     * Item provider for placing a rook on each row and column of a chess
+     * board. There are <code>SIZE!</code> solutions.
+     */
+    private static class RookExample implements ItemProvider<Integer> {
+        @Override
+        public Collection<Object> from(Integer square) {
+            return asList("r" + (square / SIZE), "c" + (square % SIZE));
+        }
+    }
+
+    private XCC<Integer> createSolver(final ForkJoinPool pool) {
+        final XCC<Integer> xcc = new ParallelXCC<>(new RookExample(), pool);
+        for (int square = 0; square < SIZE * SIZE; square++) {
+            xcc.addOption(square);
+        }
+        return xcc;
+    }
+
+    @Test
+    public void givenManyWorkers_shouldFindEverySolutionOnce() {
+        final ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            final XCC<Integer> xcc = createSolver(pool);
+            final Set<List<Integer>> solutions = ConcurrentHashMap.newKeySet();
+            final AtomicInteger solutionCount = new AtomicInteger();
+
+            xcc.search(s -> {
+                solutions.add(s.stream().sorted().toList());
+                solutionCount.incrementAndGet();
+            });
+
+            assertEquals(720, solutionCount.get());
+            assertEquals(720, solutions.size());
+            assertFalse(xcc.isDirty());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void shouldStopEveryWorkerWhenEmergencyBrakeIsPulled() {
+        final ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            final XCC<Integer> xcc = createSolver(pool);
+            final AtomicBoolean emergencyBrake = new AtomicBoolean(false);
+            final AtomicInteger solutionCount = new AtomicInteger();
+
+            xcc.search(s -> {
+                solutionCount.incrementAndGet();
+                emergencyBrake.set(true);
+            }, emergencyBrake::get);
+
+            assertEquals(1, solutionCount.get());
+            assertFalse(xcc.isDirty());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void givenFailingSolutionConsumer_shouldLeaveMatrixDirty() {
+        final XCC<Integer> xcc = createSolver(ForkJoinPool.commonPool());
+        try {
+            xcc.search(s -> {
+                throw new IllegalArgumentException();
+            });
+            fail();
+        } catch (IllegalArgumentException ex) {
+            // Ok.
+        }
+
+        assertTrue(xcc.isDirty());
+    }
+
+    @Test
+    public void cannotModifyMatrixAfterInitialization() {
+        final XCC<Integer> xcc = createSolver(ForkJoinPool.commonPool());
+        xcc.search(s -> {});
+
+        try {
+            xcc.addOption(0);
+            fail();
+        } catch (IllegalStateException ex) {
+            // Ok.
+        }
+    }
+}
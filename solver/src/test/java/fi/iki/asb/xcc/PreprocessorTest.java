@@ -0,0 +1,141 @@
+package fi.iki.asb.xcc;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for reducing a problem before the search.
+ */
+public class PreprocessorTest {
+
+    private static <O> List<List<O>> solve(final CompiledProblem<O> problem) {
+        final List<List<O>> solutions = new ArrayList<>();
+        new ReferenceXCC<>(problem).search(s -> solutions.add(List.copyOf(s)));
+        return solutions;
+    }
+
+    private static <O> List<List<O>> solveReduced(
+            final Preprocessor.Reduction<O> reduction) {
+        final List<List<O>> solutions = new ArrayList<>();
+        for (List<O> solution : solve(reduction.problem())) {
+            solutions.addAll(reduction.expand(solution));
+        }
+        return solutions;
+    }
+
+    @Test
+    public void givenBlockedOption_shouldRemoveItAndForceTheRest() {
+        // Choosing AC would leave B without options, so AB and C are forced.
+        final Preprocessor.Reduction<String> reduction = new Preprocessor<>(
+                WikipediaExample.letterProblem("AB", "C", "AC"))
+                .reduce();
+
+        assertTrue(reduction.isSolvable());
+        assertEquals(List.of("AB", "C"), reduction.forcedOptions());
+        assertEquals(0, reduction.problem().optionCount());
+        assertEquals(0, reduction.problem().itemCount());
+        assertEquals(List.of(List.of("AB", "C")), solveReduced(reduction));
+    }
+
+    @Test
+    public void givenDuplicateOptions_shouldExpandSolutions() {
+        final String first = new String("AB");
+        final String second = new String("AB");
+        final Preprocessor.Reduction<String> reduction = new Preprocessor<>(
+                WikipediaExample.letterProblem(first, second, "CD", "C", "D"))
+                .reduce();
+
+        assertEquals(List.of(first), reduction.forcedOptions());
+        assertEquals(3, reduction.problem().optionCount());
+
+        final List<List<String>> solutions = solveReduced(reduction);
+        assertEquals(4, solutions.size());
+        assertEquals(1, solutions.stream()
+                .filter(s -> s.size() == 2 && s.get(1) == second)
+                .count());
+    }
+
+    @Test
+    public void givenItemsCoveredTogether_shouldMergeThem() {
+        final Preprocessor.Reduction<String> reduction = new Preprocessor<>(
+                WikipediaExample.letterProblem("ABC", "ABD", "C", "D", "CD"))
+                .reduce();
+
+        assertEquals(1, reduction.removedItems());
+        assertEquals(3, reduction.problem().primaryItemCount());
+        assertEquals(2, solveReduced(reduction).size());
+    }
+
+    @Test
+    public void givenUnsolvableProblem_shouldReturnProblemWithoutSolutions() {
+        final Preprocessor.Reduction<String> reduction = new Preprocessor<>(
+                WikipediaExample.letterProblem("AB", "BC"))
+                .reduce();
+
+        assertFalse(reduction.isSolvable());
+        assertEquals(0, solve(reduction.problem()).size());
+    }
+
+    @Test
+    public void givenPreSelectedOption_shouldForceIt() {
+        final Preprocessor.Reduction<String> reduction = new Preprocessor<>(
+                WikipediaExample.letterProblem("AB", "CD", "AC", "BD"))
+                .reduce(List.of("AC"));
+
+        assertEquals(List.of(List.of("AC", "BD")), solveReduced(reduction));
+    }
+
+    @Test
+    public void givenRandomProblems_shouldKeepSolutions() {
+        final Random random = new Random(11);
+        int solutionCount = 0;
+        int removedCount = 0;
+        for (int round = 0; round < 200; round++) {
+            final List<List<Object>> options
+                    = RandomProblems.options(random, 20, 7);
+            final CompiledProblem<List<Object>> problem
+                    = new CompiledProblem<>(RandomProblems.PROVIDER);
+            final Map<List<Object>, Integer> ids = new IdentityHashMap<>();
+            for (List<Object> option : options) {
+                ids.put(option, problem.addOption(option));
+            }
+
+            final Preprocessor.Reduction<List<Object>> reduction
+                    = new Preprocessor<>(problem).reduce();
+            final List<String> expected = canonical(solve(problem), ids);
+            assertEquals(expected, canonical(solveReduced(reduction), ids));
+            if (!reduction.isSolvable()) {
+                assertTrue(expected.isEmpty());
+            }
+
+            solutionCount += expected.size();
+            removedCount += reduction.removedOptions();
+        }
+
+        // Make sure the problems are not trivial.
+        assertTrue(solutionCount > 100);
+        assertTrue(removedCount > 1000);
+    }
+
+    /**
+     * Identify the options by identity, since equal options are different
+     * options, and sort the solutions.
+     */
+    private static List<String> canonical(
+            final List<List<List<Object>>> solutions,
+            final Map<List<Object>, Integer> ids) {
+        return solutions.stream()
+                .map(s -> s.stream().map(ids::get).sorted().toList().toString())
+                .sorted()
+                .toList();
+    }
+}
@@ -0,0 +1,250 @@
+package fi.iki.asb.xcc;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ProblemSnapshotTest {
+
+    private static final OptionCodec<String> CODEC = new OptionCodec<>() {
+        @Override
+        public void write(String option, DataOutput out) throws IOException {
+            out.writeUTF(option);
+        }
+
+        @Override
+        public String read(DataInput in) throws IOException {
+            return in.readUTF();
+        }
+    };
+
+    private record Secondary(String name, Object color) implements SecondaryItem {
+        @Override
+        public Object getColor() {
+            return color;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Secondary s && name.equals(s.name);
+        }
+
+        @Override
+        public int hashCode() {
+            return name.hashCode();
+        }
+    }
+
+    private static Collection<Object> items(final String option) {
+        return switch (option) {
+            case "A" -> asList("x", new Secondary("s", "red"));
+            case "B" -> asList("y", new Secondary("s", "blue"));
+            case "C" -> asList("x", "y", new Secondary("s", "red"));
+            default -> asList("z");
+        };
+    }
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void shouldRestoreSavedProblem() throws IOException {
+        final CompiledProblem<String> problem = new CompiledProblem<>(
+                ProblemSnapshotTest::items);
+        problem.addOption("A");
+        problem.addOption("B");
+        problem.addOption("C");
+
+        final Path file = folder.getRoot().toPath().resolve("problem");
+        ProblemSnapshot.save(problem, file, CODEC);
+        final CompiledProblem<String> loaded = ProblemSnapshot.load(
+                file, ProblemSnapshotTest::items, CODEC);
+
+        assertEquals(problem.itemCount(), loaded.itemCount());
+        assertEquals(problem.secondaryItemCount(), loaded.secondaryItemCount());
+        assertEquals(problem.colorCount(), loaded.colorCount());
+        assertEquals(problem.optionCount(), loaded.optionCount());
+        assertEquals(problem.nodeCount(), loaded.nodeCount());
+        for (int o = 0; o < problem.optionCount(); o++) {
+            assertEquals(problem.option(o), loaded.option(o));
+            assertEquals(problem.optionEnd(o), loaded.optionEnd(o));
+        }
+        for (int n = 0; n < problem.nodeCount(); n++) {
+            assertEquals(problem.nodeItem(n), loaded.nodeItem(n));
+            assertEquals(problem.nodeColor(n), loaded.nodeColor(n));
+        }
+
+        // Items and colors are restored through the item provider.
+        for (int i = 0; i < problem.itemCount(); i++) {
+            assertEquals(problem.item(i), loaded.item(i));
+        }
+        assertEquals("red", loaded.color(1));
+        assertEquals("blue", loaded.color(2));
+        assertArrayEquals(new int[] { 2, 1 }, loaded.itemsOf("B"));
+
+        // More options can be added to the loaded problem.
+        assertEquals(3, loaded.addOption("D"));
+        assertEquals(3, loaded.itemId("z"));
+    }
+
+    @Test
+    public void givenLoadedProblem_shouldFindSolutionsWithPreSelectedOptions() throws IOException {
+        final CompiledProblem<String> problem = new CompiledProblem<>(
+                ProblemSnapshotTest::items);
+        problem.addOption("A");
+        problem.addOption("B");
+        problem.addOption("C");
+        problem.addOption("D");
+
+        final Path file = folder.getRoot().toPath().resolve("problem");
+        ProblemSnapshot.save(problem, file, CODEC);
+
+        final List<List<String>> solutions = new ArrayList<>();
+        new ReferenceXCC<>(ProblemSnapshot.load(file, ProblemSnapshotTest::items, CODEC))
+                .search(s -> solutions.add(new ArrayList<>(s)), List.of("D"), () -> false);
+
+        assertEquals(List.of(List.of("D", "C")), solutions);
+    }
+
+    @Test
+    public void givenUnknownFile_shouldThrowException() throws IOException {
+        final Path file = folder.getRoot().toPath().resolve("problem");
+        Files.writeString(file, "not a snapshot");
+
+        try {
+            ProblemSnapshot.load(file, ProblemSnapshotTest::items, CODEC);
+            fail();
+        } catch (IOException ex) {
+            assertTrue(ex.getMessage().startsWith("not a problem snapshot"));
+        }
+    }
+
+    @Test
+    public void givenTruncatedFile_shouldThrowException() throws IOException {
+        final CompiledProblem<String> problem = new CompiledProblem<>(
+                ProblemSnapshotTest::items);
+        problem.addOption("A");
+        problem.addOption("B");
+
+        final Path file = folder.getRoot().toPath().resolve("problem");
+        ProblemSnapshot.save(problem, file, CODEC);
+        final byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, 40));
+
+        try {
+            ProblemSnapshot.load(file, ProblemSnapshotTest::items, CODEC);
+            fail();
+        } catch (IOException ex) {
+            // Ok.
+        }
+    }
+
+    @Test
+    public void givenTooLargeCounts_shouldThrowExceptionBeforeAllocating()
+            throws IOException {
+        final Path file = savedProblem();
+        final ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(file));
+
+        // The node count is the last int of the header.
+        bytes.putInt(20, Integer.MAX_VALUE);
+        Files.write(file, bytes.array());
+        assertLoadRejected(file, "truncated problem snapshot");
+
+        bytes.putInt(20, -1);
+        Files.write(file, bytes.array());
+        assertLoadRejected(file, "corrupt problem snapshot");
+    }
+
+    @Test
+    public void givenItemIdOutOfRange_shouldThrowException() throws IOException {
+        final Path file = savedProblem();
+        final ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(file));
+
+        // The node items follow the header, the secondary flags, the item
+        // and color origins and the option boundaries.
+        final int itemCount = bytes.getInt(8);
+        final int colorCount = bytes.getInt(12);
+        final int optionCount = bytes.getInt(16);
+        final int nodeItems = 24 + 4 * (2 * itemCount + colorCount
+                + optionCount + 1);
+        bytes.putInt(nodeItems, itemCount);
+        Files.write(file, bytes.array());
+        assertLoadRejected(file, "corrupt problem snapshot");
+    }
+
+    private Path savedProblem() throws IOException {
+        final CompiledProblem<String> problem = new CompiledProblem<>(
+                ProblemSnapshotTest::items);
+        problem.addOption("A");
+        problem.addOption("B");
+
+        final Path file = folder.getRoot().toPath().resolve("problem");
+        ProblemSnapshot.save(problem, file, CODEC);
+        return file;
+    }
+
+    private static void assertLoadRejected(
+            final Path file,
+            final String message) {
+        try {
+            ProblemSnapshot.load(file, ProblemSnapshotTest::items, CODEC);
+            fail();
+        } catch (IOException ex) {
+            assertTrue(ex.getMessage(), ex.getMessage().startsWith(message));
+        }
+    }
+
+    @Test
+    public void givenProblemThatCannotBeRestored_shouldRejectSave() throws IOException {
+        final Path file = folder.getRoot().toPath().resolve("problem");
+
+        // Built with item ids.
+        final CompiledProblem<String> lowLevel = new CompiledProblem<>(
+                ProblemSnapshotTest::items);
+        lowLevel.addOption("A");
+        lowLevel.addOption("B", new int[] { lowLevel.addItem("y") }, null);
+        assertSaveRejected(lowLevel, file);
+
+        // A reduction by the preprocessor has no item provider.
+        final CompiledProblem<String> problem = new CompiledProblem<>(
+                ProblemSnapshotTest::items);
+        problem.addOption("A");
+        problem.addOption("D");
+        assertSaveRejected(new Preprocessor<>(problem).reduce().problem(), file);
+
+        // The items are not in a defined order.
+        final CompiledProblem<String> unordered = new CompiledProblem<>(
+                o -> new HashSet<>(items(o)));
+        unordered.addOption("A");
+        assertSaveRejected(unordered, file);
+    }
+
+    private static void assertSaveRejected(
+            final CompiledProblem<String> problem,
+            final Path file) throws IOException {
+        try {
+            ProblemSnapshot.save(problem, file, CODEC);
+            fail();
+        } catch (IllegalArgumentException ex) {
+            // Ok.
+        }
+    }
+}
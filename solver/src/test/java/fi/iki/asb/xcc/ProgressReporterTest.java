@@ -1,10 +1,13 @@
 package fi.iki.asb.xcc;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import org.junit.Test;
 
+import java.time.Duration;
+
 public class ProgressReporterTest {
 
     private static final double DELTA = 0.00001;
@@ -50,4 +53,38 @@ public class ProgressReporterTest {
         ProgressReporter pr = ProgressReporter.systemOut(5);
         assertTrue(Double.isNaN(pr.getProgress()));
     }
+
+    @Test
+    public void givenEstimate_shouldCalculateEtaFromItemsPerSecond() {
+        final long[] now = { 0 };
+        ProgressReporter pr = new ProgressReporter((i, p) -> {}, 1, () -> now[0]);
+        pr.setEstimate(new SearchEstimator.Estimate(10, 100, 5, 1, 0));
+
+        pr.onSearchStarted();
+        assertNull(pr.getEta());
+
+        pr.onRecursionEntered(10);
+        for (int k = 0; k < 25; k++) {
+            pr.onItemSelected();
+        }
+        now[0] = Duration.ofSeconds(5).toNanos();
+
+        assertEquals(5.0, pr.getItemsPerSecond(), DELTA);
+        assertEquals(Duration.ofSeconds(15), pr.getEta());
+    }
+
+    @Test
+    public void givenNoEstimate_shouldCalculateEtaFromProgress() {
+        final long[] now = { 0 };
+        ProgressReporter pr = new ProgressReporter((i, p) -> {}, 1, () -> now[0]);
+
+        pr.onSearchStarted();
+        pr.onRecursionEntered(2);
+        pr.onItemSelected();
+        pr.onItemSelected();
+        now[0] = Duration.ofSeconds(3).toNanos();
+
+        // Progress is 0.75, so one third of the elapsed time remains.
+        assertEquals(Duration.ofSeconds(1), pr.getEta());
+    }
 }
@@ -0,0 +1,106 @@
+package fi.iki.asb.xcc;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Small random problems with colored secondary items, shared by the tests
+ * that compare a solver to {@link ReferenceXCC}. Each option is the list of
+ * its items. The primary items are integers and the three secondary items
+ * are {@link Colored} with two colors or no color.
+ */
+final class RandomProblems {
+
+    /**
+     * A secondary item. Color zero means that the item is not colored.
+     */
+    record Colored(int item, int color) implements SecondaryItem {
+        @Override
+        public Object getColor() {
+            return (color == 0) ? null : color;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Colored c && item == c.item;
+        }
+
+        @Override
+        public int hashCode() {
+            return item;
+        }
+    }
+
+    /**
+     * Item provider for options that are lists of their items.
+     */
+    static final ItemProvider<List<Object>> PROVIDER
+            = o -> (Collection<Object>) o;
+
+    private RandomProblems() {
+    }
+
+    /**
+     * Create random options. Each primary item is in an option with
+     * probability 1/4 and each secondary item with probability 1/3. Empty
+     * options are left out, so there can be fewer options than requested.
+     */
+    static List<List<Object>> options(
+            final Random random,
+            final int optionCount,
+            final int primaryCount) {
+        final List<List<Object>> options = new ArrayList<>();
+        for (int o = 0; o < optionCount; o++) {
+            final List<Object> items = new ArrayList<>();
+            for (int i = 0; i < primaryCount; i++) {
+                if (random.nextInt(4) == 0) {
+                    items.add(i);
+                }
+            }
+            for (int i = 0; i < 3; i++) {
+                if (random.nextInt(3) == 0) {
+                    items.add(new Colored(i, random.nextInt(3)));
+                }
+            }
+            if (!items.isEmpty()) {
+                options.add(items);
+            }
+        }
+        return options;
+    }
+
+    /**
+     * Create a problem of random options.
+     */
+    static CompiledProblem<List<Object>> problem(
+            final Random random,
+            final int optionCount,
+            final int primaryCount) {
+        final CompiledProblem<List<Object>> problem
+                = new CompiledProblem<>(PROVIDER);
+        options(random, optionCount, primaryCount).forEach(problem::addOption);
+        return problem;
+    }
+
+    /**
+     * Add the options to the solver and return its solutions in a
+     * canonical order, so that solvers that find the solutions in a
+     * different order can be compared.
+     */
+    static List<String> solve(
+            final XCC<List<Object>> xcc,
+            final List<List<Object>> options) {
+        options.forEach(xcc::addOption);
+
+        final List<String> solutions = new ArrayList<>();
+        xcc.search(s -> solutions.add(s.stream()
+                .map(Object::toString)
+                .sorted()
+                .toList()
+                .toString()));
+        solutions.sort(null);
+        return solutions;
+    }
+}
@@ -0,0 +1,116 @@
+package fi.iki.asb.xcc;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the randomized search of {@link LinkedXCC}.
+ */
+public class RandomizedSearchTest {
+
+    private static final int SIZE = 10;
+
+    private record Diagonal(String name) implements SecondaryItem { }
+
+    /**
+     * Item provider for placing a queen on each row and column of a chess
+     * board. The option is the index of the square.
+     */
+    private static final ItemProvider<Integer> QUEENS = square -> {
+        final int row = square / SIZE;
+        final int column = square % SIZE;
+        return List.of("r" + row, "c" + column,
+                new Diagonal("a" + (row + column)),
+                new Diagonal("b" + (row - column)));
+    };
+
+    private static LinkedXCC<Integer> createSolver(final Long seed) {
+        final LinkedXCC<Integer> xcc = new LinkedXCC<>(QUEENS);
+        for (int square = 0; square < SIZE * SIZE; square++) {
+            xcc.addOption(square);
+        }
+        xcc.setRandomSeed(seed);
+        return xcc;
+    }
+
+    private static List<Integer> firstSolution(final LinkedXCC<Integer> xcc) {
+        final List<Integer> first = new ArrayList<>();
+        final AtomicBoolean found = new AtomicBoolean();
+        xcc.search(s -> {
+            first.addAll(s);
+            found.set(true);
+        }, found::get);
+        return first;
+    }
+
+    @Test
+    public void givenSameSeed_shouldFindSameSolutions() {
+        final List<Integer> first = firstSolution(createSolver(42L));
+        assertEquals(first, firstSolution(createSolver(42L)));
+
+        // Repeated searches of the same instance.
+        final LinkedXCC<Integer> xcc = createSolver(42L);
+        firstSolution(xcc);
+        assertEquals(first, firstSolution(xcc));
+    }
+
+    @Test
+    public void givenDifferentSeeds_shouldFindDifferentFirstSolutions() {
+        final Set<List<Integer>> firsts = new HashSet<>();
+        for (long seed = 0; seed < 10; seed++) {
+            firsts.add(firstSolution(createSolver(seed)));
+        }
+        assertTrue(firsts.size() > 1);
+    }
+
+    @Test
+    public void givenSeed_shouldFindEverySolutionOnceAndRestoreOrder() {
+        final LinkedXCC<Integer> xcc = createSolver(7L);
+        final Set<Set<Integer>> solutions = new HashSet<>();
+        xcc.search(s -> assertTrue(solutions.add(new HashSet<>(s))));
+        assertEquals(724, solutions.size());
+
+        // The original order is used again without a seed.
+        xcc.setRandomSeed(null);
+        assertEquals(firstSolution(createSolver(null)), firstSolution(xcc));
+    }
+
+    @Test
+    public void givenRestartPolicy_shouldRestartAndFindValidSolution() {
+        final LinkedXCC<Integer> xcc = createSolver(3L);
+        xcc.setRestartPolicy(RestartPolicy.luby(4));
+
+        final List<Integer> first = firstSolution(xcc);
+        assertEquals(SIZE, first.size());
+        assertEquals(SIZE, first.stream().map(q -> q % SIZE).distinct().count());
+        assertTrue(xcc.restarts() > 0);
+
+        // Restarts are reproducible too.
+        final LinkedXCC<Integer> again = createSolver(3L);
+        again.setRestartPolicy(RestartPolicy.luby(4));
+        assertEquals(first, firstSolution(again));
+        assertEquals(xcc.restarts(), again.restarts());
+    }
+
+    @Test
+    public void restartPoliciesShouldGiveExpectedLimits() {
+        final RestartPolicy luby = RestartPolicy.luby(10);
+        final long[] expected = { 10, 10, 20, 10, 10, 20, 40, 10, 10, 20 };
+        for (int run = 0; run < expected.length; run++) {
+            assertEquals(expected[run], luby.nodeLimit(run));
+        }
+
+        final RestartPolicy geometric = RestartPolicy.geometric(100, 1.5);
+        assertEquals(100, geometric.nodeLimit(0));
+        assertEquals(225, geometric.nodeLimit(2));
+        assertEquals(Long.MAX_VALUE, geometric.nodeLimit(1000));
+    }
+}
@@ -1,10 +1,13 @@
 package fi.iki.asb.xcc;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.fail;
 
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 
 /**
  * Tests unique to reference XCC.
@@ -24,4 +27,25 @@ public class ReferenceXCCTest {
             // Ok.
         }
     }
+
+    @Test
+    public void givenCompiledProblem_shouldFindSolutions() {
+        // The Wikipedia example of Algorithm X.
+        final CompiledProblem<String> problem = new CompiledProblem<>();
+        for (int i = 0; i < 7; i++) {
+            problem.addPrimaryItem(i);
+        }
+        problem.addOption("A", new int[] { 0, 3, 6 }, null);
+        problem.addOption("B", new int[] { 0, 3 }, null);
+        problem.addOption("C", new int[] { 3, 4, 6 }, null);
+        problem.addOption("D", new int[] { 2, 4, 5 }, null);
+        problem.addOption("E", new int[] { 1, 2, 5, 6 }, null);
+        problem.addOption("F", new int[] { 1, 6 }, null);
+
+        final List<String> solutions = new ArrayList<>();
+        new ReferenceXCC<>(problem).search(
+                s -> solutions.add(String.join(",", s)));
+
+        assertEquals(List.of("B,D,F"), solutions);
+    }
 }
@@ -0,0 +1,106 @@
+package fi.iki.asb.xcc;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for estimating the search with random probes.
+ */
+public class SearchEstimatorTest {
+
+    /**
+     * Counts the options tried by a search.
+     */
+    private static class NodeCounter implements XCCTrace {
+        long nodes = 0;
+
+        @Override
+        public void onSearchStarted() {
+        }
+
+        @Override
+        public void onRecursionEntered(int itemCount) {
+        }
+
+        @Override
+        public void onItemSelected() {
+            nodes++;
+        }
+
+        @Override
+        public void onRecursionEnded() {
+        }
+    }
+
+    @Test
+    public void givenRandomProblems_shouldEstimateWithinConfidenceInterval() {
+        final Random random = new Random(11);
+        int inside = 0;
+        for (int round = 0; round < 20; round++) {
+            final CompiledProblem<List<Object>> problem
+                    = RandomProblems.problem(random, 40, 10);
+
+            final NodeCounter counter = new NodeCounter();
+            final ReferenceXCC<List<Object>> xcc = new ReferenceXCC<>(problem);
+            xcc.setTrace(counter);
+            final long[] solutions = { 0 };
+            xcc.search(s -> solutions[0]++);
+
+            final SearchEstimator.Estimate estimate =
+                    new SearchEstimator<>(problem, round).estimate(5000);
+            assertEquals(5000, estimate.probes());
+
+            if (estimate.nodesLow() <= counter.nodes
+                    && counter.nodes <= estimate.nodesHigh()
+                    && estimate.solutionsLow() <= solutions[0]
+                    && solutions[0] <= estimate.solutionsHigh()) {
+                inside++;
+            }
+        }
+
+        // 95% intervals for two values should contain both of them in most
+        // of the rounds.
+        assertTrue("inside " + inside, inside >= 15);
+    }
+
+    @Test
+    public void givenOnlyOneBranch_shouldEstimateExactly() {
+        final CompiledProblem<String> problem =
+                WikipediaExample.letterProblem("AB", "CD", "AC", "BD");
+
+        // Item A has two options and both complete a solution, so every
+        // probe sees the same tree.
+        final SearchEstimator.Estimate estimate =
+                new SearchEstimator<>(problem, 1).estimate(10);
+        assertEquals(4.0, estimate.nodes(), 0.0);
+        assertEquals(0.0, estimate.nodesError(), 0.0);
+        assertEquals(2.0, estimate.solutions(), 0.0);
+    }
+
+    @Test
+    public void givenPreSelectedOption_shouldEstimateRemainingSearch() {
+        final CompiledProblem<String> problem =
+                WikipediaExample.letterProblem("AB", "CD", "AC", "BD");
+
+        final SearchEstimator.Estimate estimate =
+                new SearchEstimator<>(problem, 1).estimate(10, List.of("AB"));
+        assertEquals(1.0, estimate.nodes(), 0.0);
+        assertEquals(1.0, estimate.solutions(), 0.0);
+    }
+
+    @Test
+    public void givenNoProbes_shouldThrowException() {
+        try {
+            new SearchEstimator<>(new CompiledProblem<String>(), 1).estimate(0);
+            fail("Estimate should have been rejected");
+        } catch (IllegalArgumentException e) {
+            // Expected.
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package fi.iki.asb.xcc;
+
+import fi.iki.asb.xcc.SearchResult.StopReason;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for searching within limits.
+ */
+public class SearchLimitsTest {
+
+    /**
+     * Three items with three options each, so there are 27 solutions and
+     * 1 + 3 + 9 + 27 = 40 nodes in the search tree.
+     */
+    private static <X extends XCC<String>> X grid(final X xcc) {
+        for (String item : List.of("a", "b", "c")) {
+            for (int k = 0; k < 3; k++) {
+                xcc.addOption(item + k);
+            }
+        }
+        return xcc;
+    }
+
+    private static ReferenceXCC<String> reference() {
+        return grid(new ReferenceXCC<>(o -> List.of(o.substring(0, 1))));
+    }
+
+    @Test
+    public void givenNoLimits_shouldComplete() {
+        final List<List<String>> solutions = new ArrayList<>();
+        final SearchResult result = reference().search(
+                s -> solutions.add(List.copyOf(s)), SearchLimits.none());
+
+        assertEquals(new SearchResult(StopReason.COMPLETED, 40, 27), result);
+        assertTrue(result.isComplete());
+        assertEquals(27, solutions.size());
+    }
+
+    @Test
+    public void givenMaxSolutions_shouldStopAfterLastSolution() {
+        final List<List<String>> solutions = new ArrayList<>();
+        final SearchResult result = reference().search(
+                s -> solutions.add(List.copyOf(s)),
+                SearchLimits.none().withMaxSolutions(5));
+
+        assertEquals(StopReason.MAX_SOLUTIONS, result.stopReason());
+        assertEquals(5, result.solutions());
+        assertEquals(5, solutions.size());
+    }
+
+    @Test
+    public void givenMaxNodes_shouldVisitExactlyMaxNodes() {
+        final SearchResult result = reference().search(
+                s -> { }, SearchLimits.none().withMaxNodes(10));
+
+        assertEquals(StopReason.MAX_NODES, result.stopReason());
+        assertEquals(10, result.nodes());
+    }
+
+    @Test
+    public void givenPassedDeadline_shouldStopWithDeadline() {
+        final SearchResult result = reference().search(
+                s -> { }, SearchLimits.none()
+                        .withDeadline(Instant.now().minusSeconds(1))
+                        .withCheckInterval(1));
+
+        assertEquals(new SearchResult(StopReason.DEADLINE, 0, 0), result);
+    }
+
+    @Test
+    public void givenZeroCpuTime_shouldStopWithCpuTime() {
+        final SearchResult result = reference().search(
+                s -> { }, SearchLimits.none()
+                        .withCpuTime(Duration.ZERO)
+                        .withCheckInterval(1));
+
+        assertEquals(StopReason.CPU_TIME, result.stopReason());
+    }
+
+    @Test
+    public void givenInterruptedThread_shouldStopAndKeepInterruptStatus() {
+        Thread.currentThread().interrupt();
+        try {
+            final SearchResult result = reference().search(
+                    s -> { }, SearchLimits.none()
+                            .withInterruptible(true)
+                            .withCheckInterval(1));
+
+            assertEquals(StopReason.INTERRUPTED, result.stopReason());
+            assertTrue(Thread.currentThread().isInterrupted());
+        } finally {
+            Thread.interrupted();
+        }
+    }
+
+    @Test
+    public void givenSolverWithEmergencyBrake_shouldEnforceLimits() {
+        final XCC<String> xcc = grid(new DancingCellsXCC<>(
+                o -> List.of(o.substring(0, 1))));
+
+        assertEquals(new SearchResult(StopReason.COMPLETED, 40, 27),
+                xcc.search(s -> { }, SearchLimits.none()));
+        assertEquals(new SearchResult(StopReason.MAX_SOLUTIONS, 4, 1),
+                xcc.search(s -> { }, SearchLimits.none().withMaxSolutions(1)));
+    }
+
+    @Test
+    public void givenLinkedXcc_shouldEnforceLimitsInSearchLoop() {
+        final XCC<String> xcc = grid(new LinkedXCC<>(
+                o -> List.of(o.substring(0, 1))));
+
+        assertEquals(new SearchResult(StopReason.COMPLETED, 40, 27),
+                xcc.search(s -> { }, SearchLimits.none()));
+        assertEquals(new SearchResult(StopReason.MAX_SOLUTIONS, 4, 1),
+                xcc.search(s -> { }, SearchLimits.none().withMaxSolutions(1)));
+
+        final SearchResult limited = xcc.search(
+                s -> { }, SearchLimits.none().withMaxNodes(10));
+        assertEquals(StopReason.MAX_NODES, limited.stopReason());
+        assertEquals(10, limited.nodes());
+    }
+
+    @Test
+    public void givenParallelXcc_shouldEnforceLimitsAcrossWorkers() {
+        final XCC<String> xcc = grid(new ParallelXCC<>(
+                o -> List.of(o.substring(0, 1))));
+
+        assertEquals(new SearchResult(StopReason.COMPLETED, 40, 27),
+                xcc.search(s -> { }, SearchLimits.none()));
+
+        final List<List<String>> solutions = new ArrayList<>();
+        final SearchResult capped = xcc.search(
+                s -> solutions.add(List.copyOf(s)),
+                SearchLimits.none().withMaxSolutions(5));
+        assertEquals(StopReason.MAX_SOLUTIONS, capped.stopReason());
+        assertEquals(5, solutions.size());
+
+        // The budget is reserved in batches, but never exceeded.
+        final SearchResult limited = xcc.search(
+                s -> { }, SearchLimits.none().withMaxNodes(10));
+        assertEquals(StopReason.MAX_NODES, limited.stopReason());
+        assertTrue(limited.nodes() <= 10);
+    }
+
+    @Test
+    public void givenInterruptedCaller_shouldStopParallelWorkers() {
+        final XCC<String> xcc = grid(new ParallelXCC<>(
+                o -> List.of(o.substring(0, 1))));
+
+        Thread.currentThread().interrupt();
+        try {
+            final SearchResult result = xcc.search(
+                    s -> { }, SearchLimits.none().withInterruptible(true));
+
+            assertEquals(new SearchResult(StopReason.INTERRUPTED, 0, 0), result);
+            assertTrue(Thread.currentThread().isInterrupted());
+        } finally {
+            Thread.interrupted();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void givenParallelXcc_cannotLimitCpuTime() {
+        grid(new ParallelXCC<>(o -> List.of(o.substring(0, 1)))).search(
+                s -> { }, SearchLimits.none().withCpuTime(Duration.ofSeconds(1)));
+    }
+}
@@ -0,0 +1,162 @@
+package fi.iki.asb.xcc;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the flight recorder events.
+ */
+public class SearchRecorderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Counts the options tried by a search.
+     */
+    private static class NodeCounter implements XCCTrace {
+        long nodes = 0;
+
+        @Override
+        public void onSearchStarted() {
+        }
+
+        @Override
+        public void onRecursionEntered(int itemCount) {
+        }
+
+        @Override
+        public void onItemSelected() {
+            nodes++;
+        }
+
+        @Override
+        public void onRecursionEnded() {
+        }
+    }
+
+    private static <X extends XCC<String>> X createSolver(final X xcc) {
+        for (String option : List.of("ADG", "AD", "DEG", "CEF", "BCFG", "BG", "CF", "E")) {
+            xcc.addOption(option);
+        }
+        return xcc;
+    }
+
+    private static List<RecordedEvent> events(
+            final List<RecordedEvent> events,
+            final String name) {
+        return events.stream()
+                .filter(e -> e.getEventType().getName().equals(name))
+                .toList();
+    }
+
+    @Test
+    public void givenRecording_shouldCommitSearchEvents() throws Exception {
+        final NodeCounter searched = new NodeCounter();
+        final NodeCounter counted = new NodeCounter();
+        final Path file = folder.getRoot().toPath().resolve("search.jfr");
+
+        try (Recording recording = new Recording()) {
+            recording.enable("fi.iki.asb.xcc.Search");
+            recording.enable("fi.iki.asb.xcc.Solution");
+            recording.enable("fi.iki.asb.xcc.DepthHistogram");
+            recording.enable("fi.iki.asb.xcc.MatrixBuilt");
+            recording.start();
+
+            final ReferenceXCC<String> reference = createSolver(
+                    new ReferenceXCC<>(WikipediaExample.letters()));
+            reference.setTrace(searched);
+            reference.search(s -> {});
+
+            final LinkedXCC<String> linked = createSolver(
+                    new LinkedXCC<>(WikipediaExample.letters()));
+            linked.setTrace(counted);
+            linked.countSolutions();
+
+            recording.stop();
+            recording.dump(file);
+        }
+
+        final List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+
+        final List<RecordedEvent> searches = events(events, "fi.iki.asb.xcc.Search");
+        assertEquals(2, searches.size());
+        final RecordedEvent search = searches.stream()
+                .filter(e -> e.getString("solver").equals("ReferenceXCC"))
+                .findFirst()
+                .orElseThrow();
+        assertEquals(false, search.getBoolean("counting"));
+        assertEquals(searched.nodes, search.getLong("nodes"));
+        assertEquals(3, search.getLong("solutions"));
+
+        final RecordedEvent count = searches.stream()
+                .filter(e -> e.getString("solver").equals("LinkedXCC"))
+                .findFirst()
+                .orElseThrow();
+        assertEquals(true, count.getBoolean("counting"));
+        assertEquals(counted.nodes, count.getLong("nodes"));
+        assertEquals(3, count.getLong("solutions"));
+
+        assertEquals(3, events(events, "fi.iki.asb.xcc.Solution").size());
+
+        // The histograms of both searches add up to the nodes.
+        assertEquals(searched.nodes + counted.nodes,
+                events(events, "fi.iki.asb.xcc.DepthHistogram").stream()
+                        .mapToLong(e -> e.getLong("nodes"))
+                        .sum());
+
+        // Both solvers record the construction of their matrix.
+        final List<RecordedEvent> builds = events(events, "fi.iki.asb.xcc.MatrixBuilt");
+        assertEquals(2, builds.size());
+        for (RecordedEvent build : builds) {
+            assertEquals(8, build.getInt("options"));
+            assertEquals(7, build.getInt("items"));
+        }
+        assertEquals(Set.of("ReferenceXCC", "LinkedXCC"), builds.stream()
+                .map(e -> e.getString("solver"))
+                .collect(Collectors.toSet()));
+    }
+
+    @Test
+    public void givenArrayMatrix_shouldRecordBuild() throws Exception {
+        final Path file = folder.getRoot().toPath().resolve("build.jfr");
+        final CompiledProblem<String> problem = WikipediaExample.letterProblem(
+                WikipediaExample.LETTER_OPTIONS.toArray(new String[0]));
+
+        try (Recording recording = new Recording()) {
+            recording.enable("fi.iki.asb.xcc.MatrixBuilt");
+            recording.start();
+            new IterativeXCC<>(problem).search(s -> {});
+            recording.stop();
+            recording.dump(file);
+        }
+
+        final List<RecordedEvent> builds = events(
+                RecordingFile.readAllEvents(file), "fi.iki.asb.xcc.MatrixBuilt");
+        assertEquals(1, builds.size());
+        assertEquals("IterativeXCC", builds.get(0).getString("solver"));
+        assertEquals(6, builds.get(0).getInt("options"));
+        assertEquals(17, builds.get(0).getLong("nodes"));
+        assertTrue(builds.get(0).getDuration("constructionTime")
+                .compareTo(Duration.ZERO) > 0);
+    }
+
+    @Test
+    public void givenNoRecording_shouldNotCreateRecorder() {
+        assertNull(SearchRecorder.start("ReferenceXCC", false, 0, null));
+    }
+}
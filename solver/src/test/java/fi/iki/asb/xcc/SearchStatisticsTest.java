@@ -0,0 +1,163 @@
+package fi.iki.asb.xcc;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for collecting the statistics of a search.
+ */
+public class SearchStatisticsTest {
+
+    private record Colored(String item, int color) implements SecondaryItem {
+        @Override
+        public Object getColor() {
+            return color;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Colored c && item.equals(c.item);
+        }
+
+        @Override
+        public int hashCode() {
+            return item.hashCode();
+        }
+    }
+
+    private static final List<String> KNUTH_OPTIONS = List.of(
+            "ce", "adg", "bcf", "adf", "bg", "deg");
+
+    private static ReferenceXCC<String> knuthExample() {
+        final ReferenceXCC<String> xcc = new ReferenceXCC<>(
+                WikipediaExample.letters());
+        KNUTH_OPTIONS.forEach(xcc::addOption);
+        return xcc;
+    }
+
+    private static LinkedXCC<String> linkedKnuthExample() {
+        final LinkedXCC<String> xcc = new LinkedXCC<>(
+                WikipediaExample.letters());
+        KNUTH_OPTIONS.forEach(xcc::addOption);
+        return xcc;
+    }
+
+    @Test
+    public void givenKnuthExample_shouldCountExactStatistics() {
+        final List<Set<String>> solutions = new ArrayList<>();
+        final SearchStatistics stats = knuthExample()
+                .searchWithStatistics(s -> solutions.add(new HashSet<>(s)));
+
+        assertEquals(List.of(Set.of("adf", "bg", "ce")), solutions);
+        assertEquals(new SearchStatistics(
+                        new long[] { 2, 2, 1 },
+                        new long[] { 0, 0, 0, 1 },
+                        13, 10, 0, 473),
+                stats);
+        assertEquals(5, stats.nodes());
+        assertEquals(1, stats.solutions());
+    }
+
+    @Test
+    public void givenTrace_shouldCountSameNodesAsTrace() {
+        final int[] nodes = new int[1];
+        final ReferenceXCC<String> xcc = knuthExample();
+        xcc.setTrace(new XCCTrace() {
+            @Override
+            public void onSearchStarted() { }
+
+            @Override
+            public void onRecursionEntered(int itemCount) { }
+
+            @Override
+            public void onItemSelected() {
+                nodes[0]++;
+            }
+
+            @Override
+            public void onRecursionEnded() { }
+        });
+
+        final SearchStatistics stats = xcc.searchWithStatistics(s -> { });
+        assertEquals(nodes[0], stats.nodes());
+    }
+
+    @Test
+    public void givenRepeatedSearch_shouldReturnEqualStatistics() {
+        final ReferenceXCC<String> xcc = knuthExample();
+        final SearchStatistics first = xcc.searchWithStatistics(s -> { });
+
+        // A plain search in between must not affect the statistics.
+        xcc.search(s -> { });
+
+        assertEquals(first, xcc.searchWithStatistics(s -> { }));
+    }
+
+    @Test
+    public void givenColoredItems_shouldCountPurifies() {
+        final ReferenceXCC<List<Object>> xcc = new ReferenceXCC<>(o -> o);
+        xcc.addOption(List.of("p", new Colored("x", 1)));
+        xcc.addOption(List.of("q", new Colored("x", 1)));
+        xcc.addOption(List.of("q", new Colored("x", 2)));
+
+        final SearchStatistics stats = xcc.searchWithStatistics(s -> { });
+        assertEquals(1, stats.solutions());
+        assertTrue(stats.purifies() > 0);
+        assertArrayEquals(new long[] { 1, 1 }, stats.nodesPerDepth());
+    }
+
+    @Test
+    public void givenLinkedXCC_shouldCountSameOperationsAsReferenceXCC() {
+        final SearchStatistics reference = knuthExample()
+                .searchWithStatistics(s -> { });
+        final List<Set<String>> solutions = new ArrayList<>();
+        final SearchStatistics linked = linkedKnuthExample()
+                .searchWithStatistics(s -> solutions.add(new HashSet<>(s)));
+
+        assertEquals(List.of(Set.of("adf", "bg", "ce")), solutions);
+        assertArrayEquals(reference.nodesPerDepth(), linked.nodesPerDepth());
+        assertArrayEquals(reference.solutionsPerDepth(),
+                linked.solutionsPerDepth());
+        assertEquals(reference.covers(), linked.covers());
+        assertEquals(reference.hides(), linked.hides());
+        assertEquals(reference.purifies(), linked.purifies());
+        assertTrue(linked.mems() > 0);
+    }
+
+    @Test
+    public void givenLinkedXCCRepeatedSearch_shouldReturnEqualStatistics() {
+        final LinkedXCC<String> xcc = linkedKnuthExample();
+        final SearchStatistics first = xcc.searchWithStatistics(s -> { });
+
+        xcc.search(s -> { });
+
+        assertEquals(first, xcc.searchWithStatistics(s -> { }));
+    }
+
+    @Test
+    public void givenLookahead_shouldCountForcedOptions() {
+        final LinkedXCC<String> plain = linkedKnuthExample();
+        final SearchStatistics without = plain.searchWithStatistics(s -> { });
+
+        final LinkedXCC<String> xcc = linkedKnuthExample();
+        xcc.setLookahead(true);
+        final SearchStatistics with = xcc.searchWithStatistics(s -> { });
+
+        // The forced options are committed without a node of their own,
+        // but their covers are counted.
+        assertEquals(1, with.solutions());
+        assertArrayEquals(new long[] { 2, 2, 1 }, without.nodesPerDepth());
+        assertArrayEquals(new long[] { 2 }, with.nodesPerDepth());
+        assertEquals(3, xcc.lookaheadCounters().forcedOptions());
+        assertEquals(12, with.covers());
+        assertEquals(10, with.hides());
+    }
+}
@@ -0,0 +1,30 @@
+package fi.iki.asb.xcc;
+
+import org.junit.Test;
+
+import java.math.BigInteger;
+
+import static org.junit.Assert.assertEquals;
+
+public class SolutionCounterTest {
+
+    @Test
+    public void givenCountBeyondLong_shouldNotOverflow() {
+        final SolutionCounter counter = new SolutionCounter();
+        counter.add(Long.MAX_VALUE);
+        counter.add(Long.MAX_VALUE);
+        counter.add(2);
+
+        assertEquals(BigInteger.valueOf(Long.MAX_VALUE)
+                .multiply(BigInteger.TWO)
+                .add(BigInteger.TWO), counter.value());
+    }
+
+    @Test(expected = ArithmeticException.class)
+    public void givenCountBeyondLong_cannotConvertToLong() {
+        final SolutionCounter counter = new SolutionCounter();
+        counter.add(Long.MAX_VALUE);
+        counter.add(1);
+        counter.value().longValueExact();
+    }
+}
@@ -0,0 +1,137 @@
+package fi.iki.asb.xcc;
+
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for searching canonical solutions of symmetric problems.
+ */
+public class SymmetricXCCTest {
+
+    /**
+     * Items of a strip of six cells covered with pieces of length 1, 2 and
+     * 3. Option "b2" places piece b at cells 2 and 3.
+     */
+    private static final ItemProvider<String> STRIP = option -> {
+        final List<Object> items = new ArrayList<>();
+        final char piece = option.charAt(0);
+        items.add(piece);
+        final int start = option.charAt(1) - '0';
+        for (int c = start; c <= start + piece - 'a'; c++) {
+            items.add(c);
+        }
+        return items;
+    };
+
+    private static SymmetricXCC<String> createStrip(final XCC<String> xcc) {
+        final SymmetricXCC<String> symmetric = new SymmetricXCC<>(xcc, STRIP,
+                List.of(Symmetry.ofItems(i -> (i instanceof Integer c) ? 5 - c : i)));
+        for (char piece = 'a'; piece <= 'c'; piece++) {
+            for (int start = 0; start + piece - 'a' < 6; start++) {
+                symmetric.addOption("" + piece + start);
+            }
+        }
+        return symmetric;
+    }
+
+    /**
+     * Dominoes on a 2x2 board. The cells are numbered from 0 to 3 in
+     * reading order.
+     */
+    private static SymmetricXCC<String> createSquare() {
+        final ItemProvider<String> provider = o -> List.of(
+                o.charAt(0), o.charAt(1));
+        final SymmetricXCC<String> symmetric = new SymmetricXCC<>(
+                new ReferenceXCC<>(provider), provider,
+                List.of(Symmetry.ofItems(i -> switch ((Character) i) {
+                    case '0' -> '1';
+                    case '1' -> '3';
+                    case '3' -> '2';
+                    default -> '0';
+                })));
+        for (String option : List.of("01", "23", "02", "13")) {
+            symmetric.addOption(option);
+        }
+        return symmetric;
+    }
+
+    @Test
+    public void givenInvariantItems_shouldFindOneSolutionPerOrbit() {
+        final SymmetricXCC<String> xcc = createStrip(new ReferenceXCC<>(STRIP));
+
+        final List<String> solutions = new ArrayList<>();
+        final List<Integer> sizes = new ArrayList<>();
+        xcc.searchOrbits((s, size) -> {
+            solutions.add(s.toString());
+            sizes.add(size);
+        });
+
+        assertEquals(2, xcc.groupSize());
+        // Piece c has the fewest orbits, so the search starts from it.
+        assertEquals(List.of("[c0, a3, b4]", "[c0, b3, a5]", "[c1, a0, b4]"),
+                solutions.stream().sorted().toList());
+        assertEquals(List.of(2, 2, 2), sizes);
+        assertEquals(BigInteger.valueOf(3), xcc.countOrbits());
+        assertEquals(BigInteger.valueOf(6), xcc.countSolutionsExact());
+    }
+
+    @Test
+    public void givenLinkedXcc_shouldCountAllSolutions() {
+        final SymmetricXCC<String> xcc = createStrip(new LinkedXCC<>(STRIP));
+        assertEquals(6, xcc.countSolutions());
+    }
+
+    @Test
+    public void givenStream_shouldFindSameCanonicalSolutionsAsSearch() {
+        final SymmetricXCC<String> xcc = createStrip(new LinkedXCC<>(STRIP));
+
+        final List<String> solutions = new ArrayList<>();
+        xcc.search(s -> solutions.add(s.toString()));
+
+        assertEquals(solutions,
+                xcc.solutions().map(List::toString).toList());
+    }
+
+    @Test
+    public void givenRotation_shouldCompleteGroupAndFilterImages() {
+        final SymmetricXCC<String> xcc = createSquare();
+
+        final List<String> solutions = new ArrayList<>();
+        xcc.searchOrbits((s, size) -> solutions.add(s + "x" + size));
+
+        assertEquals(4, xcc.groupSize());
+        assertEquals(List.of("[01, 23]x2"), solutions);
+    }
+
+    @Test
+    public void givenPreSelectedOption_shouldUseOnlySymmetriesThatKeepIt() {
+        final SymmetricXCC<String> xcc = createStrip(new ReferenceXCC<>(STRIP));
+
+        // The reflection moves a0 to a5, so each solution is an orbit of
+        // its own.
+        assertEquals(BigInteger.valueOf(2), xcc.countOrbits(List.of("a0")));
+        assertEquals(BigInteger.valueOf(2), xcc.countSolutionsExact(List.of("a0")));
+    }
+
+    @Test
+    public void givenSymmetryOutsideProblem_shouldThrowException() {
+        final ItemProvider<String> provider = o -> List.of(o);
+        final SymmetricXCC<String> xcc = new SymmetricXCC<>(
+                new ReferenceXCC<>(provider), provider,
+                List.of(Symmetry.ofOptions(o -> o + "'")));
+        xcc.addOption("A");
+
+        try {
+            xcc.search(s -> {});
+            fail("Symmetry should have been rejected");
+        } catch (IllegalArgumentException e) {
+            // Expected.
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package fi.iki.asb.xcc;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+
+/**
+ * The Wikipedia example of exact cover, shared by the tests. The options
+ * A-F cover the items 0-6.
+ *
+ * <p>Small problems can also be written with letters, so that each letter
+ * of an option is an item. {@link #LETTER_OPTIONS} is the same example
+ * with the items 0-6 written as A-G.</p>
+ *
+ * @see <a href="https://en.wikipedia.org/wiki/Knuth%27s_Algorithm_X">Knuth%27s_Algorithm_X</a>
+ */
+final class WikipediaExample implements ItemProvider<String> {
+
+    /**
+     * The options of the example.
+     */
+    static final List<String> OPTIONS = List.of("A", "B", "C", "D", "E", "F");
+
+    /**
+     * The options of the example written with letters. The only solution
+     * is AD, CEF and BG.
+     */
+    static final List<String> LETTER_OPTIONS = List.of(
+            "ADG", "AD", "DEG", "CEF", "BCFG", "BG");
+
+    @Override
+    public Collection<Object> from(String rowValue) {
+        return switch (rowValue) {
+            case "A" -> asList(0, 3, 6);
+            case "B" -> asList(0, 3);
+            case "C" -> asList(3, 4, 6);
+            case "D" -> asList(2, 4, 5);
+            case "E" -> asList(1, 2, 5, 6);
+            case "F" -> asList(1, 6);
+            default -> Collections.emptyList();
+        };
+    }
+
+    /**
+     * Get an item provider whose items are the letters of the option.
+     */
+    static ItemProvider<String> letters() {
+        return o -> Arrays.asList((Object[]) o.split(""));
+    }
+
+    /**
+     * Create a problem from options written with letters.
+     */
+    static CompiledProblem<String> letterProblem(final String... options) {
+        final CompiledProblem<String> problem = new CompiledProblem<>(letters());
+        for (String option : options) {
+            problem.addOption(option);
+        }
+        return problem;
+    }
+}
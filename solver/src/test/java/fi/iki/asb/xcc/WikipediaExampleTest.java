@@ -2,14 +2,13 @@ package fi.iki.asb.xcc;
 
 import org.junit.Test;
 
+import java.math.BigInteger;
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Collections;
 import java.util.List;
 import java.util.function.Function;
 
-import static java.util.Arrays.asList;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -20,31 +19,11 @@ import static org.junit.Assert.fail;
  */
 public class WikipediaExampleTest {
 
-    private static class WikipediaExample implements ItemProvider<String> {
-        @Override
-        public Collection<Object> from(String rowValue) {
-            return switch (rowValue) {
-                case "A" -> asList(0, 3, 6);
-                case "B" -> asList(0, 3);
-                case "C" -> asList(3, 4, 6);
-                case "D" -> asList(2, 4, 5);
-                case "E" -> asList(1, 2, 5, 6);
-                case "F" -> asList(1, 6);
-                default -> Collections.emptyList();
-            };
-        }
-    }
-
     private final List<String> solutions = new ArrayList<>();
 
     private XCC<String> createSolver(Function<ItemProvider<String>, XCC<String>> init) {
         final XCC<String> xcc = init.apply(new WikipediaExample());
-        xcc.addOption("A");
-        xcc.addOption("B");
-        xcc.addOption("C");
-        xcc.addOption("D");
-        xcc.addOption("E");
-        xcc.addOption("F");
+        WikipediaExample.OPTIONS.forEach(xcc::addOption);
         return xcc;
     }
 
@@ -75,6 +54,33 @@ public class WikipediaExampleTest {
         runBasicTest(createSolver(ReferenceXCC::new));
     }
 
+    @Test
+    public void givenParallelXcc_shouldFindSolution() {
+        runBasicTest(createSolver(ParallelXCC::new));
+    }
+
+    @Test
+    public void givenIterativeXcc_shouldFindSolution() {
+        runBasicTest(createSolver(IterativeXCC::new));
+    }
+
+    @Test
+    public void givenDancingCellsXcc_shouldFindSolution() {
+        runBasicTest(createSolver(DancingCellsXCC::new));
+    }
+
+    @Test
+    public void givenOffHeapXcc_shouldFindSolution() {
+        try (OffHeapXCC<String> xcc = new OffHeapXCC<>(new WikipediaExample())) {
+            runBasicTest(createSolver(p -> xcc));
+        }
+    }
+
+    @Test
+    public void givenBitsetXcc_shouldFindSolution() {
+        runBasicTest(createSolver(BitsetXCC::new));
+    }
+
     // =================================================================== //
     // Happy path test can be run twice in a row.
 
@@ -94,6 +100,48 @@ public class WikipediaExampleTest {
         runBasicTest(solver);
     }
 
+    @Test
+    public void givenParallelXcc_shouldFindSolutionTwice() {
+        XCC<String> solver = createSolver(ParallelXCC::new);
+        runBasicTest(solver);
+        solutions.clear();
+        runBasicTest(solver);
+    }
+
+    @Test
+    public void givenIterativeXcc_shouldFindSolutionTwice() {
+        XCC<String> solver = createSolver(IterativeXCC::new);
+        runBasicTest(solver);
+        solutions.clear();
+        runBasicTest(solver);
+    }
+
+    @Test
+    public void givenDancingCellsXcc_shouldFindSolutionTwice() {
+        XCC<String> solver = createSolver(DancingCellsXCC::new);
+        runBasicTest(solver);
+        solutions.clear();
+        runBasicTest(solver);
+    }
+
+    @Test
+    public void givenOffHeapXcc_shouldFindSolutionTwice() {
+        try (OffHeapXCC<String> xcc = new OffHeapXCC<>(new WikipediaExample())) {
+            XCC<String> solver = createSolver(p -> xcc);
+            runBasicTest(solver);
+            solutions.clear();
+            runBasicTest(solver);
+        }
+    }
+
+    @Test
+    public void givenBitsetXcc_shouldFindSolutionTwice() {
+        XCC<String> solver = createSolver(BitsetXCC::new);
+        runBasicTest(solver);
+        solutions.clear();
+        runBasicTest(solver);
+    }
+
     // =================================================================== //
     // Test that solution is found with pre-selected options.
 
@@ -115,6 +163,81 @@ public class WikipediaExampleTest {
         runPreSelectedTest(createSolver(ReferenceXCC::new));
     }
 
+    @Test
+    public void givenParallelXcc_withPreSelectedOptions_shouldFindSolution() {
+        runPreSelectedTest(createSolver(ParallelXCC::new));
+    }
+
+    @Test
+    public void givenIterativeXcc_withPreSelectedOptions_shouldFindSolution() {
+        runPreSelectedTest(createSolver(IterativeXCC::new));
+    }
+
+    @Test
+    public void givenDancingCellsXcc_withPreSelectedOptions_shouldFindSolution() {
+        runPreSelectedTest(createSolver(DancingCellsXCC::new));
+    }
+
+    @Test
+    public void givenOffHeapXcc_withPreSelectedOptions_shouldFindSolution() {
+        try (OffHeapXCC<String> xcc = new OffHeapXCC<>(new WikipediaExample())) {
+            runPreSelectedTest(createSolver(p -> xcc));
+        }
+    }
+
+    @Test
+    public void givenBitsetXcc_withPreSelectedOptions_shouldFindSolution() {
+        runPreSelectedTest(createSolver(BitsetXCC::new));
+    }
+
+    // =================================================================== //
+    // Test that solutions can be counted with pre-selected options.
+
+    public void runCountTest(XCC<String> xcc) {
+        assertEquals(1, xcc.countSolutions());
+        assertEquals(1, xcc.countSolutions(List.of("F")));
+        assertEquals(0, xcc.countSolutions(List.of("A")));
+        assertEquals(BigInteger.ONE, xcc.countSolutionsExact());
+        assertFalse(xcc.isDirty());
+    }
+
+    @Test
+    public void givenLinkedXcc_shouldCountSolutions() {
+        runCountTest(createSolver(LinkedXCC::new));
+    }
+
+    @Test
+    public void givenReferenceXcc_shouldCountSolutions() {
+        runCountTest(createSolver(ReferenceXCC::new));
+    }
+
+    @Test
+    public void givenParallelXcc_shouldCountSolutions() {
+        runCountTest(createSolver(ParallelXCC::new));
+    }
+
+    @Test
+    public void givenIterativeXcc_shouldCountSolutions() {
+        runCountTest(createSolver(IterativeXCC::new));
+    }
+
+    @Test
+    public void givenDancingCellsXcc_shouldCountSolutions() {
+        runCountTest(createSolver(DancingCellsXCC::new));
+    }
+
+    @Test
+    public void givenOffHeapXcc_shouldCountSolutions() {
+        try (OffHeapXCC<String> xcc = new OffHeapXCC<>(new WikipediaExample())) {
+            runCountTest(createSolver(p -> xcc));
+        }
+    }
+
+    @Test
+    public void givenBitsetXcc_shouldCountSolutions() {
+        runCountTest(createSolver(BitsetXCC::new));
+    }
+
     // =================================================================== //
     // Test that the search cannot be performed if the matrix is left
     // dirty.
@@ -140,4 +263,26 @@ public class WikipediaExampleTest {
     public void givenReferenceXcc_withDirtyMatrix_shouldThrowException() {
         runDirtyTest(createSolver(ReferenceXCC::new));
     }
+
+    @Test(expected = IllegalStateException.class)
+    public void givenIterativeXcc_withDirtyMatrix_shouldThrowException() {
+        runDirtyTest(createSolver(IterativeXCC::new));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void givenDancingCellsXcc_withDirtyMatrix_shouldThrowException() {
+        runDirtyTest(createSolver(DancingCellsXCC::new));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void givenOffHeapXcc_withDirtyMatrix_shouldThrowException() {
+        try (OffHeapXCC<String> xcc = new OffHeapXCC<>(new WikipediaExample())) {
+            runDirtyTest(createSolver(p -> xcc));
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void givenBitsetXcc_withDirtyMatrix_shouldThrowException() {
+        runDirtyTest(createSolver(BitsetXCC::new));
+    }
 }
@@ -0,0 +1,158 @@
+package fi.iki.asb.xcc;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for building and querying decision diagrams of the solutions.
+ */
+public class ZddTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Sort the options of each solution and the solutions, as the diagram
+     * lists the solutions in a different order than the solvers.
+     */
+    private static Set<List<String>> canonical(final Collection<List<String>> solutions) {
+        final Set<List<String>> result = new HashSet<>();
+        for (List<String> s : solutions) {
+            result.add(s.stream().sorted().toList());
+        }
+        return result;
+    }
+
+    private static Set<List<String>> solve(final CompiledProblem<String> problem) {
+        final List<List<String>> solutions = new ArrayList<>();
+        new ReferenceXCC<>(problem).search(s -> solutions.add(List.copyOf(s)));
+        return canonical(solutions);
+    }
+
+    @Test
+    public void givenDominoes_shouldShareSubproblems() {
+        final ZddBuilder<String> builder = new ZddBuilder<>(DominoStrip.problem(40));
+        final Zdd<String> zdd = builder.build();
+
+        // F(41) tilings, but the diagram grows only linearly.
+        assertEquals(new BigInteger("165580141"), zdd.count());
+        assertTrue(zdd.nodeCount() < 200);
+        assertTrue(builder.memoHits() > 0);
+    }
+
+    @Test
+    public void givenDominoes_shouldIterateSameSolutionsAsReferenceXcc() {
+        final CompiledProblem<String> problem = DominoStrip.problem(8);
+        final Zdd<String> zdd = new ZddBuilder<>(problem).build();
+
+        final List<List<String>> solutions = new ArrayList<>();
+        zdd.forEach(solutions::add);
+
+        assertEquals(34, solutions.size());
+        assertEquals(solve(problem), canonical(solutions));
+    }
+
+    @Test
+    public void givenRandomColoredProblems_shouldCountSameAsReferenceXcc() {
+        final Random random = new Random(3);
+        for (int round = 0; round < 100; round++) {
+            final CompiledProblem<List<Object>> problem
+                    = RandomProblems.problem(random, 25, 8);
+
+            final Zdd<List<Object>> zdd = new ZddBuilder<>(problem).build();
+            assertEquals(new ReferenceXCC<>(problem).countSolutionsExact(),
+                    zdd.count());
+            assertEquals(zdd.count().longValue(), zdd.solutions().count());
+        }
+    }
+
+    @Test
+    public void givenPreSelectedOption_shouldIncludeItInEverySolution() {
+        final CompiledProblem<String> problem = DominoStrip.problem(6);
+        final Zdd<String> zdd = new ZddBuilder<>(problem).build(List.of("v2"));
+
+        // Three columns on each side of the vertical domino.
+        assertEquals(BigInteger.valueOf(2 * 3), zdd.count());
+        zdd.forEach(s -> assertTrue(s.contains("v2")));
+    }
+
+    @Test
+    public void givenSample_shouldReturnSolutions() {
+        final CompiledProblem<String> problem = DominoStrip.problem(8);
+        final Zdd<String> zdd = new ZddBuilder<>(problem).build();
+        final Set<List<String>> expected = solve(problem);
+
+        final Random random = new Random(1);
+        final Set<List<String>> samples = new HashSet<>();
+        for (int k = 0; k < 500; k++) {
+            samples.addAll(canonical(List.of(zdd.sample(random))));
+        }
+
+        // With 500 samples every one of the 34 solutions is found.
+        assertEquals(expected, samples);
+    }
+
+    @Test
+    public void givenFile_shouldReadWhatWasWritten() throws IOException {
+        final CompiledProblem<String> problem = DominoStrip.problem(10);
+        final Zdd<String> zdd = new ZddBuilder<>(problem).build();
+        final Path file = folder.getRoot().toPath().resolve("dominoes.zdd");
+        zdd.write(file);
+
+        final Zdd<String> read = Zdd.read(file, problem);
+        assertEquals(zdd.nodeCount(), read.nodeCount());
+        assertEquals(zdd.count(), read.count());
+
+        final List<List<String>> expected = new ArrayList<>();
+        final List<List<String>> actual = new ArrayList<>();
+        zdd.forEach(expected::add);
+        read.forEach(actual::add);
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void givenMalformedFile_shouldThrowException() throws IOException {
+        final Path file = folder.getRoot().toPath().resolve("bad.zdd");
+        Files.writeString(file, "zdd 3 2\n2 0 5 1\n");
+
+        try {
+            Zdd.read(file, DominoStrip.problem(2));
+            fail("File should have been rejected");
+        } catch (IOException e) {
+            assertEquals("value out of range: 5", e.getMessage());
+        }
+    }
+
+    @Test
+    public void givenMemoryLimit_shouldClearMemoOrFail() {
+        final CompiledProblem<String> problem = DominoStrip.problem(20);
+        final ZddBuilder<String> builder = new ZddBuilder<>(problem);
+
+        builder.setMemoryLimit(20_000);
+        assertEquals(BigInteger.valueOf(10946), builder.build().count());
+
+        builder.setMemoryLimit(500);
+        try {
+            builder.build();
+            fail("Build should have failed");
+        } catch (IllegalStateException e) {
+            // Expected.
+        }
+    }
+}